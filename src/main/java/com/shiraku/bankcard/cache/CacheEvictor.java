@@ -0,0 +1,60 @@
+package com.shiraku.bankcard.cache;
+
+import com.shiraku.bankcard.model.entity.Card;
+import com.shiraku.bankcard.model.entity.User;
+import com.shiraku.bankcard.repository.UserRepository;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Класс CacheEvictor вытесняет записи из локального кэша второго уровня этого экземпляра приложения
+ * <p>
+ * Изменение пользователя вытесняет и регион кэша запросов по email: метки изменения таблиц у Hibernate
+ * локальные, поэтому изменение на другом узле сами по себе его не инвалидируют.
+ * */
+@Slf4j
+@Component
+public class CacheEvictor {
+    private final EntityManagerFactory entityManagerFactory;
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong fullFlushes = new AtomicLong();
+
+    public CacheEvictor(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    public void evictCards(Collection<UUID> cardIds) {
+        cardIds.forEach(id -> entityManagerFactory.getCache().evict(Card.class, id));
+        evictions.addAndGet(cardIds.size());
+    }
+
+    public void evictUsers(Collection<UUID> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        userIds.forEach(id -> entityManagerFactory.getCache().evict(User.class, id));
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictQueryRegion(UserRepository.EMAIL_QUERY_REGION);
+        evictions.addAndGet(userIds.size());
+    }
+
+    /** Метод {@code evictAll()} полностью очищает кэш, когда пропуск уведомлений нельзя исключить */
+    public void evictAll() {
+        entityManagerFactory.getCache().evictAll();
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictQueryRegions();
+        fullFlushes.incrementAndGet();
+        log.info("Second-level cache fully flushed");
+    }
+
+    public long evictionCount() {
+        return evictions.get();
+    }
+
+    public long fullFlushCount() {
+        return fullFlushes.get();
+    }
+}
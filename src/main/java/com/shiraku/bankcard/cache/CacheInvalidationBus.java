@@ -0,0 +1,170 @@
+package com.shiraku.bankcard.cache;
+
+import com.shiraku.bankcard.model.CardOperation;
+import com.shiraku.bankcard.model.event.CardChangedEvent;
+import com.shiraku.bankcard.model.event.UserChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/** Класс CacheInvalidationBus рассылает инвалидацию кэша между экземплярами приложения через PostgreSQL NOTIFY
+ * <p>
+ * Изменения карт и пользователей собираются в пределах транзакции (повторы схлопываются) и перед фиксацией
+ * отправляются {@code pg_notify} в канал {@link #CHANNEL} той же базы (шарда). NOTIFY транзакционен:
+ * уведомление доставляется слушателям только после фиксации и теряется при откате.
+ * Остальные узлы принимают его в {@link CacheInvalidationListener}.
+ * <p>
+ * Изменения через JPA локально уже отражены Hibernate, поэтому свой узел игнорирует собственные уведомления
+ * (в них передаётся идентификатор узла). Изменения в обход Hibernate ({@link #cardsChanged}) дополнительно
+ * вытесняются локально после фиксации. Без PostgreSQL рассылка отключена и выполняется только локальное вытеснение.
+ * */
+@Slf4j
+@Component
+public class CacheInvalidationBus {
+    public static final String CHANNEL = "bankcard_cache";
+    static final String CARDS = "c";
+    static final String USERS = "u";
+    /** Предел полезной нагрузки NOTIFY - 8000 байт, оставляем запас */
+    private static final int IDS_PER_NOTIFY = 180;
+
+    private final CacheEvictor evictor;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean clusterMode;
+    private final String nodeId = UUID.randomUUID().toString().substring(0, 8);
+
+    public CacheInvalidationBus(CacheEvictor evictor,
+                                JdbcTemplate jdbcTemplate,
+                                @Value("${spring.datasource.url:}") String url,
+                                @Value("${bankcard.cache.invalidation.enabled:true}") boolean enabled) {
+        this.evictor = evictor;
+        this.jdbcTemplate = jdbcTemplate;
+        this.clusterMode = enabled && url.startsWith("jdbc:postgresql:");
+    }
+
+    /** Метод {@code isClusterMode()} - включена ли рассылка через PostgreSQL */
+    public boolean isClusterMode() {
+        return clusterMode;
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @EventListener
+    public void onCardChanged(CardChangedEvent event) {
+        // новую карту ещё никто не мог закэшировать
+        if (event.operation() != CardOperation.CREATED) {
+            collect(List.of(event.cardId()), List.of(), false);
+        }
+    }
+
+    @EventListener
+    public void onUserChanged(UserChangedEvent event) {
+        collect(List.of(), List.of(event.userId()), false);
+    }
+
+    /** Метод {@code cardsChanged()} сообщает об изменении карт в обход Hibernate (JDBC) на текущем шарде */
+    public void cardsChanged(Collection<UUID> cardIds) {
+        collect(cardIds, List.of(), true);
+    }
+
+    private void collect(Collection<UUID> cards, Collection<UUID> users, boolean evictLocally) {
+        if (!clusterMode && !evictLocally) {
+            return;
+        }
+        PendingInvalidation pending = currentPending();
+        if (pending == null) {
+            PendingInvalidation immediate = new PendingInvalidation();
+            immediate.add(cards, users, evictLocally);
+            immediate.beforeCommit(false);
+            immediate.afterCommit();
+            return;
+        }
+        pending.add(cards, users, evictLocally);
+    }
+
+    private PendingInvalidation currentPending() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof PendingInvalidation pending && pending.bus() == this) {
+                return pending;
+            }
+        }
+        PendingInvalidation pending = new PendingInvalidation();
+        TransactionSynchronizationManager.registerSynchronization(pending);
+        return pending;
+    }
+
+    private void publish(String kind, Set<UUID> ids) {
+        List<UUID> batch = new ArrayList<>(IDS_PER_NOTIFY);
+        for (UUID id : ids) {
+            batch.add(id);
+            if (batch.size() == IDS_PER_NOTIFY) {
+                send(kind, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            send(kind, batch);
+        }
+    }
+
+    private void send(String kind, List<UUID> ids) {
+        StringBuilder payload = new StringBuilder(nodeId).append('|').append(kind).append('|');
+        for (int i = 0; i < ids.size(); i++) {
+            if (i > 0) {
+                payload.append(',');
+            }
+            payload.append(ids.get(i));
+        }
+        jdbcTemplate.query("SELECT pg_notify(?, ?)", rs -> {
+        }, CHANNEL, payload.toString());
+    }
+
+    /** Изменения одной транзакции: рассылаются перед фиксацией, локально вытесняются после */
+    private final class PendingInvalidation implements TransactionSynchronization {
+        private final Set<UUID> cards = new LinkedHashSet<>();
+        private final Set<UUID> users = new LinkedHashSet<>();
+        private final Set<UUID> localCards = new LinkedHashSet<>();
+
+        CacheInvalidationBus bus() {
+            return CacheInvalidationBus.this;
+        }
+
+        void add(Collection<UUID> cardIds, Collection<UUID> userIds, boolean evictLocally) {
+            cards.addAll(cardIds);
+            users.addAll(userIds);
+            if (evictLocally) {
+                localCards.addAll(cardIds);
+            }
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            if (clusterMode) {
+                publish(CARDS, cards);
+                publish(USERS, users);
+            }
+        }
+
+        @Override
+        public void afterCommit() {
+            if (!localCards.isEmpty()) {
+                evictor.evictCards(localCards);
+            }
+        }
+    }
+}
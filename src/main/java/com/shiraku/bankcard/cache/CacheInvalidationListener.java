@@ -0,0 +1,162 @@
+package com.shiraku.bankcard.cache;
+
+import com.shiraku.bankcard.datasource.ShardDataSources;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Класс CacheInvalidationListener принимает уведомления {@link CacheInvalidationBus} от других экземпляров
+ * и вытесняет изменённые записи из локального кэша второго уровня
+ * <p>
+ * На каждый шард держится отдельное соединение вне пула (LISTEN привязан к сессии и не должен возвращаться в пул)
+ * и отдельный поток. Уведомления, пришедшие в течение {@code coalesce-window}, объединяются в одно вытеснение.
+ * <p>
+ * Пока соединение разорвано, уведомления теряются, поэтому после переподключения кэш очищается целиком.
+ * Так же обрабатываются нераспознанное уведомление и ошибка вытеснения: часть уведомлений могла быть не применена.
+ * */
+@Slf4j
+@Component
+public class CacheInvalidationListener implements SmartLifecycle {
+    private static final int POLL_MILLIS = 500;
+
+    private final CacheEvictor evictor;
+    private final CacheInvalidationBus bus;
+    private final Map<String, HikariDataSource> shards = new LinkedHashMap<>();
+    private final Duration coalesceWindow;
+    private final Duration reconnectDelay;
+    private final List<Thread> threads = new ArrayList<>();
+    private final AtomicLong received = new AtomicLong();
+    private volatile boolean running;
+
+    public CacheInvalidationListener(CacheEvictor evictor,
+                                     CacheInvalidationBus bus,
+                                     @Qualifier("primaryDataSource") HikariDataSource primaryDataSource,
+                                     ShardDataSources shardDataSources,
+                                     @Value("${bankcard.cache.invalidation.coalesce-window:20ms}") Duration coalesceWindow,
+                                     @Value("${bankcard.cache.invalidation.reconnect-delay:2s}") Duration reconnectDelay) {
+        this.evictor = evictor;
+        this.bus = bus;
+        this.coalesceWindow = coalesceWindow;
+        this.reconnectDelay = reconnectDelay;
+        shards.put(ShardDataSources.DEFAULT_SHARD, primaryDataSource);
+        shards.putAll(shardDataSources.getAdditionalShards());
+    }
+
+    @Override
+    public void start() {
+        if (!bus.isClusterMode()) {
+            return;
+        }
+        running = true;
+        shards.forEach((shard, dataSource) -> {
+            Thread thread = new Thread(() -> listen(shard, dataSource), "cache-invalidation-" + shard);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        });
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        threads.forEach(Thread::interrupt);
+        threads.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Количество принятых уведомлений от других экземпляров */
+    public long receivedCount() {
+        return received.get();
+    }
+
+    private void listen(String shard, HikariDataSource dataSource) {
+        boolean reconnect = false;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(
+                    dataSource.getJdbcUrl(), dataSource.getUsername(), dataSource.getPassword())) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CacheInvalidationBus.CHANNEL);
+                }
+                if (reconnect) {
+                    evictor.evictAll();
+                }
+                reconnect = true;
+                log.info("Listening for cache invalidations on {}", shard);
+                poll(connection.unwrap(PGConnection.class));
+            } catch (SQLException | RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Cache invalidation listener on {} failed, reconnecting in {}", shard, reconnectDelay, e);
+                try {
+                    Thread.sleep(reconnectDelay.toMillis());
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void poll(PGConnection connection) throws SQLException {
+        while (running) {
+            PGNotification[] notifications = connection.getNotifications(POLL_MILLIS);
+            if (notifications == null || notifications.length == 0) {
+                continue;
+            }
+            Set<UUID> cards = new HashSet<>();
+            Set<UUID> users = new HashSet<>();
+            collect(notifications, cards, users);
+
+            long deadline = System.nanoTime() + coalesceWindow.toNanos();
+            long remaining;
+            while ((remaining = (deadline - System.nanoTime()) / 1_000_000) > 0) {
+                notifications = connection.getNotifications((int) remaining);
+                if (notifications == null || notifications.length == 0) {
+                    break;
+                }
+                collect(notifications, cards, users);
+            }
+            if (!cards.isEmpty()) {
+                evictor.evictCards(cards);
+            }
+            evictor.evictUsers(users);
+        }
+    }
+
+    private void collect(PGNotification[] notifications, Set<UUID> cards, Set<UUID> users) {
+        for (PGNotification notification : notifications) {
+            String[] parts = notification.getParameter().split("\\|", 3);
+            if (parts.length < 3 || parts[0].equals(bus.nodeId()) || parts[2].isEmpty()) {
+                continue;
+            }
+            received.incrementAndGet();
+            Set<UUID> target = CacheInvalidationBus.USERS.equals(parts[1]) ? users : cards;
+            for (String id : parts[2].split(",")) {
+                target.add(UUID.fromString(id));
+            }
+        }
+    }
+}
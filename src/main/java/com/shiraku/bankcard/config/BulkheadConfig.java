@@ -0,0 +1,30 @@
+package com.shiraku.bankcard.config;
+
+import com.shiraku.bankcard.filter.AdminBulkheadInterceptor;
+import com.shiraku.bankcard.utils.Bulkhead;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/** Класс BulkheadConfig подключает переборку для административных эндпоинтов */
+@Configuration
+public class BulkheadConfig implements WebMvcConfigurer {
+    private final Bulkhead adminBulkhead;
+
+    public BulkheadConfig(@Value("${bankcard.bulkhead.admin.max-concurrent:4}") int maxConcurrent,
+                          @Value("${bankcard.bulkhead.admin.max-wait-ms:50}") long maxWaitMillis) {
+        this.adminBulkhead = new Bulkhead("admin", maxConcurrent, maxWaitMillis);
+    }
+
+    @Bean
+    public Bulkhead adminBulkhead() {
+        return adminBulkhead;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new AdminBulkheadInterceptor(adminBulkhead)).addPathPatterns("/api/**");
+    }
+}
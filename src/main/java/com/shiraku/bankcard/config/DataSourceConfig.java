@@ -0,0 +1,138 @@
+package com.shiraku.bankcard.config;
+
+import com.shiraku.bankcard.datasource.ReplicaDataSources;
+import com.shiraku.bankcard.datasource.RoutingDataSource;
+import com.shiraku.bankcard.datasource.ShardDataSources;
+import com.shiraku.bankcard.datasource.ShardRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Класс DataSourceConfig настраивает пулы соединений приложения
+ * <p>
+ * primary - основной пул ({@code spring.datasource.*}, {@code spring.datasource.hikari.*})
+ * <p>
+ * admin - отдельный небольшой пул для административных эндпоинтов ({@code bankcard.datasource.admin.hikari.*}),
+ * чтобы просмотр всех карт администратором не занимал соединения пользовательских переводов
+ * <p>
+ * replica-N - пулы реплик только для чтения ({@code bankcard.datasource.replicas[N].*}), необязательны
+ * <p>
+ * shard-N - дополнительные шарды карт ({@code bankcard.sharding.shards[N-1].*}), необязательны;
+ * шард по умолчанию shard-0 - это перечисленные выше пулы основной базы
+ * <p>
+ * Пулы объединены маршрутизирующими источниками (шард → маршрут внутри шарда), обёрнутыми
+ * в {@link LazyConnectionDataSourceProxy}: соединение берётся при первом запросе, когда шард и маршрут
+ * текущего потока уже известны.
+ * <p>
+ * Для PostgreSQL на записывающих пулах включается {@code reWriteBatchedInserts}: драйвер склеивает
+ * JDBC batch вставок в многострочные {@code INSERT}, что заметно ускоряет массовый выпуск карт.
+ * */
+@Configuration
+public class DataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        enableBatchRewrite(dataSource);
+        return dataSource;
+    }
+
+    @Bean
+    @ConfigurationProperties("bankcard.datasource.admin.hikari")
+    public HikariDataSource adminDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("admin");
+        dataSource.setMaximumPoolSize(3);
+        enableBatchRewrite(dataSource);
+        return dataSource;
+    }
+
+    @Bean(destroyMethod = "close")
+    public ReplicaDataSources replicaDataSources(Environment environment,
+                                                 DataSourceProperties properties,
+                                                 ObjectProvider<MeterRegistry> meterRegistry) {
+        List<ReplicaDataSources.ReplicaProperties> replicas = Binder.get(environment)
+                .bind("bankcard.datasource.replicas", Bindable.listOf(ReplicaDataSources.ReplicaProperties.class))
+                .orElse(List.of());
+
+        List<HikariDataSource> dataSources = new ArrayList<>();
+        for (int i = 0; i < replicas.size(); i++) {
+            ReplicaDataSources.ReplicaProperties replica = replicas.get(i);
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("replica-" + i);
+            dataSource.setJdbcUrl(replica.getUrl());
+            dataSource.setUsername(replica.getUsername() != null ? replica.getUsername() : properties.determineUsername());
+            dataSource.setPassword(replica.getPassword() != null ? replica.getPassword() : properties.determinePassword());
+            dataSource.setMaximumPoolSize(replica.getMaximumPoolSize());
+            dataSource.setReadOnly(true);
+            meterRegistry.ifAvailable(registry ->
+                    dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+            dataSources.add(dataSource);
+        }
+        return new ReplicaDataSources(dataSources);
+    }
+
+    @Bean(destroyMethod = "close")
+    public ShardDataSources shardDataSources(Environment environment,
+                                             DataSourceProperties properties,
+                                             ObjectProvider<MeterRegistry> meterRegistry) {
+        List<ShardDataSources.ShardProperties> shards = Binder.get(environment)
+                .bind("bankcard.sharding.shards", Bindable.listOf(ShardDataSources.ShardProperties.class))
+                .orElse(List.of());
+
+        Map<String, HikariDataSource> dataSources = new LinkedHashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            ShardDataSources.ShardProperties shard = shards.get(i);
+            String shardId = "shard-" + (i + 1);
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName(shardId);
+            dataSource.setJdbcUrl(shard.getUrl());
+            dataSource.setUsername(shard.getUsername() != null ? shard.getUsername() : properties.determineUsername());
+            dataSource.setPassword(shard.getPassword() != null ? shard.getPassword() : properties.determinePassword());
+            dataSource.setMaximumPoolSize(shard.getMaximumPoolSize());
+            enableBatchRewrite(dataSource);
+            meterRegistry.ifAvailable(registry ->
+                    dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+            dataSources.put(shardId, dataSource);
+        }
+        return new ShardDataSources(dataSources);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                 @Qualifier("adminDataSource") DataSource adminDataSource,
+                                 ReplicaDataSources replicaDataSources,
+                                 ShardDataSources shardDataSources) {
+        Map<String, DataSource> shards = new LinkedHashMap<>();
+        shards.put(ShardDataSources.DEFAULT_SHARD,
+                new RoutingDataSource(primaryDataSource, adminDataSource, replicaDataSources.getDataSources()));
+        shards.putAll(shardDataSources.getAdditionalShards());
+        return new LazyConnectionDataSourceProxy(new ShardRoutingDataSource(ShardDataSources.DEFAULT_SHARD, shards));
+    }
+
+    private static void enableBatchRewrite(HikariDataSource dataSource) {
+        if (dataSource.getJdbcUrl() != null && dataSource.getJdbcUrl().startsWith("jdbc:postgresql:")) {
+            dataSource.addDataSourceProperty("reWriteBatchedInserts", "true");
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.shiraku.bankcard.config;
+
+import com.shiraku.bankcard.cache.CacheEvictor;
+import com.shiraku.bankcard.cache.CacheInvalidationListener;
+import com.shiraku.bankcard.filter.ConcurrencyLimitFilter;
+import com.shiraku.bankcard.filter.RateLimitFilter;
+import com.shiraku.bankcard.outbox.OutboxRelay;
+import com.shiraku.bankcard.repository.UserRepository;
+import com.shiraku.bankcard.service.AdminStatsService;
+import com.shiraku.bankcard.service.AdvisoryLockService;
+import com.shiraku.bankcard.service.BalanceReconciliationJob;
+import com.shiraku.bankcard.service.CardAccrualJob;
+import com.shiraku.bankcard.service.CardArchiveJob;
+import com.shiraku.bankcard.service.CardExpirySweeper;
+import com.shiraku.bankcard.service.CardNumberGenerator;
+import com.shiraku.bankcard.service.CardService;
+import com.shiraku.bankcard.service.CardStatementJob;
+import com.shiraku.bankcard.service.CardUpdateBroadcaster;
+import com.shiraku.bankcard.service.ScheduledTransferScheduler;
+import com.shiraku.bankcard.service.UserDeletionJob;
+import com.shiraku.bankcard.utils.Bulkhead;
+import com.shiraku.bankcard.utils.SingleFlight;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/** Класс MetricsConfig публикует в Micrometer состояние ограничителей нагрузки, переборок и генератора номеров карт
+ * <p>
+ * Доля попаданий в кэш второго уровня публикуется по регионам ({@code bankcard.cache.hit_ratio});
+ * счётчики запросов к регионам ({@code hibernate.second.level.cache.*}) публикует hibernate-micrometer.
+ * <p>
+ * Насыщение пулов соединений ({@code primary}, {@code admin}) публикуется самим Hikari в метриках {@code hikaricp.*}
+ * */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder rateLimitMetrics(RateLimitFilter rateLimitFilter) {
+        return registry -> {
+            Gauge.builder("bankcard.ratelimit.keys", rateLimitFilter, RateLimitFilter::trackedKeys)
+                    .description("Количество отслеживаемых ключей лимитера")
+                    .register(registry);
+            FunctionCounter.builder("bankcard.ratelimit.rejected", rateLimitFilter, RateLimitFilter::rejectedCount)
+                    .description("Запросы, отклонённые с кодом 429")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder concurrencyLimitMetrics(ConcurrencyLimitFilter concurrencyLimitFilter) {
+        return registry -> concurrencyLimitFilter.limiters().forEach((endpointClass, limiter) -> {
+            String tag = endpointClass.name().toLowerCase();
+            Gauge.builder("bankcard.concurrency.limit", limiter, l -> l.getLimit())
+                    .tag("class", tag)
+                    .register(registry);
+            Gauge.builder("bankcard.concurrency.inflight", limiter, l -> l.getInFlight())
+                    .tag("class", tag)
+                    .register(registry);
+            FunctionCounter.builder("bankcard.concurrency.rejected", limiter, l -> l.getRejected())
+                    .tag("class", tag)
+                    .description("Запросы, отклонённые с кодом 503")
+                    .register(registry);
+        });
+    }
+
+    @Bean
+    public MeterBinder bulkheadMetrics(Bulkhead adminBulkhead) {
+        return registry -> {
+            String name = adminBulkhead.getName();
+            Gauge.builder("bankcard.bulkhead.active", adminBulkhead, Bulkhead::getActive)
+                    .tag("bulkhead", name)
+                    .register(registry);
+            Gauge.builder("bankcard.bulkhead.max", adminBulkhead, Bulkhead::getMaxConcurrent)
+                    .tag("bulkhead", name)
+                    .register(registry);
+            Gauge.builder("bankcard.bulkhead.queued", adminBulkhead, Bulkhead::getQueued)
+                    .tag("bulkhead", name)
+                    .register(registry);
+            FunctionCounter.builder("bankcard.bulkhead.rejected", adminBulkhead, Bulkhead::getRejected)
+                    .tag("bulkhead", name)
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder cardNumberMetrics(CardNumberGenerator cardNumberGenerator) {
+        return registry -> {
+            FunctionCounter.builder("bankcard.card_number.rejected_candidates", cardNumberGenerator,
+                            CardNumberGenerator::rejectedCandidates)
+                    .description("Кандидаты в номера карт, отброшенные фильтром Блума")
+                    .register(registry);
+            Gauge.builder("bankcard.card_number.filter_load", cardNumberGenerator, CardNumberGenerator::filterLoad)
+                    .description("Заполнение фильтра Блума номеров карт относительно расчётного числа ключей")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder advisoryLockMetrics(AdvisoryLockService advisoryLockService) {
+        return registry -> FunctionTimer.builder("bankcard.transfer.lock_wait", advisoryLockService,
+                        AdvisoryLockService::acquisitionCount, AdvisoryLockService::totalWaitNanos, TimeUnit.NANOSECONDS)
+                .description("Ожидание advisory-блокировок карт при переводе")
+                .register(registry);
+    }
+
+    @Bean
+    public MeterBinder cardExpiryMetrics(CardExpirySweeper cardExpirySweeper) {
+        return registry -> FunctionCounter.builder("bankcard.card.expired", cardExpirySweeper,
+                        CardExpirySweeper::expiredCount)
+                .description("Карты, переведённые в INACTIVE по истечении срока")
+                .register(registry);
+    }
+
+    @Bean
+    public MeterBinder cardArchiveMetrics(CardArchiveJob cardArchiveJob) {
+        return registry -> FunctionCounter.builder("bankcard.card.archived", cardArchiveJob, CardArchiveJob::archivedCount)
+                .description("Карты, перенесённые в архив")
+                .register(registry);
+    }
+
+    @Bean
+    public MeterBinder userDeletionMetrics(UserDeletionJob userDeletionJob) {
+        return registry -> FunctionCounter.builder("bankcard.user_deletion.cards_deleted", userDeletionJob,
+                        UserDeletionJob::deletedCount)
+                .description("Карты, удалённые вместе с пользователями")
+                .register(registry);
+    }
+
+    @Bean
+    public MeterBinder adminStatsMetrics(AdminStatsService adminStatsService) {
+        return registry -> Gauge.builder("bankcard.stats.drift", adminStatsService, AdminStatsService::lastDrift)
+                .description("Расхождение счётчиков статистики с таблицами на последней сверке")
+                .register(registry);
+    }
+
+    @Bean
+    public MeterBinder balanceReconciliationMetrics(BalanceReconciliationJob balanceReconciliationJob) {
+        return registry -> {
+            FunctionCounter.builder("bankcard.reconciliation.cards_checked", balanceReconciliationJob,
+                            BalanceReconciliationJob::checkedCount)
+                    .description("Карты, проверенные сверкой балансов")
+                    .register(registry);
+            Gauge.builder("bankcard.reconciliation.mismatches", balanceReconciliationJob,
+                            BalanceReconciliationJob::lastMismatches)
+                    .description("Расхождения балансов в последней завершённой сверке")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder cardStatementMetrics(CardStatementJob cardStatementJob) {
+        return registry -> FunctionCounter.builder("bankcard.statement.files", cardStatementJob, CardStatementJob::writtenCount)
+                .description("Записанные файлы месячных выписок")
+                .register(registry);
+    }
+
+    @Bean
+    public MeterBinder cardAccrualMetrics(CardAccrualJob cardAccrualJob) {
+        return registry -> FunctionCounter.builder("bankcard.accrual.cards", cardAccrualJob, CardAccrualJob::accruedCount)
+                .description("Карты, по которым начислены проценты или списана комиссия")
+                .register(registry);
+    }
+
+    @Bean
+    public MeterBinder scheduledTransferMetrics(ScheduledTransferScheduler scheduledTransferScheduler) {
+        return registry -> {
+            FunctionCounter.builder("bankcard.scheduled_transfer.executed", scheduledTransferScheduler,
+                            ScheduledTransferScheduler::executedCount)
+                    .description("Выполненные плановые переводы")
+                    .register(registry);
+            FunctionCounter.builder("bankcard.scheduled_transfer.failed", scheduledTransferScheduler,
+                            ScheduledTransferScheduler::failedCount)
+                    .description("Сроки плановых переводов, пропущенные из-за ошибки перевода")
+                    .register(registry);
+            Gauge.builder("bankcard.scheduled_transfer.queued", scheduledTransferScheduler,
+                            ScheduledTransferScheduler::queuedCount)
+                    .description("Плановые переводы в очереди ближайших сроков")
+                    .register(registry);
+            Gauge.builder("bankcard.scheduled_transfer.leader", scheduledTransferScheduler,
+                            scheduler -> scheduler.isLeader() ? 1 : 0)
+                    .description("1, если этот узел держит аренду планировщика переводов")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder singleFlightMetrics(CardService cardService) {
+        return registry -> {
+            bindSingleFlight(registry, "balance", cardService.balanceFlight());
+            bindSingleFlight(registry, "user_cards", cardService.userCardsFlight());
+        };
+    }
+
+    private static void bindSingleFlight(MeterRegistry registry, String name, SingleFlight<?, ?> flight) {
+        FunctionCounter.builder("bankcard.singleflight.executed", flight, SingleFlight::executedCount)
+                .tag("flight", name)
+                .description("Запросы, реально выполненные в базе")
+                .register(registry);
+        FunctionCounter.builder("bankcard.singleflight.shared", flight, SingleFlight::sharedCount)
+                .tag("flight", name)
+                .description("Запросы, получившие результат одновременного такого же запроса")
+                .register(registry);
+        FunctionCounter.builder("bankcard.singleflight.timeouts", flight, SingleFlight::timedOutCount)
+                .tag("flight", name)
+                .register(registry);
+    }
+
+    @Bean
+    public MeterBinder secondLevelCacheMetrics(EntityManagerFactory entityManagerFactory) {
+        return registry -> {
+            Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+            Set<String> regions = new TreeSet<>(Arrays.asList(statistics.getSecondLevelCacheRegionNames()));
+            // регион кэша запросов создаётся при первом запросе, поэтому добавляется явно
+            regions.add(UserRepository.EMAIL_QUERY_REGION);
+            for (String region : regions) {
+                Gauge.builder("bankcard.cache.hit_ratio", statistics, s -> hitRatio(s, region))
+                        .tag("region", region)
+                        .description("Доля попаданий в регион кэша второго уровня")
+                        .register(registry);
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder cacheInvalidationMetrics(CacheEvictor cacheEvictor, CacheInvalidationListener listener) {
+        return registry -> {
+            FunctionCounter.builder("bankcard.cache.evictions", cacheEvictor, CacheEvictor::evictionCount)
+                    .description("Записи, вытесненные из кэша второго уровня по инвалидации")
+                    .register(registry);
+            FunctionCounter.builder("bankcard.cache.full_flushes", cacheEvictor, CacheEvictor::fullFlushCount)
+                    .description("Полные очистки кэша после переподключения слушателя")
+                    .register(registry);
+            FunctionCounter.builder("bankcard.cache.invalidations_received", listener,
+                            CacheInvalidationListener::receivedCount)
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder outboxMetrics(OutboxRelay outboxRelay) {
+        return registry -> {
+            FunctionCounter.builder("bankcard.outbox.delivered", outboxRelay, OutboxRelay::deliveredCount)
+                    .description("События outbox, доставленные получателю")
+                    .register(registry);
+            FunctionCounter.builder("bankcard.outbox.batches", outboxRelay, OutboxRelay::batchCount)
+                    .register(registry);
+            FunctionCounter.builder("bankcard.outbox.failures", outboxRelay, OutboxRelay::failureCount)
+                    .register(registry);
+            Gauge.builder("bankcard.outbox.lag", outboxRelay, relay -> relay.lagMillis() / 1000.0)
+                    .baseUnit("seconds")
+                    .description("Возраст самого старого события последней отправленной порции")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder cardUpdateStreamMetrics(CardUpdateBroadcaster broadcaster) {
+        return registry -> {
+            Gauge.builder("bankcard.sse.connections", broadcaster, CardUpdateBroadcaster::connectionCount)
+                    .description("Открытые SSE-соединения потока изменений карт")
+                    .register(registry);
+            FunctionCounter.builder("bankcard.sse.sent", broadcaster, CardUpdateBroadcaster::sentCount)
+                    .register(registry);
+            FunctionCounter.builder("bankcard.sse.dropped", broadcaster, CardUpdateBroadcaster::droppedCount)
+                    .description("Изменения, вытесненные из переполненных буферов соединений")
+                    .register(registry);
+        };
+    }
+
+    private static double hitRatio(Statistics statistics, String region) {
+        CacheRegionStatistics regionStatistics = statistics.getCacheRegionStatistics(region);
+        if (regionStatistics == null) {
+            return Double.NaN;
+        }
+        long requests = regionStatistics.getHitCount() + regionStatistics.getMissCount();
+        return requests == 0 ? Double.NaN : (double) regionStatistics.getHitCount() / requests;
+    }
+}
@@ -0,0 +1,34 @@
+package com.shiraku.bankcard.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shiraku.bankcard.outbox.FileOutboxSink;
+import com.shiraku.bankcard.outbox.InMemoryOutboxSink;
+import com.shiraku.bankcard.outbox.OutboxSink;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+/** Класс OutboxConfig выбирает получателя событий outbox по {@code bankcard.outbox.sink}
+ * <p>
+ * {@code memory} (по умолчанию) и {@code file} предназначены для локального запуска; для интеграции
+ * с брокером задаётся другое значение и объявляется собственный бин {@link OutboxSink}.
+ * */
+@Configuration
+public class OutboxConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "bankcard.outbox.sink", havingValue = "memory", matchIfMissing = true)
+    public OutboxSink inMemoryOutboxSink(@Value("${bankcard.outbox.memory.capacity:10000}") int capacity) {
+        return new InMemoryOutboxSink(capacity);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "bankcard.outbox.sink", havingValue = "file")
+    public OutboxSink fileOutboxSink(@Value("${bankcard.outbox.file.path:outbox-events.ndjson}") Path path,
+                                     ObjectMapper objectMapper) {
+        return new FileOutboxSink(path, objectMapper);
+    }
+}
@@ -0,0 +1,10 @@
+package com.shiraku.bankcard.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/** Класс SchedulingConfig включает периодические задачи ({@code @Scheduled}), например обслуживание секций истории */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
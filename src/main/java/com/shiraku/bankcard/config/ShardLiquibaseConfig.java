@@ -0,0 +1,39 @@
+package com.shiraku.bankcard.config;
+
+import com.shiraku.bankcard.datasource.ShardDataSources;
+import liquibase.integration.spring.SpringLiquibase;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ResourceLoader;
+
+/** Класс ShardLiquibaseConfig применяет миграции Liquibase к дополнительным шардам
+ * <p>
+ * Основная база (shard-0) мигрируется автоконфигурацией Spring Boot, схема всех шардов одинакова.
+ * */
+@Slf4j
+@Configuration
+public class ShardLiquibaseConfig {
+
+    @Bean
+    public InitializingBean shardLiquibaseMigrations(ShardDataSources shardDataSources,
+                                                     ResourceLoader resourceLoader,
+                                                     @Value("${spring.liquibase.enabled:true}") boolean enabled,
+                                                     @Value("${spring.liquibase.change-log:classpath:db/changelog/db.changelog-master.yaml}") String changeLog) {
+        return () -> {
+            if (!enabled) {
+                return;
+            }
+            for (var shard : shardDataSources.getAdditionalShards().entrySet()) {
+                log.info("Applying Liquibase migrations to {}", shard.getKey());
+                SpringLiquibase liquibase = new SpringLiquibase();
+                liquibase.setDataSource(shard.getValue());
+                liquibase.setChangeLog(changeLog);
+                liquibase.setResourceLoader(resourceLoader);
+                liquibase.afterPropertiesSet();
+            }
+        };
+    }
+}
@@ -1,8 +1,12 @@
 package com.shiraku.bankcard.controller;
 
+import com.shiraku.bankcard.model.JobStatus;
+import com.shiraku.bankcard.model.dto.AdminStatsDto;
 import com.shiraku.bankcard.model.dto.RaisingRequest;
+import com.shiraku.bankcard.model.dto.UserDeletionStatus;
 import com.shiraku.bankcard.model.dto.UserResponse;
 import com.shiraku.bankcard.model.entity.User;
+import com.shiraku.bankcard.service.AdminStatsService;
 import com.shiraku.bankcard.service.UserService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -12,6 +16,7 @@ import jakarta.validation.Valid;
 import org.apache.coyote.BadRequestException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
@@ -23,7 +28,7 @@ import java.util.stream.Collectors;
  * <p>
  * Включает следующие методы:
  * <p>
- * raising(), getAllUsers(), deleteUser()
+ * raising(), getAllUsers(), deleteUser(), getDeletionStatus(), getStats()
  * */
 @Validated
 @RestController
@@ -31,9 +36,11 @@ import java.util.stream.Collectors;
 @Tag(name = "Панель Администрирования", description = "Класс контроллера панели администрирования")
 public class AdminController {
     private final UserService userService;
+    private final AdminStatsService adminStatsService;
 
-    public AdminController(UserService userService) {
+    public AdminController(UserService userService, AdminStatsService adminStatsService) {
         this.userService = userService;
+        this.adminStatsService = adminStatsService;
     }
 
     /** Метод {@code raising()} предназначен для повышения пользователя до администратора
@@ -74,6 +81,7 @@ public class AdminController {
             @ApiResponse(responseCode = "200", description = "Список успешно выведен"),
     })
     @GetMapping("/users")
+    @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<?> getAllUsers() {
         List<User> users = userService.findAll();
 
@@ -89,17 +97,58 @@ public class AdminController {
         return ResponseEntity.ok(response);
     }
 
-    /** Метод {@code raising()} предназначен для удаления пользователя из системы
+    /** Метод {@code deleteUser()} предназначен для удаления пользователя из системы вместе с его картами
+     * <p>
+     * Если карт много, они удаляются в фоне: ответ 202 с состоянием задачи, ход - через {@code getDeletionStatus()}.
      * <p>
      * Принимает на входе:
      * @param userId объект типа UUID - представляет собой id пользователя
+     * @see UserDeletionStatus
      * */
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "200", description = "Пользователь успешно удалён"),
+            @ApiResponse(responseCode = "200", description = "Пользователь и его карты успешно удалены"),
+            @ApiResponse(responseCode = "202", description = "Пользователь удалён, карты удаляются в фоне"),
             @ApiResponse(responseCode = "400", description = "Некорректные входные данные"),
     })
     @DeleteMapping("/delete/{userId}")
+    @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<?> deleteUser(@PathVariable UUID userId) {
-        return ResponseEntity.ok("Success delete user: " + userService.deleteUser(userId));
+        UserDeletionStatus status = userService.deleteUser(userId);
+        return ResponseEntity.status(status.getStatus() == JobStatus.DONE ? HttpStatus.OK : HttpStatus.ACCEPTED)
+                .body(status);
+    }
+
+    /** Метод {@code getDeletionStatus()} предназначен для вывода хода удаления пользователя и его карт
+     * <p>
+     * Принимает на входе:
+     * @param userId объект типа UUID - представляет собой id пользователя
+     * @see UserDeletionStatus
+     * */
+    @Operation(summary = "Ход удаления пользователя",
+            description = "Состояние удаления карт удалённого пользователя")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Состояние успешно выведено"),
+            @ApiResponse(responseCode = "400", description = "Некорректные входные данные"),
+    })
+    @GetMapping("/delete/{userId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getDeletionStatus(@PathVariable UUID userId) {
+        return ResponseEntity.ok(userService.getDeletionStatus(userId));
+    }
+
+    /** Метод {@code getStats()} предназначен для вывода сводной статистики по картам и пользователям
+     * <p>
+     * Значения поддерживаются инкрементально и не требуют запросов к базе.
+     * @see AdminStatsDto
+     * */
+    @Operation(summary = "Статистика",
+            description = "Количество карт по статусам, суммарный баланс, пользователи по ролям")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Статистика успешно выведена"),
+    })
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<AdminStatsDto> getStats() {
+        return ResponseEntity.ok(adminStatsService.getStats());
     }
 }
@@ -1,30 +1,50 @@
 package com.shiraku.bankcard.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.shiraku.bankcard.model.Status;
+import com.shiraku.bankcard.model.dto.BulkCardCreateRequest;
+import com.shiraku.bankcard.model.dto.BulkCardStatusRequest;
 import com.shiraku.bankcard.model.dto.CardCreateRequest;
+import com.shiraku.bankcard.model.dto.CardLookupRequest;
+import com.shiraku.bankcard.model.dto.IssuedCardDto;
+import com.shiraku.bankcard.model.dto.ScheduledTransferDto;
+import com.shiraku.bankcard.model.dto.ScheduledTransferRequest;
 import com.shiraku.bankcard.model.dto.TransferRequest;
+import com.shiraku.bankcard.service.CardBulkStatusService;
+import com.shiraku.bankcard.service.CardIssuanceService;
 import com.shiraku.bankcard.service.CardService;
+import com.shiraku.bankcard.service.ScheduledTransferService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.UUID;
 
 /** Класс CardController представляет собой контроллер для управления банковскими картами
  * <p>
  * Включает следующие методы:
  * <p>
- * getUserCards(), getBalance(),  transferBetweenCards(), blockUserCard(), createCard(), blockCard(), activateCard(),
- * deleteCard(), getAllCards()
+ * getUserCards(), getBalance(), streamCardUpdates(), getCardHistory(), transferBetweenCards(), scheduleTransfer(), getScheduledTransfers(),
+ * cancelScheduledTransfer(), blockUserCard(), createCard(), createCardsBulk(), blockCard(),
+ * activateCard(), deleteCard(), blockCardsBulk(), activateCardsBulk(), deleteCardsBulk(), getAllCards(), findCardByNumber(),
+ * getArchivedCards(), getArchivedCard(), findArchivedCardByNumber()
  * */
 @Slf4j
 @Validated
@@ -33,9 +53,19 @@ import java.util.UUID;
 @Tag(name = "Управление картами", description = "Класс контроллера для управления картами пользователя")
 public class CardController {
     private final CardService cardService;
+    private final CardIssuanceService cardIssuanceService;
+    private final CardBulkStatusService cardBulkStatusService;
+    private final ScheduledTransferService scheduledTransferService;
+    private final ObjectMapper objectMapper;
 
-    public CardController(CardService cardService) {
+    public CardController(CardService cardService, CardIssuanceService cardIssuanceService,
+                          CardBulkStatusService cardBulkStatusService, ScheduledTransferService scheduledTransferService,
+                          ObjectMapper objectMapper) {
         this.cardService = cardService;
+        this.cardIssuanceService = cardIssuanceService;
+        this.cardBulkStatusService = cardBulkStatusService;
+        this.scheduledTransferService = scheduledTransferService;
+        this.objectMapper = objectMapper;
     }
 
     // --- Общее: User и Admin ---
@@ -90,6 +120,49 @@ public class CardController {
         return ResponseEntity.ok(response);
     }
 
+    /** Метод {@code streamCardUpdates()} предназначен для получения изменений баланса и статуса карт пользователя
+     * без периодического опроса (Server-Sent Events, событие {@code card} с {@code CardUpdateDto})
+     * <p>
+     * Принимает на входе:
+     * @param email объект типа String - представляет собой email пользователя
+     * */
+    @Operation(summary = "Поток изменений карт",
+            description = "Поток изменений баланса и статуса карт текущего пользователя (text/event-stream)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Поток открыт"),
+    })
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasRole('USER')")
+    public SseEmitter streamCardUpdates(@AuthenticationPrincipal String email) {
+        return cardService.streamCardUpdates(email);
+    }
+
+    /** Метод {@code getCardHistory()} предназначен для вывода истории операций по карте пользователя
+     * <p>
+     * Принимает на входе:
+     * @param cardId объект типа UUID - представляет собой id карты
+     * <p>
+     * @param email объект типа String - представляет собой email пользователя
+     * <p>
+     * @param cursor объект типа String - представляет собой курсор страницы ({@code nextCursor} предыдущей страницы)
+     * <p>
+     * @param size объект типа Integer - представляет собой количество записей на одной странице
+     * */
+    @Operation(summary = "История операций",
+            description = "Вывод истории операций по карте, от новых к старым, с постраничным курсором")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "История успешно выведена"),
+            @ApiResponse(responseCode = "400", description = "Некорректные входные данные"),
+    })
+    @GetMapping("/{cardId}/history")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<?> getCardHistory(@PathVariable UUID cardId,
+                                            @AuthenticationPrincipal String email,
+                                            @RequestParam(required = false) String cursor,
+                                            @RequestParam(defaultValue = "20") @Min(1) @Max(100) int size) {
+        return ResponseEntity.ok(cardService.getCardHistory(cardId, email, cursor, size));
+    }
+
     /** Метод {@code transferBetweenCards()} предназначен для перевода денежных средств с карты на карту пользователя
      * <p>
      * Принимает на входе:
@@ -112,6 +185,66 @@ public class CardController {
         return ResponseEntity.ok("Перевод выполнен");
     }
 
+    /** Метод {@code scheduleTransfer()} предназначен для создания планового или регулярного перевода между картами пользователя
+     * <p>
+     * Принимает на входе:
+     * @param request объект класса {@code ScheduledTransferRequest}
+     * <p>
+     * @param email объект типа String - представляет собой email пользователя
+     * @see ScheduledTransferRequest
+     * @see ScheduledTransferDto
+     * */
+    @Operation(summary = "Плановый перевод",
+            description = "Создание однократного или регулярного перевода с карты на карту пользователя")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Плановый перевод создан"),
+            @ApiResponse(responseCode = "400", description = "Некорректные входные данные"),
+    })
+    @PostMapping("/transfer/scheduled")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<?> scheduleTransfer(@RequestBody @Valid ScheduledTransferRequest request,
+                                              @AuthenticationPrincipal String email) {
+        return ResponseEntity.ok(scheduledTransferService.create(request, email));
+    }
+
+    /** Метод {@code getScheduledTransfers()} предназначен для вывода плановых переводов пользователя
+     * <p>
+     * Принимает на входе:
+     * @param email объект типа String - представляет собой email пользователя
+     * @see ScheduledTransferDto
+     * */
+    @Operation(summary = "Вывод плановых переводов",
+            description = "Вывод плановых переводов текущего пользователя и хода их выполнения")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Плановые переводы успешно выведены"),
+    })
+    @GetMapping("/transfer/scheduled")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<?> getScheduledTransfers(@AuthenticationPrincipal String email) {
+        return ResponseEntity.ok(scheduledTransferService.getScheduledTransfers(email));
+    }
+
+    /** Метод {@code cancelScheduledTransfer()} предназначен для отмены планового перевода
+     * <p>
+     * Принимает на входе:
+     * @param id объект типа UUID - представляет собой id планового перевода
+     * <p>
+     * @param email объект типа String - представляет собой email пользователя
+     * */
+    @Operation(summary = "Отмена планового перевода",
+            description = "Отмена планового перевода пользователя по id")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Плановый перевод отменён"),
+            @ApiResponse(responseCode = "400", description = "Некорректные входные данные"),
+    })
+    @DeleteMapping("/transfer/scheduled/{id}")
+    @PreAuthorize("hasRole('USER')")
+    public ResponseEntity<?> cancelScheduledTransfer(@PathVariable UUID id,
+                                                     @AuthenticationPrincipal String email) {
+        scheduledTransferService.cancel(id, email);
+        return ResponseEntity.ok("Плановый перевод отменён");
+    }
+
     /** Метод {@code blockUserCard()} предназначен для запроса на блокировку карты
      * <p>
      * Принимает на входе:
@@ -153,6 +286,43 @@ public class CardController {
         return ResponseEntity.ok(cardService.createCard(request));
     }
 
+    /** Метод {@code createCardsBulk()} предназначен для массового выпуска карт администратором
+     * <p>
+     * Ответ отдаётся потоком в формате NDJSON: по строке {@code IssuedCardDto} на каждую выпущенную карту,
+     * порциями по мере фиксации вставок.
+     * <p>
+     * Принимает на входе:
+     * @param request объект класса {@code BulkCardCreateRequest}
+     * @see BulkCardCreateRequest
+     * @see IssuedCardDto
+     * */
+    @Operation(summary = "Массовый выпуск карт",
+            description = "Выпуск карт нескольким пользователям, ответ в формате NDJSON")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Карты выпускаются, ответ передаётся потоком"),
+            @ApiResponse(responseCode = "400", description = "Некорректные входные данные"),
+            @ApiResponse(responseCode = "404", description = "Пользователь не найден"),
+    })
+    @PostMapping("/bulk")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> createCardsBulk(@RequestBody @Valid BulkCardCreateRequest request) {
+        List<CardIssuanceService.Allocation> allocations = cardIssuanceService.resolveOwners(request);
+        StreamingResponseBody body = out -> cardIssuanceService.issue(allocations, cards -> {
+            try {
+                for (IssuedCardDto card : cards) {
+                    out.write(objectMapper.writeValueAsBytes(card));
+                    out.write('\n');
+                }
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
     /** Метод {@code blockCard()} предназначен для блокировки карты администратором
      * <p>
      * Принимает на входе:
@@ -210,6 +380,64 @@ public class CardController {
         return ResponseEntity.ok("Карта удалена");
     }
 
+    /** Метод {@code blockCardsBulk()} предназначен для массовой блокировки карт администратором
+     * <p>
+     * Уже заблокированные карты не считаются ошибкой и возвращаются в счётчике {@code unchanged}.
+     * <p>
+     * Принимает на входе:
+     * @param request объект класса {@code BulkCardStatusRequest}
+     * @see BulkCardStatusRequest
+     * */
+    @Operation(summary = "Массовая блокировка карт",
+            description = "Блокировка карт по списку id и/или по владельцу, статусу, BIN администратором")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Блокировка выполнена, возвращены счётчики"),
+            @ApiResponse(responseCode = "400", description = "Некорректные входные данные"),
+    })
+    @PostMapping("/bulk/block")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> blockCardsBulk(@RequestBody @Valid BulkCardStatusRequest request) {
+        return ResponseEntity.ok(cardBulkStatusService.block(request));
+    }
+
+    /** Метод {@code activateCardsBulk()} предназначен для массовой активации карт администратором
+     * <p>
+     * Уже активные карты возвращаются в счётчике {@code unchanged}, карты с истёкшим сроком - в {@code rejected}.
+     * <p>
+     * Принимает на входе:
+     * @param request объект класса {@code BulkCardStatusRequest}
+     * @see BulkCardStatusRequest
+     * */
+    @Operation(summary = "Массовая активация карт",
+            description = "Активация карт по списку id и/или по владельцу, статусу, BIN администратором")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Активация выполнена, возвращены счётчики"),
+            @ApiResponse(responseCode = "400", description = "Некорректные входные данные"),
+    })
+    @PostMapping("/bulk/activate")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> activateCardsBulk(@RequestBody @Valid BulkCardStatusRequest request) {
+        return ResponseEntity.ok(cardBulkStatusService.activate(request));
+    }
+
+    /** Метод {@code deleteCardsBulk()} предназначен для массового удаления карт администратором
+     * <p>
+     * Принимает на входе:
+     * @param request объект класса {@code BulkCardStatusRequest}
+     * @see BulkCardStatusRequest
+     * */
+    @Operation(summary = "Массовое удаление карт",
+            description = "Удаление карт по списку id и/или по владельцу, статусу, BIN администратором")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Удаление выполнено, возвращены счётчики"),
+            @ApiResponse(responseCode = "400", description = "Некорректные входные данные"),
+    })
+    @PostMapping("/bulk/delete")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> deleteCardsBulk(@RequestBody @Valid BulkCardStatusRequest request) {
+        return ResponseEntity.ok(cardBulkStatusService.delete(request));
+    }
+
     /** Метод {@code getAllCards()} предназначен для вывода карт пользователей
      * <p>
      * Принимает на входе:
@@ -230,6 +458,81 @@ public class CardController {
         return ResponseEntity.ok(cardService.getAllCards(page, size).getContent());
     }
 
+    /** Метод {@code findCardByNumber()} предназначен для поиска карты по полному номеру администратором
+     * <p>
+     * Номер передаётся в теле запроса, чтобы не попадать в журналы доступа и историю браузера.
+     * <p>
+     * Принимает на входе:
+     * @param request объект класса {@code CardLookupRequest}
+     * @see CardLookupRequest
+     * */
+    @Operation(summary = "Поиск карты по номеру",
+            description = "Поиск банковской карты по полному номеру через слепой индекс")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Карта найдена"),
+            @ApiResponse(responseCode = "400", description = "Некорректные входные данные"),
+    })
+    @PostMapping("/lookup")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> findCardByNumber(@RequestBody @Valid CardLookupRequest request) {
+        return ResponseEntity.ok(cardService.findCardByNumber(request.getNumber()));
+    }
+
+    /** Метод {@code getArchivedCards()} предназначен для вывода архивных карт (давно заблокированных и истёкших)
+     * <p>
+     * Принимает на входе:
+     * @param owner объект типа String - представляет собой email владельца (необязательно)
+     * <p>
+     * @param page объект типа Integer - представляет собой номер страницы (счёт с 0)
+     * <p>
+     * @param size объект типа Integer - представляет собой количество записей на одной странице
+     * */
+    @Operation(summary = "Вывод архивных карт",
+            description = "Вывод карт, перенесённых в архив, новые в архиве сначала")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Карты успешно выведены"),
+            @ApiResponse(responseCode = "400", description = "Некорректные входные данные"),
+    })
+    @GetMapping("/archive")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getArchivedCards(@RequestParam(required = false) String owner,
+                                              @RequestParam(defaultValue = "0") @Min(0) int page,
+                                              @RequestParam(defaultValue = "20") @Min(1) @Max(100) int size) {
+        return ResponseEntity.ok(cardService.getArchivedCards(owner, page, size).getContent());
+    }
 
-}
+    /** Метод {@code getArchivedCard()} предназначен для вывода архивной карты по id
+     * <p>
+     * Принимает на входе:
+     * @param cardId объект типа UUID - представляет собой id карты
+     * */
+    @Operation(summary = "Вывод архивной карты",
+            description = "Вывод карты, перенесённой в архив, по id")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Карта найдена"),
+            @ApiResponse(responseCode = "400", description = "Некорректные входные данные"),
+    })
+    @GetMapping("/archive/{cardId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getArchivedCard(@PathVariable UUID cardId) {
+        return ResponseEntity.ok(cardService.getArchivedCard(cardId));
+    }
 
+    /** Метод {@code findArchivedCardByNumber()} предназначен для поиска архивной карты по полному номеру
+     * <p>
+     * Принимает на входе:
+     * @param request объект класса {@code CardLookupRequest}
+     * @see CardLookupRequest
+     * */
+    @Operation(summary = "Поиск архивной карты по номеру",
+            description = "Поиск карты в архиве по полному номеру через слепой индекс")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Карта найдена"),
+            @ApiResponse(responseCode = "400", description = "Некорректные входные данные"),
+    })
+    @PostMapping("/archive/lookup")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> findArchivedCardByNumber(@RequestBody @Valid CardLookupRequest request) {
+        return ResponseEntity.ok(cardService.findArchivedCardByNumber(request.getNumber()));
+    }
+}
@@ -0,0 +1,53 @@
+package com.shiraku.bankcard.datasource;
+
+/** Класс DataSourceContextHolder хранит маршрут источника данных и шард для текущего потока
+ * <p>
+ * Маршрут должен быть выставлен до первого SQL-запроса в транзакции: соединение берётся лениво
+ * ({@code LazyConnectionDataSourceProxy}) и после этого закрепляется за транзакцией.
+ * */
+public final class DataSourceContextHolder {
+    private static final ThreadLocal<DataSourceRoute> ROUTE = new ThreadLocal<>();
+    private static final ThreadLocal<String> SHARD = new ThreadLocal<>();
+
+    private DataSourceContextHolder() {
+    }
+
+    /** Метод {@code use()} выставляет маршрут и возвращает область, закрытие которой восстанавливает предыдущий маршрут
+     * <p>
+     * Пример: {@code try (var scope = DataSourceContextHolder.use(DataSourceRoute.ADMIN)) { ... }}
+     * */
+    public static Scope use(DataSourceRoute route) {
+        DataSourceRoute previous = ROUTE.get();
+        ROUTE.set(route);
+        return () -> restore(ROUTE, previous);
+    }
+
+    /** Метод {@code useShard()} выставляет шард для текущего потока; закрытие области восстанавливает предыдущий */
+    public static Scope useShard(String shardId) {
+        String previous = SHARD.get();
+        SHARD.set(shardId);
+        return () -> restore(SHARD, previous);
+    }
+
+    public static DataSourceRoute currentRoute() {
+        return ROUTE.get();
+    }
+
+    public static String currentShard() {
+        return SHARD.get();
+    }
+
+    private static <T> void restore(ThreadLocal<T> holder, T previous) {
+        if (previous == null) {
+            holder.remove();
+        } else {
+            holder.set(previous);
+        }
+    }
+
+    /** Область действия маршрута; {@code close()} не бросает проверяемых исключений */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
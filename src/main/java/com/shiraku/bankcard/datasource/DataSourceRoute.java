@@ -0,0 +1,14 @@
+package com.shiraku.bankcard.datasource;
+
+/** Перечисление DataSourceRoute определяет пул соединений, в который уходит текущая работа
+ * Значения:
+ * <p>
+ * PRIMARY - основной пул; явный выбор PRIMARY запрещает уход на реплику (read-your-writes)
+ * <p>
+ * ADMIN - отдельный уменьшенный пул для административных эндпоинтов
+ * <p>
+ * REPLICA - одна из реплик только для чтения (выбирается по кругу)
+ * */
+public enum DataSourceRoute {
+    PRIMARY, ADMIN, REPLICA
+}
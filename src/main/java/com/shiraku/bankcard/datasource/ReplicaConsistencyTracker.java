@@ -0,0 +1,71 @@
+package com.shiraku.bankcard.datasource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Класс ReplicaConsistencyTracker обеспечивает режим read-your-writes для пользователя
+ * <p>
+ * После записи (например, перевода) чтения этого пользователя в течение окна {@code read-your-writes-window}
+ * идут в основную базу, а не в реплику, которая может отставать. Нулевое окно отключает режим.
+ * */
+@Component
+public class ReplicaConsistencyTracker {
+    private static final int SWEEP_THRESHOLD = 10_000;
+
+    private final long windowNanos;
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+
+    public ReplicaConsistencyTracker(@Value("${bankcard.datasource.read-your-writes-window:5s}") Duration window) {
+        this.windowNanos = window.toNanos();
+    }
+
+    /** Метод {@code markWrite()} отмечает запись пользователя; внутри транзакции отметка ставится после коммита */
+    public void markWrite(String user) {
+        if (windowNanos <= 0 || user == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    record(user);
+                }
+            });
+        } else {
+            record(user);
+        }
+    }
+
+    /** Метод {@code pinIfRecentWrite()} закрепляет чтение за основной базой, если пользователь недавно писал
+     * <p>
+     * @return область маршрута, которую нужно закрыть, или {@code null}, если закрепление не требуется
+     * */
+    public DataSourceContextHolder.Scope pinIfRecentWrite(String user) {
+        if (windowNanos <= 0 || user == null) {
+            return null;
+        }
+        Long writtenAt = lastWrites.get(user);
+        if (writtenAt == null) {
+            return null;
+        }
+        if (System.nanoTime() - writtenAt > windowNanos) {
+            lastWrites.remove(user, writtenAt);
+            return null;
+        }
+        return DataSourceContextHolder.use(DataSourceRoute.PRIMARY);
+    }
+
+    private void record(String user) {
+        long now = System.nanoTime();
+        lastWrites.put(user, now);
+        if (lastWrites.size() > SWEEP_THRESHOLD) {
+            lastWrites.values().removeIf(writtenAt -> now - writtenAt > windowNanos);
+        }
+    }
+}
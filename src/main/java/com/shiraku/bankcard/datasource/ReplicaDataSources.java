@@ -0,0 +1,35 @@
+package com.shiraku.bankcard.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+/** Класс ReplicaDataSources хранит пулы соединений к репликам только для чтения и закрывает их при остановке */
+public class ReplicaDataSources implements AutoCloseable {
+    private final List<HikariDataSource> dataSources;
+
+    public ReplicaDataSources(List<HikariDataSource> dataSources) {
+        this.dataSources = List.copyOf(dataSources);
+    }
+
+    public List<HikariDataSource> getDataSources() {
+        return dataSources;
+    }
+
+    @Override
+    public void close() {
+        dataSources.forEach(HikariDataSource::close);
+    }
+
+    /** Настройки одной реплики ({@code bankcard.datasource.replicas[i].*}); пустые логин и пароль берутся от основной базы */
+    @Getter
+    @Setter
+    public static class ReplicaProperties {
+        private String url;
+        private String username;
+        private String password;
+        private int maximumPoolSize = 10;
+    }
+}
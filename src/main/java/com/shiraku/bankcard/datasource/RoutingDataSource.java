@@ -0,0 +1,52 @@
+package com.shiraku.bankcard.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Класс RoutingDataSource выбирает целевой пул соединений для текущего потока
+ * <p>
+ * Правила выбора:
+ * <p>
+ * - транзакция {@code @Transactional(readOnly = true)} уходит на реплику (по кругу), если реплики настроены
+ * и маршрут не закреплён за {@link DataSourceRoute#PRIMARY};
+ * <p>
+ * - иначе используется маршрут из {@link DataSourceContextHolder}, а при его отсутствии - основной пул.
+ * <p>
+ * Должен использоваться через {@code LazyConnectionDataSourceProxy}, чтобы признак readOnly был известен
+ * к моменту получения соединения.
+ * */
+public class RoutingDataSource extends AbstractRoutingDataSource {
+    private final List<String> replicaKeys = new ArrayList<>();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public RoutingDataSource(DataSource primary, DataSource admin, List<? extends DataSource> replicas) {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(DataSourceRoute.PRIMARY, primary);
+        targets.put(DataSourceRoute.ADMIN, admin);
+        for (int i = 0; i < replicas.size(); i++) {
+            String key = DataSourceRoute.REPLICA.name() + "-" + i;
+            replicaKeys.add(key);
+            targets.put(key, replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        DataSourceRoute route = DataSourceContextHolder.currentRoute();
+        if (route != DataSourceRoute.PRIMARY && !replicaKeys.isEmpty()
+                && (route == DataSourceRoute.REPLICA || TransactionSynchronizationManager.isCurrentTransactionReadOnly())) {
+            return replicaKeys.get(Math.floorMod(nextReplica.getAndIncrement(), replicaKeys.size()));
+        }
+        return route == DataSourceRoute.REPLICA ? DataSourceRoute.PRIMARY : route;
+    }
+}
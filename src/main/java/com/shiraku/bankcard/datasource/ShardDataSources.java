@@ -0,0 +1,43 @@
+package com.shiraku.bankcard.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Класс ShardDataSources хранит пулы соединений дополнительных шардов и закрывает их при остановке
+ * <p>
+ * Шард по умолчанию ({@link #DEFAULT_SHARD}) - это основная база из {@code spring.datasource.*};
+ * дополнительные шарды задаются в {@code bankcard.sharding.shards[N].*}.
+ * */
+public class ShardDataSources implements AutoCloseable {
+    public static final String DEFAULT_SHARD = "shard-0";
+
+    private final Map<String, HikariDataSource> additionalShards;
+
+    public ShardDataSources(Map<String, HikariDataSource> additionalShards) {
+        this.additionalShards = Collections.unmodifiableMap(new LinkedHashMap<>(additionalShards));
+    }
+
+    public Map<String, HikariDataSource> getAdditionalShards() {
+        return additionalShards;
+    }
+
+    @Override
+    public void close() {
+        additionalShards.values().forEach(HikariDataSource::close);
+    }
+
+    /** Настройки одного дополнительного шарда; пустые логин и пароль берутся от основной базы */
+    @Getter
+    @Setter
+    public static class ShardProperties {
+        private String url;
+        private String username;
+        private String password;
+        private int maximumPoolSize = 10;
+    }
+}
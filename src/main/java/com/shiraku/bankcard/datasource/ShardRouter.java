@@ -0,0 +1,157 @@
+package com.shiraku.bankcard.datasource;
+
+import com.shiraku.bankcard.utils.ConsistentHashRing;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/** Класс ShardRouter направляет работу с картами на шард владельца
+ * <p>
+ * Владелец (UUID пользователя) отображается на шард консистентным хешированием, поэтому при добавлении
+ * шарда переезжает только часть владельцев. Пользователи (справочник email → id) остаются на шарде по умолчанию.
+ * <p>
+ * При единственном шарде работа присоединяется к текущей транзакции или открывает её ({@code REQUIRED}).
+ * При нескольких шардах каждый вызов выполняется в собственной транзакции ({@code REQUIRES_NEW}) на нужном шарде,
+ * так как одна транзакция не может охватывать несколько баз.
+ * <p>
+ * Поэтому вызывающий код не должен открывать внешнюю транзакцию вокруг поиска пользователя и работы на шарде:
+ * иначе при шардировании запрос держит два соединения - шарда по умолчанию и шарда владельца.
+ * */
+@Slf4j
+@Component
+public class ShardRouter implements DisposableBean {
+    private final ConsistentHashRing ring;
+    private final TransactionTemplate writeTemplate;
+    private final TransactionTemplate readTemplate;
+    private final ExecutorService scatterExecutor;
+
+    @Autowired
+    public ShardRouter(ShardDataSources shardDataSources,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${bankcard.sharding.virtual-nodes:128}") int virtualNodes) {
+        this(shardIds(shardDataSources), transactionManager, virtualNodes);
+    }
+
+    private ShardRouter(List<String> shards, PlatformTransactionManager transactionManager, int virtualNodes) {
+        this.ring = new ConsistentHashRing(shards, virtualNodes);
+        if (transactionManager != null) {
+            int propagation = shards.size() > 1
+                    ? TransactionDefinition.PROPAGATION_REQUIRES_NEW
+                    : TransactionDefinition.PROPAGATION_REQUIRED;
+            this.writeTemplate = new TransactionTemplate(transactionManager);
+            this.writeTemplate.setPropagationBehavior(propagation);
+            this.readTemplate = new TransactionTemplate(transactionManager);
+            this.readTemplate.setPropagationBehavior(propagation);
+            this.readTemplate.setReadOnly(true);
+        } else {
+            this.writeTemplate = null;
+            this.readTemplate = null;
+        }
+        if (shards.size() > 1) {
+            this.scatterExecutor = Executors.newFixedThreadPool(shards.size());
+            log.info("Sharding enabled: {}", shards);
+        } else {
+            this.scatterExecutor = null;
+        }
+    }
+
+    /** Метод {@code singleShard()} создаёт маршрутизатор без шардирования и без своих транзакций (для тестов) */
+    public static ShardRouter singleShard() {
+        return new ShardRouter(List.of(ShardDataSources.DEFAULT_SHARD), null, 1);
+    }
+
+    public boolean isSharded() {
+        return ring.nodes().size() > 1;
+    }
+
+    public List<String> shardIds() {
+        return ring.nodes();
+    }
+
+    public String shardFor(UUID ownerId) {
+        return ring.nodeFor(ownerId);
+    }
+
+    /** Метод {@code callForOwner()} выполняет работу на шарде владельца */
+    public <T> T callForOwner(UUID ownerId, boolean readOnly, Supplier<T> work) {
+        return callOnShard(shardFor(ownerId), readOnly, work);
+    }
+
+    public void runForOwner(UUID ownerId, Runnable work) {
+        callForOwner(ownerId, false, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /** Метод {@code callOnShard()} выполняет работу на указанном шарде */
+    public <T> T callOnShard(String shardId, boolean readOnly, Supplier<T> work) {
+        if (!isSharded()) {
+            return writeTemplate == null ? work.get() : (readOnly ? readTemplate : writeTemplate).execute(status -> work.get());
+        }
+        try (DataSourceContextHolder.Scope ignored = DataSourceContextHolder.useShard(shardId)) {
+            return (readOnly ? readTemplate : writeTemplate).execute(status -> work.get());
+        }
+    }
+
+    public void runOnShard(String shardId, Runnable work) {
+        callOnShard(shardId, false, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /** Метод {@code scatter()} выполняет работу на всех шардах параллельно и возвращает результаты в порядке шардов (допускаются {@code null}) */
+    public <T> List<T> scatter(boolean readOnly, Function<String, T> work) {
+        if (!isSharded()) {
+            return Collections.singletonList(work.apply(ShardDataSources.DEFAULT_SHARD));
+        }
+        DataSourceRoute route = DataSourceContextHolder.currentRoute();
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        for (String shard : shardIds()) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try (DataSourceContextHolder.Scope ignored = route != null ? DataSourceContextHolder.use(route) : null) {
+                    return callOnShard(shard, readOnly, () -> work.apply(shard));
+                }
+            }, scatterExecutor));
+        }
+        try {
+            return futures.stream().map(CompletableFuture::join).toList();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (scatterExecutor != null) {
+            scatterExecutor.shutdown();
+        }
+    }
+
+    private static List<String> shardIds(ShardDataSources shardDataSources) {
+        List<String> shards = new ArrayList<>();
+        shards.add(ShardDataSources.DEFAULT_SHARD);
+        shards.addAll(shardDataSources.getAdditionalShards().keySet());
+        return shards;
+    }
+}
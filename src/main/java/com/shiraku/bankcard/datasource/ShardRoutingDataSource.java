@@ -0,0 +1,28 @@
+package com.shiraku.bankcard.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Класс ShardRoutingDataSource выбирает шард по значению {@link DataSourceContextHolder#currentShard()}
+ * <p>
+ * Без выставленного шарда используется шард по умолчанию, в котором живёт справочник пользователей.
+ * Внутри шарда по умолчанию работает {@link RoutingDataSource} (основной пул, пул администратора, реплики).
+ * */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    public ShardRoutingDataSource(String defaultShardId, Map<String, ? extends DataSource> shards) {
+        Map<Object, Object> targets = new HashMap<>(shards);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(defaultShardId));
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return DataSourceContextHolder.currentShard();
+    }
+}
@@ -0,0 +1,123 @@
+package com.shiraku.bankcard.filter;
+
+import com.shiraku.bankcard.datasource.DataSourceContextHolder;
+import com.shiraku.bankcard.datasource.DataSourceRoute;
+import com.shiraku.bankcard.utils.Bulkhead;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.constraints.NotNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Класс AdminBulkheadInterceptor изолирует административные эндпоинты от пользовательских
+ * <p>
+ * Для обработчиков с {@code @PreAuthorize("hasRole('ADMIN')")}:
+ * <p>
+ * - запрос проходит через отдельную переборку ({@link Bulkhead}) с ограниченным числом потоков;
+ * <p>
+ * - все SQL-запросы направляются в отдельный пул соединений {@link DataSourceRoute#ADMIN}.
+ * <p>
+ * Если переборка заполнена, запрос получает {@code 503} и не занимает поток надолго.
+ * <p>
+ * Для асинхронных ответов (потоковая выдача) место в переборке удерживается до завершения ответа,
+ * а маршрут снимается с потока контейнера при уходе в асинхронную обработку и выставляется на потоке,
+ * который выполняет асинхронную задачу ({@link CallableProcessingInterceptor}).
+ * */
+@Slf4j
+public class AdminBulkheadInterceptor implements AsyncHandlerInterceptor {
+    private static final String SCOPE_ATTRIBUTE = AdminBulkheadInterceptor.class.getName() + ".scope";
+    private static final String PERMIT_ATTRIBUTE = AdminBulkheadInterceptor.class.getName() + ".permit";
+    private static final String ASYNC_SCOPE_ATTRIBUTE = AdminBulkheadInterceptor.class.getName() + ".asyncScope";
+    private static final CallableProcessingInterceptor ASYNC_ROUTE = new AsyncRoute();
+
+    private final Bulkhead bulkhead;
+    private final Map<Method, Boolean> adminHandlers = new ConcurrentHashMap<>();
+
+    public AdminBulkheadInterceptor(Bulkhead bulkhead) {
+        this.bulkhead = bulkhead;
+    }
+
+    @Override
+    public boolean preHandle(@NotNull HttpServletRequest request,
+                             @NotNull HttpServletResponse response,
+                             @NotNull Object handler) throws Exception {
+        if (!(handler instanceof HandlerMethod handlerMethod) || !isAdminHandler(handlerMethod)) {
+            return true;
+        }
+        if (request.getAttribute(PERMIT_ATTRIBUTE) == null && !bulkhead.tryEnter()) {
+            log.warn("Bulkhead {} is full, rejecting {}", bulkhead.getName(), request.getRequestURI());
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.setContentType("text/plain;charset=UTF-8");
+            response.getWriter().write("Административные операции временно перегружены");
+            return false;
+        }
+        request.setAttribute(PERMIT_ATTRIBUTE, Boolean.TRUE);
+        request.setAttribute(SCOPE_ATTRIBUTE, DataSourceContextHolder.use(DataSourceRoute.ADMIN));
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(ASYNC_SCOPE_ATTRIBUTE, ASYNC_ROUTE);
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(@NotNull HttpServletRequest request,
+                                               @NotNull HttpServletResponse response,
+                                               @NotNull Object handler) {
+        closeScope(request);
+    }
+
+    @Override
+    public void afterCompletion(@NotNull HttpServletRequest request,
+                                @NotNull HttpServletResponse response,
+                                @NotNull Object handler, Exception ex) {
+        closeScope(request);
+        if (request.getAttribute(PERMIT_ATTRIBUTE) != null) {
+            request.removeAttribute(PERMIT_ATTRIBUTE);
+            bulkhead.exit();
+        }
+    }
+
+    private void closeScope(HttpServletRequest request) {
+        if (request.getAttribute(SCOPE_ATTRIBUTE) instanceof DataSourceContextHolder.Scope routeScope) {
+            request.removeAttribute(SCOPE_ATTRIBUTE);
+            routeScope.close();
+        }
+    }
+
+    private boolean isAdminHandler(HandlerMethod handlerMethod) {
+        return adminHandlers.computeIfAbsent(handlerMethod.getMethod(), method -> {
+            PreAuthorize preAuthorize = handlerMethod.getMethodAnnotation(PreAuthorize.class);
+            return preAuthorize != null && preAuthorize.value().replace(" ", "").equals("hasRole('ADMIN')");
+        });
+    }
+
+    /** Маршрут на потоке асинхронной задачи: выставляется перед её выполнением и снимается сразу после */
+    private static final class AsyncRoute implements CallableProcessingInterceptor {
+        @Override
+        public <T> void preProcess(@NotNull NativeWebRequest request, @NotNull Callable<T> task) {
+            request.setAttribute(ASYNC_SCOPE_ATTRIBUTE, DataSourceContextHolder.use(DataSourceRoute.ADMIN),
+                    RequestAttributes.SCOPE_REQUEST);
+        }
+
+        @Override
+        public <T> void postProcess(@NotNull NativeWebRequest request, @NotNull Callable<T> task, Object result) {
+            if (request.getAttribute(ASYNC_SCOPE_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST)
+                    instanceof DataSourceContextHolder.Scope routeScope) {
+                request.removeAttribute(ASYNC_SCOPE_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+                routeScope.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.shiraku.bankcard.filter;
+
+import com.shiraku.bankcard.utils.AdaptiveConcurrencyLimiter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.constraints.NotNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/** Класс ConcurrencyLimitFilter выполняет сброс нагрузки (load shedding) по классам эндпоинтов
+ * <p>
+ * Для каждого класса (чтение карт, переводы, администрирование) держится свой адаптивный лимит одновременных
+ * запросов. Когда база замедляется, растёт время ответа, лимит уменьшается и лишние запросы сразу получают
+ * {@code 503}, а не копятся в пуле потоков Tomcat. Благодаря раздельным лимитам медленные переводы
+ * не забирают ресурсы у {@code /api/card/balance}.
+ * <p>
+ * Фильтр стоит перед цепочкой безопасности, чтобы отказ обходился дешевле разбора JWT.
+ * */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 100)
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+    private static final String UUID_SEGMENT = "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}";
+    private static final Pattern CARD_URI = Pattern.compile("/api/card/" + UUID_SEGMENT);
+    private static final Pattern CARD_HISTORY_URI = Pattern.compile("/api/card/" + UUID_SEGMENT + "/history");
+
+    /** Классы эндпоинтов с раздельными лимитами */
+    public enum EndpointClass {
+        CARD_READ("card-read", 200, 200),
+        TRANSFER("transfer", 50, 500),
+        ADMIN("admin", 10, 2000);
+
+        private final String key;
+        private final int defaultMaxLimit;
+        private final long defaultThresholdMs;
+
+        EndpointClass(String key, int defaultMaxLimit, long defaultThresholdMs) {
+            this.key = key;
+            this.defaultMaxLimit = defaultMaxLimit;
+            this.defaultThresholdMs = defaultThresholdMs;
+        }
+    }
+
+    private final boolean enabled;
+    private final Map<EndpointClass, AdaptiveConcurrencyLimiter> limiters = new EnumMap<>(EndpointClass.class);
+
+    public ConcurrencyLimitFilter(Environment env) {
+        this.enabled = env.getProperty("bankcard.concurrency.enabled", Boolean.class, true);
+        int minLimit = env.getProperty("bankcard.concurrency.min-limit", Integer.class, 2);
+        double backoffRatio = env.getProperty("bankcard.concurrency.backoff-ratio", Double.class, 0.9);
+        for (EndpointClass endpointClass : EndpointClass.values()) {
+            String prefix = "bankcard.concurrency." + endpointClass.key;
+            int maxLimit = env.getProperty(prefix + ".max-limit", Integer.class, endpointClass.defaultMaxLimit);
+            long thresholdMs = env.getProperty(prefix + ".latency-threshold-ms", Long.class, endpointClass.defaultThresholdMs);
+            limiters.put(endpointClass, new AdaptiveConcurrencyLimiter(Math.max(minLimit, maxLimit / 2),
+                    minLimit, maxLimit, backoffRatio, TimeUnit.MILLISECONDS.toNanos(thresholdMs)));
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NotNull HttpServletRequest request) {
+        return !enabled || classify(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(@NotNull HttpServletRequest request,
+                                    @NotNull HttpServletResponse response,
+                                    @NotNull FilterChain filterChain)
+            throws ServletException, IOException {
+        EndpointClass endpointClass = classify(request);
+        AdaptiveConcurrencyLimiter limiter = limiters.get(endpointClass);
+
+        int inFlight = limiter.tryAcquire();
+        if (inFlight < 0) {
+            log.warn("Request shed: class={}, limit={}", endpointClass, limiter.getLimit());
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.setContentType("text/plain;charset=UTF-8");
+            response.getWriter().write("Сервис перегружен, повторите позже");
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            filterChain.doFilter(request, response);
+            failed = response.getStatus() >= 500;
+        } finally {
+            limiter.release(inFlight, System.nanoTime() - start, failed);
+        }
+    }
+
+    /** Метод {@code limiters()} возвращает лимитеры по классам эндпоинтов (для метрик) */
+    public Map<EndpointClass, AdaptiveConcurrencyLimiter> limiters() {
+        return Collections.unmodifiableMap(limiters);
+    }
+
+    static EndpointClass classify(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        String method = request.getMethod();
+
+        if (uri.equals("/api/card/transfer")
+                || (!"GET".equals(method) && uri.startsWith("/api/card/transfer/scheduled"))) {
+            return EndpointClass.TRANSFER;
+        }
+        if ("GET".equals(method) && (uri.startsWith("/api/card/balance/") || uri.equals("/api/card/my_cards")
+                || uri.equals("/api/card/transfer/scheduled") || CARD_HISTORY_URI.matcher(uri).matches())) {
+            return EndpointClass.CARD_READ;
+        }
+        if ((uri.startsWith("/api/admin/") && !uri.equals("/api/admin/raising"))
+                || uri.equals("/api/card/all")
+                || uri.equals("/api/card/bulk")
+                || uri.startsWith("/api/card/bulk/")
+                || uri.equals("/api/card/lookup")
+                || uri.equals("/api/card/archive")
+                || uri.startsWith("/api/card/archive/")
+                || uri.startsWith("/api/card/block-admin/")
+                || uri.startsWith("/api/card/activate/")
+                || ("POST".equals(method) && uri.equals("/api/card"))
+                || ("DELETE".equals(method) && CARD_URI.matcher(uri).matches())) {
+            return EndpointClass.ADMIN;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,156 @@
+package com.shiraku.bankcard.filter;
+
+import com.shiraku.bankcard.utils.TokenBucket;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.constraints.NotNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Класс RateLimitFilter ограничивает частоту запросов к чувствительным эндпоинтам
+ * <p>
+ * Группы эндпоинтов:
+ * <p>
+ * auth - {@code /api/user/login}, {@code /api/user/register}, ведро на IP-адрес клиента
+ * <p>
+ * transfer - {@code /api/card/transfer}, ведро на пользователя из JWT (или на IP, если пользователь не определён)
+ * <p>
+ * При исчерпании ведра возвращается {@code 429 Too Many Requests} с заголовком {@code Retry-After}.
+ * Неиспользуемые полные вёдра удаляются ленивой очисткой, поэтому карта ключей не растёт бесконечно.
+ * */
+@Slf4j
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+    private final boolean enabled;
+    private final List<Group> groups;
+    private final long idleNanos;
+    private final AtomicLong lastSweepNanos = new AtomicLong(System.nanoTime());
+    private final LongAdder rejected = new LongAdder();
+
+    public RateLimitFilter(@Value("${bankcard.rate-limit.enabled:true}") boolean enabled,
+                           @Value("${bankcard.rate-limit.auth.capacity:10}") long authCapacity,
+                           @Value("${bankcard.rate-limit.auth.refill-tokens:10}") long authRefillTokens,
+                           @Value("${bankcard.rate-limit.auth.refill-period:1m}") Duration authRefillPeriod,
+                           @Value("${bankcard.rate-limit.transfer.capacity:30}") long transferCapacity,
+                           @Value("${bankcard.rate-limit.transfer.refill-tokens:30}") long transferRefillTokens,
+                           @Value("${bankcard.rate-limit.transfer.refill-period:1m}") Duration transferRefillPeriod,
+                           @Value("${bankcard.rate-limit.idle-eviction:10m}") Duration idleEviction) {
+        this.enabled = enabled;
+        this.groups = List.of(
+                new Group("auth", List.of("/api/user/login", "/api/user/register"), false,
+                        authCapacity, authRefillTokens, authRefillPeriod.toNanos()),
+                new Group("transfer", List.of("/api/card/transfer"), true,
+                        transferCapacity, transferRefillTokens, transferRefillPeriod.toNanos())
+        );
+        this.idleNanos = idleEviction.toNanos();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NotNull HttpServletRequest request) {
+        return !enabled || findGroup(request.getRequestURI()) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(@NotNull HttpServletRequest request,
+                                    @NotNull HttpServletResponse response,
+                                    @NotNull FilterChain filterChain)
+            throws ServletException, IOException {
+        Group group = findGroup(request.getRequestURI());
+        long now = System.nanoTime();
+        sweepIfDue(now);
+
+        String key = group.perUser ? userKey(request) : "ip:" + request.getRemoteAddr();
+        long waitNanos = group.buckets
+                .computeIfAbsent(key, k -> new TokenBucket(group.capacity, group.refillTokens, group.refillPeriodNanos, now))
+                .tryConsume(now);
+
+        if (waitNanos > 0) {
+            rejected.increment();
+            long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+            log.warn("Rate limit exceeded: group={}, key={}", group.name, key);
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+            response.setContentType("text/plain;charset=UTF-8");
+            response.getWriter().write("Слишком много запросов, повторите позже");
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    /** Метод {@code trackedKeys()} возвращает количество отслеживаемых ключей во всех группах */
+    public int trackedKeys() {
+        return groups.stream().mapToInt(group -> group.buckets.size()).sum();
+    }
+
+    /** Метод {@code rejectedCount()} возвращает количество отклонённых запросов с момента запуска */
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    private Group findGroup(String uri) {
+        for (Group group : groups) {
+            if (group.paths.contains(uri)) {
+                return group;
+            }
+        }
+        return null;
+    }
+
+    private String userKey(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)) {
+            return "user:" + authentication.getName();
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    private void sweepIfDue(long now) {
+        long last = lastSweepNanos.get();
+        if (now - last < idleNanos || !lastSweepNanos.compareAndSet(last, now)) {
+            return;
+        }
+        for (Group group : groups) {
+            group.buckets.values().removeIf(bucket -> bucket.isIdle(now, idleNanos));
+        }
+    }
+
+    private static final class Group {
+        private final String name;
+        private final List<String> paths;
+        private final boolean perUser;
+        private final long capacity;
+        private final long refillTokens;
+        private final long refillPeriodNanos;
+        private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+        private Group(String name, List<String> paths, boolean perUser,
+                      long capacity, long refillTokens, long refillPeriodNanos) {
+            this.name = name;
+            this.paths = paths;
+            this.perUser = perUser;
+            this.capacity = capacity;
+            this.refillTokens = refillTokens;
+            this.refillPeriodNanos = refillPeriodNanos;
+        }
+    }
+}
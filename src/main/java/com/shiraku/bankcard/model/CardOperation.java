@@ -0,0 +1,27 @@
+package com.shiraku.bankcard.model;
+
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+/** Перечисление CardOperation имеет значения операций, изменяющих банковскую карту
+ * Значения:
+ * <p>
+ * CREATED - Выпуск карты
+ * <p>
+ * DEBIT - Списание (исходящий перевод)
+ * <p>
+ * CREDIT - Зачисление (входящий перевод)
+ * <p>
+ * BLOCKED - Блокировка карты
+ * <p>
+ * ACTIVATED - Активация карты
+ * <p>
+ * DELETED - Удаление карты
+ * <p>
+ * EXPIRED - Истечение срока действия (карта переведена в INACTIVE)
+ * <p>
+ * ACCRUAL - Периодическое начисление процентов или списание комиссии (сумма со знаком)
+ * */
+@Tag(name = "Операция с картой", description = "Операция, изменившая карту")
+public enum CardOperation {
+    CREATED, DEBIT, CREDIT, BLOCKED, ACTIVATED, DELETED, EXPIRED, ACCRUAL
+}
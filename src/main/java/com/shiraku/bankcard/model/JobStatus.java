@@ -0,0 +1,19 @@
+package com.shiraku.bankcard.model;
+
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+/** Перечисление JobStatus имеет значения состояния фоновой задачи
+ * Значения:
+ * <p>
+ * PENDING - Задача создана и ждёт выполнения
+ * <p>
+ * RUNNING - Задача выполняется
+ * <p>
+ * DONE - Задача завершена
+ * <p>
+ * FAILED - Задача прервана ошибкой и будет продолжена при следующем запуске
+ * */
+@Tag(name = "Состояние задачи", description = "Состояние фоновой задачи")
+public enum JobStatus {
+    PENDING, RUNNING, DONE, FAILED
+}
@@ -0,0 +1,19 @@
+package com.shiraku.bankcard.model;
+
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+/** Перечисление TransferRecurrence имеет значения периодичности планового перевода
+ * Значения:
+ * <p>
+ * ONCE - Однократно в указанное время
+ * <p>
+ * DAILY - Ежедневно
+ * <p>
+ * WEEKLY - Еженедельно
+ * <p>
+ * MONTHLY - Ежемесячно в тот же день (в коротком месяце - в его последний день)
+ * */
+@Tag(name = "Периодичность перевода", description = "Периодичность планового перевода")
+public enum TransferRecurrence {
+    ONCE, DAILY, WEEKLY, MONTHLY
+}
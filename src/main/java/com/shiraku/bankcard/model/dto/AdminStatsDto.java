@@ -0,0 +1,36 @@
+package com.shiraku.bankcard.model.dto;
+
+import com.shiraku.bankcard.model.Role;
+import com.shiraku.bankcard.model.Status;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Map;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Tag(name = "Статистика", description = "Сводная статистика по картам и пользователям для администратора")
+public class AdminStatsDto {
+    @Schema(description = "cardsByStatus - количество карт по статусам (включая архив)")
+    private Map<Status, Long> cardsByStatus;
+    @Schema(description = "totalCards - всего карт")
+    private long totalCards;
+    @Schema(description = "totalBalance - суммарный баланс карт")
+    private BigDecimal totalBalance;
+    @Schema(description = "usersByRole - количество пользователей по ролям")
+    private Map<Role, Long> usersByRole;
+    @Schema(description = "totalUsers - всего пользователей")
+    private long totalUsers;
+    @Schema(description = "averageCardsPerUser - карт на пользователя в среднем")
+    private BigDecimal averageCardsPerUser;
+    @Schema(description = "reconciledAt - время последней сверки с таблицами")
+    private Instant reconciledAt;
+}
@@ -0,0 +1,37 @@
+package com.shiraku.bankcard.model.dto;
+
+import com.shiraku.bankcard.model.Status;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Tag(name = "Архивная карта", description = "Ответ администратору информации об архивной карте")
+public class ArchivedCardDto {
+    @Schema(description = "Уникальный идентификатор карты")
+    private UUID id;
+    @Schema(description = "Номер карты (маска)")
+    private String number;
+    @Schema(description = "Срок действия карты")
+    private String expiryDate;
+    @Schema(description = "Статус карты на момент архивации")
+    private Status status;
+    @Schema(description = "Владелец карты")
+    private UUID ownerId;
+    @Schema(description = "Баланс карты на момент архивации")
+    private BigDecimal balance;
+    @Schema(description = "Время последней смены статуса")
+    private Instant statusChangedAt;
+    @Schema(description = "Время переноса в архив")
+    private Instant archivedAt;
+}
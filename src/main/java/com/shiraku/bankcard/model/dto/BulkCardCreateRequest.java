@@ -0,0 +1,25 @@
+package com.shiraku.bankcard.model.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Tag(name = "Запрос массового выпуска карт", description = "Запрос на выпуск карт нескольким пользователям")
+public class BulkCardCreateRequest {
+    @Schema(description = "items - список владельцев и количества карт")
+    @NotEmpty
+    @Size(max = 1000)
+    private List<@Valid BulkCardItem> items;
+}
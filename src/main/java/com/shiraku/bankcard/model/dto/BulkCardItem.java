@@ -0,0 +1,28 @@
+package com.shiraku.bankcard.model.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Tag(name = "Позиция массового выпуска", description = "Владелец и количество карт для массового выпуска")
+public class BulkCardItem {
+    @Schema(description = "owner - адрес электронной почты пользователя")
+    @NotBlank
+    @Email
+    private String owner;
+    @Schema(description = "count - количество выпускаемых карт")
+    @Min(1)
+    @Max(50000)
+    private int count;
+}
@@ -0,0 +1,29 @@
+package com.shiraku.bankcard.model.dto;
+
+import com.shiraku.bankcard.model.CardOperation;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Tag(name = "Результат массовой операции", description = "Количество карт, затронутых массовой операцией администратора")
+public class BulkCardOperationResult {
+    @Schema(description = "operation - выполненная операция")
+    private CardOperation operation;
+    @Schema(description = "matched - карты, подходящие под отбор")
+    private long matched;
+    @Schema(description = "changed - карты, изменённые операцией")
+    private long changed;
+    @Schema(description = "unchanged - карты, уже находившиеся в нужном статусе")
+    private long unchanged;
+    @Schema(description = "rejected - карты, которые нельзя изменить (например, активировать с истёкшим сроком)")
+    private long rejected;
+    @Schema(description = "notFound - переданные id, которых нет или которые не подходят под остальные условия")
+    private long notFound;
+}
@@ -0,0 +1,46 @@
+package com.shiraku.bankcard.model.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.shiraku.bankcard.model.Status;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+import java.util.UUID;
+
+/** Класс BulkCardStatusRequest - отбор карт для массовой операции администратора
+ * <p>
+ * Заданные условия объединяются через И; хотя бы одно должно быть задано, чтобы случайно не затронуть все карты.
+ * */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Tag(name = "Запрос массовой операции", description = "Отбор карт для массовой блокировки, активации или удаления")
+public class BulkCardStatusRequest {
+    @Schema(description = "cardIds - id карт")
+    @Size(max = 10000)
+    private List<UUID> cardIds;
+    @Schema(description = "owner - адрес электронной почты владельца карт")
+    @Email
+    private String owner;
+    @Schema(description = "status - текущий статус карт")
+    private Status status;
+    @Schema(description = "bin - первые 6 цифр номера карт")
+    @Pattern(regexp = "\\d{6}", message = "BIN должен состоять из 6 цифр")
+    private String bin;
+
+    @JsonIgnore
+    @AssertTrue(message = "Укажите id карт или хотя бы одно условие отбора")
+    public boolean isSelective() {
+        return (cardIds != null && !cardIds.isEmpty()) || owner != null || status != null || bin != null;
+    }
+}
@@ -0,0 +1,22 @@
+package com.shiraku.bankcard.model.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Tag(name = "Страница истории", description = "Страница истории операций по карте")
+public class CardHistoryPage {
+    @Schema(description = "Операции, от новых к старым")
+    private List<CardTransactionDto> items;
+    @Schema(description = "Курсор следующей страницы; null, если страница последняя")
+    private String nextCursor;
+}
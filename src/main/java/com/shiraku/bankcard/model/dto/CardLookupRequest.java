@@ -0,0 +1,22 @@
+package com.shiraku.bankcard.model.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Tag(name = "Поиск карты по номеру", description = "Запрос администратора на поиск карты по полному номеру")
+public class CardLookupRequest {
+    @Schema(description = "number - полный номер карты (16 цифр)")
+    @NotBlank
+    @Pattern(regexp = "\\d{16}")
+    private String number;
+}
@@ -0,0 +1,34 @@
+package com.shiraku.bankcard.model.dto;
+
+import com.shiraku.bankcard.model.CardOperation;
+import com.shiraku.bankcard.model.Status;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Tag(name = "Операция по карте", description = "Запись истории операций по карте")
+public class CardTransactionDto {
+    @Schema(description = "Уникальный идентификатор записи")
+    private UUID id;
+    @Schema(description = "Операция")
+    private CardOperation operation;
+    @Schema(description = "Сумма операции")
+    private BigDecimal amount;
+    @Schema(description = "Баланс после операции")
+    private BigDecimal balance;
+    @Schema(description = "Статус карты после операции")
+    private Status status;
+    @Schema(description = "Время операции")
+    private Instant createdAt;
+}
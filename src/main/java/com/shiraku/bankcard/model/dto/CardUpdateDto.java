@@ -0,0 +1,29 @@
+package com.shiraku.bankcard.model.dto;
+
+import com.shiraku.bankcard.model.CardOperation;
+import com.shiraku.bankcard.model.Status;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Tag(name = "Изменение карты", description = "Событие потока изменений баланса и статуса карт пользователя")
+public class CardUpdateDto {
+    @Schema(description = "Уникальный идентификатор карты")
+    private UUID cardId;
+    @Schema(description = "Последняя операция")
+    private CardOperation operation;
+    @Schema(description = "Статус карты")
+    private Status status;
+    @Schema(description = "Баланс карты")
+    private BigDecimal balance;
+}
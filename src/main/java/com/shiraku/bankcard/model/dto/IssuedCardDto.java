@@ -0,0 +1,28 @@
+package com.shiraku.bankcard.model.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.UUID;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Tag(name = "Выпущенная карта", description = "Строка ответа массового выпуска карт")
+public class IssuedCardDto {
+    @Schema(description = "Уникальный идентификатор карты")
+    private UUID id;
+    @Schema(description = "Адрес электронной почты владельца")
+    private String owner;
+    @Schema(description = "Владелец карты")
+    private UUID ownerId;
+    @Schema(description = "Маскированный номер карты")
+    private String number;
+    @Schema(description = "Срок действия карты")
+    private String expiryDate;
+}
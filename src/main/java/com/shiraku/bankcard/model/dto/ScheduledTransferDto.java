@@ -0,0 +1,42 @@
+package com.shiraku.bankcard.model.dto;
+
+import com.shiraku.bankcard.model.JobStatus;
+import com.shiraku.bankcard.model.TransferRecurrence;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Tag(name = "Плановый перевод", description = "Плановый перевод пользователя и ход его выполнения")
+public class ScheduledTransferDto {
+    @Schema(description = "id - id планового перевода")
+    private UUID id;
+    @Schema(description = "fromCardId - id карты списания")
+    private UUID fromCardId;
+    @Schema(description = "toCardId - id карты зачисления")
+    private UUID toCardId;
+    @Schema(description = "amount - сумма перевода")
+    private BigDecimal amount;
+    @Schema(description = "recurrence - периодичность")
+    private TransferRecurrence recurrence;
+    @Schema(description = "nextRunAt - время следующего выполнения")
+    private Instant nextRunAt;
+    @Schema(description = "status - PENDING - ждёт выполнения, DONE - выполнен, FAILED - не выполнен")
+    private JobStatus status;
+    @Schema(description = "executed - количество выполненных переводов")
+    private int executed;
+    @Schema(description = "failed - количество пропущенных из-за ошибки выполнений")
+    private int failed;
+    @Schema(description = "lastError - текст последней ошибки")
+    private String lastError;
+}
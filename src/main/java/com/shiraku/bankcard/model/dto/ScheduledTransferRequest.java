@@ -0,0 +1,40 @@
+package com.shiraku.bankcard.model.dto;
+
+import com.shiraku.bankcard.model.TransferRecurrence;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Digits;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Tag(name = "Запрос планового перевода", description = "Запрос пользователя на плановый или регулярный перевод с карты на карту")
+public class ScheduledTransferRequest {
+    @Schema(description = "fromCardId - id карты списания")
+    @NotNull
+    private UUID fromCardId;
+    @Schema(description = "toCardId - id карты зачисления")
+    @NotNull
+    private UUID toCardId;
+    @Schema(description = "amount - сумма перевода")
+    @NotNull
+    @DecimalMin(value = "0.01", message = "Сумма перевода должна быть положительной")
+    @Digits(integer = 17, fraction = 2, message = "Сумма перевода - не больше двух знаков после запятой")
+    private BigDecimal amount;
+    @Schema(description = "recurrence - периодичность")
+    @NotNull
+    private TransferRecurrence recurrence;
+    @Schema(description = "startAt - время первого выполнения (UTC); если не задано или в прошлом - как можно скорее")
+    private Instant startAt;
+}
@@ -0,0 +1,30 @@
+package com.shiraku.bankcard.model.dto;
+
+import com.shiraku.bankcard.model.JobStatus;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Tag(name = "Состояние удаления пользователя", description = "Ход удаления пользователя и его карт")
+public class UserDeletionStatus {
+    @Schema(description = "userId - id удалённого пользователя")
+    private UUID userId;
+    @Schema(description = "email - адрес электронной почты удалённого пользователя")
+    private String email;
+    @Schema(description = "status - состояние удаления карт")
+    private JobStatus status;
+    @Schema(description = "cardsDeleted - количество удалённых карт")
+    private long cardsDeleted;
+    @Schema(description = "updatedAt - время последнего продвижения")
+    private Instant updatedAt;
+}
@@ -0,0 +1,82 @@
+package com.shiraku.bankcard.model.entity;
+
+import com.shiraku.bankcard.model.Status;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.Immutable;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Класс ArchivedCard
+ * - представляет собой карту, перенесённую в архив ({@code card_archive}) после долгой блокировки или истечения срока
+ * <p>
+ * Строки переносит {@code CardArchiveJob}; через JPA архив только читается.
+ * <p>
+ * Включает поля карты ({@link Card}) и дополнительно:
+ * <p>
+ * {@code archivedAt} - Время переноса в архив
+ */
+@Entity
+@Immutable
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "card_archive")
+@Tag(name = "Архивная карта", description = "Класс сущности карты, перенесённой в архив")
+public class ArchivedCard {
+    @Id
+    @Column(name = "id", updatable = false, nullable = false, columnDefinition = "UUID")
+    @Schema(description = "Уникальный идентификатор карты")
+    private UUID id;
+
+    @Column(name = "number", nullable = false)
+    @Schema(description = "Номер карты (зашифрован)")
+    private String number;
+
+    @Column(name = "number_hash", nullable = false, unique = true, length = 64)
+    @Schema(description = "Слепой индекс номера карты")
+    private String numberHash;
+
+    @Column(name = "bin", length = 6)
+    @Schema(description = "BIN - первые 6 цифр номера карты")
+    private String bin;
+
+    @Column(name = "owner_id", nullable = false, columnDefinition = "UUID")
+    @Schema(description = "Владелец карты")
+    private UUID ownerId;
+
+    @Column(name = "expiry_date", nullable = false)
+    @Schema(description = "Срок действия карты")
+    private String expiryDate;
+
+    @Column(name = "expires_on")
+    @Schema(description = "Последний день действия карты")
+    private LocalDate expiresOn;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    @Schema(description = "Статус карты на момент архивации")
+    private Status status;
+
+    @Column(name = "status_changed_at")
+    @Schema(description = "Время последней смены статуса")
+    private Instant statusChangedAt;
+
+    @Column(name = "balance", nullable = false)
+    @Schema(description = "Баланс карты на момент архивации")
+    private BigDecimal balance;
+
+    @Column(name = "archived_at", nullable = false)
+    @Schema(description = "Время переноса в архив")
+    private Instant archivedAt;
+}
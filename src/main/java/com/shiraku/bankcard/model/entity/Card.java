@@ -8,9 +8,13 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
-import org.hibernate.annotations.UuidGenerator;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.UUID;
 
 /**
@@ -23,15 +27,28 @@ import java.util.UUID;
  * <p>
  * {@code number} - Уникальный номер карты
  * <p>
+ * {@code numberHash} - Слепой индекс номера карты (HMAC) для поиска по полному номеру
+ * <p>
+ * {@code bin} - Первые 6 цифр номера (BIN) для отбора карт эмитента без расшифровки номеров
+ * <p>
  * {@code ownerId} - Владелец карты
  * <p>
- * {@code expiryDate} - Срок действия карты
+ * {@code expiryDate} - Срок действия карты в виде {@code MM/yy}, как на карте
+ * <p>
+ * {@code expiresOn} - Последний день действия карты (для поиска истёкших карт)
  * <p>
  * {@code status} - Статус карты
  * <p>
+ * {@code statusChangedAt} - Время последней смены статуса (по нему давно заблокированные и истёкшие карты уходят в архив)
+ * <p>
  * {@code balance} - Баланс карты
+ * <p>
+ * {@code version} - Версия строки; её увеличивают и массовые JDBC-обновления, поэтому изменение карты,
+ * прочитанной до такого обновления, отклоняется, а не затирает его
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Getter
 @Setter
 @AllArgsConstructor
@@ -39,15 +56,23 @@ import java.util.UUID;
 @Tag(name = "Банковская карта", description = "Класс сущности банковской карты")
 public class Card {
     @Id
-    @UuidGenerator(style = UuidGenerator.Style.RANDOM)
+    @TimeOrderedUuid
     @Column(name = "id", updatable = false, nullable = false, columnDefinition = "UUID")
     @Schema(description = "Уникальный идентификатор карты")
     private UUID id;
 
-    @Column(name = "number", updatable = false, nullable = false)
+    @Column(name = "number", updatable = false, nullable = false, unique = true)
     @Schema(description = "Уникальный номер карты")
     private String number;
 
+    @Column(name = "number_hash", updatable = false, unique = true, length = 64)
+    @Schema(description = "Слепой индекс номера карты")
+    private String numberHash;
+
+    @Column(name = "bin", updatable = false, length = 6)
+    @Schema(description = "BIN - первые 6 цифр номера карты")
+    private String bin;
+
     @Column(name = "owner_id", updatable = false, nullable = false, columnDefinition = "UUID")
     @Schema(description = "Владелец карты")
     private UUID ownerId;
@@ -56,15 +81,29 @@ public class Card {
     @Schema(description = "Срок действия карты")
     private String expiryDate;
 
+    @Column(name = "expires_on")
+    @Schema(description = "Последний день действия карты")
+    private LocalDate expiresOn;
+
     @Enumerated(EnumType.STRING)
     @Column(name = "status", nullable = false)
     @Schema(description = "Статус карты")
     private Status status;
 
+    @Column(name = "status_changed_at")
+    @Schema(description = "Время последней смены статуса")
+    private Instant statusChangedAt;
+
     @Column(name = "balance", nullable = false)
     @Schema(description = "Баланс карты")
     private BigDecimal balance;
 
+    @Version
+    @ColumnDefault("0")
+    @Column(name = "version", nullable = false)
+    @Schema(description = "Версия строки")
+    private long version;
+
     public Card(UUID uuid, String s, Status status) {
         this.id = uuid;
         this.number = s;
@@ -0,0 +1,84 @@
+package com.shiraku.bankcard.model.entity;
+
+import com.shiraku.bankcard.model.CardOperation;
+import com.shiraku.bankcard.model.Status;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Класс CardTransaction
+ * - представляет собой запись истории операций по карте
+ * <p>
+ * В PostgreSQL таблица секционирована по месяцам {@code created_at}, первичный ключ - {@code (id, created_at)}.
+ * <p>
+ * Включает следующие поля:
+ * <p>
+ * {@code id} - Уникальный идентификатор записи
+ * <p>
+ * {@code cardId} - Карта
+ * <p>
+ * {@code ownerId} - Владелец карты
+ * <p>
+ * {@code operation} - Операция
+ * <p>
+ * {@code amount} - Сумма операции (для переводов)
+ * <p>
+ * {@code balance} - Баланс карты после операции
+ * <p>
+ * {@code status} - Статус карты после операции
+ * <p>
+ * {@code createdAt} - Время операции
+ */
+@Entity
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "card_transaction")
+@Tag(name = "Операция по карте", description = "Класс сущности записи истории операций по карте")
+public class CardTransaction {
+    @Id
+    @TimeOrderedUuid
+    @Column(name = "id", updatable = false, nullable = false, columnDefinition = "UUID")
+    @Schema(description = "Уникальный идентификатор записи")
+    private UUID id;
+
+    @Column(name = "card_id", updatable = false, nullable = false, columnDefinition = "UUID")
+    @Schema(description = "Карта")
+    private UUID cardId;
+
+    @Column(name = "owner_id", updatable = false, nullable = false, columnDefinition = "UUID")
+    @Schema(description = "Владелец карты")
+    private UUID ownerId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "operation", updatable = false, nullable = false, length = 16)
+    @Schema(description = "Операция")
+    private CardOperation operation;
+
+    @Column(name = "amount", updatable = false)
+    @Schema(description = "Сумма операции")
+    private BigDecimal amount;
+
+    @Column(name = "balance", updatable = false)
+    @Schema(description = "Баланс после операции")
+    private BigDecimal balance;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", updatable = false)
+    @Schema(description = "Статус карты после операции")
+    private Status status;
+
+    @Column(name = "created_at", updatable = false, nullable = false)
+    @Schema(description = "Время операции")
+    private Instant createdAt;
+}
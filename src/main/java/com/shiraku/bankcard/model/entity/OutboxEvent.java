@@ -0,0 +1,61 @@
+package com.shiraku.bankcard.model.entity;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Класс OutboxEvent
+ * - представляет собой событие для внешних систем, ожидающее отправки (transactional outbox)
+ * <p>
+ * Строка удаляется после успешной доставки; id упорядочен по времени и задаёт порядок отправки.
+ * <p>
+ * Включает следующие поля:
+ * <p>
+ * {@code id} - Уникальный идентификатор события
+ * <p>
+ * {@code aggregateId} - Карта, к которой относится событие
+ * <p>
+ * {@code eventType} - Тип события
+ * <p>
+ * {@code payload} - Содержимое события (JSON)
+ * <p>
+ * {@code createdAt} - Время события
+ */
+@Entity
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "outbox_event")
+@Tag(name = "Событие outbox", description = "Класс сущности события, ожидающего отправки во внешние системы")
+public class OutboxEvent {
+    @Id
+    @TimeOrderedUuid
+    @Column(name = "id", updatable = false, nullable = false, columnDefinition = "UUID")
+    @Schema(description = "Уникальный идентификатор события")
+    private UUID id;
+
+    @Column(name = "aggregate_id", updatable = false, nullable = false, columnDefinition = "UUID")
+    @Schema(description = "Карта, к которой относится событие")
+    private UUID aggregateId;
+
+    @Column(name = "event_type", updatable = false, nullable = false, length = 32)
+    @Schema(description = "Тип события")
+    private String eventType;
+
+    @Column(name = "payload", updatable = false, nullable = false, length = 4000)
+    @Schema(description = "Содержимое события (JSON)")
+    private String payload;
+
+    @Column(name = "created_at", updatable = false, nullable = false)
+    @Schema(description = "Время события")
+    private Instant createdAt;
+}
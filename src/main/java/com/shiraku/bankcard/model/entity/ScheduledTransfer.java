@@ -0,0 +1,133 @@
+package com.shiraku.bankcard.model.entity;
+
+import com.shiraku.bankcard.model.JobStatus;
+import com.shiraku.bankcard.model.TransferRecurrence;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Класс ScheduledTransfer
+ * - представляет собой плановый (в том числе регулярный) перевод между картами пользователя
+ * <p>
+ * Хранится на шарде владельца рядом с его картами, поэтому выполнение перевода и продвижение
+ * расписания происходят в одной транзакции.
+ * <p>
+ * Включает следующие поля:
+ * <p>
+ * {@code id} - Уникальный идентификатор планового перевода
+ * <p>
+ * {@code ownerId} - Владелец обеих карт
+ * <p>
+ * {@code fromCardId} - Карта списания
+ * <p>
+ * {@code toCardId} - Карта зачисления
+ * <p>
+ * {@code amount} - Сумма перевода
+ * <p>
+ * {@code recurrence} - Периодичность
+ * <p>
+ * {@code startAt} - Время первого выполнения, от него отсчитываются следующие
+ * <p>
+ * {@code occurrence} - Номер следующего выполнения (0 - первое)
+ * <p>
+ * {@code nextRunAt} - Время следующего выполнения
+ * <p>
+ * {@code status} - Состояние: PENDING - ждёт выполнения, DONE - выполнен, FAILED - однократный перевод не выполнен
+ * <p>
+ * {@code executed} - Количество выполненных переводов
+ * <p>
+ * {@code failed} - Количество пропущенных из-за ошибки выполнений
+ * <p>
+ * {@code lastRunAt} - Время последнего выполнения
+ * <p>
+ * {@code lastError} - Текст последней ошибки
+ * <p>
+ * {@code createdAt} - Время создания
+ * <p>
+ * {@code updatedAt} - Время последнего изменения
+ */
+@Entity
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "scheduled_transfer")
+@Tag(name = "Плановый перевод", description = "Класс сущности планового перевода между картами пользователя")
+public class ScheduledTransfer {
+    @Id
+    @TimeOrderedUuid
+    @Column(name = "id", updatable = false, nullable = false, columnDefinition = "UUID")
+    @Schema(description = "Уникальный идентификатор планового перевода")
+    private UUID id;
+
+    @Column(name = "owner_id", updatable = false, nullable = false, columnDefinition = "UUID")
+    @Schema(description = "Владелец карт")
+    private UUID ownerId;
+
+    @Column(name = "from_card_id", updatable = false, nullable = false, columnDefinition = "UUID")
+    @Schema(description = "Карта списания")
+    private UUID fromCardId;
+
+    @Column(name = "to_card_id", updatable = false, nullable = false, columnDefinition = "UUID")
+    @Schema(description = "Карта зачисления")
+    private UUID toCardId;
+
+    @Column(name = "amount", updatable = false, nullable = false, precision = 19, scale = 2)
+    @Schema(description = "Сумма перевода")
+    private BigDecimal amount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "recurrence", updatable = false, nullable = false, length = 16)
+    @Schema(description = "Периодичность")
+    private TransferRecurrence recurrence;
+
+    @Column(name = "start_at", updatable = false, nullable = false)
+    @Schema(description = "Время первого выполнения")
+    private Instant startAt;
+
+    @Column(name = "occurrence", nullable = false)
+    @Schema(description = "Номер следующего выполнения")
+    private int occurrence;
+
+    @Column(name = "next_run_at")
+    @Schema(description = "Время следующего выполнения")
+    private Instant nextRunAt;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    @Schema(description = "Состояние")
+    private JobStatus status;
+
+    @Column(name = "executed", nullable = false)
+    @Schema(description = "Количество выполненных переводов")
+    private int executed;
+
+    @Column(name = "failed", nullable = false)
+    @Schema(description = "Количество пропущенных выполнений")
+    private int failed;
+
+    @Column(name = "last_run_at")
+    @Schema(description = "Время последнего выполнения")
+    private Instant lastRunAt;
+
+    @Column(name = "last_error", length = 1000)
+    @Schema(description = "Текст последней ошибки")
+    private String lastError;
+
+    @Column(name = "created_at", updatable = false, nullable = false)
+    @Schema(description = "Время создания")
+    private Instant createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    @Schema(description = "Время последнего изменения")
+    private Instant updatedAt;
+}
@@ -0,0 +1,16 @@
+package com.shiraku.bankcard.model.entity;
+
+import com.shiraku.bankcard.utils.TimeOrderedUuidGenerator;
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/** Аннотация TimeOrderedUuid помечает идентификатор, генерируемый как упорядоченный по времени UUID версии 7 */
+@IdGeneratorType(TimeOrderedUuidGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface TimeOrderedUuid {
+}
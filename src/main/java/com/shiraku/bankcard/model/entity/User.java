@@ -8,7 +8,8 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
-import org.hibernate.annotations.UuidGenerator;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.util.List;
 import java.util.UUID;
@@ -30,6 +31,8 @@ import java.util.UUID;
  * {@code role} - Роль пользователя
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Getter
 @Setter
 @AllArgsConstructor
@@ -38,7 +41,7 @@ import java.util.UUID;
 @Tag(name = "Пользователь", description = "Класс сущности пользователя")
 public class User {
     @Id
-    @UuidGenerator(style = UuidGenerator.Style.RANDOM)
+    @TimeOrderedUuid
     @Column(name = "id", updatable = false, nullable = false, columnDefinition = "UUID")
     @Schema(description = "Уникальный идентификатор пользователя")
     private UUID id;
@@ -0,0 +1,75 @@
+package com.shiraku.bankcard.model.entity;
+
+import com.shiraku.bankcard.model.JobStatus;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Класс UserDeletionTask
+ * - представляет собой задачу удаления карт удалённого пользователя
+ * <p>
+ * Создаётся в одной транзакции с удалением строки {@code users}, поэтому карты пользователя
+ * не остаются без задачи, даже если приложение остановится до их удаления.
+ * <p>
+ * Включает следующие поля:
+ * <p>
+ * {@code userId} - Удалённый пользователь (владелец карт)
+ * <p>
+ * {@code email} - Адрес электронной почты удалённого пользователя
+ * <p>
+ * {@code status} - Состояние задачи
+ * <p>
+ * {@code cardsDeleted} - Количество уже удалённых карт
+ * <p>
+ * {@code lastError} - Текст последней ошибки
+ * <p>
+ * {@code createdAt} - Время удаления пользователя
+ * <p>
+ * {@code updatedAt} - Время последнего продвижения задачи
+ */
+@Entity
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "user_deletion_task")
+@Tag(name = "Задача удаления пользователя", description = "Класс сущности задачи удаления карт удалённого пользователя")
+public class UserDeletionTask {
+    @Id
+    @Column(name = "user_id", updatable = false, nullable = false, columnDefinition = "UUID")
+    @Schema(description = "Удалённый пользователь")
+    private UUID userId;
+
+    @Column(name = "email", updatable = false, nullable = false)
+    @Schema(description = "Адрес электронной почты удалённого пользователя")
+    private String email;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    @Schema(description = "Состояние задачи")
+    private JobStatus status;
+
+    @Column(name = "cards_deleted", nullable = false)
+    @Schema(description = "Количество удалённых карт")
+    private long cardsDeleted;
+
+    @Column(name = "last_error", length = 1000)
+    @Schema(description = "Текст последней ошибки")
+    private String lastError;
+
+    @Column(name = "created_at", updatable = false, nullable = false)
+    @Schema(description = "Время удаления пользователя")
+    private Instant createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    @Schema(description = "Время последнего продвижения задачи")
+    private Instant updatedAt;
+}
@@ -0,0 +1,21 @@
+package com.shiraku.bankcard.model.event;
+
+import com.shiraku.bankcard.model.CardOperation;
+import com.shiraku.bankcard.model.Status;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/** Событие CardChangedEvent публикуется при каждом изменении карты внутри транзакции, выполнившей изменение
+ * <p>
+ * {@code status} и {@code balance} - состояние карты после операции, {@code previousStatus} - статус до неё
+ * ({@code null} для выпуска), {@code amount} - сумма операции (для переводов), иначе {@code null}.
+ * */
+public record CardChangedEvent(UUID cardId,
+                               UUID ownerId,
+                               CardOperation operation,
+                               Status previousStatus,
+                               Status status,
+                               BigDecimal balance,
+                               BigDecimal amount) {
+}
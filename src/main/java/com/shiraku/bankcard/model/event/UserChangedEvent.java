@@ -0,0 +1,13 @@
+package com.shiraku.bankcard.model.event;
+
+import com.shiraku.bankcard.model.Role;
+
+import java.util.UUID;
+
+/** Событие UserChangedEvent публикуется при изменении или удалении пользователя внутри транзакции изменения
+ * <p>
+ * {@code previousRole} - роль до изменения ({@code null} для нового пользователя), {@code role} - после
+ * ({@code null} для удалённого).
+ * */
+public record UserChangedEvent(UUID userId, String email, boolean deleted, Role previousRole, Role role) {
+}
@@ -0,0 +1,33 @@
+package com.shiraku.bankcard.outbox;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/** Класс InMemoryOutboxSink хранит последние доставленные события в памяти (локальный запуск и тесты)
+ * <p>
+ * Хранится не больше {@code capacity} событий, старые вытесняются.
+ * */
+public class InMemoryOutboxSink implements OutboxSink {
+    private final Deque<OutboxMessage> messages = new ArrayDeque<>();
+    private final int capacity;
+
+    public InMemoryOutboxSink(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public synchronized void deliver(List<OutboxMessage> batch) {
+        for (OutboxMessage message : batch) {
+            if (messages.size() == capacity) {
+                messages.removeFirst();
+            }
+            messages.addLast(message);
+        }
+    }
+
+    public synchronized List<OutboxMessage> messages() {
+        return new ArrayList<>(messages);
+    }
+}
@@ -0,0 +1,8 @@
+package com.shiraku.bankcard.outbox;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/** Событие outbox в том виде, в каком оно передаётся в {@link OutboxSink}; {@code id} - ключ идемпотентности получателя */
+public record OutboxMessage(UUID id, UUID aggregateId, String type, String payload, Instant createdAt) {
+}
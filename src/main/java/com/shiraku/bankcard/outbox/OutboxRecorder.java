@@ -0,0 +1,39 @@
+package com.shiraku.bankcard.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shiraku.bankcard.model.entity.OutboxEvent;
+import com.shiraku.bankcard.model.event.CardChangedEvent;
+import com.shiraku.bankcard.repository.OutboxEventRepository;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Locale;
+
+/** Класс OutboxRecorder записывает изменения карт в таблицу {@code outbox_event}
+ * <p>
+ * Слушатель синхронный: событие сохраняется в той же транзакции и на том же шарде, что и изменение карты,
+ * поэтому внешние системы узнают ровно о зафиксированных изменениях, без двойной записи.
+ * Отправку выполняет {@link OutboxRelay}.
+ * */
+@Component
+public class OutboxRecorder {
+    private final OutboxEventRepository outboxEventRepository;
+    private final ObjectMapper objectMapper;
+
+    public OutboxRecorder(OutboxEventRepository outboxEventRepository, ObjectMapper objectMapper) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    @EventListener
+    public void onCardChanged(CardChangedEvent event) throws JsonProcessingException {
+        OutboxEvent outboxEvent = new OutboxEvent();
+        outboxEvent.setAggregateId(event.cardId());
+        outboxEvent.setEventType("card." + event.operation().name().toLowerCase(Locale.ROOT));
+        outboxEvent.setPayload(objectMapper.writeValueAsString(event));
+        outboxEvent.setCreatedAt(Instant.now());
+        outboxEventRepository.save(outboxEvent);
+    }
+}
@@ -0,0 +1,133 @@
+package com.shiraku.bankcard.outbox;
+
+import com.shiraku.bankcard.datasource.ShardRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Класс OutboxRelay периодически отправляет события из {@code outbox_event} в {@link OutboxSink}
+ * <p>
+ * На каждом шарде порция из {@code batch-size} старейших событий выбирается с {@code FOR UPDATE SKIP LOCKED},
+ * передаётся получателю и удаляется в той же транзакции. Несколько экземпляров приложения разбирают очередь
+ * параллельно, не мешая друг другу; при ошибке получателя транзакция откатывается и порция будет отправлена снова.
+ * <p>
+ * Задержка доставки ({@link #lagMillis()}) - возраст самого старого события последней отправленной порции,
+ * 0 при пустой очереди.
+ * */
+@Slf4j
+@Component
+public class OutboxRelay {
+    private static final String SELECT_BATCH = """
+            SELECT id, aggregate_id, event_type, payload, created_at FROM outbox_event
+            ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED""";
+
+    private final OutboxSink sink;
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final int maxBatchesPerPoll;
+
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final AtomicLong lagMillis = new AtomicLong();
+
+    public OutboxRelay(OutboxSink sink,
+                       ShardRouter shardRouter,
+                       JdbcTemplate jdbcTemplate,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${bankcard.outbox.relay.enabled:true}") boolean enabled,
+                       @Value("${bankcard.outbox.relay.batch-size:200}") int batchSize,
+                       @Value("${bankcard.outbox.relay.max-batches-per-poll:50}") int maxBatchesPerPoll) {
+        this.sink = sink;
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.maxBatchesPerPoll = maxBatchesPerPoll;
+    }
+
+    @Scheduled(fixedDelayString = "${bankcard.outbox.relay.poll-interval-ms:500}")
+    public void poll() {
+        if (!enabled) {
+            return;
+        }
+        for (String shard : shardRouter.shardIds()) {
+            try {
+                relayShard(shard);
+            } catch (RuntimeException e) {
+                failures.increment();
+                log.warn("Outbox relay failed on {}, the batch will be retried", shard, e);
+            }
+        }
+    }
+
+    /** Метод {@code relayShard()} отправляет порции с шарда, пока очередь не опустеет, и возвращает число событий */
+    public int relayShard(String shard) {
+        int total = 0;
+        for (int i = 0; i < maxBatchesPerPoll; i++) {
+            int sent = shardRouter.callOnShard(shard, false, () -> transactionTemplate.execute(status -> relayBatch()));
+            total += sent;
+            if (sent < batchSize) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    private int relayBatch() {
+        List<OutboxMessage> messages = jdbcTemplate.query(SELECT_BATCH, (rs, rowNum) -> new OutboxMessage(
+                rs.getObject(1, UUID.class), rs.getObject(2, UUID.class), rs.getString(3), rs.getString(4),
+                rs.getObject(5, OffsetDateTime.class).toInstant()), batchSize);
+        if (messages.isEmpty()) {
+            lagMillis.set(0);
+            return 0;
+        }
+
+        try {
+            sink.deliver(messages);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Не удалось доставить события outbox", e);
+        }
+        jdbcTemplate.batchUpdate("DELETE FROM outbox_event WHERE id = ?",
+                messages.stream().map(message -> new Object[]{message.id()}).toList());
+
+        lagMillis.set(Duration.between(messages.get(0).createdAt(), Instant.now()).toMillis());
+        delivered.add(messages.size());
+        batches.increment();
+        return messages.size();
+    }
+
+    public long deliveredCount() {
+        return delivered.sum();
+    }
+
+    public long batchCount() {
+        return batches.sum();
+    }
+
+    public long failureCount() {
+        return failures.sum();
+    }
+
+    public long lagMillis() {
+        return lagMillis.get();
+    }
+}
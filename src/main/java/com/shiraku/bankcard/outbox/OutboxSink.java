@@ -0,0 +1,13 @@
+package com.shiraku.bankcard.outbox;
+
+import java.util.List;
+
+/** Интерфейс OutboxSink - получатель событий outbox (брокер, внешний API, файл)
+ * <p>
+ * Доставка - «хотя бы один раз»: если {@code deliver()} бросил исключение или экземпляр упал до фиксации,
+ * вся порция будет отправлена повторно, поэтому получатель должен отбрасывать повторы по {@link OutboxMessage#id()}.
+ * Порядок внутри порции - порядок возникновения событий на шарде.
+ * */
+public interface OutboxSink {
+    void deliver(List<OutboxMessage> messages) throws Exception;
+}
@@ -0,0 +1,16 @@
+package com.shiraku.bankcard.repository;
+
+import com.shiraku.bankcard.model.entity.ArchivedCard;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface ArchivedCardRepository extends JpaRepository<ArchivedCard, UUID> {
+    Page<ArchivedCard> findByOwnerId(UUID ownerId, Pageable pageable);
+    Optional<ArchivedCard> findByNumberHash(String numberHash);
+}
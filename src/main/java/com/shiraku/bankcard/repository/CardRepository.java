@@ -5,12 +5,19 @@ import com.shiraku.bankcard.model.entity.Card;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface CardRepository extends JpaRepository<Card, UUID> {
     Page<Card> findByOwnerIdAndStatus(UUID ownerId, Status status, Pageable pageable);
     Page<Card> findByOwnerId(UUID ownerId, Pageable pageable);
+    Optional<Card> findByNumberHash(String numberHash);
+
+    /** Читает карту из базы в обход кэша второго уровня (состояние могло измениться на другом узле) */
+    @Query("select c from Card c where c.id = :id")
+    Optional<Card> findCurrentById(UUID id);
 }
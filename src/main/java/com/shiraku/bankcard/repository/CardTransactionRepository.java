@@ -0,0 +1,25 @@
+package com.shiraku.bankcard.repository;
+
+import com.shiraku.bankcard.model.entity.CardTransaction;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/** Постраничный вывод истории - по ключу {@code (created_at, id)} (keyset), а не по смещению:
+ * стоимость страницы не растёт с её номером и не зависит от числа секций таблицы */
+@Repository
+public interface CardTransactionRepository extends JpaRepository<CardTransaction, UUID> {
+    @Query("select t from CardTransaction t where t.cardId = :cardId order by t.createdAt desc, t.id desc")
+    List<CardTransaction> findLatest(UUID cardId, Limit limit);
+
+    @Query("""
+            select t from CardTransaction t
+            where t.cardId = :cardId and (t.createdAt, t.id) < (:createdAt, :id)
+            order by t.createdAt desc, t.id desc""")
+    List<CardTransaction> findBefore(UUID cardId, Instant createdAt, UUID id, Limit limit);
+}
@@ -0,0 +1,20 @@
+package com.shiraku.bankcard.repository;
+
+import com.shiraku.bankcard.model.entity.ScheduledTransfer;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface ScheduledTransferRepository extends JpaRepository<ScheduledTransfer, UUID> {
+    List<ScheduledTransfer> findByOwnerIdOrderByCreatedAt(UUID ownerId);
+
+    /** Удаляет плановые переводы, списывающие с карты или зачисляющие на неё (вместе с удалением карты) */
+    @Modifying
+    @Query("delete from ScheduledTransfer t where t.fromCardId = :cardId or t.toCardId = :cardId")
+    int deleteByCardId(UUID cardId);
+}
@@ -0,0 +1,14 @@
+package com.shiraku.bankcard.repository;
+
+import com.shiraku.bankcard.model.JobStatus;
+import com.shiraku.bankcard.model.entity.UserDeletionTask;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface UserDeletionTaskRepository extends JpaRepository<UserDeletionTask, UUID> {
+    List<UserDeletionTask> findByStatusNot(JobStatus status);
+}
@@ -1,13 +1,31 @@
 package com.shiraku.bankcard.repository;
 
 import com.shiraku.bankcard.model.entity.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, UUID> {
+    /** Регион кэша запросов для поиска пользователя по email (настраивается в ehcache.xml) */
+    String EMAIL_QUERY_REGION = "query.UserByEmail";
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = EMAIL_QUERY_REGION)
+    })
     Optional<User> findByEmail(String email);
+    List<User> findByEmailIn(Collection<String> emails);
+
+    /** Количество пользователей по ролям: пары [роль, количество] */
+    @Query("select u.role, count(u) from User u group by u.role")
+    List<Object[]> countByRole();
 }
@@ -0,0 +1,241 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.datasource.DataSourceContextHolder;
+import com.shiraku.bankcard.datasource.DataSourceRoute;
+import com.shiraku.bankcard.datasource.ShardRouter;
+import com.shiraku.bankcard.model.Role;
+import com.shiraku.bankcard.model.Status;
+import com.shiraku.bankcard.model.dto.AdminStatsDto;
+import com.shiraku.bankcard.model.event.CardChangedEvent;
+import com.shiraku.bankcard.model.event.UserChangedEvent;
+import com.shiraku.bankcard.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Класс AdminStatsService ведёт сводную статистику для администратора: карты по статусам, суммарный баланс,
+ * пользователи по ролям
+ * <p>
+ * Значения не считаются запросом к {@code card} и {@code users}, а поддерживаются счётчиками ({@link LongAdder})
+ * по событиям изменений после фиксации транзакции, поэтому чтение - O(1). Баланс хранится в копейках.
+ * Архивные карты учитываются: перенос в архив статистику не меняет.
+ * <p>
+ * Раз в {@code reconcile-interval-ms} (и при старте) счётчики сверяются с таблицами: подсчёт по всем шардам
+ * становится новой базой, а изменения, пришедшие во время подсчёта, копятся отдельно и добавляются к ней.
+ * Так исправляются расхождения от изменений в обход событий и от других экземпляров приложения -
+ * каждый экземпляр видит свои изменения сразу, а чужие после сверки.
+ * <p>
+ * Подсчёт идёт по основной базе, а не по репликам: реплика может не видеть изменений, уже учтённых
+ * в отложенных счётчиках, и они были бы потеряны вместе с заменой базы.
+ * */
+@Slf4j
+@Service
+public class AdminStatsService {
+    private static final String COUNT_CARDS = """
+            SELECT status, COUNT(*), COALESCE(SUM(balance), 0) FROM card GROUP BY status
+            UNION ALL
+            SELECT status, COUNT(*), COALESCE(SUM(balance), 0) FROM card_archive GROUP BY status""";
+
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+    private final UserRepository userRepository;
+
+    private volatile State state = new State(new Totals(), null, new Counters(), null);
+    private volatile long lastDrift;
+
+    public AdminStatsService(ShardRouter shardRouter, JdbcTemplate jdbcTemplate, UserRepository userRepository) {
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.userRepository = userRepository;
+    }
+
+    /** {@code carried} - изменения до начала идущей сверки, {@code delta} - после последней сверки (или её начала) */
+    private record State(Totals base, Counters carried, Counters delta, Instant reconciledAt) {
+    }
+
+    private static final class Totals {
+        final EnumMap<Status, Long> cards = new EnumMap<>(Status.class);
+        final EnumMap<Role, Long> users = new EnumMap<>(Role.class);
+        long balanceCents;
+
+        Totals() {
+            for (Status status : Status.values()) {
+                cards.put(status, 0L);
+            }
+            for (Role role : Role.values()) {
+                users.put(role, 0L);
+            }
+        }
+
+        void add(Counters counters) {
+            if (counters == null) {
+                return;
+            }
+            counters.cards.forEach((status, count) -> cards.merge(status, count.sum(), Long::sum));
+            counters.users.forEach((role, count) -> users.merge(role, count.sum(), Long::sum));
+            balanceCents += counters.balanceCents.sum();
+        }
+
+        Totals copy() {
+            Totals copy = new Totals();
+            copy.cards.putAll(cards);
+            copy.users.putAll(users);
+            copy.balanceCents = balanceCents;
+            return copy;
+        }
+
+        long totalCards() {
+            return cards.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        long totalUsers() {
+            return users.values().stream().mapToLong(Long::longValue).sum();
+        }
+    }
+
+    private static final class Counters {
+        final EnumMap<Status, LongAdder> cards = new EnumMap<>(Status.class);
+        final EnumMap<Role, LongAdder> users = new EnumMap<>(Role.class);
+        final LongAdder balanceCents = new LongAdder();
+
+        Counters() {
+            for (Status status : Status.values()) {
+                cards.put(status, new LongAdder());
+            }
+            for (Role role : Role.values()) {
+                users.put(role, new LongAdder());
+            }
+        }
+
+        void card(Status status, long delta) {
+            if (status != null) {
+                cards.get(status).add(delta);
+            }
+        }
+
+        void user(Role role, long delta) {
+            if (role != null) {
+                users.get(role).add(delta);
+            }
+        }
+
+        void balance(BigDecimal amount) {
+            if (amount != null) {
+                balanceCents.add(toCents(amount));
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCardChanged(CardChangedEvent event) {
+        Counters delta = state.delta();
+        switch (event.operation()) {
+            case CREATED -> {
+                delta.card(event.status(), 1);
+                delta.balance(event.balance());
+            }
+            case DEBIT -> delta.balance(event.amount().negate());
+            case CREDIT, ACCRUAL -> delta.balance(event.amount());
+            case DELETED -> cardRemoved(event.status(), event.balance());
+            default -> {
+                if (event.previousStatus() != event.status()) {
+                    delta.card(event.previousStatus(), -1);
+                    delta.card(event.status(), 1);
+                }
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        if (event.previousRole() != event.role()) {
+            Counters delta = state.delta();
+            delta.user(event.previousRole(), -1);
+            delta.user(event.role(), 1);
+        }
+    }
+
+    /** Метод {@code cardRemoved()} учитывает карту, удалённую в обход событий (например, с её владельцем) */
+    public void cardRemoved(Status status, BigDecimal balance) {
+        Counters delta = state.delta();
+        delta.card(status, -1);
+        if (balance != null) {
+            delta.balance(balance.negate());
+        }
+    }
+
+    /** Метод {@code getStats()} возвращает текущие значения без запросов к базе */
+    public AdminStatsDto getStats() {
+        State current = state;
+        Totals totals = current.base().copy();
+        totals.add(current.carried());
+        totals.add(current.delta());
+
+        long totalCards = totals.totalCards();
+        long totalUsers = totals.totalUsers();
+        BigDecimal average = totalUsers == 0
+                ? BigDecimal.ZERO
+                : BigDecimal.valueOf(totalCards).divide(BigDecimal.valueOf(totalUsers), 2, RoundingMode.HALF_UP);
+        return new AdminStatsDto(Map.copyOf(totals.cards), totalCards, BigDecimal.valueOf(totals.balanceCents, 2),
+                Map.copyOf(totals.users), totalUsers, average, current.reconciledAt());
+    }
+
+    /** Метод {@code reconcile()} пересчитывает статистику по таблицам всех шардов */
+    @Scheduled(fixedDelayString = "${bankcard.stats.reconcile-interval-ms:600000}")
+    public synchronized void reconcile() {
+        State before = state;
+        // изменения, зафиксированные после этой точки, попадут в новый delta; до неё - уже видны подсчёту
+        state = new State(before.base(), before.delta(), new Counters(), before.reconciledAt());
+
+        Totals source = new Totals();
+        try (DataSourceContextHolder.Scope ignored = DataSourceContextHolder.use(DataSourceRoute.PRIMARY)) {
+            shardRouter.scatter(true, shard -> jdbcTemplate.query(COUNT_CARDS, (rs, rowNum) -> new Object[]{
+                    Status.valueOf(rs.getString(1)), rs.getLong(2), rs.getBigDecimal(3)})).stream()
+                    .flatMap(List::stream)
+                    .forEach(row -> {
+                        source.cards.merge((Status) row[0], (Long) row[1], Long::sum);
+                        source.balanceCents += toCents((BigDecimal) row[2]);
+                    });
+            for (Object[] row : userRepository.countByRole()) {
+                if (row[0] != null) {
+                    source.users.merge((Role) row[0], (Long) row[1], Long::sum);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Statistics reconciliation failed, keeping incremental values", e);
+            // подсчёт не удался: отложенные изменения возвращаются в базу
+            Totals base = before.base().copy();
+            base.add(before.delta());
+            state = new State(base, null, state.delta(), before.reconciledAt());
+            return;
+        }
+
+        Totals expected = before.base().copy();
+        expected.add(before.delta());
+        lastDrift = Math.abs(source.totalCards() - expected.totalCards())
+                + Math.abs(source.totalUsers() - expected.totalUsers());
+        if (lastDrift > 0) {
+            log.info("Statistics reconciled with drift of {} rows", lastDrift);
+        }
+        state = new State(source, null, state.delta(), Instant.now());
+    }
+
+    /** Расхождение счётчиков с таблицами (карты и пользователи) на последней сверке */
+    public long lastDrift() {
+        return lastDrift;
+    }
+
+    private static long toCents(BigDecimal amount) {
+        return amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+}
@@ -0,0 +1,523 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.datasource.ShardRouter;
+import com.shiraku.bankcard.model.CardOperation;
+import com.shiraku.bankcard.model.JobStatus;
+import com.shiraku.bankcard.utils.TokenBucket;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/** Класс BalanceReconciliationJob сверяет балансы карт с историей их движений ({@code card_transaction})
+ * <p>
+ * Для каждой карты (включая архивные) ожидаемый баланс - баланс после самой ранней сохранённой записи истории
+ * плюс зачисления и минус списания после неё; расхождение с {@code balance} карты, как и карта без истории,
+ * попадает в отчёт. Дополнительно проверяется сохранение суммы: списания и зачисления, записанные
+ * до {@code cutoff} (начало сверки минус {@code settle}), должны совпадать.
+ * <p>
+ * Пространство id карт на каждом шарде делится на диапазоны по {@code range-size} карт, диапазоны обрабатываются
+ * параллельно в {@link ForkJoinPool} из {@code parallelism} потоков. Карта и её движения читаются одним
+ * потоковым запросом ({@code fetch-size}), поэтому видят один снимок даже при идущих переводах, а в памяти
+ * держится только текущая карта. Нагрузка на базу ограничена числом потоков и {@link TokenBucket}
+ * на {@code rows-per-second} прочитанных строк.
+ * <p>
+ * Сверка возобновляема: диапазоны и их итоги сохраняются в {@code reconciliation_range}, расхождения диапазона
+ * пишутся в отдельный файл, который появляется только после успешного прохода. Незавершённая сверка
+ * продолжается следующим запуском с того же места, а готовый отчёт собирается из файлов диапазонов.
+ * */
+@Slf4j
+@Component
+public class BalanceReconciliationJob implements DisposableBean {
+    private static final UUID MIN_ID = new UUID(0L, 0L);
+    private static final String REPORT_HEADER = "card_id,kind,balance,expected,last_recorded\n";
+
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate streamingTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readTemplate;
+    private final TokenBucket budget;
+    private final ForkJoinPool pool;
+    private final boolean enabled;
+    private final int rangeSize;
+    private final Path reportDir;
+    private final Duration settle;
+    private final Duration staleAfter;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final LongAdder checked = new LongAdder();
+    private volatile long lastMismatches;
+
+    public BalanceReconciliationJob(ShardRouter shardRouter,
+                                    JdbcTemplate jdbcTemplate,
+                                    PlatformTransactionManager transactionManager,
+                                    @Value("${bankcard.reconciliation.enabled:true}") boolean enabled,
+                                    @Value("${bankcard.reconciliation.parallelism:4}") int parallelism,
+                                    @Value("${bankcard.reconciliation.range-size:10000}") int rangeSize,
+                                    @Value("${bankcard.reconciliation.fetch-size:1000}") int fetchSize,
+                                    @Value("${bankcard.reconciliation.rows-per-second:20000}") long rowsPerSecond,
+                                    @Value("${bankcard.reconciliation.report-dir:reconciliation}") Path reportDir,
+                                    @Value("${bankcard.reconciliation.settle:1m}") Duration settle,
+                                    @Value("${bankcard.reconciliation.stale-after:10m}") Duration staleAfter) {
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.streamingTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.streamingTemplate.setFetchSize(fetchSize);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate.setReadOnly(true);
+        this.budget = new TokenBucket(rowsPerSecond, rowsPerSecond, TimeUnit.SECONDS.toNanos(1), System.nanoTime());
+        this.pool = new ForkJoinPool(parallelism, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("reconciliation-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        this.enabled = enabled;
+        this.rangeSize = rangeSize;
+        this.reportDir = reportDir;
+        this.settle = settle;
+        this.staleAfter = staleAfter;
+    }
+
+    /** Итог сверки; {@code report} - файл расхождений, пока сверка не завершена - {@code null} */
+    public record Summary(UUID runId, JobStatus status, long cardsChecked, long mismatches,
+                          BigDecimal debitTotal, BigDecimal creditTotal, Path report) {
+        public boolean conserved() {
+            return debitTotal != null && creditTotal != null && debitTotal.compareTo(creditTotal) == 0;
+        }
+    }
+
+    private record Run(UUID id, Instant cutoff) {
+    }
+
+    /** Диапазон id {@code [start, end)}; {@code end == null} - до конца */
+    private record Range(String shard, int rangeNo, UUID start, UUID end, JobStatus status) {
+    }
+
+    private record RangeResult(long cards, long mismatches, BigDecimal debits, BigDecimal credits) {
+    }
+
+    @Scheduled(cron = "${bankcard.reconciliation.cron:0 0 3 * * *}")
+    public void scheduledRun() {
+        if (enabled) {
+            run();
+        }
+    }
+
+    /** Метод {@code run()} продолжает незавершённую сверку или начинает новую; {@code null}, если сверка уже идёт */
+    public Summary run() {
+        if (!running.compareAndSet(false, true)) {
+            log.info("Balance reconciliation is already running");
+            return null;
+        }
+        try {
+            Run run = findUnfinished().orElseGet(this::plan);
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (Range range : ranges(run.id())) {
+                // файл готового диапазона мог потеряться: тогда диапазон проходится заново
+                if (range.status() == JobStatus.DONE && Files.exists(partFile(run.id(), range))) {
+                    continue;
+                }
+                tasks.add(() -> {
+                    processRange(run, range);
+                    return null;
+                });
+            }
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+            return finish(run);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Сверка балансов завершилась с ошибкой", e.getCause());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /** Количество карт, проверенных с момента запуска приложения */
+    public long checkedCount() {
+        return checked.sum();
+    }
+
+    /** Количество расхождений в последней завершённой сверке */
+    public long lastMismatches() {
+        return lastMismatches;
+    }
+
+    @Override
+    public void destroy() {
+        pool.shutdownNow();
+    }
+
+    private Optional<Run> findUnfinished() {
+        return jdbcTemplate.query("SELECT id, cutoff FROM reconciliation_run WHERE status <> ? ORDER BY created_at DESC LIMIT 1",
+                (rs, rowNum) -> new Run(rs.getObject(1, UUID.class), rs.getTimestamp(2).toInstant()),
+                JobStatus.DONE.name()).stream().findFirst();
+    }
+
+    private Run plan() {
+        Instant now = Instant.now();
+        Run run = new Run(UUID.randomUUID(), now.minus(settle));
+        List<Range> ranges = new ArrayList<>();
+        for (String shard : shardRouter.shardIds()) {
+            List<UUID> bounds = shardRouter.callOnShard(shard, true, this::boundaries);
+            UUID start = MIN_ID;
+            for (int i = 0; i <= bounds.size(); i++) {
+                UUID end = i < bounds.size() ? bounds.get(i) : null;
+                ranges.add(new Range(shard, i, start, end, JobStatus.PENDING));
+                start = end;
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("INSERT INTO reconciliation_run (id, status, cutoff, ranges, cards_checked, mismatches, "
+                            + "created_at, updated_at) VALUES (?, ?, ?, ?, 0, 0, ?, ?)",
+                    run.id(), JobStatus.RUNNING.name(), Timestamp.from(run.cutoff()), ranges.size(),
+                    Timestamp.from(now), Timestamp.from(now));
+            jdbcTemplate.batchUpdate("INSERT INTO reconciliation_range (run_id, shard, range_no, range_start, range_end, "
+                            + "status, cards_checked, mismatches, updated_at) VALUES (?, ?, ?, ?, ?, ?, 0, 0, ?)",
+                    ranges, 500, (ps, range) -> {
+                        ps.setObject(1, run.id());
+                        ps.setString(2, range.shard());
+                        ps.setInt(3, range.rangeNo());
+                        ps.setObject(4, range.start());
+                        ps.setObject(5, range.end());
+                        ps.setString(6, JobStatus.PENDING.name());
+                        ps.setTimestamp(7, Timestamp.from(now));
+                    });
+        });
+        log.info("Balance reconciliation {} planned with {} ranges", run.id(), ranges.size());
+        return run;
+    }
+
+    /** Первые id диапазонов, кроме первого: каждая {@code range-size}-я карта по индексу первичного ключа */
+    private List<UUID> boundaries() {
+        List<UUID> bounds = new ArrayList<>();
+        UUID from = MIN_ID;
+        while (true) {
+            List<UUID> next = jdbcTemplate.queryForList("SELECT id FROM card WHERE id >= ? ORDER BY id LIMIT 1 OFFSET ?",
+                    UUID.class, from, rangeSize);
+            if (next.isEmpty()) {
+                return bounds;
+            }
+            from = next.get(0);
+            bounds.add(from);
+        }
+    }
+
+    private List<Range> ranges(UUID runId) {
+        return jdbcTemplate.query("SELECT shard, range_no, range_start, range_end, status FROM reconciliation_range "
+                        + "WHERE run_id = ? ORDER BY shard, range_no",
+                (rs, rowNum) -> new Range(rs.getString(1), rs.getInt(2), rs.getObject(3, UUID.class),
+                        rs.getObject(4, UUID.class), JobStatus.valueOf(rs.getString(5))), runId);
+    }
+
+    /** Диапазон берётся, если он в том же состоянии, что при чтении, или брошен другим процессом дольше {@code stale-after} назад */
+    private boolean claim(UUID runId, Range range) {
+        Instant now = Instant.now();
+        return jdbcTemplate.update("UPDATE reconciliation_range SET status = 'RUNNING', updated_at = ? "
+                        + "WHERE run_id = ? AND shard = ? AND range_no = ? "
+                        + "AND (status = ? AND status <> 'RUNNING' OR (status = 'RUNNING' AND updated_at < ?))",
+                Timestamp.from(now), runId, range.shard(), range.rangeNo(), range.status().name(),
+                Timestamp.from(now.minus(staleAfter))) == 1;
+    }
+
+    private void processRange(Run run, Range range) {
+        if (!claim(run.id(), range)) {
+            return;
+        }
+        try {
+            Path part = partFile(run.id(), range);
+            Files.createDirectories(part.getParent());
+            Path tmp = part.resolveSibling(part.getFileName() + ".tmp");
+            RangeResult result;
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                result = shardRouter.callOnShard(range.shard(), true,
+                        () -> readTemplate.execute(status -> scan(range, run.cutoff(), writer)));
+            }
+            Files.move(tmp, part, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            jdbcTemplate.update("UPDATE reconciliation_range SET status = 'DONE', cards_checked = ?, mismatches = ?, "
+                            + "debit_total = ?, credit_total = ?, last_error = NULL, updated_at = ? "
+                            + "WHERE run_id = ? AND shard = ? AND range_no = ?",
+                    result.cards(), result.mismatches(), result.debits(), result.credits(), Timestamp.from(Instant.now()),
+                    run.id(), range.shard(), range.rangeNo());
+        } catch (IOException | RuntimeException e) {
+            log.error("Balance reconciliation of {} range {} failed", range.shard(), range.rangeNo(), e);
+            String error = String.valueOf(e.getMessage());
+            jdbcTemplate.update("UPDATE reconciliation_range SET status = 'FAILED', last_error = ?, updated_at = ? "
+                            + "WHERE run_id = ? AND shard = ? AND range_no = ?",
+                    error.length() > 1000 ? error.substring(0, 1000) : error, Timestamp.from(Instant.now()),
+                    run.id(), range.shard(), range.rangeNo());
+        }
+    }
+
+    private RangeResult scan(Range range, Instant cutoff, BufferedWriter writer) {
+        List<Object> bounds = new ArrayList<>();
+        String idRange = bound("id", range, bounds);
+        List<Object> args = new ArrayList<>(bounds);
+        args.addAll(bounds);
+
+        RangeScan scan = new RangeScan(writer);
+        streamingTemplate.query("SELECT c.id, c.balance, t.operation, t.amount, t.balance FROM ("
+                + "SELECT id, balance FROM card WHERE " + idRange
+                + " UNION ALL SELECT id, balance FROM card_archive WHERE " + idRange
+                + ") c LEFT JOIN card_transaction t ON t.card_id = c.id ORDER BY c.id, t.created_at, t.id", scan, args.toArray());
+        scan.flush();
+
+        // сохранение суммы считается и по движениям удалённых карт
+        List<Object> movementArgs = new ArrayList<>();
+        String cardRange = bound("card_id", range, movementArgs);
+        movementArgs.add(Timestamp.from(cutoff));
+        BigDecimal[] totals = {BigDecimal.ZERO, BigDecimal.ZERO};
+        jdbcTemplate.query("SELECT operation, COALESCE(SUM(amount), 0) FROM card_transaction WHERE " + cardRange
+                + " AND created_at < ? AND operation IN ('DEBIT', 'CREDIT') GROUP BY operation", rs -> {
+            totals[CardOperation.valueOf(rs.getString(1)) == CardOperation.DEBIT ? 0 : 1] = rs.getBigDecimal(2);
+        }, movementArgs.toArray());
+        return new RangeResult(scan.cards, scan.mismatches, totals[0], totals[1]);
+    }
+
+    private static String bound(String column, Range range, List<Object> args) {
+        args.add(range.start());
+        if (range.end() == null) {
+            return column + " >= ?";
+        }
+        args.add(range.end());
+        return column + " >= ? AND " + column + " < ?";
+    }
+
+    private Summary finish(Run run) {
+        long unfinished = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM reconciliation_range WHERE run_id = ? AND status <> 'DONE'", Long.class, run.id());
+        Summary totals = jdbcTemplate.queryForObject("SELECT COALESCE(SUM(cards_checked), 0), COALESCE(SUM(mismatches), 0), "
+                        + "COALESCE(SUM(debit_total), 0), COALESCE(SUM(credit_total), 0) FROM reconciliation_range WHERE run_id = ?",
+                (rs, rowNum) -> new Summary(run.id(), unfinished == 0 ? JobStatus.DONE : JobStatus.FAILED,
+                        rs.getLong(1), rs.getLong(2), rs.getBigDecimal(3), rs.getBigDecimal(4), null), run.id());
+
+        Path report = null;
+        JobStatus status = totals.status();
+        if (status == JobStatus.DONE) {
+            try {
+                report = writeReport(run, totals);
+            } catch (IOException e) {
+                log.error("Balance reconciliation {} report could not be written", run.id(), e);
+                status = JobStatus.FAILED;
+            }
+        }
+        jdbcTemplate.update("UPDATE reconciliation_run SET status = ?, cards_checked = ?, mismatches = ?, debit_total = ?, "
+                        + "credit_total = ?, report = ?, updated_at = ? WHERE id = ?",
+                status.name(), totals.cardsChecked(), totals.mismatches(), totals.debitTotal(), totals.creditTotal(),
+                report != null ? report.toString() : null, Timestamp.from(Instant.now()), run.id());
+
+        Summary summary = new Summary(run.id(), status, totals.cardsChecked(), totals.mismatches(),
+                totals.debitTotal(), totals.creditTotal(), report);
+        if (status != JobStatus.DONE) {
+            log.warn("Balance reconciliation {} left {} ranges unfinished, it will be resumed by the next run",
+                    run.id(), unfinished);
+            return summary;
+        }
+        deleteParts(run.id());
+        lastMismatches = summary.mismatches();
+        if (!summary.conserved()) {
+            log.warn("Balance reconciliation {}: debits {} and credits {} before {} do not match",
+                    run.id(), summary.debitTotal(), summary.creditTotal(), run.cutoff());
+        }
+        log.info("Balance reconciliation {} checked {} cards, {} mismatches, report {}",
+                run.id(), summary.cardsChecked(), summary.mismatches(), report);
+        return summary;
+    }
+
+    /** Отчёт собирается из файлов диапазонов копированием каналов, без разбора строк */
+    private Path writeReport(Run run, Summary totals) throws IOException {
+        Path report = reportDir.resolve("reconciliation-" + run.id() + ".csv");
+        Path tmp = report.resolveSibling(report.getFileName() + ".tmp");
+        Files.createDirectories(reportDir);
+        List<Range> ranges = ranges(run.id());
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            String header = "# run " + run.id() + ", cards " + totals.cardsChecked() + ", mismatches " + totals.mismatches()
+                    + ", debits " + totals.debitTotal() + ", credits " + totals.creditTotal() + " before " + run.cutoff() + "\n"
+                    + REPORT_HEADER;
+            out.write(StandardCharsets.UTF_8.encode(header));
+            for (Range range : ranges) {
+                try (FileChannel in = FileChannel.open(partFile(run.id(), range), StandardOpenOption.READ)) {
+                    long position = 0;
+                    long size = in.size();
+                    while (position < size) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                }
+            }
+        }
+        Files.move(tmp, report, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return report;
+    }
+
+    /** Файлы диапазонов удаляются только после отметки сверки завершённой, иначе отчёт нельзя было бы собрать повторно */
+    private void deleteParts(UUID runId) {
+        Path dir = reportDir.resolve(runId.toString());
+        try {
+            for (Range range : ranges(runId)) {
+                Files.deleteIfExists(partFile(runId, range));
+            }
+            Files.deleteIfExists(dir);
+        } catch (IOException e) {
+            log.warn("Balance reconciliation files in {} could not be deleted", dir, e);
+        }
+    }
+
+    private Path partFile(UUID runId, Range range) {
+        return reportDir.resolve(runId.toString()).resolve(range.shard() + "-" + range.rangeNo() + ".csv");
+    }
+
+    private void throttle() {
+        long wait;
+        while ((wait = budget.tryConsume(System.nanoTime())) > 0) {
+            LockSupport.parkNanos(wait);
+            if (Thread.currentThread().isInterrupted()) {
+                throw new IllegalStateException("Сверка балансов прервана");
+            }
+        }
+    }
+
+    /** Строки запроса приходят по картам подряд; карта проверяется, как только начинается следующая */
+    private final class RangeScan implements RowCallbackHandler {
+        private final BufferedWriter writer;
+        private CardMovements current;
+        private long cards;
+        private long mismatches;
+
+        RangeScan(BufferedWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            throttle();
+            UUID cardId = rs.getObject(1, UUID.class);
+            if (current == null || !current.cardId().equals(cardId)) {
+                flush();
+                current = new CardMovements(cardId, rs.getBigDecimal(2));
+            }
+            String operation = rs.getString(3);
+            if (operation != null) {
+                current.apply(CardOperation.valueOf(operation), rs.getBigDecimal(4), rs.getBigDecimal(5));
+            }
+        }
+
+        void flush() {
+            if (current == null) {
+                return;
+            }
+            cards++;
+            checked.increment();
+            String kind = current.mismatch();
+            if (kind != null) {
+                mismatches++;
+                try {
+                    writer.write(current.cardId() + "," + kind + "," + current.balance() + "," + current.expected()
+                            + "," + current.lastRecorded() + "\n");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            current = null;
+        }
+    }
+
+    /** Движения одной карты в порядке записи
+     * <p>
+     * Отсчёт ведётся от самой ранней сохранённой записи (история могла быть отсоединена по сроку хранения):
+     * баланс до неё - записанный после неё баланс без её суммы.
+     * */
+    static final class CardMovements {
+        private final UUID cardId;
+        private final BigDecimal balance;
+        private BigDecimal opening;
+        private BigDecimal net = BigDecimal.ZERO;
+        private BigDecimal lastRecorded;
+        private long movements;
+
+        CardMovements(UUID cardId, BigDecimal balance) {
+            this.cardId = cardId;
+            this.balance = balance;
+        }
+
+        void apply(CardOperation operation, BigDecimal amount, BigDecimal recordedBalance) {
+            BigDecimal signed = switch (operation) {
+                case DEBIT -> amount != null ? amount.negate() : BigDecimal.ZERO;
+                case CREDIT, ACCRUAL -> amount != null ? amount : BigDecimal.ZERO;
+                default -> BigDecimal.ZERO;
+            };
+            if (movements == 0) {
+                opening = recordedBalance != null ? recordedBalance.subtract(signed) : BigDecimal.ZERO;
+            }
+            net = net.add(signed);
+            if (recordedBalance != null) {
+                lastRecorded = recordedBalance;
+            }
+            movements++;
+        }
+
+        UUID cardId() {
+            return cardId;
+        }
+
+        BigDecimal balance() {
+            return balance;
+        }
+
+        BigDecimal lastRecorded() {
+            return lastRecorded;
+        }
+
+        BigDecimal expected() {
+            return opening != null ? opening.add(net) : null;
+        }
+
+        /** Вид расхождения: {@code NO_HISTORY}, {@code BALANCE} или {@code null}, если баланс сходится */
+        String mismatch() {
+            if (movements == 0) {
+                return "NO_HISTORY";
+            }
+            return balance == null || expected().compareTo(balance) != 0 ? "BALANCE" : null;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.cache.CacheInvalidationBus;
+import com.shiraku.bankcard.datasource.ShardRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/** Класс BlindIndexBackfillJob заполняет {@code card.number_hash} и {@code card.bin} для карт, выпущенных
+ * до появления этих колонок: обе вычисляются из номера, поэтому он расшифровывается один раз
+ * <p>
+ * Работает в фоновом потоке после старта приложения, по шардам и порциями по {@code batch-size} строк
+ * с продвижением по первичному ключу, с паузой между порциями, чтобы не нагружать базу.
+ * Обновление условное ({@code number_hash IS NULL}), поэтому задачу можно безопасно перезапускать
+ * и выполнять на нескольких экземплярах одновременно.
+ * <p>
+ * Строки обновляются в обход Hibernate, поэтому обработанные карты вытесняются из кэша второго уровня
+ * на всех экземплярах через {@link CacheInvalidationBus}.
+ * */
+@Slf4j
+@Service
+public class BlindIndexBackfillJob {
+    private static final UUID MIN_ID = new UUID(0L, 0L);
+
+    private final CipherService cipherService;
+    private final BlindIndexService blindIndexService;
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+    private final CacheInvalidationBus cacheInvalidationBus;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration pause;
+
+    public BlindIndexBackfillJob(CipherService cipherService,
+                                 BlindIndexService blindIndexService,
+                                 ShardRouter shardRouter,
+                                 JdbcTemplate jdbcTemplate,
+                                 CacheInvalidationBus cacheInvalidationBus,
+                                 @Value("${bankcard.blind-index.backfill.enabled:true}") boolean enabled,
+                                 @Value("${bankcard.blind-index.backfill.batch-size:500}") int batchSize,
+                                 @Value("${bankcard.blind-index.backfill.pause:50ms}") Duration pause) {
+        this.cipherService = cipherService;
+        this.blindIndexService = blindIndexService;
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.pause = pause;
+    }
+
+    private record PendingRow(UUID id, String number) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            return;
+        }
+        Thread thread = new Thread(this::run, "blind-index-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Метод {@code run()} проходит все шарды и возвращает количество заполненных строк */
+    public long run() {
+        long total = 0;
+        for (String shard : shardRouter.shardIds()) {
+            try {
+                total += backfillShard(shard);
+            } catch (RuntimeException e) {
+                log.error("Blind index backfill failed on {}", shard, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return total;
+    }
+
+    private long backfillShard(String shard) throws InterruptedException {
+        long updated = 0;
+        UUID lastId = MIN_ID;
+        while (true) {
+            UUID after = lastId;
+            List<PendingRow> rows = shardRouter.callOnShard(shard, true, () -> jdbcTemplate.query(
+                    "SELECT id, number FROM card WHERE (number_hash IS NULL OR bin IS NULL) AND id > ? ORDER BY id LIMIT ?",
+                    (rs, rowNum) -> new PendingRow(rs.getObject(1, UUID.class), rs.getString(2)),
+                    after, batchSize));
+            if (rows.isEmpty()) {
+                break;
+            }
+
+            List<Object[]> updates = rows.stream()
+                    .map(row -> {
+                        String number = cipherService.decrypt(row.number());
+                        return new Object[]{blindIndexService.hash(number), CardService.binOf(number), row.id()};
+                    })
+                    .toList();
+            shardRouter.runOnShard(shard, () -> {
+                jdbcTemplate.batchUpdate("UPDATE card SET number_hash = COALESCE(number_hash, ?), bin = COALESCE(bin, ?) "
+                        + "WHERE id = ? AND (number_hash IS NULL OR bin IS NULL)", updates);
+                cacheInvalidationBus.cardsChanged(rows.stream().map(PendingRow::id).toList());
+            });
+
+            updated += rows.size();
+            lastId = rows.get(rows.size() - 1).id();
+            if (rows.size() < batchSize) {
+                break;
+            }
+            Thread.sleep(pause.toMillis());
+        }
+        if (updated > 0) {
+            log.info("Blind index backfilled {} cards on {}", updated, shard);
+        }
+        return updated;
+    }
+}
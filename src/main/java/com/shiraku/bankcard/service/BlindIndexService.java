@@ -0,0 +1,47 @@
+package com.shiraku.bankcard.service;
+
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.HexFormat;
+
+/** Класс BlindIndexService вычисляет «слепой индекс» номера карты - HMAC-SHA256 с отдельным ключом
+ * <p>
+ * Номер в {@code card.number} хранится зашифрованным, поэтому искать по нему нельзя. Слепой индекс
+ * позволяет найти карту по полному номеру одним запросом по индексу, не раскрывая номер: без ключа
+ * значение нельзя подобрать перебором номеров. Ключ не совпадает с ключом шифрования.
+ * */
+@Service
+@Tag(name = "Слепой индекс", description = "Класс сервиса для вычисления слепого индекса номера карты")
+public class BlindIndexService {
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs;
+
+    public BlindIndexService(@Value("${bankcard.blind-index.key}") String key) {
+        this.key = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    /** Метод {@code hash()} возвращает слепой индекс номера карты (64 шестнадцатеричных символа) */
+    public String hash(String cardNumber) {
+        Mac mac = macs.get();
+        return HexFormat.of().formatHex(mac.doFinal(cardNumber.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Не удалось инициализировать " + ALGORITHM, e);
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.cache.CacheInvalidationBus;
+import com.shiraku.bankcard.datasource.ShardRouter;
+import com.shiraku.bankcard.model.CardOperation;
+import com.shiraku.bankcard.model.JobStatus;
+import com.shiraku.bankcard.model.Status;
+import com.shiraku.bankcard.model.dto.CardUpdateDto;
+import com.shiraku.bankcard.model.event.CardChangedEvent;
+import com.shiraku.bankcard.utils.UuidV7;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Класс CardAccrualJob начисляет проценты и списывает комиссию по активным картам раз в месяц
+ * <p>
+ * Сумма начисления - проценты {@code interest-rate} на положительный остаток минус комиссия {@code fee},
+ * но комиссия не больше остатка, поэтому баланс не уходит в минус. Сумма округляется до копеек в самой базе
+ * ({@code ROUND(..., 2)}, половина - от нуля) и вычисляется по балансу на момент начисления.
+ * <p>
+ * Карты обрабатываются не по одной через Hibernate, а порциями по {@code chunk-size}: в короткой транзакции
+ * порция блокируется, одним {@code UPDATE ... WHERE id IN (...)} меняются баланс, {@code last_accrual_amount},
+ * {@code last_accrual_period} и {@code version}, и для карт с ненулевой суммой в той же транзакции двумя
+ * {@code INSERT ... SELECT} пишутся история {@code card_transaction} и события outbox (операция {@code ACCRUAL},
+ * содержимое - как у {@link CardChangedEvent}). Подписчики потока изменений уведомляются после фиксации порции.
+ * Карты шарда делятся по ключу на диапазоны по {@code range-size} карт, диапазоны обрабатываются
+ * в {@code parallelism} потоков.
+ * <p>
+ * Начисление идемпотентно по месяцу: карта с {@code last_accrual_period} этого месяца пропускается,
+ * поэтому прерванный запуск просто продолжается следующим. Запуск ежедневный, завершённый месяц
+ * отмечается в {@code accrual_run} и не проверяется повторно. Кэш инвалидируется через {@link CacheInvalidationBus}.
+ * */
+@Slf4j
+@Component
+public class CardAccrualJob implements DisposableBean {
+    private static final UUID MIN_ID = new UUID(0L, 0L);
+    private static final String INTEREST = "CASE WHEN balance > 0 THEN ROUND(balance * ?, 2) ELSE 0 END";
+    private static final String AMOUNT = INTEREST + " - LEAST(?, GREATEST(balance + " + INTEREST + ", 0))";
+    private static final String NOT_ACCRUED = "status = 'ACTIVE' AND (last_accrual_period IS NULL OR last_accrual_period < ?)";
+    // id записей истории и outbox генерируются в приложении (UUID v7), чтобы outbox отправлялся в порядке id
+    private static final String ACCRUED = """
+            FROM card c JOIN (VALUES %s) AS v (card_id, transaction_id, event_id) ON v.card_id = c.id
+            WHERE c.last_accrual_amount <> 0""";
+    private static final String INSERT_HISTORY = """
+            INSERT INTO card_transaction (id, card_id, owner_id, operation, amount, balance, status, created_at)
+            SELECT v.transaction_id, c.id, c.owner_id, 'ACCRUAL', c.last_accrual_amount, c.balance, c.status, ?
+            """ + ACCRUED;
+    // содержимое совпадает с JSON события CardChangedEvent, который пишет OutboxRecorder
+    private static final String INSERT_OUTBOX = """
+            INSERT INTO outbox_event (id, aggregate_id, event_type, payload, created_at)
+            SELECT v.event_id, c.id, 'card.accrual',
+                   '{"cardId":"' || c.id || '","ownerId":"' || c.owner_id || '","operation":"ACCRUAL","previousStatus":"'
+                   || c.status || '","status":"' || c.status || '","balance":' || c.balance
+                   || ',"amount":' || c.last_accrual_amount || '}', ?
+            """ + ACCRUED;
+
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final AdvisoryLockService advisoryLockService;
+    private final CacheInvalidationBus cacheInvalidationBus;
+    private final CardUpdateBroadcaster cardUpdateBroadcaster;
+    private final ExecutorService executor;
+    private final boolean enabled;
+    private final BigDecimal interestRate;
+    private final BigDecimal fee;
+    private final int chunkSize;
+    private final int rangeSize;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final LongAdder accrued = new LongAdder();
+
+    public CardAccrualJob(ShardRouter shardRouter,
+                          JdbcTemplate jdbcTemplate,
+                          PlatformTransactionManager transactionManager,
+                          AdvisoryLockService advisoryLockService,
+                          CacheInvalidationBus cacheInvalidationBus,
+                          CardUpdateBroadcaster cardUpdateBroadcaster,
+                          @Value("${bankcard.accrual.enabled:true}") boolean enabled,
+                          @Value("${bankcard.accrual.interest-rate:0}") BigDecimal interestRate,
+                          @Value("${bankcard.accrual.fee:0}") BigDecimal fee,
+                          @Value("${bankcard.accrual.parallelism:4}") int parallelism,
+                          @Value("${bankcard.accrual.chunk-size:1000}") int chunkSize,
+                          @Value("${bankcard.accrual.range-size:100000}") int rangeSize) {
+        if (interestRate.signum() < 0 || fee.signum() < 0) {
+            throw new IllegalStateException("Ставка и комиссия начисления не могут быть отрицательными");
+        }
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.advisoryLockService = advisoryLockService;
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        this.cardUpdateBroadcaster = cardUpdateBroadcaster;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "accrual-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.enabled = enabled && (interestRate.signum() > 0 || fee.signum() > 0);
+        this.interestRate = interestRate;
+        this.fee = fee;
+        this.chunkSize = chunkSize;
+        this.rangeSize = rangeSize;
+    }
+
+    /** Итог начисления за месяц по всем запускам: сколько карт обработано и на какую сумму (со знаком) */
+    public record Summary(YearMonth period, JobStatus status, long cards, BigDecimal amount) {
+    }
+
+    /** Диапазон id {@code [start, end)}; {@code end == null} - до конца */
+    private record Range(String shard, UUID start, UUID end) {
+    }
+
+    /** Итог порции; {@code scanned} - сколько карт выбрано, {@code last} - наибольший id для продвижения по ключу */
+    private record ChunkResult(int scanned, int cards, BigDecimal amount, UUID last) {
+    }
+
+    private record AccruedCard(UUID id, UUID ownerId, BigDecimal amount, BigDecimal balance, Status status) {
+    }
+
+    @Scheduled(cron = "${bankcard.accrual.cron:0 0 2 * * *}", zone = "UTC")
+    public void scheduledRun() {
+        if (enabled) {
+            run(YearMonth.now(ZoneOffset.UTC).minusMonths(1));
+        }
+    }
+
+    /** Метод {@code run()} начисляет за месяц картам, которым ещё не начислено; {@code null}, если начисление уже идёт */
+    public Summary run(YearMonth period) {
+        if (!running.compareAndSet(false, true)) {
+            log.info("Accrual is already running");
+            return null;
+        }
+        LocalDate periodStart = period.atDay(1);
+        try {
+            List<Summary> done = jdbcTemplate.query("SELECT cards, amount FROM accrual_run WHERE period = ? AND status = ?",
+                    (rs, rowNum) -> new Summary(period, JobStatus.DONE, rs.getLong(1), rs.getBigDecimal(2)),
+                    Date.valueOf(periodStart), JobStatus.DONE.name());
+            if (!done.isEmpty()) {
+                return done.get(0);
+            }
+
+            List<Future<ChunkResult>> futures = new ArrayList<>();
+            for (String shard : shardRouter.shardIds()) {
+                for (Range range : split(shard)) {
+                    futures.add(executor.submit(() -> accrueRange(range, periodStart)));
+                }
+            }
+            long cards = 0;
+            BigDecimal amount = BigDecimal.ZERO;
+            boolean failed = false;
+            for (Future<ChunkResult> future : futures) {
+                try {
+                    ChunkResult result = future.get();
+                    cards += result.cards();
+                    amount = amount.add(result.amount());
+                } catch (ExecutionException e) {
+                    log.error("Accrual for {} failed in one of the ranges, it will be resumed by the next run", period, e.getCause());
+                    failed = true;
+                }
+            }
+            Summary summary = record(period, failed ? JobStatus.FAILED : JobStatus.DONE, cards, amount);
+            log.info("Accrual for {}: {} cards in this run, {} cards and total {} for the month",
+                    period, cards, summary.cards(), summary.amount());
+            return summary;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /** Количество карт, которым начислено с момента запуска приложения */
+    public long accruedCount() {
+        return accrued.sum();
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /** Делит карты шарда на диапазоны по {@code range-size} карт
+     * <p>
+     * Границы находятся шагами по ключу от предыдущей границы, поэтому каждая карта просматривается по индексу
+     * один раз, без {@code COUNT(*)} и без смещений от начала таблицы.
+     * */
+    private List<Range> split(String shard) {
+        List<UUID> bounds = shardRouter.callOnShard(shard, true, () -> {
+            List<UUID> result = new ArrayList<>();
+            UUID bound = MIN_ID;
+            while (true) {
+                List<UUID> next = jdbcTemplate.queryForList("SELECT id FROM card WHERE id > ? ORDER BY id LIMIT 1 OFFSET ?",
+                        UUID.class, bound, rangeSize);
+                if (next.isEmpty()) {
+                    return result;
+                }
+                bound = next.get(0);
+                result.add(bound);
+            }
+        });
+        List<Range> ranges = new ArrayList<>();
+        UUID start = MIN_ID;
+        for (UUID bound : bounds) {
+            ranges.add(new Range(shard, start, bound));
+            start = bound;
+        }
+        ranges.add(new Range(shard, start, null));
+        return ranges;
+    }
+
+    private ChunkResult accrueRange(Range range, LocalDate periodStart) {
+        int cards = 0;
+        BigDecimal amount = BigDecimal.ZERO;
+        UUID after = null;
+        while (true) {
+            UUID from = after;
+            ChunkResult chunk = shardRouter.callOnShard(range.shard(), false,
+                    () -> transactionTemplate.execute(status -> accrueChunk(range, from, periodStart)));
+            cards += chunk.cards();
+            amount = amount.add(chunk.amount());
+            if (chunk.scanned() < chunkSize) {
+                return new ChunkResult(cards, cards, amount, null);
+            }
+            after = chunk.last();
+        }
+    }
+
+    private ChunkResult accrueChunk(Range range, UUID after, LocalDate periodStart) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT id FROM card WHERE ");
+        if (after != null) {
+            sql.append("id > ?");
+            args.add(after);
+        } else {
+            sql.append("id >= ?");
+            args.add(range.start());
+        }
+        if (range.end() != null) {
+            sql.append(" AND id < ?");
+            args.add(range.end());
+        }
+        sql.append(" AND ").append(NOT_ACCRUED).append(" ORDER BY id LIMIT ?");
+        args.add(Date.valueOf(periodStart));
+        args.add(chunkSize);
+        List<UUID> candidates = jdbcTemplate.queryForList(sql.toString(), UUID.class, args.toArray());
+        if (candidates.isEmpty()) {
+            return new ChunkResult(0, 0, BigDecimal.ZERO, after);
+        }
+        UUID last = candidates.get(candidates.size() - 1);
+
+        // порядок как у перевода: сначала advisory-блокировки, затем строки; перевод, прочитавший карту
+        // без блокировки строки, после фиксации порции не затрёт баланс - его запись отклонит проверка version
+        advisoryLockService.lockCards(candidates.toArray(UUID[]::new));
+        String placeholders = String.join(", ", Collections.nCopies(candidates.size(), "?"));
+        List<Object> lockArgs = new ArrayList<>(candidates);
+        lockArgs.add(Date.valueOf(periodStart));
+        List<UUID> ids = jdbcTemplate.queryForList("SELECT id FROM card WHERE id IN (" + placeholders + ") AND "
+                + NOT_ACCRUED + " FOR UPDATE", UUID.class, lockArgs.toArray());
+        if (ids.isEmpty()) {
+            return new ChunkResult(candidates.size(), 0, BigDecimal.ZERO, last);
+        }
+
+        String idList = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        List<Object> updateArgs = new ArrayList<>(List.of(interestRate, fee, interestRate, interestRate, fee, interestRate,
+                Date.valueOf(periodStart)));
+        updateArgs.addAll(ids);
+        jdbcTemplate.update("UPDATE card SET last_accrual_amount = " + AMOUNT + ", balance = balance + " + AMOUNT
+                + ", last_accrual_period = ?, version = version + 1 WHERE id IN (" + idList + ")", updateArgs.toArray());
+
+        List<AccruedCard> accruedCards = jdbcTemplate.query("SELECT id, owner_id, last_accrual_amount, balance, status "
+                        + "FROM card WHERE id IN (" + idList + ") AND last_accrual_amount <> 0",
+                (rs, rowNum) -> new AccruedCard(rs.getObject(1, UUID.class), rs.getObject(2, UUID.class),
+                        rs.getBigDecimal(3), rs.getBigDecimal(4), Status.valueOf(rs.getString(5))), ids.toArray());
+        if (!accruedCards.isEmpty()) {
+            writeHistory(accruedCards);
+        }
+
+        cacheInvalidationBus.cardsChanged(ids);
+        accrued.add(ids.size());
+        BigDecimal amount = accruedCards.stream().map(AccruedCard::amount).reduce(BigDecimal.ZERO, BigDecimal::add);
+        return new ChunkResult(candidates.size(), ids.size(), amount, last);
+    }
+
+    /** Пишет историю и outbox порции двумя запросами и уведомляет подписчиков после фиксации */
+    private void writeHistory(List<AccruedCard> accruedCards) {
+        String values = String.join(", ", Collections.nCopies(accruedCards.size(),
+                "(CAST(? AS UUID), CAST(? AS UUID), CAST(? AS UUID))"));
+        List<Object> valueArgs = new ArrayList<>(accruedCards.size() * 3);
+        for (AccruedCard card : accruedCards) {
+            valueArgs.add(card.id());
+            valueArgs.add(UuidV7.randomUuid());
+            valueArgs.add(UuidV7.randomUuid());
+        }
+        // точность timestamptz - микросекунды, как у CardHistoryRecorder
+        Timestamp now = Timestamp.from(Instant.now().truncatedTo(ChronoUnit.MICROS));
+        List<Object> args = new ArrayList<>(valueArgs.size() + 1);
+        args.add(now);
+        args.addAll(valueArgs);
+        jdbcTemplate.update(INSERT_HISTORY.formatted(values), args.toArray());
+        jdbcTemplate.update(INSERT_OUTBOX.formatted(values), args.toArray());
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                accruedCards.forEach(card -> cardUpdateBroadcaster.send(card.ownerId(),
+                        new CardUpdateDto(card.id(), CardOperation.ACCRUAL, card.status(), card.balance())));
+            }
+        });
+    }
+
+    /** Добавляет итог запуска к итогу месяца и возвращает итог месяца */
+    private Summary record(YearMonth period, JobStatus status, long cards, BigDecimal amount) {
+        Date periodStart = Date.valueOf(period.atDay(1));
+        return transactionTemplate.execute(tx -> {
+            Timestamp now = Timestamp.from(Instant.now());
+            // карты, начисленные прерванными запусками, уже учтены в их итогах
+            int updated = jdbcTemplate.update("UPDATE accrual_run SET status = ?, cards = cards + ?, amount = amount + ?, "
+                    + "updated_at = ? WHERE period = ?", status.name(), cards, amount, now, periodStart);
+            if (updated == 0) {
+                jdbcTemplate.update("INSERT INTO accrual_run (period, status, cards, amount, updated_at) VALUES (?, ?, ?, ?, ?)",
+                        periodStart, status.name(), cards, amount, now);
+            }
+            return jdbcTemplate.queryForObject("SELECT cards, amount FROM accrual_run WHERE period = ?",
+                    (rs, rowNum) -> new Summary(period, status, rs.getLong(1), rs.getBigDecimal(2)), periodStart);
+        });
+    }
+}
@@ -0,0 +1,174 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.cache.CacheInvalidationBus;
+import com.shiraku.bankcard.datasource.ShardRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Класс CardArchiveJob переносит давно заблокированные и истёкшие карты из {@code card} в {@code card_archive}
+ * <p>
+ * Карта уходит в архив, если она не активна дольше {@code retention} (по {@code status_changed_at})
+ * и на ней не осталось средств: карта с ненулевым балансом остаётся в горячей таблице, пока средства не выведут.
+ * Так горячая таблица и её индексы, по которым идут запросы владельцев и администраторов, не растут
+ * за счёт «мёртвых» карт и остаются в памяти базы.
+ * <p>
+ * Работает по расписанию, на каждом шарде порциями по {@code batch-size}: каждая порция - короткая транзакция
+ * из выборки id по частичному индексу с {@code FOR UPDATE SKIP LOCKED}, {@code INSERT ... SELECT} в архив
+ * и {@code DELETE} из горячей таблицы вместе с плановыми переводами по карте. Карта, которую в этот момент меняют,
+ * пропускается до следующего запуска.
+ * Карты без слепого индекса ждут фонового заполнения, чтобы их можно было найти в архиве по номеру.
+ * <p>
+ * У неактивных карт, заблокированных до появления {@code status_changed_at}, время смены статуса пустое:
+ * перед архивацией оно проставляется теми же порциями текущим временем, так что срок для них отсчитывается
+ * с первого запуска. Миграция поэтому не переписывает всю таблицу.
+ * */
+@Slf4j
+@Component
+public class CardArchiveJob {
+    private static final String SELECT_DEAD = """
+            SELECT id FROM card
+            WHERE status <> 'ACTIVE' AND status_changed_at < ? AND balance = 0 AND number_hash IS NOT NULL
+            ORDER BY status_changed_at LIMIT ? FOR UPDATE SKIP LOCKED""";
+    private static final String SELECT_UNSTAMPED = """
+            SELECT id FROM card
+            WHERE status <> 'ACTIVE' AND status_changed_at IS NULL
+            LIMIT ? FOR UPDATE SKIP LOCKED""";
+    private static final String COLUMNS =
+            "id, number, number_hash, bin, owner_id, expiry_date, expires_on, status, status_changed_at, balance";
+
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CacheInvalidationBus cacheInvalidationBus;
+    private final boolean enabled;
+    private final Duration retention;
+    private final int batchSize;
+    private final Duration pause;
+
+    private final LongAdder archived = new LongAdder();
+
+    public CardArchiveJob(ShardRouter shardRouter,
+                          JdbcTemplate jdbcTemplate,
+                          PlatformTransactionManager transactionManager,
+                          CacheInvalidationBus cacheInvalidationBus,
+                          @Value("${bankcard.archive.enabled:true}") boolean enabled,
+                          @Value("${bankcard.archive.retention:180d}") Duration retention,
+                          @Value("${bankcard.archive.batch-size:1000}") int batchSize,
+                          @Value("${bankcard.archive.pause:50ms}") Duration pause) {
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        this.enabled = enabled;
+        this.retention = retention;
+        this.batchSize = batchSize;
+        this.pause = pause;
+    }
+
+    @Scheduled(cron = "${bankcard.archive.cron:0 30 1 * * *}")
+    public void scheduledArchive() {
+        if (enabled) {
+            archive(Instant.now().minus(retention));
+        }
+    }
+
+    /** Метод {@code archive()} переносит в архив карты, не активные с момента раньше {@code cutoff}, и возвращает их число */
+    public long archive(Instant cutoff) {
+        long total = 0;
+        for (String shard : shardRouter.shardIds()) {
+            try {
+                total += archiveShard(shard, cutoff);
+            } catch (RuntimeException e) {
+                log.error("Card archiving failed on {}", shard, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (total > 0) {
+            log.info("Archived {} cards inactive since before {}", total, cutoff);
+        }
+        return total;
+    }
+
+    private long archiveShard(String shard, Instant cutoff) throws InterruptedException {
+        while (true) {
+            int count = shardRouter.callOnShard(shard, false,
+                    () -> transactionTemplate.execute(status -> stampBatch()));
+            if (count > 0) {
+                log.info("Stamped status_changed_at of {} inactive cards on {}", count, shard);
+            }
+            if (count < batchSize) {
+                break;
+            }
+            Thread.sleep(pause.toMillis());
+        }
+
+        long moved = 0;
+        while (true) {
+            int count = shardRouter.callOnShard(shard, false,
+                    () -> transactionTemplate.execute(status -> archiveBatch(cutoff)));
+            moved += count;
+            if (count < batchSize) {
+                return moved;
+            }
+            Thread.sleep(pause.toMillis());
+        }
+    }
+
+    private int stampBatch() {
+        List<UUID> ids = jdbcTemplate.queryForList(SELECT_UNSTAMPED, UUID.class, batchSize);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        List<Object> args = new ArrayList<>(ids.size() + 1);
+        args.add(Timestamp.from(Instant.now()));
+        args.addAll(ids);
+        jdbcTemplate.update("UPDATE card SET status_changed_at = ?, version = version + 1 WHERE id IN ("
+                + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")", args.toArray());
+        cacheInvalidationBus.cardsChanged(ids);
+        return ids.size();
+    }
+
+    private int archiveBatch(Instant cutoff) {
+        List<UUID> ids = jdbcTemplate.queryForList(SELECT_DEAD, UUID.class, Timestamp.from(cutoff), batchSize);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+
+        List<Object> args = new ArrayList<>(ids.size() + 1);
+        args.add(Timestamp.from(Instant.now()));
+        args.addAll(ids);
+        jdbcTemplate.update("INSERT INTO card_archive (" + COLUMNS + ", archived_at) SELECT " + COLUMNS
+                + ", ? FROM card WHERE id IN (" + placeholders + ")", args.toArray());
+        jdbcTemplate.update("DELETE FROM card WHERE id IN (" + placeholders + ")", ids.toArray());
+        // карта в архиве больше не участвует в переводах
+        List<Object> cardArgs = new ArrayList<>(ids);
+        cardArgs.addAll(ids);
+        jdbcTemplate.update("DELETE FROM scheduled_transfer WHERE from_card_id IN (" + placeholders
+                + ") OR to_card_id IN (" + placeholders + ")", cardArgs.toArray());
+
+        cacheInvalidationBus.cardsChanged(ids);
+        archived.add(ids.size());
+        return ids.size();
+    }
+
+    public long archivedCount() {
+        return archived.sum();
+    }
+}
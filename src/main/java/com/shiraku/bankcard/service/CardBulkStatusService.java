@@ -0,0 +1,238 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.cache.CacheInvalidationBus;
+import com.shiraku.bankcard.datasource.ShardRouter;
+import com.shiraku.bankcard.model.CardOperation;
+import com.shiraku.bankcard.model.Status;
+import com.shiraku.bankcard.model.dto.BulkCardOperationResult;
+import com.shiraku.bankcard.model.dto.BulkCardStatusRequest;
+import com.shiraku.bankcard.model.event.CardChangedEvent;
+import com.shiraku.bankcard.repository.UserRepository;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.UUID;
+
+/** Класс CardBulkStatusService выполняет массовую блокировку, активацию и удаление карт администратором
+ * <p>
+ * Карты отбираются по списку id и/или условиям (владелец, статус, BIN) и обрабатываются порциями
+ * по {@code chunk-size}: каждая порция - отдельная короткая транзакция на шарде, где карты выбираются
+ * {@code SELECT ... FOR UPDATE} и меняются одним {@code UPDATE}/{@code DELETE ... WHERE id IN (...)}.
+ * Порции по условиям продвигаются по первичному ключу, поэтому изменённые карты повторно не выбираются.
+ * <p>
+ * Правила те же, что у одиночных операций {@link CardService}: уже заблокированная (активная) карта
+ * не ошибка, а попадает в {@code unchanged}; карта с истёкшим сроком не активируется, а карта с ненулевым балансом
+ * не удаляется - обе попадают в {@code rejected}.
+ * Для каждой изменённой карты публикуется {@link CardChangedEvent}, кэш инвалидируется через {@link CacheInvalidationBus}.
+ * */
+@Slf4j
+@Service
+@Tag(name = "Массовые операции с картами", description = "Класс сервиса для массовой смены статуса и удаления карт")
+public class CardBulkStatusService {
+    private static final UUID MIN_ID = new UUID(0L, 0L);
+
+    private final UserRepository userRepository;
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CacheInvalidationBus cacheInvalidationBus;
+    private final int chunkSize;
+
+    public CardBulkStatusService(UserRepository userRepository,
+                                 ShardRouter shardRouter,
+                                 JdbcTemplate jdbcTemplate,
+                                 PlatformTransactionManager transactionManager,
+                                 ApplicationEventPublisher eventPublisher,
+                                 CacheInvalidationBus cacheInvalidationBus,
+                                 @Value("${bankcard.bulk-status.chunk-size:500}") int chunkSize) {
+        this.userRepository = userRepository;
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        this.chunkSize = chunkSize;
+    }
+
+    private record Selection(List<UUID> cardIds, UUID ownerId, Status status, String bin) {
+    }
+
+    private record SelectedCard(UUID id, UUID ownerId, Status status, BigDecimal balance, LocalDate expiresOn) {
+    }
+
+    /** Счётчики одной порции; {@code last} - наибольший id порции для продвижения по ключу */
+    private record ChunkResult(int matched, int changed, int unchanged, int rejected, UUID last) {
+    }
+
+    public BulkCardOperationResult block(BulkCardStatusRequest request) {
+        return execute(request, CardOperation.BLOCKED);
+    }
+
+    public BulkCardOperationResult activate(BulkCardStatusRequest request) {
+        return execute(request, CardOperation.ACTIVATED);
+    }
+
+    public BulkCardOperationResult delete(BulkCardStatusRequest request) {
+        return execute(request, CardOperation.DELETED);
+    }
+
+    private BulkCardOperationResult execute(BulkCardStatusRequest request, CardOperation operation) {
+        UUID ownerId = null;
+        if (request.getOwner() != null) {
+            ownerId = userRepository.findByEmail(request.getOwner())
+                    .orElseThrow(() -> new UsernameNotFoundException("User not found"))
+                    .getId();
+        }
+        List<UUID> cardIds = request.getCardIds() == null || request.getCardIds().isEmpty()
+                ? null
+                : List.copyOf(new LinkedHashSet<>(request.getCardIds()));
+        Selection selection = new Selection(cardIds, ownerId, request.getStatus(), request.getBin());
+        // карты владельца лежат на его шарде
+        List<String> shards = ownerId != null ? List.of(shardRouter.shardFor(ownerId)) : shardRouter.shardIds();
+
+        BulkCardOperationResult result = new BulkCardOperationResult(operation, 0, 0, 0, 0, 0);
+        LocalDate today = LocalDate.now();
+        for (String shard : shards) {
+            if (cardIds != null) {
+                for (int from = 0; from < cardIds.size(); from += chunkSize) {
+                    List<UUID> chunk = cardIds.subList(from, Math.min(from + chunkSize, cardIds.size()));
+                    add(result, processChunk(shard, selection, chunk, null, operation, today));
+                }
+            } else {
+                UUID after = MIN_ID;
+                while (true) {
+                    ChunkResult chunk = processChunk(shard, selection, null, after, operation, today);
+                    add(result, chunk);
+                    if (chunk.matched() < chunkSize) {
+                        break;
+                    }
+                    after = chunk.last();
+                }
+            }
+        }
+        if (cardIds != null) {
+            result.setNotFound(cardIds.size() - result.getMatched());
+        }
+        log.info("Bulk {}: matched {}, changed {}, unchanged {}, rejected {}, not found {}", operation,
+                result.getMatched(), result.getChanged(), result.getUnchanged(), result.getRejected(), result.getNotFound());
+        return result;
+    }
+
+    private ChunkResult processChunk(String shard, Selection selection, List<UUID> ids, UUID after,
+                                     CardOperation operation, LocalDate today) {
+        return shardRouter.callOnShard(shard, false, () -> transactionTemplate.execute(status -> {
+            List<SelectedCard> cards = select(selection, ids, after);
+            if (cards.isEmpty()) {
+                return new ChunkResult(0, 0, 0, 0, after);
+            }
+
+            List<SelectedCard> targets = new ArrayList<>(cards.size());
+            int unchanged = 0;
+            int rejected = 0;
+            for (SelectedCard card : cards) {
+                if (operation == CardOperation.BLOCKED && card.status() == Status.BLOCKED
+                        || operation == CardOperation.ACTIVATED && card.status() == Status.ACTIVE) {
+                    unchanged++;
+                } else if (operation == CardOperation.ACTIVATED
+                        && card.expiresOn() != null && card.expiresOn().isBefore(today)
+                        || operation == CardOperation.DELETED && card.balance().signum() != 0) {
+                    rejected++;
+                } else {
+                    targets.add(card);
+                }
+            }
+            if (!targets.isEmpty()) {
+                apply(targets, operation);
+            }
+            return new ChunkResult(cards.size(), targets.size(), unchanged, rejected, cards.get(cards.size() - 1).id());
+        }));
+    }
+
+    private List<SelectedCard> select(Selection selection, List<UUID> ids, UUID after) {
+        StringBuilder sql = new StringBuilder("SELECT id, owner_id, status, balance, expires_on FROM card WHERE ");
+        List<Object> args = new ArrayList<>();
+        if (ids != null) {
+            sql.append("id IN (").append(placeholders(ids.size())).append(')');
+            args.addAll(ids);
+        } else {
+            sql.append("id > ?");
+            args.add(after);
+        }
+        if (selection.ownerId() != null) {
+            sql.append(" AND owner_id = ?");
+            args.add(selection.ownerId());
+        }
+        if (selection.status() != null) {
+            sql.append(" AND status = ?");
+            args.add(selection.status().name());
+        }
+        if (selection.bin() != null) {
+            sql.append(" AND bin = ?");
+            args.add(selection.bin());
+        }
+        sql.append(" ORDER BY id");
+        if (ids == null) {
+            sql.append(" LIMIT ?");
+            args.add(chunkSize);
+        }
+        sql.append(" FOR UPDATE");
+
+        return jdbcTemplate.query(sql.toString(), (rs, rowNum) -> new SelectedCard(
+                rs.getObject(1, UUID.class), rs.getObject(2, UUID.class), Status.valueOf(rs.getString(3)),
+                rs.getBigDecimal(4), rs.getObject(5, LocalDate.class)), args.toArray());
+    }
+
+    private void apply(List<SelectedCard> targets, CardOperation operation) {
+        List<UUID> ids = targets.stream().map(SelectedCard::id).toList();
+        Status newStatus = switch (operation) {
+            case BLOCKED -> Status.BLOCKED;
+            case ACTIVATED -> Status.ACTIVE;
+            default -> null;
+        };
+        if (newStatus != null) {
+            List<Object> args = new ArrayList<>(ids.size() + 2);
+            args.add(newStatus.name());
+            args.add(Timestamp.from(Instant.now()));
+            args.addAll(ids);
+            jdbcTemplate.update("UPDATE card SET status = ?, status_changed_at = ?, version = version + 1 WHERE id IN (" + placeholders(ids.size()) + ")",
+                    args.toArray());
+        } else {
+            jdbcTemplate.update("DELETE FROM card WHERE id IN (" + placeholders(ids.size()) + ")", ids.toArray());
+            List<Object> cardArgs = new ArrayList<>(ids);
+            cardArgs.addAll(ids);
+            jdbcTemplate.update("DELETE FROM scheduled_transfer WHERE from_card_id IN (" + placeholders(ids.size())
+                    + ") OR to_card_id IN (" + placeholders(ids.size()) + ")", cardArgs.toArray());
+        }
+
+        targets.forEach(card -> eventPublisher.publishEvent(new CardChangedEvent(card.id(), card.ownerId(), operation,
+                card.status(), newStatus != null ? newStatus : card.status(), card.balance(), null)));
+        cacheInvalidationBus.cardsChanged(ids);
+    }
+
+    private static void add(BulkCardOperationResult result, ChunkResult chunk) {
+        result.setMatched(result.getMatched() + chunk.matched());
+        result.setChanged(result.getChanged() + chunk.changed());
+        result.setUnchanged(result.getUnchanged() + chunk.unchanged());
+        result.setRejected(result.getRejected() + chunk.rejected());
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+}
@@ -0,0 +1,127 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.cache.CacheInvalidationBus;
+import com.shiraku.bankcard.datasource.ShardRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/** Класс CardExpiryBackfillJob заполняет {@code card.expires_on} из строкового срока {@code expiry_date} ({@code MM/yy})
+ * для карт, выпущенных до появления колонки
+ * <p>
+ * Работает так же, как {@link BlindIndexBackfillJob}: в фоне, по шардам, порциями по первичному ключу с паузой
+ * и условным обновлением, поэтому безопасен при перезапуске и на нескольких экземплярах.
+ * Строки с нераспознаваемым сроком пропускаются и попадают в журнал.
+ * */
+@Slf4j
+@Service
+public class CardExpiryBackfillJob {
+    private static final UUID MIN_ID = new UUID(0L, 0L);
+
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+    private final CacheInvalidationBus cacheInvalidationBus;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration pause;
+
+    public CardExpiryBackfillJob(ShardRouter shardRouter,
+                                 JdbcTemplate jdbcTemplate,
+                                 CacheInvalidationBus cacheInvalidationBus,
+                                 @Value("${bankcard.expiry.backfill.enabled:true}") boolean enabled,
+                                 @Value("${bankcard.expiry.backfill.batch-size:1000}") int batchSize,
+                                 @Value("${bankcard.expiry.backfill.pause:50ms}") Duration pause) {
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.pause = pause;
+    }
+
+    private record PendingRow(UUID id, String expiryDate) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            return;
+        }
+        Thread thread = new Thread(this::run, "card-expiry-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Метод {@code run()} проходит все шарды и возвращает количество заполненных строк */
+    public long run() {
+        long total = 0;
+        for (String shard : shardRouter.shardIds()) {
+            try {
+                total += backfillShard(shard);
+            } catch (RuntimeException e) {
+                log.error("Card expiry backfill failed on {}", shard, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return total;
+    }
+
+    private long backfillShard(String shard) throws InterruptedException {
+        long updated = 0;
+        UUID lastId = MIN_ID;
+        while (true) {
+            UUID after = lastId;
+            List<PendingRow> rows = shardRouter.callOnShard(shard, true, () -> jdbcTemplate.query(
+                    "SELECT id, expiry_date FROM card WHERE expires_on IS NULL AND id > ? ORDER BY id LIMIT ?",
+                    (rs, rowNum) -> new PendingRow(rs.getObject(1, UUID.class), rs.getString(2)),
+                    after, batchSize));
+            if (rows.isEmpty()) {
+                break;
+            }
+
+            List<Object[]> updates = new ArrayList<>(rows.size());
+            for (PendingRow row : rows) {
+                LocalDate expiresOn = parse(row);
+                if (expiresOn != null) {
+                    updates.add(new Object[]{expiresOn, row.id()});
+                }
+            }
+            shardRouter.runOnShard(shard, () -> {
+                jdbcTemplate.batchUpdate("UPDATE card SET expires_on = ?, version = version + 1 WHERE id = ? AND expires_on IS NULL", updates);
+                cacheInvalidationBus.cardsChanged(updates.stream().map(update -> (UUID) update[1]).toList());
+            });
+
+            updated += updates.size();
+            lastId = rows.get(rows.size() - 1).id();
+            if (rows.size() < batchSize) {
+                break;
+            }
+            Thread.sleep(pause.toMillis());
+        }
+        if (updated > 0) {
+            log.info("Card expiry backfilled {} cards on {}", updated, shard);
+        }
+        return updated;
+    }
+
+    private static LocalDate parse(PendingRow row) {
+        try {
+            return CardService.expiresOn(row.expiryDate());
+        } catch (DateTimeParseException | NullPointerException e) {
+            log.warn("Card {} has unparseable expiry date '{}'", row.id(), row.expiryDate());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.cache.CacheInvalidationBus;
+import com.shiraku.bankcard.datasource.ShardRouter;
+import com.shiraku.bankcard.model.CardOperation;
+import com.shiraku.bankcard.model.Status;
+import com.shiraku.bankcard.model.event.CardChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Класс CardExpirySweeper переводит карты с истёкшим сроком действия в статус {@code INACTIVE}
+ * <p>
+ * Работает по расписанию, на каждом шарде порциями по {@code chunk-size} карт: каждая порция - короткая
+ * транзакция, которая выбирает активные истёкшие карты по индексу {@code expires_on} с
+ * {@code FOR UPDATE SKIP LOCKED} и обновляет их одним {@code UPDATE ... WHERE id IN (...)}.
+ * Строки, заблокированные в этот момент другой транзакцией, пропускаются и будут обработаны при следующем запуске.
+ * Обновление увеличивает {@code version} карты, поэтому перевод, прочитавший карту до фиксации порции,
+ * не вернёт ей статус {@code ACTIVE}, а завершится ошибкой оптимистической блокировки.
+ * Длинных блокировок по всей таблице нет, между порциями делается пауза.
+ * <p>
+ * Для каждой карты публикуется {@link CardChangedEvent} с операцией {@code EXPIRED} (история, outbox, поток SSE),
+ * а кэш второго уровня инвалидируется, так как обновление идёт в обход Hibernate.
+ * */
+@Slf4j
+@Component
+public class CardExpirySweeper {
+    private static final String SELECT_EXPIRED = """
+            SELECT id, owner_id, balance FROM card
+            WHERE status = 'ACTIVE' AND expires_on < ?
+            ORDER BY expires_on LIMIT ? FOR UPDATE SKIP LOCKED""";
+
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CacheInvalidationBus cacheInvalidationBus;
+    private final boolean enabled;
+    private final int chunkSize;
+    private final Duration pause;
+
+    private final LongAdder expired = new LongAdder();
+
+    public CardExpirySweeper(ShardRouter shardRouter,
+                             JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             ApplicationEventPublisher eventPublisher,
+                             CacheInvalidationBus cacheInvalidationBus,
+                             @Value("${bankcard.expiry.sweep.enabled:true}") boolean enabled,
+                             @Value("${bankcard.expiry.sweep.chunk-size:1000}") int chunkSize,
+                             @Value("${bankcard.expiry.sweep.pause:20ms}") Duration pause) {
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+        this.pause = pause;
+    }
+
+    private record ExpiredCard(UUID id, UUID ownerId, BigDecimal balance) {
+    }
+
+    @Scheduled(cron = "${bankcard.expiry.sweep.cron:0 5 0 * * *}")
+    public void scheduledSweep() {
+        if (enabled) {
+            sweep(LocalDate.now());
+        }
+    }
+
+    /** Метод {@code sweep()} деактивирует карты, действовавшие последний день раньше {@code today}, и возвращает их число */
+    public long sweep(LocalDate today) {
+        long total = 0;
+        for (String shard : shardRouter.shardIds()) {
+            try {
+                total += sweepShard(shard, today);
+            } catch (RuntimeException e) {
+                log.error("Card expiry sweep failed on {}", shard, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (total > 0) {
+            log.info("Card expiry sweep deactivated {} cards", total);
+        }
+        return total;
+    }
+
+    private long sweepShard(String shard, LocalDate today) throws InterruptedException {
+        long deactivated = 0;
+        while (true) {
+            int count = shardRouter.callOnShard(shard, false,
+                    () -> transactionTemplate.execute(status -> expireChunk(today)));
+            deactivated += count;
+            if (count < chunkSize) {
+                return deactivated;
+            }
+            Thread.sleep(pause.toMillis());
+        }
+    }
+
+    private int expireChunk(LocalDate today) {
+        List<ExpiredCard> cards = jdbcTemplate.query(SELECT_EXPIRED, (rs, rowNum) -> new ExpiredCard(
+                rs.getObject(1, UUID.class), rs.getObject(2, UUID.class), rs.getBigDecimal(3)), today, chunkSize);
+        if (cards.isEmpty()) {
+            return 0;
+        }
+
+        List<UUID> ids = cards.stream().map(ExpiredCard::id).toList();
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        List<Object> args = new ArrayList<>(ids.size() + 1);
+        args.add(Timestamp.from(Instant.now()));
+        args.addAll(ids);
+        jdbcTemplate.update("UPDATE card SET status = 'INACTIVE', status_changed_at = ?, version = version + 1 WHERE id IN (" + placeholders + ")",
+                args.toArray());
+
+        cards.forEach(card -> eventPublisher.publishEvent(new CardChangedEvent(card.id(), card.ownerId(),
+                CardOperation.EXPIRED, Status.ACTIVE, Status.INACTIVE, card.balance(), null)));
+        cacheInvalidationBus.cardsChanged(ids);
+        expired.add(cards.size());
+        return cards.size();
+    }
+
+    public long expiredCount() {
+        return expired.sum();
+    }
+}
@@ -0,0 +1,62 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.model.entity.CardTransaction;
+import com.shiraku.bankcard.model.event.CardChangedEvent;
+import com.shiraku.bankcard.repository.CardTransactionRepository;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/** Класс CardHistoryRecorder записывает каждое изменение карты в историю операций {@code card_transaction}
+ * <p>
+ * Слушатель синхронный: запись выполняется в той же транзакции и на том же шарде, что и изменение карты,
+ * поэтому история не расходится с балансом при откате.
+ * <p>
+ * Все записи одной транзакции получают одно время {@code created_at}: списание и зачисление перевода
+ * попадают по одну сторону любой границы, и сверка сохранения суммы ({@link BalanceReconciliationJob})
+ * не видит ложного расхождения на стыке.
+ * */
+@Component
+public class CardHistoryRecorder {
+    private final CardTransactionRepository cardTransactionRepository;
+
+    public CardHistoryRecorder(CardTransactionRepository cardTransactionRepository) {
+        this.cardTransactionRepository = cardTransactionRepository;
+    }
+
+    @EventListener
+    public void onCardChanged(CardChangedEvent event) {
+        CardTransaction transaction = new CardTransaction();
+        transaction.setCardId(event.cardId());
+        transaction.setOwnerId(event.ownerId());
+        transaction.setOperation(event.operation());
+        transaction.setAmount(event.amount());
+        transaction.setBalance(event.balance());
+        transaction.setStatus(event.status());
+        // точность timestamptz в PostgreSQL - микросекунды; курсор страницы должен совпадать с сохранённым значением
+        transaction.setCreatedAt(recordedAt());
+        cardTransactionRepository.save(transaction);
+    }
+
+    private Instant recordedAt() {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return now;
+        }
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof RecordedAt recordedAt && recordedAt.recorder() == this) {
+                return recordedAt.at();
+            }
+        }
+        TransactionSynchronizationManager.registerSynchronization(new RecordedAt(this, now));
+        return now;
+    }
+
+    /** Время записей истории текущей транзакции; живёт, пока зарегистрирована синхронизация транзакции */
+    private record RecordedAt(CardHistoryRecorder recorder, Instant at) implements TransactionSynchronization {
+    }
+}
@@ -0,0 +1,215 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.datasource.ShardRouter;
+import com.shiraku.bankcard.model.CardOperation;
+import com.shiraku.bankcard.model.Status;
+import com.shiraku.bankcard.model.dto.BulkCardCreateRequest;
+import com.shiraku.bankcard.model.dto.BulkCardItem;
+import com.shiraku.bankcard.model.dto.IssuedCardDto;
+import com.shiraku.bankcard.model.entity.User;
+import com.shiraku.bankcard.model.event.CardChangedEvent;
+import com.shiraku.bankcard.repository.UserRepository;
+import com.shiraku.bankcard.utils.UuidV7;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/** Класс CardIssuanceService выпускает карты пачками (онбординг корпоративных клиентов)
+ * <p>
+ * Владельцы разрешаются одним запросом, номера генерируются и шифруются параллельно в отдельном пуле,
+ * а вставка идёт порциями через JDBC batch в транзакции на шарде владельца. Пока порция вставляется,
+ * следующая уже генерируется. Каждая порция отдаётся вызывающему сразу после фиксации, поэтому при обрыве
+ * выпуск останавливается, а уже выданные карты остаются выпущенными.
+ * */
+@Slf4j
+@Service
+@Tag(name = "Массовый выпуск карт", description = "Класс сервиса для массового выпуска карт")
+public class CardIssuanceService implements DisposableBean {
+    private static final String INSERT_SQL =
+            "INSERT INTO card (id, number, number_hash, bin, owner_id, expiry_date, expires_on, status, status_changed_at, balance) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final UserRepository userRepository;
+    private final CipherService cipherService;
+    private final CardNumberGenerator cardNumberGenerator;
+    private final BlindIndexService blindIndexService;
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ForkJoinPool generatorPool;
+    private final int chunkSize;
+    private final int maxCards;
+
+    public CardIssuanceService(UserRepository userRepository,
+                               CipherService cipherService,
+                               CardNumberGenerator cardNumberGenerator,
+                               BlindIndexService blindIndexService,
+                               ShardRouter shardRouter,
+                               JdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager,
+                               ApplicationEventPublisher eventPublisher,
+                               @Value("${bankcard.issuance.chunk-size:1000}") int chunkSize,
+                               @Value("${bankcard.issuance.parallelism:4}") int parallelism,
+                               @Value("${bankcard.issuance.max-cards:50000}") int maxCards) {
+        this.userRepository = userRepository;
+        this.cipherService = cipherService;
+        this.cardNumberGenerator = cardNumberGenerator;
+        this.blindIndexService = blindIndexService;
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.generatorPool = new ForkJoinPool(parallelism);
+        this.chunkSize = chunkSize;
+        this.maxCards = maxCards;
+    }
+
+    /** Позиция выпуска с уже разрешённым владельцем */
+    public record Allocation(String owner, UUID ownerId, int count) {
+    }
+
+    private record Chunk(Allocation allocation, int size) {
+    }
+
+    private record PendingCard(UUID id, String plainNumber, String encryptedNumber, String numberHash) {
+    }
+
+    /** Метод {@code resolveOwners()} проверяет запрос и находит всех владельцев одним запросом
+     * <p>
+     * Вызывается до начала потоковой выдачи, чтобы ошибки запроса вернулись обычным ответом.
+     * */
+    @Transactional(readOnly = true)
+    public List<Allocation> resolveOwners(BulkCardCreateRequest request) {
+        Map<String, Integer> counts = request.getItems().stream()
+                .collect(Collectors.toMap(BulkCardItem::getOwner, BulkCardItem::getCount, Integer::sum, LinkedHashMap::new));
+
+        long total = counts.values().stream().mapToLong(Integer::longValue).sum();
+        if (total > maxCards) {
+            throw new IllegalArgumentException("За один запрос можно выпустить не более " + maxCards + " карт");
+        }
+
+        Map<String, UUID> owners = userRepository.findByEmailIn(counts.keySet()).stream()
+                .collect(Collectors.toMap(User::getEmail, User::getId));
+
+        List<String> missing = counts.keySet().stream().filter(email -> !owners.containsKey(email)).toList();
+        if (!missing.isEmpty()) {
+            throw new UsernameNotFoundException("Пользователи не найдены: " + String.join(", ", missing));
+        }
+
+        return counts.entrySet().stream()
+                .map(entry -> new Allocation(entry.getKey(), owners.get(entry.getKey()), entry.getValue()))
+                .toList();
+    }
+
+    /** Метод {@code issue()} выпускает карты и передаёт в {@code sink} каждую зафиксированную порцию
+     * <p>
+     * Возвращает общее количество выпущенных карт.
+     * */
+    public int issue(List<Allocation> allocations, Consumer<List<IssuedCardDto>> sink) {
+        List<Chunk> chunks = new ArrayList<>();
+        for (Allocation allocation : allocations) {
+            for (int offset = 0; offset < allocation.count(); offset += chunkSize) {
+                chunks.add(new Chunk(allocation, Math.min(chunkSize, allocation.count() - offset)));
+            }
+        }
+        if (chunks.isEmpty()) {
+            return 0;
+        }
+
+        String expiryDate = CardService.generateExpiryDate();
+        int issued = 0;
+        CompletableFuture<List<PendingCard>> next = generate(chunks.get(0));
+        for (int i = 0; i < chunks.size(); i++) {
+            List<PendingCard> cards = await(next);
+            next = i + 1 < chunks.size() ? generate(chunks.get(i + 1)) : null;
+
+            Allocation allocation = chunks.get(i).allocation();
+            insert(allocation.ownerId(), cards, expiryDate);
+            issued += cards.size();
+
+            sink.accept(cards.stream()
+                    .map(card -> new IssuedCardDto(card.id(), allocation.owner(), allocation.ownerId(),
+                            mask(card.plainNumber()), expiryDate))
+                    .toList());
+        }
+        log.info("Bulk issuance finished: {} cards for {} owners", issued, allocations.size());
+        return issued;
+    }
+
+    @Override
+    public void destroy() {
+        generatorPool.shutdown();
+    }
+
+    private CompletableFuture<List<PendingCard>> generate(Chunk chunk) {
+        return CompletableFuture.supplyAsync(() -> IntStream.range(0, chunk.size())
+                .parallel()
+                .mapToObj(i -> {
+                    String number = cardNumberGenerator.generate();
+                    return new PendingCard(UuidV7.randomUuid(), number, cipherService.encrypt(number),
+                            blindIndexService.hash(number));
+                })
+                .toList(), generatorPool);
+    }
+
+    private void insert(UUID ownerId, List<PendingCard> cards, String expiryDate) {
+        LocalDate expiresOn = CardService.expiresOn(expiryDate);
+        Timestamp issuedAt = Timestamp.from(Instant.now());
+        shardRouter.runForOwner(ownerId, () -> transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(INSERT_SQL, cards, cards.size(), (ps, card) -> {
+                ps.setObject(1, card.id());
+                ps.setString(2, card.encryptedNumber());
+                ps.setString(3, card.numberHash());
+                ps.setString(4, CardService.binOf(card.plainNumber()));
+                ps.setObject(5, ownerId);
+                ps.setString(6, expiryDate);
+                ps.setObject(7, expiresOn);
+                ps.setString(8, Status.ACTIVE.name());
+                ps.setTimestamp(9, issuedAt);
+                ps.setBigDecimal(10, BigDecimal.ZERO);
+            });
+            cards.forEach(card -> eventPublisher.publishEvent(new CardChangedEvent(card.id(), ownerId,
+                    CardOperation.CREATED, null, Status.ACTIVE, BigDecimal.ZERO, null)));
+        }));
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static String mask(String number) {
+        return "**** **** **** " + number.substring(number.length() - 4);
+    }
+}
@@ -0,0 +1,175 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.datasource.ShardRouter;
+import com.shiraku.bankcard.utils.BloomFilter;
+import com.shiraku.bankcard.utils.Luhn;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Класс CardNumberGenerator выпускает уникальные номера карт, проходящие проверку по алгоритму Луна
+ * <p>
+ * Номер = BIN ({@code bankcard.card-number.bin}) + случайные цифры + контрольная цифра, всего 16 цифр.
+ * BIN - ровно 6 цифр: столько хранит {@code card.bin} и принимает отбор карт по BIN.
+ * Случайные цифры берутся из пула {@link SecureRandom}: у каждого потока свой экземпляр из пула,
+ * поэтому параллельная генерация (массовый выпуск) не упирается в одну блокировку.
+ * <p>
+ * Уникальность проверяется фильтром Блума в памяти, без запроса к базе на каждого кандидата: если фильтр
+ * отвечает «возможно есть», кандидат отбрасывается. В фильтр кладётся слепой индекс номера ({@link BlindIndexService}),
+ * поэтому при старте он заполняется чтением колонки {@code card.number_hash} со всех шардов без расшифровки;
+ * расшифровываются только строки, ещё не обработанные фоновым заполнением индекса. Учитываются и карты в архиве
+ * ({@code card_archive}), чтобы их номера не выпускались повторно. Номера, выпущенные другими экземплярами приложения, фильтр не видит - от них защищает
+ * ограничение уникальности {@code card.number} и {@code card.number_hash} в базе.
+ * <p>
+ * Размер фильтра - не меньше удвоенного числа уже выпущенных карт ({@code expected-insertions} - нижняя граница).
+ * Когда фильтр заполняется сверх расчётного числа ключей, в фоне строится новый вдвое больше текущего числа карт;
+ * пока он заполняется из базы, новые номера кладутся в оба фильтра. Заполнение экспортируется метрикой.
+ * */
+@Slf4j
+@Service
+@Tag(name = "Генерация номеров карт", description = "Класс сервиса для генерации уникальных номеров карт")
+public class CardNumberGenerator implements SmartInitializingSingleton {
+    private static final int NUMBER_LENGTH = 16;
+    private static final int MAX_ATTEMPTS = 100;
+
+    private final String bin;
+    private final SecureRandom[] randoms;
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private volatile BloomFilter issued;
+    private volatile BloomFilter rebuilding;
+    private final AtomicBoolean rebuildStarted = new AtomicBoolean();
+    private final AtomicLong rejectedCandidates = new AtomicLong();
+
+    private final CipherService cipherService;
+    private final BlindIndexService blindIndexService;
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readTemplate;
+
+    public CardNumberGenerator(CipherService cipherService,
+                               BlindIndexService blindIndexService,
+                               ShardRouter shardRouter,
+                               JdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${bankcard.card-number.bin:220070}") String bin,
+                               @Value("${bankcard.card-number.random-pool-size:0}") int randomPoolSize,
+                               @Value("${bankcard.card-number.bloom.expected-insertions:1000000}") long expectedInsertions,
+                               @Value("${bankcard.card-number.bloom.false-positive-rate:0.001}") double falsePositiveRate) {
+        if (!bin.matches("\\d{6}")) {
+            throw new IllegalArgumentException("BIN должен состоять из 6 цифр: " + bin);
+        }
+        this.bin = bin;
+        int poolSize = randomPoolSize > 0 ? randomPoolSize : Runtime.getRuntime().availableProcessors();
+        this.randoms = new SecureRandom[poolSize];
+        for (int i = 0; i < poolSize; i++) {
+            randoms[i] = new SecureRandom();
+        }
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.issued = new BloomFilter(expectedInsertions, falsePositiveRate);
+        this.cipherService = cipherService;
+        this.blindIndexService = blindIndexService;
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.jdbcTemplate.setFetchSize(10_000);
+        this.readTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate.setReadOnly(true);
+    }
+
+    /** Метод {@code generate()} возвращает новый номер карты, которого ещё нет среди известных фильтру */
+    public String generate() {
+        SecureRandom random = randoms[(int) (Thread.currentThread().getId() % randoms.length)];
+        StringBuilder sb = new StringBuilder(NUMBER_LENGTH);
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            sb.setLength(0);
+            sb.append(bin);
+            while (sb.length() < NUMBER_LENGTH - 1) {
+                sb.append((char) ('0' + random.nextInt(10)));
+            }
+            sb.append((char) ('0' + Luhn.checkDigit(sb)));
+
+            String candidate = sb.toString();
+            String numberHash = blindIndexService.hash(candidate);
+            BloomFilter filter = issued;
+            if (filter.put(numberHash)) {
+                BloomFilter next = rebuilding;
+                if (next != null) {
+                    next.put(numberHash);
+                }
+                if (filter.load() > 1 && rebuildStarted.compareAndSet(false, true)) {
+                    Thread thread = new Thread(this::rebuild, "card-number-filter");
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+                return candidate;
+            }
+            rejectedCandidates.incrementAndGet();
+        }
+        throw new IllegalStateException("Не удалось сгенерировать уникальный номер карты для BIN " + bin);
+    }
+
+    /** Метод {@code rejectedCandidates()} - число кандидатов, отброшенных фильтром (для метрик) */
+    public long rejectedCandidates() {
+        return rejectedCandidates.get();
+    }
+
+    /** Метод {@code filterLoad()} - заполнение фильтра относительно расчётного числа ключей (для метрик) */
+    public double filterLoad() {
+        return issued.load();
+    }
+
+    /** Метод {@code afterSingletonsInstantiated()} заполняет фильтр уже выпущенными номерами до старта веб-сервера */
+    @Override
+    public void afterSingletonsInstantiated() {
+        BloomFilter filter = sizedFilter();
+        load(filter);
+        issued = filter;
+    }
+
+    private void rebuild() {
+        try {
+            BloomFilter filter = sizedFilter();
+            rebuilding = filter;
+            load(filter);
+            issued = filter;
+        } catch (RuntimeException e) {
+            log.error("Card number filter rebuild failed, keeping the current filter", e);
+        } finally {
+            rebuilding = null;
+            rebuildStarted.set(false);
+        }
+    }
+
+    private BloomFilter sizedFilter() {
+        long cards = shardRouter.scatter(true, shard -> readTemplate.execute(status -> jdbcTemplate.queryForObject(
+                "SELECT (SELECT COUNT(*) FROM card) + (SELECT COUNT(*) FROM card_archive)", Long.class)))
+                .stream().mapToLong(Long::longValue).sum();
+        long size = Math.max(expectedInsertions, cards * 2);
+        log.info("Card number filter sized for {} numbers ({} issued)", size, cards);
+        return new BloomFilter(size, falsePositiveRate);
+    }
+
+    private void load(BloomFilter filter) {
+        long start = System.nanoTime();
+        long loaded = shardRouter.scatter(true, shard -> readTemplate.execute(status -> {
+            AtomicLong count = new AtomicLong();
+            jdbcTemplate.query("SELECT number_hash, number FROM card UNION ALL SELECT number_hash, number FROM card_archive", rs -> {
+                String numberHash = rs.getString(1);
+                filter.put(numberHash != null ? numberHash : blindIndexService.hash(cipherService.decrypt(rs.getString(2))));
+                count.incrementAndGet();
+            });
+            return count.get();
+        })).stream().mapToLong(Long::longValue).sum();
+        log.info("Card number filter loaded {} numbers in {} ms", loaded, (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -1,66 +1,242 @@
 package com.shiraku.bankcard.service;
 
+import com.shiraku.bankcard.datasource.DataSourceContextHolder;
+import com.shiraku.bankcard.datasource.DataSourceRoute;
+import com.shiraku.bankcard.datasource.ReplicaConsistencyTracker;
+import com.shiraku.bankcard.datasource.ShardDataSources;
+import com.shiraku.bankcard.datasource.ShardRouter;
+import com.shiraku.bankcard.model.CardOperation;
 import com.shiraku.bankcard.model.Status;
 import com.shiraku.bankcard.model.dto.AdminCardDto;
+import com.shiraku.bankcard.model.dto.ArchivedCardDto;
 import com.shiraku.bankcard.model.dto.CardCreateRequest;
+import com.shiraku.bankcard.model.dto.CardHistoryPage;
+import com.shiraku.bankcard.model.dto.CardTransactionDto;
 import com.shiraku.bankcard.model.dto.TransferRequest;
 import com.shiraku.bankcard.model.dto.UserCardDto;
+import com.shiraku.bankcard.model.entity.ArchivedCard;
 import com.shiraku.bankcard.model.entity.Card;
+import com.shiraku.bankcard.model.entity.CardTransaction;
 import com.shiraku.bankcard.model.entity.User;
+import com.shiraku.bankcard.model.event.CardChangedEvent;
+import com.shiraku.bankcard.repository.ArchivedCardRepository;
 import com.shiraku.bankcard.repository.CardRepository;
+import com.shiraku.bankcard.repository.CardTransactionRepository;
+import com.shiraku.bankcard.repository.ScheduledTransferRepository;
 import com.shiraku.bankcard.repository.UserRepository;
+import com.shiraku.bankcard.utils.SingleFlight;
+import com.shiraku.bankcard.utils.Uuids;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.persistence.EntityNotFoundException;
-import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
-import java.util.Random;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
 
 @Slf4j
 @Service
 @Tag(name = "Управление картами", description = "Класс сервиса для управления картами пользователя")
 public class CardService {
+    private static final DateTimeFormatter EXPIRY_FORMAT = DateTimeFormatter.ofPattern("MM/yy");
+    private static final int NUMBER_ATTEMPTS = 3;
+
     private final CardRepository cardRepository;
     private final UserRepository userRepository;
+    private final CardTransactionRepository cardTransactionRepository;
+    private final ArchivedCardRepository archivedCardRepository;
+    private final ScheduledTransferRepository scheduledTransferRepository;
     private final CipherService cipherService;
-
-    public CardService(CardRepository cardRepository, UserRepository userRepository, CipherService cipherService) {
+    private final ReplicaConsistencyTracker consistencyTracker;
+    private final ShardRouter shardRouter;
+    private final CardNumberGenerator cardNumberGenerator;
+    private final BlindIndexService blindIndexService;
+    private final AdvisoryLockService advisoryLockService;
+    private final CardUpdateBroadcaster cardUpdateBroadcaster;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SingleFlight<BalanceKey, BigDecimal> balanceFlight;
+    private final SingleFlight<UserCardsKey, Page<UserCardDto>> userCardsFlight;
+
+    public CardService(CardRepository cardRepository, UserRepository userRepository,
+                       CardTransactionRepository cardTransactionRepository,
+                       ArchivedCardRepository archivedCardRepository,
+                       ScheduledTransferRepository scheduledTransferRepository, CipherService cipherService,
+                       ReplicaConsistencyTracker consistencyTracker, ShardRouter shardRouter,
+                       CardNumberGenerator cardNumberGenerator, BlindIndexService blindIndexService,
+                       AdvisoryLockService advisoryLockService, CardUpdateBroadcaster cardUpdateBroadcaster,
+                       ApplicationEventPublisher eventPublisher,
+                       @Value("${bankcard.single-flight.timeout:2s}") Duration singleFlightTimeout) {
         this.cardRepository = cardRepository;
         this.userRepository = userRepository;
+        this.cardTransactionRepository = cardTransactionRepository;
+        this.archivedCardRepository = archivedCardRepository;
+        this.scheduledTransferRepository = scheduledTransferRepository;
         this.cipherService = cipherService;
+        this.consistencyTracker = consistencyTracker;
+        this.shardRouter = shardRouter;
+        this.cardNumberGenerator = cardNumberGenerator;
+        this.blindIndexService = blindIndexService;
+        this.advisoryLockService = advisoryLockService;
+        this.cardUpdateBroadcaster = cardUpdateBroadcaster;
+        this.eventPublisher = eventPublisher;
+        this.balanceFlight = new SingleFlight<>(singleFlightTimeout);
+        this.userCardsFlight = new SingleFlight<>(singleFlightTimeout);
+    }
+
+    private record BalanceKey(UUID cardId, String email) {
+    }
+
+    private record UserCardsKey(String email, Status status, int page, int size) {
     }
 
+    /** Метод {@code getUserCards()} выводит страницу карт пользователя
+     * <p>
+     * Одновременные одинаковые запросы объединяются ({@link SingleFlight}); после недавней записи пользователя
+     * запрос выполняется отдельно, чтобы он увидел свои изменения.
+     * */
     public Page<UserCardDto> getUserCards(String username, Status status, int page, int size) {
+        try (DataSourceContextHolder.Scope pinned = consistencyTracker.pinIfRecentWrite(username)) {
+            if (pinned != null) {
+                return loadUserCards(username, status, page, size);
+            }
+            return userCardsFlight.execute(new UserCardsKey(username, status, page, size),
+                    () -> loadUserCards(username, status, page, size));
+        }
+    }
+
+    /** Метод {@code getCardBalance()} выводит баланс карты владельца
+     * <p>
+     * Одновременные запросы баланса одной карты одним пользователем выполняют один запрос к базе.
+     * */
+    public BigDecimal getCardBalance(UUID cardId, String email) {
+        try (DataSourceContextHolder.Scope pinned = consistencyTracker.pinIfRecentWrite(email)) {
+            if (pinned != null) {
+                return loadCardBalance(cardId, email);
+            }
+            return balanceFlight.execute(new BalanceKey(cardId, email), () -> loadCardBalance(cardId, email));
+        }
+    }
+
+    /** Метод {@code getCardHistory()} выводит страницу истории операций по карте владельца, от новых к старым
+     * <p>
+     * Страницы выбираются по ключу {@code (created_at, id)}: {@code cursor} - значение {@code nextCursor}
+     * предыдущей страницы, для первой страницы - {@code null}.
+     * */
+    public CardHistoryPage getCardHistory(UUID cardId, String email, String cursor, int size) {
+        User user = userRepository.findByEmail(email)
+                .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+        HistoryCursor after = cursor == null || cursor.isBlank() ? null : HistoryCursor.decode(cursor);
+
+        try (DataSourceContextHolder.Scope pinned = consistencyTracker.pinIfRecentWrite(email)) {
+            List<CardTransaction> transactions = shardRouter.callForOwner(user.getId(), true, () -> {
+                Card card = cardRepository.findById(cardId)
+                        .orElseThrow(() -> new EntityNotFoundException("Card not found"));
+                if (!card.getOwnerId().equals(user.getId())) {
+                    throw new AccessDeniedException("You are not the owner of this card");
+                }
+                // на одну запись больше, чтобы узнать, есть ли следующая страница
+                Limit limit = Limit.of(size + 1);
+                return after == null
+                        ? cardTransactionRepository.findLatest(cardId, limit)
+                        : cardTransactionRepository.findBefore(cardId, after.createdAt(), after.id(), limit);
+            });
+
+            List<CardTransaction> page = transactions.subList(0, Math.min(size, transactions.size()));
+            String nextCursor = null;
+            if (transactions.size() > size) {
+                CardTransaction last = page.get(page.size() - 1);
+                nextCursor = new HistoryCursor(last.getCreatedAt(), last.getId()).encode();
+            }
+            return new CardHistoryPage(page.stream().map(CardService::toTransactionDto).toList(), nextCursor);
+        }
+    }
+
+    private record HistoryCursor(Instant createdAt, UUID id) {
+        String encode() {
+            String value = createdAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static HistoryCursor decode(String cursor) {
+            try {
+                String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = value.indexOf('|');
+                return new HistoryCursor(Instant.parse(value.substring(0, separator)),
+                        UUID.fromString(value.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Некорректный курсор страницы");
+            }
+        }
+    }
+
+    private static CardTransactionDto toTransactionDto(CardTransaction transaction) {
+        return new CardTransactionDto(transaction.getId(), transaction.getOperation(), transaction.getAmount(),
+                transaction.getBalance(), transaction.getStatus(), transaction.getCreatedAt());
+    }
+
+    /** Метод {@code streamCardUpdates()} подписывает пользователя на изменения баланса и статуса его карт (SSE) */
+    @Transactional(readOnly = true)
+    public SseEmitter streamCardUpdates(String email) {
+        User user = userRepository.findByEmail(email)
+                .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+        return cardUpdateBroadcaster.subscribe(user.getId());
+    }
+
+    public SingleFlight<?, ?> balanceFlight() {
+        return balanceFlight;
+    }
+
+    public SingleFlight<?, ?> userCardsFlight() {
+        return userCardsFlight;
+    }
+
+    private Page<UserCardDto> loadUserCards(String username, Status status, int page, int size) {
         UUID userId = userRepository.findByEmail(username)
                 .orElseThrow(() -> new UsernameNotFoundException("Пользователь не найден"))
                 .getId();
 
         Pageable pageable = PageRequest.of(page, size);
 
-        if(status == null){
-            return cardRepository.findByOwnerId(userId, pageable)
-                    .map(this::toUserDto);
-        }
+        return shardRouter.callForOwner(userId, true, () -> {
+            if(status == null){
+                return cardRepository.findByOwnerId(userId, pageable)
+                        .map(this::toUserDto);
+            }
 
-        return cardRepository.findByOwnerIdAndStatus(userId, status, pageable)
-                .map(this::toUserDto);
+            return cardRepository.findByOwnerIdAndStatus(userId, status, pageable)
+                    .map(this::toUserDto);
+        });
     }
 
-    public BigDecimal getCardBalance(UUID cardId, String email) {
+    private BigDecimal loadCardBalance(UUID cardId, String email) {
         User user = userRepository.findByEmail(email)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found"));
 
-        Card card = cardRepository.findById(cardId)
+        Card card = shardRouter.callForOwner(user.getId(), true, () -> cardRepository.findById(cardId))
                 .orElseThrow(() -> new EntityNotFoundException("Card not found"));
 
         if (!card.getOwnerId().equals(user.getId())) {
@@ -70,18 +246,38 @@ public class CardService {
         return card.getBalance();
     }
 
-    @Transactional
+    /** Метод {@code transfer()} переводит средства между картами пользователя
+     * <p>
+     * При {@code bankcard.transfer.advisory-locks=true} обе карты сначала блокируются advisory-блокировками
+     * ({@link AdvisoryLockService}), а затем читаются из базы в обход кэша, поэтому чтение-изменение-запись
+     * баланса сериализуется между всеми узлами без уровня изоляции SERIALIZABLE.
+     * <p>
+     * Пользователь ищется вне транзакции перевода (на основной базе), поэтому запрос не держит соединение
+     * шарда по умолчанию, пока идёт транзакция на шарде владельца ({@link ShardRouter}).
+     * */
     public void transfer(TransferRequest request, String email) {
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+        User user = findUserOnPrimary(email);
+
+        // Обе карты принадлежат одному владельцу, поэтому перевод всегда выполняется на одном шарде
+        shardRouter.runForOwner(user.getId(), () -> transferOnOwnerShard(request, user.getId()));
+        consistencyTracker.markWrite(email);
+    }
+
+    /** Метод {@code transferOnOwnerShard()} выполняет перевод в уже открытой транзакции на шарде владельца
+     * <p>
+     * Нужен, когда перевод должен быть атомарен с другой записью на том же шарде, например с продвижением
+     * расписания планового перевода ({@link ScheduledTransferScheduler}).
+     * */
+    public void transferOnOwnerShard(TransferRequest request, UUID ownerId) {
+        advisoryLockService.lockCards(request.getFromCardId(), request.getToCardId());
 
-        Card fromCard = cardRepository.findById(request.getFromCardId())
+        Card fromCard = findCardForUpdate(request.getFromCardId())
                 .orElseThrow(() -> new EntityNotFoundException("From card not found"));
 
-        Card toCard = cardRepository.findById(request.getToCardId())
+        Card toCard = findCardForUpdate(request.getToCardId())
                 .orElseThrow(() -> new EntityNotFoundException("To card not found"));
 
-        if (!fromCard.getOwnerId().equals(user.getId()) || !toCard.getOwnerId().equals(user.getId())) {
+        if (!fromCard.getOwnerId().equals(ownerId) || !toCard.getOwnerId().equals(ownerId)) {
             throw new AccessDeniedException("Обе карты должны принадлежать вам");
         }
 
@@ -98,89 +294,264 @@ public class CardService {
 
         cardRepository.save(fromCard);
         cardRepository.save(toCard);
+        publish(fromCard, Status.ACTIVE, CardOperation.DEBIT, request.getAmount());
+        publish(toCard, Status.ACTIVE, CardOperation.CREDIT, request.getAmount());
     }
 
-    public void blockCardByUser(UUID cardId, String email) {
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found"));
-
-        Card card = cardRepository.findById(cardId)
-                .orElseThrow(() -> new EntityNotFoundException("Card not found"));
-
-        if (!card.getOwnerId().equals(user.getId())) {
-            throw new AccessDeniedException("Вы не владелец этой карты");
+    /** Метод {@code findUserOnPrimary()} ищет пользователя для операции записи в основной базе, а не на реплике */
+    private User findUserOnPrimary(String email) {
+        try (DataSourceContextHolder.Scope ignored = DataSourceContextHolder.use(DataSourceRoute.PRIMARY)) {
+            return userRepository.findByEmail(email)
+                    .orElseThrow(() -> new UsernameNotFoundException("User not found"));
         }
+    }
 
-        card.setStatus(Status.BLOCKED);
-        cardRepository.save(card);
+    private Optional<Card> findCardForUpdate(UUID cardId) {
+        return advisoryLockService.isEnabled()
+                ? cardRepository.findCurrentById(cardId)
+                : cardRepository.findById(cardId);
+    }
+
+    public void blockCardByUser(UUID cardId, String email) {
+        User user = findUserOnPrimary(email);
+
+        shardRouter.runForOwner(user.getId(), () -> {
+            Card card = cardRepository.findById(cardId)
+                    .orElseThrow(() -> new EntityNotFoundException("Card not found"));
+
+            if (!card.getOwnerId().equals(user.getId())) {
+                throw new AccessDeniedException("Вы не владелец этой карты");
+            }
+
+            Status previousStatus = card.getStatus();
+            card.setStatus(Status.BLOCKED);
+            card.setStatusChangedAt(Instant.now());
+            cardRepository.save(card);
+            publish(card, previousStatus, CardOperation.BLOCKED, null);
+        });
+        consistencyTracker.markWrite(email);
     }
 
+    /** Метод {@code createCard()} выпускает карту пользователю
+     * <p>
+     * Фильтр {@link CardNumberGenerator} не видит номеров, выпущенных другими экземплярами приложения: если вставка
+     * нарушает уникальность номера, номер генерируется заново, до {@code NUMBER_ATTEMPTS} попыток.
+     * */
     public Card createCard(CardCreateRequest request) {
-        User user = userRepository.findByEmail(request.getOwner())
-                .orElseThrow(() -> new EntityNotFoundException("User not found"));
+        User user;
+        try (DataSourceContextHolder.Scope ignored = DataSourceContextHolder.use(DataSourceRoute.PRIMARY)) {
+            user = userRepository.findByEmail(request.getOwner())
+                    .orElseThrow(() -> new EntityNotFoundException("User not found"));
+        }
 
-        String plainCardNumber = generateCardNumber();
+        for (int attempt = 1; ; attempt++) {
+            Card card = newCard(user.getId());
+            try {
+                return shardRouter.callForOwner(user.getId(), false, () -> {
+                    Card saved = cardRepository.save(card);
+                    publish(saved, null, CardOperation.CREATED, null);
+                    return saved;
+                });
+            } catch (DuplicateKeyException e) {
+                if (attempt == NUMBER_ATTEMPTS) {
+                    throw e;
+                }
+                log.warn("Card number collided on insert, generating another one (attempt {})", attempt);
+            }
+        }
+    }
+
+    private Card newCard(UUID ownerId) {
+        String plainCardNumber = cardNumberGenerator.generate();
         String encryptedCardNumber = encrypt(plainCardNumber);
 
         Card card = new Card();
         card.setNumber(encryptedCardNumber);
-        card.setOwnerId(user.getId());
+        card.setNumberHash(blindIndexService.hash(plainCardNumber));
+        card.setBin(binOf(plainCardNumber));
+        card.setOwnerId(ownerId);
         card.setExpiryDate(generateExpiryDate());
+        card.setExpiresOn(expiresOn(card.getExpiryDate()));
         card.setStatus(Status.ACTIVE);
+        card.setStatusChangedAt(Instant.now());
         card.setBalance(BigDecimal.ZERO);
-
-        return cardRepository.save(card);
+        return card;
     }
 
     public void activateCard(UUID cardId) {
-        Card card = cardRepository.findById(cardId)
-                .orElseThrow(() -> new EntityNotFoundException("Карта не найдена"));
+        shardRouter.runOnShard(locateCard(cardId), () -> {
+            Card card = cardRepository.findById(cardId)
+                    .orElseThrow(() -> new EntityNotFoundException("Карта не найдена"));
+
+            if (card.getStatus() == Status.ACTIVE) {
+                throw new IllegalStateException("Карта уже активна");
+            }
+
+            if (card.getExpiresOn() != null && card.getExpiresOn().isBefore(LocalDate.now())) {
+                throw new IllegalStateException("Срок действия карты истёк");
+            }
+
+            Status previousStatus = card.getStatus();
+            card.setStatus(Status.ACTIVE);
+            card.setStatusChangedAt(Instant.now());
+            cardRepository.save(card);
+            publish(card, previousStatus, CardOperation.ACTIVATED, null);
+        });
+    }
+
+    public void blockCardByAdmin(UUID cardId) {
+        shardRouter.runOnShard(locateCard(cardId), () -> {
+            Card card = cardRepository.findById(cardId)
+                    .orElseThrow(() -> new EntityNotFoundException("Карта не найдена"));
+
+            if (card.getStatus() == Status.BLOCKED) {
+                throw new IllegalStateException("Карта уже заблокирована");
+            }
+
+            Status previousStatus = card.getStatus();
+            card.setStatus(Status.BLOCKED);
+            card.setStatusChangedAt(Instant.now());
+            cardRepository.save(card);
+            publish(card, previousStatus, CardOperation.BLOCKED, null);
+        });
+    }
 
-        if (card.getStatus() == Status.ACTIVE) {
-            throw new IllegalStateException("Карта уже активна");
+    /** Метод {@code getAllCards()} выводит страницу всех карт
+     * <p>
+     * При нескольких шардах каждая база отдаёт первые {@code (page + 1) * size} карт по id,
+     * а итоговая страница собирается слиянием (scatter-gather).
+     * */
+    @Transactional(readOnly = true)
+    public Page<AdminCardDto> getAllCards(int page, int size) {
+        Pageable pageable = PageRequest.of(page, size);
+        if (!shardRouter.isSharded()) {
+            return cardRepository.findAll(pageable)
+                    .map(this::toAdminDto);
         }
 
-        card.setStatus(Status.ACTIVE);
-        cardRepository.save(card);
+        PageRequest shardPage = PageRequest.of(0, (page + 1) * size, Sort.by("id"));
+        List<Page<Card>> pages = shardRouter.scatter(true, shard -> cardRepository.findAll(shardPage));
+
+        long total = pages.stream().mapToLong(Page::getTotalElements).sum();
+        List<AdminCardDto> content = pages.stream()
+                .flatMap(shardResult -> shardResult.getContent().stream())
+                .sorted(Comparator.comparing(Card::getId, Uuids.DATABASE_ORDER))
+                .skip((long) page * size)
+                .limit(size)
+                .map(this::toAdminDto)
+                .toList();
+        return new PageImpl<>(content, pageable, total);
     }
 
-    public void blockCardByAdmin(UUID cardId) {
-        Card card = cardRepository.findById(cardId)
+    /** Метод {@code findCardByNumber()} ищет карту по полному номеру через слепой индекс
+     * <p>
+     * Один запрос по уникальному индексу {@code number_hash} на каждом шарде вместо расшифровки всей таблицы.
+     * */
+    @Transactional(readOnly = true)
+    public AdminCardDto findCardByNumber(String cardNumber) {
+        String numberHash = blindIndexService.hash(cardNumber);
+        return shardRouter.scatter(true, shard -> cardRepository.findByNumberHash(numberHash).orElse(null)).stream()
+                .filter(Objects::nonNull)
+                .findFirst()
+                .map(this::toAdminDto)
                 .orElseThrow(() -> new EntityNotFoundException("Карта не найдена"));
+    }
 
-        if (card.getStatus() == Status.BLOCKED) {
-            throw new IllegalStateException("Карта уже заблокирована");
+    /** Метод {@code getArchivedCards()} выводит страницу архивных карт, новые в архиве сначала
+     * <p>
+     * С владельцем запрос идёт только на его шард; без владельца страница собирается слиянием со всех шардов,
+     * как в {@code getAllCards()}.
+     * */
+    public Page<ArchivedCardDto> getArchivedCards(String owner, int page, int size) {
+        Sort order = Sort.by(Sort.Order.desc("archivedAt"), Sort.Order.asc("id"));
+        Pageable pageable = PageRequest.of(page, size, order);
+        if (owner != null) {
+            User user = userRepository.findByEmail(owner)
+                    .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+            return shardRouter.callForOwner(user.getId(), true,
+                    () -> archivedCardRepository.findByOwnerId(user.getId(), pageable).map(this::toArchivedDto));
+        }
+        if (!shardRouter.isSharded()) {
+            return shardRouter.callOnShard(ShardDataSources.DEFAULT_SHARD, true,
+                    () -> archivedCardRepository.findAll(pageable).map(this::toArchivedDto));
         }
 
-        card.setStatus(Status.BLOCKED);
-        cardRepository.save(card);
+        PageRequest shardPage = PageRequest.of(0, (page + 1) * size, order);
+        List<Page<ArchivedCard>> pages = shardRouter.scatter(true, shard -> archivedCardRepository.findAll(shardPage));
+
+        long total = pages.stream().mapToLong(Page::getTotalElements).sum();
+        List<ArchivedCardDto> content = pages.stream()
+                .flatMap(shardResult -> shardResult.getContent().stream())
+                .sorted(Comparator.comparing(ArchivedCard::getArchivedAt).reversed()
+                        .thenComparing(ArchivedCard::getId, Uuids.DATABASE_ORDER))
+                .skip((long) page * size)
+                .limit(size)
+                .map(this::toArchivedDto)
+                .toList();
+        return new PageImpl<>(content, pageable, total);
     }
 
-    public Page<AdminCardDto> getAllCards(int page, int size) {
-        Pageable pageable = PageRequest.of(page, size);
-        return cardRepository.findAll(pageable)
-                .map(this::toAdminDto);
+    @Transactional(readOnly = true)
+    public ArchivedCardDto getArchivedCard(UUID cardId) {
+        return shardRouter.scatter(true, shard -> archivedCardRepository.findById(cardId).orElse(null)).stream()
+                .filter(Objects::nonNull)
+                .findFirst()
+                .map(this::toArchivedDto)
+                .orElseThrow(() -> new EntityNotFoundException("Карта не найдена в архиве"));
     }
 
-    public void deleteCard(UUID cardId) {
-        Card card = cardRepository.findById(cardId)
-                .orElseThrow(() -> new EntityNotFoundException("Карта не найдена"));
+    /** Метод {@code findArchivedCardByNumber()} ищет архивную карту по полному номеру через слепой индекс */
+    @Transactional(readOnly = true)
+    public ArchivedCardDto findArchivedCardByNumber(String cardNumber) {
+        String numberHash = blindIndexService.hash(cardNumber);
+        return shardRouter.scatter(true, shard -> archivedCardRepository.findByNumberHash(numberHash).orElse(null)).stream()
+                .filter(Objects::nonNull)
+                .findFirst()
+                .map(this::toArchivedDto)
+                .orElseThrow(() -> new EntityNotFoundException("Карта не найдена в архиве"));
+    }
 
-        cardRepository.delete(card);
+    public void deleteCard(UUID cardId) {
+        shardRouter.runOnShard(locateCard(cardId), () -> {
+            Card card = cardRepository.findById(cardId)
+                    .orElseThrow(() -> new EntityNotFoundException("Карта не найдена"));
+
+            cardRepository.delete(card);
+            scheduledTransferRepository.deleteByCardId(cardId);
+            publish(card, card.getStatus(), CardOperation.DELETED, null);
+        });
     }
 
-    private String generateCardNumber() {
-        Random random = new Random();
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < 16; i++) {
-            sb.append(random.nextInt(10));
+    /** Метод {@code locateCard()} определяет шард карты, когда известен только её id (операции администратора) */
+    private String locateCard(UUID cardId) {
+        if (!shardRouter.isSharded()) {
+            return ShardDataSources.DEFAULT_SHARD;
         }
-        return sb.toString();
+        return shardRouter.scatter(true, shard -> cardRepository.existsById(cardId) ? shard : null).stream()
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElseThrow(() -> new EntityNotFoundException("Карта не найдена"));
     }
 
-    private String generateExpiryDate() {
+    /** Событие публикуется внутри транзакции шарда, чтобы слушатели работали в ней же */
+    private void publish(Card card, Status previousStatus, CardOperation operation, BigDecimal amount) {
+        eventPublisher.publishEvent(new CardChangedEvent(card.getId(), card.getOwnerId(), operation,
+                previousStatus, card.getStatus(), card.getBalance(), amount));
+    }
+
+    static String generateExpiryDate() {
         LocalDate expiry = LocalDate.now().plusYears(4);
-        return expiry.format(DateTimeFormatter.ofPattern("MM/yy"));
+        return expiry.format(EXPIRY_FORMAT);
+    }
+
+    /** Метод {@code binOf()} - BIN карты, первые 6 цифр номера; длина BIN выпуска проверяется {@link CardNumberGenerator} */
+    static String binOf(String cardNumber) {
+        return cardNumber.substring(0, 6);
+    }
+
+    /** Метод {@code expiresOn()} - последний день действия карты со сроком {@code MM/yy} */
+    static LocalDate expiresOn(String expiryDate) {
+        return YearMonth.parse(expiryDate, EXPIRY_FORMAT).atEndOfMonth();
     }
 
     public String maskCardNumber(String encryptedCardNumber) {
@@ -212,4 +583,9 @@ public class CardService {
         return dto;
     }
 
+    private ArchivedCardDto toArchivedDto(ArchivedCard card) {
+        return new ArchivedCardDto(card.getId(), maskCardNumber(card.getNumber()), card.getExpiryDate(), card.getStatus(),
+                card.getOwnerId(), card.getBalance(), card.getStatusChangedAt(), card.getArchivedAt());
+    }
+
 }
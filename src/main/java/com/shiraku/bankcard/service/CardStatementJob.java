@@ -0,0 +1,442 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.datasource.ShardRouter;
+import com.shiraku.bankcard.model.CardOperation;
+import com.shiraku.bankcard.model.JobStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Класс CardStatementJob формирует месячные выписки по активным картам
+ * <p>
+ * Для каждой активной карты в {@code output-dir/<месяц>/<владелец>/<карта>.csv} пишется текстовая выписка:
+ * баланс на начало месяца, списания и зачисления из {@code card_transaction} за месяц и баланс на конец.
+ * Границы месяца - по UTC, выписка готовится за предыдущий месяц.
+ * <p>
+ * Карты на каждом шарде делятся на диапазоны владельцев по {@code range-size} карт, диапазоны обрабатываются
+ * пулом из {@code parallelism} потоков. Диапазон читается одним потоковым запросом ({@code fetch-size})
+ * в порядке владелец - карта - время операции, и каждая строка сразу дописывается в файл карты через
+ * буферизованный {@link FileChannel}, поэтому память не зависит от числа карт и операций.
+ * <p>
+ * Диапазоны и их состояние сохраняются в {@code statement_range}. Запуск выполняется ежедневно:
+ * готовая выписка месяца не пересоздаётся, а прерванная продолжается с незавершённых диапазонов
+ * (файлы диапазона при повторе перезаписываются).
+ * */
+@Slf4j
+@Component
+public class CardStatementJob implements DisposableBean {
+    private static final UUID MIN_ID = new UUID(0L, 0L);
+    private static final BigDecimal NO_BALANCE = BigDecimal.ZERO.setScale(2);
+    // баланс на начало месяца считается один раз на карту в LATERAL-подзапросе до соединения с операциями месяца
+    private static final String SELECT_STATEMENTS = """
+            SELECT c.id, c.owner_id, c.number, o.balance,
+                   t.operation, t.amount, t.balance, t.created_at
+            FROM card c
+            LEFT JOIN LATERAL (SELECT p.balance FROM card_transaction p WHERE p.card_id = c.id AND p.created_at < ?
+                               ORDER BY p.created_at DESC, p.id DESC LIMIT 1) o ON TRUE
+            LEFT JOIN card_transaction t ON t.card_id = c.id AND t.created_at >= ? AND t.created_at < ?
+            WHERE c.status = 'ACTIVE' AND %s
+            ORDER BY c.owner_id, c.id, t.created_at, t.id""";
+    // H2 в тестах не поддерживает LATERAL: тот же результат через коррелированный подзапрос в списке выборки
+    private static final String SELECT_STATEMENTS_PORTABLE = """
+            SELECT c.id, c.owner_id, c.number,
+                   (SELECT p.balance FROM card_transaction p WHERE p.card_id = c.id AND p.created_at < ?
+                    ORDER BY p.created_at DESC, p.id DESC LIMIT 1),
+                   t.operation, t.amount, t.balance, t.created_at
+            FROM card c
+            LEFT JOIN card_transaction t ON t.card_id = c.id AND t.created_at >= ? AND t.created_at < ?
+            WHERE c.status = 'ACTIVE' AND %s
+            ORDER BY c.owner_id, c.id, t.created_at, t.id""";
+
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate streamingTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readTemplate;
+    private final CipherService cipherService;
+    private final String selectStatements;
+    private final ExecutorService executor;
+    private final boolean enabled;
+    private final int rangeSize;
+    private final Path outputDir;
+    private final Duration staleAfter;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final LongAdder written = new LongAdder();
+
+    public CardStatementJob(ShardRouter shardRouter,
+                            JdbcTemplate jdbcTemplate,
+                            PlatformTransactionManager transactionManager,
+                            CipherService cipherService,
+                            @Value("${spring.datasource.url:}") String url,
+                            @Value("${bankcard.statement.enabled:true}") boolean enabled,
+                            @Value("${bankcard.statement.parallelism:4}") int parallelism,
+                            @Value("${bankcard.statement.range-size:5000}") int rangeSize,
+                            @Value("${bankcard.statement.fetch-size:1000}") int fetchSize,
+                            @Value("${bankcard.statement.output-dir:statements}") Path outputDir,
+                            @Value("${bankcard.statement.stale-after:30m}") Duration staleAfter) {
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.streamingTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.streamingTemplate.setFetchSize(fetchSize);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate = new TransactionTemplate(transactionManager);
+        this.readTemplate.setReadOnly(true);
+        this.cipherService = cipherService;
+        this.selectStatements = url.startsWith("jdbc:postgresql:") ? SELECT_STATEMENTS : SELECT_STATEMENTS_PORTABLE;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "statement-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.enabled = enabled;
+        this.rangeSize = rangeSize;
+        this.outputDir = outputDir;
+        this.staleAfter = staleAfter;
+    }
+
+    /** Итог формирования выписок за месяц; {@code directory} - каталог файлов месяца */
+    public record Summary(UUID runId, YearMonth period, JobStatus status, long cards, Path directory) {
+    }
+
+    private record Run(UUID id, JobStatus status) {
+    }
+
+    /** Диапазон владельцев {@code [start, end)}; {@code end == null} - до конца */
+    private record Range(String shard, int rangeNo, UUID start, UUID end, JobStatus status) {
+    }
+
+    private record RangeResult(long owners, long cards) {
+    }
+
+    @Scheduled(cron = "${bankcard.statement.cron:0 0 4 * * *}", zone = "UTC")
+    public void scheduledRun() {
+        if (enabled) {
+            run(YearMonth.now(ZoneOffset.UTC).minusMonths(1));
+        }
+    }
+
+    /** Метод {@code run()} формирует выписки за месяц или продолжает прерванное формирование; {@code null}, если оно уже идёт */
+    public Summary run(YearMonth period) {
+        if (!running.compareAndSet(false, true)) {
+            log.info("Statement generation is already running");
+            return null;
+        }
+        try {
+            Run run = findRun(period).orElseGet(() -> plan(period));
+            if (run.status() != JobStatus.DONE) {
+                List<Future<?>> futures = new ArrayList<>();
+                for (Range range : ranges(run.id())) {
+                    if (range.status() != JobStatus.DONE) {
+                        futures.add(executor.submit(() -> processRange(run.id(), period, range)));
+                    }
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            }
+            return finish(run.id(), period);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Формирование выписок завершилось с ошибкой", e.getCause());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /** Количество файлов выписок, записанных с момента запуска приложения */
+    public long writtenCount() {
+        return written.sum();
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private Optional<Run> findRun(YearMonth period) {
+        return jdbcTemplate.query("SELECT id, status FROM statement_run WHERE period = ?",
+                (rs, rowNum) -> new Run(rs.getObject(1, UUID.class), JobStatus.valueOf(rs.getString(2))),
+                period.toString()).stream().findFirst();
+    }
+
+    private Run plan(YearMonth period) {
+        Instant now = Instant.now();
+        UUID runId = UUID.randomUUID();
+        List<Range> ranges = new ArrayList<>();
+        for (String shard : shardRouter.shardIds()) {
+            List<UUID> bounds = shardRouter.callOnShard(shard, true, this::boundaries);
+            UUID start = MIN_ID;
+            for (int i = 0; i <= bounds.size(); i++) {
+                UUID end = i < bounds.size() ? bounds.get(i) : null;
+                ranges.add(new Range(shard, i, start, end, JobStatus.PENDING));
+                start = end;
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("INSERT INTO statement_run (id, period, status, ranges, cards, created_at, updated_at) "
+                            + "VALUES (?, ?, ?, ?, 0, ?, ?)",
+                    runId, period.toString(), JobStatus.RUNNING.name(), ranges.size(), Timestamp.from(now), Timestamp.from(now));
+            jdbcTemplate.batchUpdate("INSERT INTO statement_range (run_id, shard, range_no, owner_start, owner_end, status, "
+                            + "owners, cards, updated_at) VALUES (?, ?, ?, ?, ?, ?, 0, 0, ?)",
+                    ranges, 500, (ps, range) -> {
+                        ps.setObject(1, runId);
+                        ps.setString(2, range.shard());
+                        ps.setInt(3, range.rangeNo());
+                        ps.setObject(4, range.start());
+                        ps.setObject(5, range.end());
+                        ps.setString(6, JobStatus.PENDING.name());
+                        ps.setTimestamp(7, Timestamp.from(now));
+                    });
+        });
+        log.info("Statements for {} planned with {} ranges", period, ranges.size());
+        return new Run(runId, JobStatus.RUNNING);
+    }
+
+    /** Первые владельцы диапазонов, кроме первого; карты одного владельца не делятся между диапазонами */
+    private List<UUID> boundaries() {
+        List<UUID> bounds = new ArrayList<>();
+        UUID from = MIN_ID;
+        while (true) {
+            List<UUID> next = jdbcTemplate.queryForList(
+                    "SELECT owner_id FROM card WHERE owner_id >= ? ORDER BY owner_id LIMIT 1 OFFSET ?", UUID.class, from, rangeSize);
+            if (!next.isEmpty() && next.get(0).equals(from)) {
+                // у владельца больше range-size карт: следующий диапазон начинается со следующего владельца
+                next = jdbcTemplate.queryForList(
+                        "SELECT owner_id FROM card WHERE owner_id > ? ORDER BY owner_id LIMIT 1", UUID.class, from);
+            }
+            if (next.isEmpty()) {
+                return bounds;
+            }
+            from = next.get(0);
+            bounds.add(from);
+        }
+    }
+
+    private List<Range> ranges(UUID runId) {
+        return jdbcTemplate.query("SELECT shard, range_no, owner_start, owner_end, status FROM statement_range "
+                        + "WHERE run_id = ? ORDER BY shard, range_no",
+                (rs, rowNum) -> new Range(rs.getString(1), rs.getInt(2), rs.getObject(3, UUID.class),
+                        rs.getObject(4, UUID.class), JobStatus.valueOf(rs.getString(5))), runId);
+    }
+
+    /** Диапазон берётся, если он не начат, упал или брошен другим процессом дольше {@code stale-after} назад */
+    private boolean claim(UUID runId, Range range) {
+        Instant now = Instant.now();
+        return jdbcTemplate.update("UPDATE statement_range SET status = 'RUNNING', updated_at = ? "
+                        + "WHERE run_id = ? AND shard = ? AND range_no = ? "
+                        + "AND (status IN ('PENDING', 'FAILED') OR (status = 'RUNNING' AND updated_at < ?))",
+                Timestamp.from(now), runId, range.shard(), range.rangeNo(), Timestamp.from(now.minus(staleAfter))) == 1;
+    }
+
+    private void processRange(UUID runId, YearMonth period, Range range) {
+        if (!claim(runId, range)) {
+            return;
+        }
+        try {
+            RangeResult result = shardRouter.callOnShard(range.shard(), true,
+                    () -> readTemplate.execute(status -> writeStatements(period, range)));
+            jdbcTemplate.update("UPDATE statement_range SET status = 'DONE', owners = ?, cards = ?, last_error = NULL, "
+                            + "updated_at = ? WHERE run_id = ? AND shard = ? AND range_no = ?",
+                    result.owners(), result.cards(), Timestamp.from(Instant.now()), runId, range.shard(), range.rangeNo());
+        } catch (RuntimeException e) {
+            log.error("Statements for {} range {} on {} failed", period, range.rangeNo(), range.shard(), e);
+            String error = String.valueOf(e.getMessage());
+            jdbcTemplate.update("UPDATE statement_range SET status = 'FAILED', last_error = ?, updated_at = ? "
+                            + "WHERE run_id = ? AND shard = ? AND range_no = ?",
+                    error.length() > 1000 ? error.substring(0, 1000) : error, Timestamp.from(Instant.now()),
+                    runId, range.shard(), range.rangeNo());
+        }
+    }
+
+    private RangeResult writeStatements(YearMonth period, Range range) {
+        Instant from = period.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+        Instant to = period.plusMonths(1).atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+        List<Object> args = new ArrayList<>(List.of(Timestamp.from(from), Timestamp.from(from), Timestamp.from(to)));
+        args.add(range.start());
+        String owners = "c.owner_id >= ?";
+        if (range.end() != null) {
+            owners += " AND c.owner_id < ?";
+            args.add(range.end());
+        }
+
+        StatementWriter writer = new StatementWriter(outputDir.resolve(period.toString()), period);
+        try {
+            streamingTemplate.query(selectStatements.formatted(owners), writer, args.toArray());
+            writer.closeCard();
+        } finally {
+            writer.abort();
+        }
+        return new RangeResult(writer.owners, writer.cards);
+    }
+
+    private Summary finish(UUID runId, YearMonth period) {
+        long unfinished = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM statement_range WHERE run_id = ? AND status <> 'DONE'", Long.class, runId);
+        long cards = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(cards), 0) FROM statement_range WHERE run_id = ?", Long.class, runId);
+        JobStatus status = unfinished == 0 ? JobStatus.DONE : JobStatus.FAILED;
+        jdbcTemplate.update("UPDATE statement_run SET status = ?, cards = ?, updated_at = ? WHERE id = ? AND status <> 'DONE'",
+                status.name(), cards, Timestamp.from(Instant.now()), runId);
+        if (status == JobStatus.DONE) {
+            log.info("Statements for {} written for {} cards", period, cards);
+        } else {
+            log.warn("Statements for {} left {} ranges unfinished, they will be resumed by the next run", period, unfinished);
+        }
+        return new Summary(runId, period, status, cards, outputDir.resolve(period.toString()));
+    }
+
+    private String mask(String encryptedNumber) {
+        String number = cipherService.decrypt(encryptedNumber);
+        return "**** **** **** " + number.substring(number.length() - 4);
+    }
+
+    /** Строки приходят по картам подряд: файл карты открывается на её первой строке и закрывается на первой строке следующей */
+    private final class StatementWriter implements RowCallbackHandler {
+        private final Path periodDir;
+        private final YearMonth period;
+        private UUID ownerId;
+        private UUID cardId;
+        private BufferedWriter out;
+        private BigDecimal closing;
+        private long owners;
+        private long cards;
+
+        StatementWriter(Path periodDir, YearMonth period) {
+            this.periodDir = periodDir;
+            this.period = period;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            try {
+                UUID rowCard = rs.getObject(1, UUID.class);
+                String operation = rs.getString(5);
+                BigDecimal amount = rs.getBigDecimal(6);
+                BigDecimal balance = rs.getBigDecimal(7);
+                if (!rowCard.equals(cardId)) {
+                    closeCard();
+                    openCard(rowCard, rs.getObject(2, UUID.class), rs.getString(3),
+                            opening(rs.getBigDecimal(4), operation, amount, balance));
+                }
+                if (operation == null) {
+                    return;
+                }
+                CardOperation cardOperation = CardOperation.valueOf(operation);
+                if (cardOperation == CardOperation.DEBIT || cardOperation == CardOperation.CREDIT
+                        || cardOperation == CardOperation.ACCRUAL) {
+                    out.write(rs.getTimestamp(8).toInstant() + "," + cardOperation + "," + amount + "," + balance + "\n");
+                }
+                if (balance != null) {
+                    closing = balance;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /** Баланс на начало месяца - последний записанный до месяца, а для карты, выпущенной в этом месяце, - до первой операции */
+        private BigDecimal opening(BigDecimal before, String operation, BigDecimal amount, BigDecimal balance) {
+            if (before != null) {
+                return before;
+            }
+            if (operation == null || balance == null) {
+                return NO_BALANCE;
+            }
+            return switch (CardOperation.valueOf(operation)) {
+                case DEBIT -> balance.add(amount);
+                case CREDIT, ACCRUAL -> balance.subtract(amount);
+                case CREATED -> NO_BALANCE;
+                default -> balance;
+            };
+        }
+
+        private void openCard(UUID card, UUID owner, String number, BigDecimal opening) throws IOException {
+            Path dir = periodDir.resolve(owner.toString());
+            if (!owner.equals(ownerId)) {
+                Files.createDirectories(dir);
+                ownerId = owner;
+                owners++;
+            }
+            FileChannel channel = FileChannel.open(dir.resolve(card + ".csv"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), 16 * 1024);
+            cardId = card;
+            closing = opening;
+            out.write("# statement," + period + "\n");
+            out.write("# card," + card + "," + mask(number) + "\n");
+            out.write("# owner," + owner + "\n");
+            out.write("# opening_balance," + opening + "\n");
+            out.write("date,operation,amount,balance\n");
+        }
+
+        void closeCard() {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.write("# closing_balance," + closing + "\n");
+                out.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                out = null;
+            }
+            cards++;
+            written.increment();
+        }
+
+        /** Закрывает файл, оставшийся открытым после ошибки; он будет перезаписан при повторе диапазона */
+        void abort() {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.debug("Statement file of card {} could not be closed", cardId, e);
+            } finally {
+                out = null;
+            }
+        }
+    }
+}
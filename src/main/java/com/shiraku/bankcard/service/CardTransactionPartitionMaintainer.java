@@ -0,0 +1,129 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.datasource.DataSourceContextHolder;
+import com.shiraku.bankcard.datasource.DataSourceRoute;
+import com.shiraku.bankcard.datasource.ShardRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/** Класс CardTransactionPartitionMaintainer обслуживает месячные секции таблицы истории {@code card_transaction} (PostgreSQL)
+ * <p>
+ * При старте и раз в сутки на каждом шарде создаёт секции на текущий и {@code months-ahead} следующих месяцев
+ * (границы - по UTC). Если задан {@code retention-months}, секции старше этого срока отсоединяются
+ * ({@code DETACH PARTITION}): это изменение только метаданных, без переноса строк, а отсоединённая таблица
+ * остаётся в базе для выгрузки в архив или удаления. Запросы истории по карте идут только по подключённым секциям.
+ * <p>
+ * Строки вне созданных секций попадают в {@code card_transaction_default}, поэтому запись истории
+ * не ломается, если обслуживание не успело выполниться.
+ * */
+@Slf4j
+@Component
+public class CardTransactionPartitionMaintainer {
+    static final String TABLE = "card_transaction";
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("'_y'yyyy'm'MM");
+
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int monthsAhead;
+    private final int retentionMonths;
+
+    public CardTransactionPartitionMaintainer(ShardRouter shardRouter,
+                                              JdbcTemplate jdbcTemplate,
+                                              @Value("${spring.datasource.url:}") String url,
+                                              @Value("${bankcard.history.partitions.months-ahead:3}") int monthsAhead,
+                                              @Value("${bankcard.history.partitions.retention-months:0}") int retentionMonths) {
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = url.startsWith("jdbc:postgresql:");
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${bankcard.history.partitions.cron:0 15 3 * * *}", zone = "UTC")
+    public void maintain() {
+        if (!enabled) {
+            return;
+        }
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        for (String shard : shardRouter.shardIds()) {
+            // DDL выполняется вне транзакции, на основной базе шарда
+            try (DataSourceContextHolder.Scope shardScope = DataSourceContextHolder.useShard(shard);
+                 DataSourceContextHolder.Scope route = DataSourceContextHolder.use(DataSourceRoute.PRIMARY)) {
+                for (int i = 0; i <= monthsAhead; i++) {
+                    createPartition(shard, current.plusMonths(i));
+                }
+                if (retentionMonths > 0) {
+                    detachOlderThan(shard, current.minusMonths(retentionMonths));
+                }
+            } catch (DataAccessException e) {
+                log.warn("Card history partition maintenance failed on {}", shard, e);
+            }
+        }
+    }
+
+    private void createPartition(String shard, YearMonth month) {
+        try {
+            jdbcTemplate.execute(createPartitionSql(month));
+        } catch (DataAccessException e) {
+            // например, другой экземпляр одновременно создал ту же секцию; остальные секции создаются дальше
+            log.warn("Card history partition {} creation failed on {}", partitionName(month), shard, e);
+        }
+    }
+
+    private void detachOlderThan(String shard, YearMonth cutoff) {
+        List<String> partitions = jdbcTemplate.queryForList("""
+                SELECT c.relname FROM pg_inherits i
+                JOIN pg_class c ON c.oid = i.inhrelid
+                JOIN pg_class p ON p.oid = i.inhparent
+                WHERE p.relname = ?""", String.class, TABLE);
+        for (String partition : partitions) {
+            YearMonth month = partitionMonth(partition);
+            if (month != null && month.isBefore(cutoff)) {
+                try {
+                    jdbcTemplate.execute("ALTER TABLE " + TABLE + " DETACH PARTITION " + partition);
+                    log.info("Detached card history partition {}", partition);
+                } catch (DataAccessException e) {
+                    log.warn("Card history partition {} detach failed on {}", partition, shard, e);
+                }
+            }
+        }
+    }
+
+    /** Секция месяца {@code [1-е число 00:00 UTC, 1-е число следующего месяца 00:00 UTC)} */
+    static String createPartitionSql(YearMonth month) {
+        String from = month.atDay(1) + " 00:00:00+00";
+        String to = month.plusMonths(1).atDay(1) + " 00:00:00+00";
+        return "CREATE TABLE IF NOT EXISTS " + partitionName(month) + " PARTITION OF " + TABLE
+                + " FOR VALUES FROM ('" + from + "') TO ('" + to + "')";
+    }
+
+    static String partitionName(YearMonth month) {
+        return TABLE + month.format(SUFFIX);
+    }
+
+    /** Месяц секции по её имени; {@code null} для секции по умолчанию и посторонних таблиц */
+    static YearMonth partitionMonth(String partition) {
+        if (!partition.startsWith(TABLE)) {
+            return null;
+        }
+        try {
+            return YearMonth.parse(partition.substring(TABLE.length()), SUFFIX);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
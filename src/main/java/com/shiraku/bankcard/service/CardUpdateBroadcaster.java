@@ -0,0 +1,266 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.model.dto.CardUpdateDto;
+import com.shiraku.bankcard.model.event.CardChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Класс CardUpdateBroadcaster рассылает подписчикам (SSE) изменения баланса и статуса их карт
+ * <p>
+ * Соединение держится асинхронным сервлетом ({@link SseEmitter}): пока событий нет, поток на подписчика не занят.
+ * Изменения рассылаются после фиксации транзакции и складываются в буфер соединения, где по каждой карте
+ * хранится только последнее состояние; при переполнении буфера ({@code buffer-size} карт) вытесняется самое старое.
+ * Запись в сокеты выполняет небольшой пул отправки, а не поток, изменивший карту.
+ * <p>
+ * Раз в {@code heartbeat} каждому подписчику отправляется комментарий: он не даёт прокси закрыть простаивающее
+ * соединение и выявляет отключившихся клиентов. Ошибка записи, таймаут или закрытие соединения удаляют подписку;
+ * на пользователя допускается не больше {@code max-connections-per-user} соединений, лишнее старейшее закрывается.
+ * */
+@Slf4j
+@Component
+public class CardUpdateBroadcaster implements DisposableBean {
+    private final ConcurrentHashMap<UUID, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final ExecutorService sender;
+    private final ScheduledExecutorService heartbeat;
+    private final long timeoutMillis;
+    private final int bufferSize;
+    private final int maxConnectionsPerUser;
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public CardUpdateBroadcaster(@Value("${bankcard.sse.timeout:30m}") Duration timeout,
+                                 @Value("${bankcard.sse.heartbeat:15s}") Duration heartbeatInterval,
+                                 @Value("${bankcard.sse.buffer-size:64}") int bufferSize,
+                                 @Value("${bankcard.sse.max-connections-per-user:5}") int maxConnectionsPerUser,
+                                 @Value("${bankcard.sse.sender-threads:2}") int senderThreads) {
+        this.timeoutMillis = timeout.toMillis();
+        this.bufferSize = bufferSize;
+        this.maxConnectionsPerUser = maxConnectionsPerUser;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.sender = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "sse-sender-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sse-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = heartbeatInterval.toMillis();
+        heartbeat.scheduleAtFixedRate(this::sendHeartbeats, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /** Метод {@code subscribe()} открывает поток изменений карт владельца */
+    public SseEmitter subscribe(UUID ownerId) {
+        return subscribe(ownerId, new SseEmitter(timeoutMillis));
+    }
+
+    SseEmitter subscribe(UUID ownerId, SseEmitter emitter) {
+        Subscription subscription = new Subscription(ownerId, emitter);
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(error -> subscription.close());
+
+        Set<Subscription> owned = subscriptions.compute(ownerId, (id, current) -> {
+            Set<Subscription> set = current != null ? current : ConcurrentHashMap.newKeySet();
+            set.add(subscription);
+            return set;
+        });
+        connections.incrementAndGet();
+        if (owned.size() > maxConnectionsPerUser) {
+            owned.stream()
+                    .min(Comparator.comparingLong(Subscription::openedAt))
+                    .ifPresent(Subscription::complete);
+        }
+        // первый комментарий сразу отправляет заголовки ответа клиенту
+        subscription.heartbeat();
+        return emitter;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCardChanged(CardChangedEvent event) {
+        send(event.ownerId(), new CardUpdateDto(event.cardId(), event.operation(), event.status(), event.balance()));
+    }
+
+    /** Метод {@code send()} отправляет изменение подписчикам владельца; для заданий, пишущих историю без событий,
+     * вызывается после фиксации их транзакции */
+    public void send(UUID ownerId, CardUpdateDto update) {
+        Set<Subscription> owned = subscriptions.get(ownerId);
+        if (owned != null) {
+            owned.forEach(subscription -> subscription.offer(update));
+        }
+    }
+
+    public int connectionCount() {
+        return connections.get();
+    }
+
+    public long sentCount() {
+        return sent.sum();
+    }
+
+    /** Количество изменений, вытесненных из переполненных буферов соединений */
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    private void sendHeartbeats() {
+        subscriptions.values().forEach(owned -> owned.forEach(Subscription::heartbeat));
+    }
+
+    @Override
+    public void destroy() {
+        heartbeat.shutdownNow();
+        sender.shutdownNow();
+        subscriptions.values().forEach(owned -> owned.forEach(Subscription::complete));
+    }
+
+    private final class Subscription {
+        private final UUID ownerId;
+        private final SseEmitter emitter;
+        private final long openedAt = System.nanoTime();
+        // последнее состояние по каждой карте, в порядке изменения
+        private final LinkedHashMap<UUID, CardUpdateDto> pending = new LinkedHashMap<>();
+        private boolean heartbeatDue;
+        private boolean draining;
+        private boolean closed;
+
+        Subscription(UUID ownerId, SseEmitter emitter) {
+            this.ownerId = ownerId;
+            this.emitter = emitter;
+        }
+
+        long openedAt() {
+            return openedAt;
+        }
+
+        void offer(CardUpdateDto update) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                pending.remove(update.getCardId());
+                pending.put(update.getCardId(), update);
+                if (pending.size() > bufferSize) {
+                    Iterator<UUID> eldest = pending.keySet().iterator();
+                    eldest.next();
+                    eldest.remove();
+                    dropped.increment();
+                }
+                if (!startDraining()) {
+                    return;
+                }
+            }
+            submitDrain();
+        }
+
+        void heartbeat() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                heartbeatDue = true;
+                if (!startDraining()) {
+                    return;
+                }
+            }
+            submitDrain();
+        }
+
+        private boolean startDraining() {
+            if (draining) {
+                return false;
+            }
+            draining = true;
+            return true;
+        }
+
+        private void submitDrain() {
+            try {
+                sender.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                close();
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                List<CardUpdateDto> updates;
+                boolean ping;
+                synchronized (this) {
+                    if (closed || (pending.isEmpty() && !heartbeatDue)) {
+                        draining = false;
+                        return;
+                    }
+                    updates = new ArrayList<>(pending.values());
+                    pending.clear();
+                    ping = heartbeatDue;
+                    heartbeatDue = false;
+                }
+                try {
+                    for (CardUpdateDto update : updates) {
+                        emitter.send(SseEmitter.event().name("card").data(update, MediaType.APPLICATION_JSON));
+                    }
+                    if (ping) {
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                    }
+                    sent.add(updates.size());
+                } catch (IOException | IllegalStateException e) {
+                    // клиент отключился: контейнер сам завершит асинхронный запрос
+                    log.debug("SSE subscriber of {} disconnected", ownerId);
+                    close();
+                }
+            }
+        }
+
+        void complete() {
+            close();
+            try {
+                emitter.complete();
+            } catch (IllegalStateException e) {
+                // уже завершён
+            }
+        }
+
+        void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                pending.clear();
+            }
+            subscriptions.computeIfPresent(ownerId, (id, owned) -> {
+                owned.remove(this);
+                return owned.isEmpty() ? null : owned;
+            });
+            connections.decrementAndGet();
+        }
+    }
+}
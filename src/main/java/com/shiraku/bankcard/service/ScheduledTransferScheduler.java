@@ -0,0 +1,391 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.datasource.ShardRouter;
+import com.shiraku.bankcard.model.JobStatus;
+import com.shiraku.bankcard.model.TransferRecurrence;
+import com.shiraku.bankcard.model.dto.TransferRequest;
+import com.shiraku.bankcard.utils.UuidV7;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Класс ScheduledTransferScheduler выполняет плановые переводы ({@code scheduled_transfer}) в назначенное время
+ * <p>
+ * Выполняет переводы только один узел - держатель аренды {@code scheduler_lease}. Аренда продлевается каждые
+ * {@code lease-renew-ms} на {@code lease-ttl}; если держатель перестал продлевать её (остановлен или потерял базу),
+ * после истечения её забирает другой узел. Время аренды сравнивается по часам узлов, поэтому их расхождение
+ * должно быть заметно меньше {@code lease-ttl}; двойного выполнения не допускает и при расхождении условный захват ниже.
+ * <p>
+ * База не опрашивается по каждому переводу: раз в {@code load-interval-ms} держатель аренды порциями по
+ * {@code batch-size} загружает переводы, срок которых наступает в ближайшие {@code lookahead}, в очередь
+ * с задержкой ({@link DelayQueue}, упорядочена по времени запуска). Поток-диспетчер забирает наступившие переводы
+ * и выполняет их не более чем по {@code parallelism} одновременно.
+ * <p>
+ * Каждое выполнение - одна транзакция на шарде владельца: строка перевода блокируется {@code SELECT ... FOR UPDATE}
+ * при условии, что её {@code next_run_at} всё ещё равен загруженному, затем выполняется перевод
+ * ({@link CardService#transferOnOwnerShard}) и расписание продвигается. Поэтому один срок выполняется не больше одного раза,
+ * даже если перевод оказался в очереди двух узлов. Если перевод не прошёл (недостаточно средств, карта заблокирована),
+ * срок пропускается и записывается ошибка; при ошибке базы срок остаётся и будет повторён при следующей загрузке.
+ * Если одной из карт больше нет, перевод завершается со статусом {@code FAILED}: следующие сроки не назначаются.
+ * Обычно такие переводы удаляются вместе с картой, это страховка от удаления в обход сервисов.
+ * Сроки, пропущенные пока ни один узел не работал, не догоняются: выполняется один, а следующий назначается в будущем.
+ * */
+@Slf4j
+@Component
+public class ScheduledTransferScheduler implements DisposableBean {
+    private static final String LEASE = "scheduled-transfer";
+    private static final String CLAIM = """
+            SELECT from_card_id, to_card_id, amount, recurrence, start_at, occurrence FROM scheduled_transfer
+            WHERE id = ? AND status = 'PENDING' AND next_run_at = ? FOR UPDATE""";
+
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CardService cardService;
+    private final boolean enabled;
+    private final Duration leaseTtl;
+    private final Duration lookahead;
+    private final int batchSize;
+    private final String nodeId = UuidV7.randomUuid().toString();
+    private final DelayQueue<Due> queue = new DelayQueue<>();
+    private final Map<UUID, Instant> queued = new ConcurrentHashMap<>();
+    private final Semaphore permits;
+    private final ExecutorService executor;
+    private final Thread dispatcher;
+
+    private volatile boolean leader;
+    private volatile Instant leaseUntil = Instant.MIN;
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public ScheduledTransferScheduler(ShardRouter shardRouter,
+                                      JdbcTemplate jdbcTemplate,
+                                      PlatformTransactionManager transactionManager,
+                                      CardService cardService,
+                                      @Value("${bankcard.scheduled-transfer.enabled:true}") boolean enabled,
+                                      @Value("${bankcard.scheduled-transfer.lease-ttl:30s}") Duration leaseTtl,
+                                      @Value("${bankcard.scheduled-transfer.lease-renew-ms:10000}") long leaseRenewMs,
+                                      @Value("${bankcard.scheduled-transfer.lookahead:2m}") Duration lookahead,
+                                      @Value("${bankcard.scheduled-transfer.batch-size:500}") int batchSize,
+                                      @Value("${bankcard.scheduled-transfer.parallelism:4}") int parallelism) {
+        if (leaseTtl.toMillis() <= leaseRenewMs) {
+            throw new IllegalStateException("Аренда планировщика должна быть длиннее интервала её продления");
+        }
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.cardService = cardService;
+        this.enabled = enabled;
+        this.leaseTtl = leaseTtl;
+        this.lookahead = lookahead;
+        this.batchSize = batchSize;
+        this.permits = new Semaphore(parallelism);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "scheduled-transfer-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dispatcher = new Thread(this::dispatch, "scheduled-transfer-dispatcher");
+        this.dispatcher.setDaemon(true);
+    }
+
+    /** Срок выполнения планового перевода в очереди; задержка отсчитывается до {@code runAt} */
+    record Due(UUID id, UUID ownerId, Instant runAt) implements Delayed {
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Duration.between(Instant.now(), runAt));
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return other instanceof Due due ? runAt.compareTo(due.runAt())
+                    : Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+
+    private record Occurrence(UUID fromCardId, UUID toCardId, BigDecimal amount, TransferRecurrence recurrence,
+                              Instant startAt, int occurrence) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        dispatcher.start();
+    }
+
+    @Scheduled(fixedDelayString = "${bankcard.scheduled-transfer.lease-renew-ms:10000}")
+    public void scheduledRenewLease() {
+        if (enabled) {
+            renewLease();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${bankcard.scheduled-transfer.load-interval-ms:60000}")
+    public void scheduledLoad() {
+        if (enabled) {
+            load();
+        }
+    }
+
+    /** Метод {@code renewLease()} берёт или продлевает аренду и возвращает, держит ли её этот узел */
+    public boolean renewLease() {
+        Instant now = Instant.now();
+        Instant until = now.plus(leaseTtl);
+        boolean held;
+        try {
+            held = jdbcTemplate.update("UPDATE scheduler_lease SET holder = ?, expires_at = ? "
+                            + "WHERE name = ? AND (holder = ? OR expires_at < ?)",
+                    nodeId, Timestamp.from(until), LEASE, nodeId, Timestamp.from(now)) > 0
+                    || insertLease(until);
+        } catch (DataAccessException e) {
+            // без базы аренда истечёт сама, до этого узел продолжает выполнять уже загруженное
+            log.warn("Scheduled transfer lease renewal failed: {}", e.getMessage());
+            return isLeader();
+        }
+
+        boolean wasLeader = leader;
+        leaseUntil = held ? until : Instant.MIN;
+        leader = held;
+        if (held && !wasLeader) {
+            log.info("Node {} acquired the scheduled transfer lease", nodeId);
+            load();
+        } else if (!held && wasLeader) {
+            log.info("Node {} lost the scheduled transfer lease", nodeId);
+            queue.clear();
+            queued.clear();
+        }
+        return held;
+    }
+
+    /** Метод {@code load()} загружает в очередь переводы со сроком в ближайшие {@code lookahead} и возвращает их число */
+    public int load() {
+        if (!isLeader()) {
+            return 0;
+        }
+        Instant horizon = Instant.now().plus(lookahead);
+        int loaded = 0;
+        for (String shard : shardRouter.shardIds()) {
+            Due after = null;
+            while (true) {
+                Due cursor = after;
+                List<Due> batch = shardRouter.callOnShard(shard, true, () -> selectDue(horizon, cursor));
+                batch.forEach(this::enqueue);
+                loaded += batch.size();
+                if (batch.size() < batchSize) {
+                    break;
+                }
+                after = batch.get(batch.size() - 1);
+            }
+        }
+        return loaded;
+    }
+
+    /** Метод {@code offer()} ставит в очередь только что созданный перевод, если его срок наступает до следующей загрузки */
+    public void offer(UUID id, UUID ownerId, Instant runAt) {
+        if (runAt != null && isLeader() && runAt.isBefore(Instant.now().plus(lookahead))) {
+            enqueue(new Due(id, ownerId, runAt));
+        }
+    }
+
+    public boolean isLeader() {
+        return leader && Instant.now().isBefore(leaseUntil);
+    }
+
+    /** Количество выполненных плановых переводов */
+    public long executedCount() {
+        return executed.sum();
+    }
+
+    /** Количество сроков, пропущенных из-за ошибки перевода */
+    public long failedCount() {
+        return failed.sum();
+    }
+
+    /** Количество переводов в очереди */
+    public int queuedCount() {
+        return queued.size();
+    }
+
+    @Override
+    public void destroy() {
+        dispatcher.interrupt();
+        executor.shutdownNow();
+        if (leader) {
+            // отдаём аренду сразу, чтобы другой узел не ждал её истечения
+            try {
+                jdbcTemplate.update("UPDATE scheduler_lease SET expires_at = ? WHERE name = ? AND holder = ?",
+                        Timestamp.from(Instant.now()), LEASE, nodeId);
+            } catch (DataAccessException e) {
+                log.warn("Scheduled transfer lease release failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    /** Время выполнения с номером {@code occurrence} от {@code startAt}; {@code null}, если такого нет */
+    static Instant occurrenceAt(TransferRecurrence recurrence, Instant startAt, int occurrence) {
+        ZonedDateTime start = startAt.atZone(ZoneOffset.UTC);
+        return switch (recurrence) {
+            case ONCE -> occurrence == 0 ? startAt : null;
+            case DAILY -> start.plusDays(occurrence).toInstant();
+            case WEEKLY -> start.plusWeeks(occurrence).toInstant();
+            // от начала, а не от прошлого срока: 31 января -> 28 февраля -> 31 марта
+            case MONTHLY -> start.plusMonths(occurrence).toInstant();
+        };
+    }
+
+    /** Номер первого выполнения после {@code occurrence}, срок которого позже {@code now} */
+    static int nextOccurrence(TransferRecurrence recurrence, Instant startAt, int occurrence, Instant now) {
+        int next = occurrence + 1;
+        Instant at = occurrenceAt(recurrence, startAt, next);
+        while (at != null && !at.isAfter(now)) {
+            at = occurrenceAt(recurrence, startAt, ++next);
+        }
+        return next;
+    }
+
+    private boolean insertLease(Instant until) {
+        try {
+            return jdbcTemplate.update("INSERT INTO scheduler_lease (name, holder, expires_at) VALUES (?, ?, ?)",
+                    LEASE, nodeId, Timestamp.from(until)) > 0;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    private List<Due> selectDue(Instant horizon, Due after) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT id, owner_id, next_run_at FROM scheduled_transfer WHERE status = 'PENDING' AND next_run_at < ?");
+        List<Object> args = new ArrayList<>();
+        args.add(Timestamp.from(horizon));
+        if (after != null) {
+            sql.append(" AND (next_run_at > ? OR next_run_at = ? AND id > ?)");
+            args.add(Timestamp.from(after.runAt()));
+            args.add(Timestamp.from(after.runAt()));
+            args.add(after.id());
+        }
+        sql.append(" ORDER BY next_run_at, id LIMIT ?");
+        args.add(batchSize);
+        return jdbcTemplate.query(sql.toString(), (rs, rowNum) -> new Due(rs.getObject(1, UUID.class),
+                rs.getObject(2, UUID.class), rs.getTimestamp(3).toInstant()), args.toArray());
+    }
+
+    private void enqueue(Due due) {
+        if (queued.putIfAbsent(due.id(), due.runAt()) == null) {
+            queue.add(due);
+        }
+    }
+
+    private void dispatch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Due due = queue.take();
+                permits.acquire();
+                try {
+                    executor.execute(() -> {
+                        try {
+                            execute(due);
+                        } finally {
+                            queued.remove(due.id(), due.runAt());
+                            permits.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void execute(Due due) {
+        if (!isLeader()) {
+            return;
+        }
+        Instant next;
+        try {
+            next = shardRouter.callForOwner(due.ownerId(), false,
+                    () -> transactionTemplate.execute(status -> runOccurrence(due, null)));
+        } catch (DataAccessException e) {
+            log.warn("Scheduled transfer {} due at {} failed, it will be retried: {}", due.id(), due.runAt(), e.getMessage());
+            return;
+        } catch (RuntimeException e) {
+            log.info("Scheduled transfer {} due at {} was skipped: {}", due.id(), due.runAt(), e.getMessage());
+            next = shardRouter.callForOwner(due.ownerId(), false,
+                    () -> transactionTemplate.execute(status -> runOccurrence(due, e)));
+        }
+        if (next != null) {
+            // запись выполненного срока снимается до постановки следующего, иначе putIfAbsent в enqueue его отбросит
+            queued.remove(due.id(), due.runAt());
+            offer(due.id(), due.ownerId(), next);
+        }
+    }
+
+    /** Выполняет срок {@code due} (или при {@code error} только пропускает его) и возвращает следующий срок */
+    private Instant runOccurrence(Due due, RuntimeException error) {
+        List<Occurrence> claimed = jdbcTemplate.query(CLAIM, (rs, rowNum) -> new Occurrence(
+                rs.getObject(1, UUID.class), rs.getObject(2, UUID.class), rs.getBigDecimal(3),
+                TransferRecurrence.valueOf(rs.getString(4)), rs.getTimestamp(5).toInstant(), rs.getInt(6)),
+                due.id(), Timestamp.from(due.runAt()));
+        if (claimed.isEmpty()) {
+            // срок уже выполнен другим узлом, перевод отменён или перенесён
+            return null;
+        }
+        Occurrence occurrence = claimed.get(0);
+        if (error == null) {
+            TransferRequest request = new TransferRequest();
+            request.setFromCardId(occurrence.fromCardId());
+            request.setToCardId(occurrence.toCardId());
+            request.setAmount(occurrence.amount());
+            cardService.transferOnOwnerShard(request, due.ownerId());
+        }
+
+        Instant now = Instant.now();
+        int next = nextOccurrence(occurrence.recurrence(), occurrence.startAt(), occurrence.occurrence(), now);
+        Instant nextRunAt = error instanceof EntityNotFoundException
+                ? null
+                : occurrenceAt(occurrence.recurrence(), occurrence.startAt(), next);
+        JobStatus status = nextRunAt != null ? JobStatus.PENDING : error == null ? JobStatus.DONE : JobStatus.FAILED;
+        String lastError = error == null ? null : String.valueOf(error.getMessage());
+        jdbcTemplate.update("UPDATE scheduled_transfer SET occurrence = ?, next_run_at = ?, status = ?, "
+                        + "executed = executed + ?, failed = failed + ?, last_run_at = ?, last_error = ?, updated_at = ? WHERE id = ?",
+                next, nextRunAt != null ? Timestamp.from(nextRunAt) : null, status.name(), error == null ? 1 : 0,
+                error == null ? 0 : 1, Timestamp.from(now),
+                lastError != null && lastError.length() > 1000 ? lastError.substring(0, 1000) : lastError,
+                Timestamp.from(now), due.id());
+        (error == null ? executed : failed).increment();
+        return nextRunAt;
+    }
+}
@@ -0,0 +1,120 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.datasource.DataSourceContextHolder;
+import com.shiraku.bankcard.datasource.ReplicaConsistencyTracker;
+import com.shiraku.bankcard.datasource.ShardRouter;
+import com.shiraku.bankcard.model.JobStatus;
+import com.shiraku.bankcard.model.dto.ScheduledTransferDto;
+import com.shiraku.bankcard.model.dto.ScheduledTransferRequest;
+import com.shiraku.bankcard.model.entity.Card;
+import com.shiraku.bankcard.model.entity.ScheduledTransfer;
+import com.shiraku.bankcard.model.entity.User;
+import com.shiraku.bankcard.repository.CardRepository;
+import com.shiraku.bankcard.repository.ScheduledTransferRepository;
+import com.shiraku.bankcard.repository.UserRepository;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+
+/** Класс ScheduledTransferService создаёт, выводит и отменяет плановые переводы пользователя
+ * <p>
+ * Обе карты проверяются при создании, но перевод всё равно проверяется заново при каждом выполнении
+ * ({@link ScheduledTransferScheduler}), так как карта могла быть заблокирована или удалена.
+ * Методы не открывают общую транзакцию: работа идёт в транзакции шарда владельца ({@link ShardRouter}),
+ * а перевод передаётся планировщику только после фиксации, иначе планировщик мог бы не найти его строку.
+ * */
+@Slf4j
+@Service
+@Tag(name = "Плановые переводы", description = "Класс сервиса для плановых и регулярных переводов пользователя")
+public class ScheduledTransferService {
+    private final UserRepository userRepository;
+    private final CardRepository cardRepository;
+    private final ScheduledTransferRepository scheduledTransferRepository;
+    private final ShardRouter shardRouter;
+    private final ReplicaConsistencyTracker consistencyTracker;
+    private final ScheduledTransferScheduler scheduler;
+
+    public ScheduledTransferService(UserRepository userRepository, CardRepository cardRepository,
+                                    ScheduledTransferRepository scheduledTransferRepository, ShardRouter shardRouter,
+                                    ReplicaConsistencyTracker consistencyTracker, ScheduledTransferScheduler scheduler) {
+        this.userRepository = userRepository;
+        this.cardRepository = cardRepository;
+        this.scheduledTransferRepository = scheduledTransferRepository;
+        this.shardRouter = shardRouter;
+        this.consistencyTracker = consistencyTracker;
+        this.scheduler = scheduler;
+    }
+
+    public ScheduledTransferDto create(ScheduledTransferRequest request, String email) {
+        User user = findUser(email);
+        if (request.getFromCardId().equals(request.getToCardId())) {
+            throw new IllegalStateException("Карты списания и зачисления должны различаться");
+        }
+        // время хранится с точностью до микросекунд, а планировщик сравнивает его с загруженным из базы
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        Instant startAt = request.getStartAt() == null || request.getStartAt().isBefore(now)
+                ? now
+                : request.getStartAt().truncatedTo(ChronoUnit.MICROS);
+
+        ScheduledTransfer saved = shardRouter.callForOwner(user.getId(), false, () -> {
+            for (UUID cardId : List.of(request.getFromCardId(), request.getToCardId())) {
+                Card card = cardRepository.findById(cardId)
+                        .orElseThrow(() -> new EntityNotFoundException("Card not found"));
+                if (!card.getOwnerId().equals(user.getId())) {
+                    throw new AccessDeniedException("Обе карты должны принадлежать вам");
+                }
+            }
+            return scheduledTransferRepository.save(new ScheduledTransfer(null, user.getId(), request.getFromCardId(),
+                    request.getToCardId(), request.getAmount(), request.getRecurrence(), startAt, 0, startAt,
+                    JobStatus.PENDING, 0, 0, null, null, now, now));
+        });
+        consistencyTracker.markWrite(email);
+        log.info("Scheduled transfer {} created, {} from {}", saved.getId(), saved.getRecurrence(), saved.getStartAt());
+
+        scheduler.offer(saved.getId(), saved.getOwnerId(), saved.getNextRunAt());
+        return toDto(saved);
+    }
+
+    public List<ScheduledTransferDto> getScheduledTransfers(String email) {
+        User user = findUser(email);
+        try (DataSourceContextHolder.Scope ignored = consistencyTracker.pinIfRecentWrite(email)) {
+            return shardRouter.callForOwner(user.getId(), true,
+                    () -> scheduledTransferRepository.findByOwnerIdOrderByCreatedAt(user.getId())).stream()
+                    .map(ScheduledTransferService::toDto)
+                    .toList();
+        }
+    }
+
+    /** Метод {@code cancel()} удаляет плановый перевод; уже начатое выполнение завершится, следующих не будет */
+    public void cancel(UUID id, String email) {
+        User user = findUser(email);
+        shardRouter.runForOwner(user.getId(), () -> {
+            ScheduledTransfer transfer = scheduledTransferRepository.findById(id)
+                    .orElseThrow(() -> new EntityNotFoundException("Плановый перевод не найден"));
+            if (!transfer.getOwnerId().equals(user.getId())) {
+                throw new AccessDeniedException("Вы не владелец этого перевода");
+            }
+            scheduledTransferRepository.delete(transfer);
+        });
+        consistencyTracker.markWrite(email);
+    }
+
+    private User findUser(String email) {
+        return userRepository.findByEmail(email)
+                .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+    }
+
+    private static ScheduledTransferDto toDto(ScheduledTransfer transfer) {
+        return new ScheduledTransferDto(transfer.getId(), transfer.getFromCardId(), transfer.getToCardId(),
+                transfer.getAmount(), transfer.getRecurrence(), transfer.getNextRunAt(), transfer.getStatus(),
+                transfer.getExecuted(), transfer.getFailed(), transfer.getLastError());
+    }
+}
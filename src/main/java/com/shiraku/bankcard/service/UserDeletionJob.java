@@ -0,0 +1,241 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.cache.CacheInvalidationBus;
+import com.shiraku.bankcard.datasource.ShardRouter;
+import com.shiraku.bankcard.model.CardOperation;
+import com.shiraku.bankcard.model.JobStatus;
+import com.shiraku.bankcard.model.Status;
+import com.shiraku.bankcard.model.dto.UserDeletionStatus;
+import com.shiraku.bankcard.model.entity.UserDeletionTask;
+import com.shiraku.bankcard.model.event.CardChangedEvent;
+import com.shiraku.bankcard.repository.UserDeletionTaskRepository;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Класс UserDeletionJob удаляет карты удалённого пользователя
+ * <p>
+ * Строка {@code users} удаляется сразу вместе с созданием {@link UserDeletionTask}, а карты - следом, на шарде
+ * владельца порциями по {@code batch-size}: каждая порция - короткая транзакция из выборки id по индексу
+ * {@code owner_id} и одного {@code DELETE ... WHERE id IN (...)}, без загрузки сущностей. После порции
+ * в задаче сохраняется прогресс. Так же удаляются архивные карты пользователя ({@code card_archive}),
+ * а перед картами - его плановые переводы.
+ * <p>
+ * Если карт не больше {@code sync-threshold}, они удаляются в запросе администратора, иначе в фоновом потоке,
+ * а ход удаления можно запросить по id пользователя. Незавершённые задачи продолжаются при старте приложения;
+ * повторный проход просто не находит уже удалённых карт, поэтому задача идемпотентна.
+ * <p>
+ * История операций по картам сохраняется. Карты удаляются в обход Hibernate, поэтому кэш инвалидируется
+ * через {@link CacheInvalidationBus}, а на каждую карту в транзакции порции публикуется {@link CardChangedEvent}
+ * с {@code DELETED}, как при массовом удалении: его получают история, outbox и статистика.
+ * <p>
+ * Пользователя с деньгами на картах удалить нельзя ({@link #fundedCards(UUID)}): средства сначала нужно вывести.
+ * Проверка повторяется в транзакции каждой порции по заблокированным строкам: если карта успела получить
+ * зачисление после удаления пользователя, порция откатывается, а задача остаётся {@code FAILED} с ошибкой.
+ * */
+@Slf4j
+@Service
+public class UserDeletionJob implements DisposableBean {
+    private static final List<String> CARD_TABLES = List.of("card", "card_archive");
+
+    private final UserDeletionTaskRepository taskRepository;
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CacheInvalidationBus cacheInvalidationBus;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int batchSize;
+    private final long syncThreshold;
+    private final Duration pause;
+    private final ExecutorService executor;
+    private final Set<UUID> inProgress = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder deleted = new LongAdder();
+
+    public UserDeletionJob(UserDeletionTaskRepository taskRepository,
+                           ShardRouter shardRouter,
+                           JdbcTemplate jdbcTemplate,
+                           PlatformTransactionManager transactionManager,
+                           CacheInvalidationBus cacheInvalidationBus,
+                           ApplicationEventPublisher eventPublisher,
+                           @Value("${bankcard.user-deletion.batch-size:1000}") int batchSize,
+                           @Value("${bankcard.user-deletion.sync-threshold:1000}") long syncThreshold,
+                           @Value("${bankcard.user-deletion.pause:20ms}") Duration pause) {
+        this.taskRepository = taskRepository;
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.cacheInvalidationBus = cacheInvalidationBus;
+        this.eventPublisher = eventPublisher;
+        this.batchSize = batchSize;
+        this.syncThreshold = syncThreshold;
+        this.pause = pause;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-deletion");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Метод {@code record()} создаёт задачу в текущей транзакции удаления пользователя */
+    public void record(UUID userId, String email) {
+        Instant now = Instant.now();
+        taskRepository.save(new UserDeletionTask(userId, email, JobStatus.PENDING, 0, null, now, now));
+    }
+
+    /** Метод {@code fundedCards()} считает карты пользователя, включая архивные, с ненулевым балансом
+     * <p>
+     * Действующие карты блокируются ({@code FOR UPDATE}) до конца текущей транзакции, чтобы между проверкой
+     * и удалением пользователя на них не пришёл перевод. Архивные карты переводов не получают.
+     * */
+    public long fundedCards(UUID userId) {
+        return shardRouter.callForOwner(userId, false, () -> {
+            long funded = jdbcTemplate.queryForList("SELECT balance FROM card WHERE owner_id = ? FOR UPDATE",
+                    BigDecimal.class, userId).stream().filter(balance -> balance.signum() != 0).count();
+            return funded + jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM card_archive WHERE owner_id = ? AND balance <> 0", Long.class, userId);
+        });
+    }
+
+    /** Метод {@code process()} удаляет карты пользователя сразу или передаёт задачу фоновому потоку */
+    public UserDeletionStatus process(UUID userId) {
+        long cards = shardRouter.callForOwner(userId, true, () -> jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM card WHERE owner_id = ?", Long.class, userId));
+        if (cards <= syncThreshold) {
+            run(userId);
+        } else {
+            submit(userId);
+        }
+        return status(userId);
+    }
+
+    public UserDeletionStatus status(UUID userId) {
+        UserDeletionTask task = taskRepository.findById(userId)
+                .orElseThrow(() -> new EntityNotFoundException("Задача удаления пользователя не найдена"));
+        return new UserDeletionStatus(task.getUserId(), task.getEmail(), task.getStatus(), task.getCardsDeleted(),
+                task.getUpdatedAt());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinished() {
+        taskRepository.findByStatusNot(JobStatus.DONE).forEach(task -> submit(task.getUserId()));
+    }
+
+    /** Количество карт, удалённых вместе с пользователями */
+    public long deletedCount() {
+        return deleted.sum();
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private void submit(UUID userId) {
+        executor.execute(() -> {
+            try {
+                run(userId);
+            } catch (RuntimeException e) {
+                log.error("User {} card deletion failed, it will be resumed on restart", userId, e);
+            }
+        });
+    }
+
+    private void run(UUID userId) {
+        if (!inProgress.add(userId)) {
+            return;
+        }
+        try {
+            UserDeletionTask task = taskRepository.findById(userId).orElse(null);
+            if (task == null || task.getStatus() == JobStatus.DONE) {
+                return;
+            }
+            update(task, JobStatus.RUNNING, 0, null);
+            try {
+                shardRouter.callForOwner(userId, false,
+                        () -> jdbcTemplate.update("DELETE FROM scheduled_transfer WHERE owner_id = ?", userId));
+                for (String table : CARD_TABLES) {
+                    while (true) {
+                        int count = shardRouter.callForOwner(userId, false,
+                                () -> transactionTemplate.execute(status -> deleteBatch(table, userId)));
+                        if (count > 0) {
+                            update(task, JobStatus.RUNNING, count, null);
+                        }
+                        if (count < batchSize) {
+                            break;
+                        }
+                        Thread.sleep(pause.toMillis());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                update(task, JobStatus.FAILED, 0, "interrupted");
+                return;
+            } catch (RuntimeException e) {
+                update(task, JobStatus.FAILED, 0, e.getMessage());
+                throw e;
+            }
+            update(task, JobStatus.DONE, 0, null);
+            log.info("User {} deleted with {} cards", userId, task.getCardsDeleted());
+        } finally {
+            inProgress.remove(userId);
+        }
+    }
+
+    private record DeletedCard(UUID id, Status status, BigDecimal balance) {
+    }
+
+    private int deleteBatch(String table, UUID userId) {
+        List<DeletedCard> cards = jdbcTemplate.query(
+                "SELECT id, status, balance FROM " + table + " WHERE owner_id = ? LIMIT ? FOR UPDATE",
+                (rs, rowNum) -> new DeletedCard(rs.getObject(1, UUID.class), Status.valueOf(rs.getString(2)),
+                        rs.getBigDecimal(3)), userId, batchSize);
+        if (cards.isEmpty()) {
+            return 0;
+        }
+        // строки заблокированы до конца транзакции порции: баланс не изменится между проверкой и удалением
+        for (DeletedCard card : cards) {
+            if (card.balance().signum() != 0) {
+                throw new IllegalStateException("На карте " + card.id() + " остались средства, удаление остановлено");
+            }
+        }
+        List<UUID> ids = cards.stream().map(DeletedCard::id).toList();
+        jdbcTemplate.update("DELETE FROM " + table + " WHERE id IN (" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")",
+                ids.toArray());
+        cards.forEach(card -> eventPublisher.publishEvent(new CardChangedEvent(card.id(), userId, CardOperation.DELETED,
+                card.status(), card.status(), card.balance(), null)));
+        if (table.equals("card")) {
+            cacheInvalidationBus.cardsChanged(ids);
+        }
+        deleted.add(ids.size());
+        return ids.size();
+    }
+
+    private void update(UserDeletionTask task, JobStatus status, int cardsDeleted, String error) {
+        task.setStatus(status);
+        task.setCardsDeleted(task.getCardsDeleted() + cardsDeleted);
+        task.setLastError(error != null && error.length() > 1000 ? error.substring(0, 1000) : error);
+        task.setUpdatedAt(Instant.now());
+        taskRepository.save(task);
+    }
+}
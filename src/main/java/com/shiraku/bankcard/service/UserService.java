@@ -2,16 +2,21 @@ package com.shiraku.bankcard.service;
 
 import com.shiraku.bankcard.model.Role;
 import com.shiraku.bankcard.model.dto.RaisingRequest;
+import com.shiraku.bankcard.model.dto.UserDeletionStatus;
 import com.shiraku.bankcard.model.dto.UserRequest;
 import com.shiraku.bankcard.model.entity.User;
+import com.shiraku.bankcard.model.event.UserChangedEvent;
 import com.shiraku.bankcard.repository.UserRepository;
 import com.shiraku.bankcard.utils.JWTUtils;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import jakarta.transaction.Transactional;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -23,11 +28,19 @@ public class UserService {
     private final UserRepository userRepository;
     private final JWTUtils jwtUtils;
     private final PasswordEncoder passwordEncoder;
+    private final ApplicationEventPublisher eventPublisher;
+    private final UserDeletionJob userDeletionJob;
+    private final TransactionTemplate transactionTemplate;
 
-    public UserService(UserRepository userRepository, JWTUtils jwtUtils, PasswordEncoder passwordEncoder) {
+    public UserService(UserRepository userRepository, JWTUtils jwtUtils, PasswordEncoder passwordEncoder,
+                       ApplicationEventPublisher eventPublisher, UserDeletionJob userDeletionJob,
+                       PlatformTransactionManager transactionManager) {
         this.userRepository = userRepository;
         this.jwtUtils = jwtUtils;
         this.passwordEncoder = passwordEncoder;
+        this.eventPublisher = eventPublisher;
+        this.userDeletionJob = userDeletionJob;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     @Transactional
@@ -37,7 +50,10 @@ public class UserService {
         user.setPassword(passwordEncoder.encode(userRequest.getPassword()));
         user.setCards(new ArrayList<>());
         user.setRole(Role.USER);
-        return userRepository.save(user).getEmail();
+        User saved = userRepository.save(user);
+        // на других узлах мог быть закэширован пустой результат поиска по этому email
+        eventPublisher.publishEvent(new UserChangedEvent(saved.getId(), saved.getEmail(), false, null, Role.USER));
+        return saved.getEmail();
     }
 
     public String login(UserRequest userRequest) {
@@ -65,6 +81,7 @@ public class UserService {
     }
 
 
+    @Transactional
     public User raising(RaisingRequest request){
         User user = userRepository.findByEmail(request.getEmail())
                 .orElseThrow(() -> new UsernameNotFoundException("User not found"));
@@ -72,21 +89,42 @@ public class UserService {
         if(incorrectPassword(request.getPassword(), user.getPassword())) {
             throw new BadCredentialsException("Invalid password");
         }
+        Role previousRole = user.getRole();
         user.setRole(Role.ADMIN);
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        eventPublisher.publishEvent(new UserChangedEvent(saved.getId(), saved.getEmail(), false, previousRole, Role.ADMIN));
+        return saved;
     }
 
-    public String deleteUser(UUID userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found"));
-        userRepository.delete(user);
-        return user.getEmail();
+    /** Метод {@code deleteUser()} удаляет пользователя и его карты
+     * <p>
+     * Пользователь удаляется сразу, вместе с созданием задачи удаления карт; карты удаляет {@link UserDeletionJob}
+     * порциями - в этом же вызове или, если карт много, в фоне. Пока на картах пользователя есть средства,
+     * удаление отклоняется; проверка идёт в транзакции удаления по заблокированным картам.
+     * */
+    public UserDeletionStatus deleteUser(UUID userId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (userDeletionJob.fundedCards(userId) > 0) {
+                throw new IllegalStateException("На картах пользователя остались средства, удаление невозможно");
+            }
+            User user = userRepository.findById(userId)
+                    .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+            userRepository.delete(user);
+            userDeletionJob.record(user.getId(), user.getEmail());
+            eventPublisher.publishEvent(new UserChangedEvent(user.getId(), user.getEmail(), true, user.getRole(), null));
+        });
+        return userDeletionJob.process(userId);
+    }
+
+    public UserDeletionStatus getDeletionStatus(UUID userId) {
+        return userDeletionJob.status(userId);
     }
 
     public boolean incorrectPassword(String inputPassword, String confirmPassword) {
         return !passwordEncoder.matches(inputPassword, confirmPassword);
     }
 
+    @Transactional(readOnly = true)
     public List<User> findAll() {
         return userRepository.findAll();
     }
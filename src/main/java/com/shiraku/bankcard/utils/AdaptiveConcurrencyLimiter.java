@@ -0,0 +1,85 @@
+package com.shiraku.bankcard.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Класс AdaptiveConcurrencyLimiter ограничивает количество одновременно выполняемых запросов
+ * <p>
+ * Лимит подстраивается по схеме AIMD (additive increase / multiplicative decrease):
+ * <p>
+ * - если запрос выполнился дольше {@code latencyThresholdNanos} или завершился ошибкой, лимит умножается на {@code backoffRatio};
+ * <p>
+ * - если запрос выполнился быстро, а занятость была не меньше половины лимита, лимит увеличивается на единицу.
+ * <p>
+ * Запросы сверх лимита отклоняются сразу, без ожидания в очереди.
+ * */
+public class AdaptiveConcurrencyLimiter {
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private volatile double limit;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit,
+                                      double backoffRatio, long latencyThresholdNanos) {
+        if (minLimit < 1 || maxLimit < minLimit || backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Некорректные параметры лимитера");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = latencyThresholdNanos;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /** Метод {@code tryAcquire()} занимает слот, если текущий лимит это позволяет
+     * <p>
+     * @return количество занятых слотов до захвата или -1, если запрос нужно отклонить
+     * */
+    public int tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                rejected.increment();
+                return -1;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current;
+            }
+        }
+    }
+
+    /** Метод {@code release()} освобождает слот и корректирует лимит по результату запроса
+     * <p>
+     * @param inFlightAtStart значение, возвращённое {@link #tryAcquire()}
+     * <p>
+     * @param latencyNanos время выполнения запроса
+     * <p>
+     * @param failed признак ошибки (5xx или исключение)
+     * */
+    public void release(int inFlightAtStart, long latencyNanos, boolean failed) {
+        inFlight.decrementAndGet();
+        synchronized (this) {
+            if (failed || latencyNanos > latencyThresholdNanos) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else if ((inFlightAtStart + 1) * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1);
+            }
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,121 @@
+package com.shiraku.bankcard.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Класс BloomFilter - потокобезопасный фильтр Блума для строковых ключей
+ * <p>
+ * Отвечает «точно нет» или «возможно есть» без обращения к хранилищу. Размер битового массива и число
+ * хеш-функций рассчитываются по ожидаемому числу элементов и допустимой доле ложных срабатываний.
+ * Позиции битов получаются двойным хешированием (Кирш - Митценмахер) из двух 64-битных хешей ключа.
+ * <p>
+ * Биты выставляются атомарно без блокировок. При одновременном добавлении одного и того же ключа
+ * из двух потоков оба могут получить {@code true}, поэтому фильтр не заменяет ограничение уникальности в базе.
+ * <p>
+ * Фильтр не растёт: после {@code expectedInsertions} ключей доля ложных срабатываний быстро увеличивается,
+ * поэтому владелец следит за {@link #load()} и пересоздаёт фильтр большего размера.
+ * */
+public class BloomFilter {
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final long expectedInsertions;
+    private final AtomicLong insertions = new AtomicLong();
+
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Некорректные параметры фильтра Блума");
+        }
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = Math.toIntExact(Math.max(1, (optimalBits + 63) / 64));
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+        this.expectedInsertions = expectedInsertions;
+    }
+
+    /** Метод {@code mightContain()} возвращает {@code false}, только если ключ точно не добавлялся */
+    public boolean mightContain(String key) {
+        long h1 = hash(key);
+        long h2 = mix(h1);
+        for (int i = 1; i <= hashCount; i++) {
+            long index = index(h1, h2, i);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Метод {@code put()} добавляет ключ
+     * <p>
+     * @return {@code true}, если ключ точно не встречался раньше (выставлен хотя бы один новый бит)
+     * */
+    public boolean put(String key) {
+        long h1 = hash(key);
+        long h2 = mix(h1);
+        boolean changed = false;
+        for (int i = 1; i <= hashCount; i++) {
+            long index = index(h1, h2, i);
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long current;
+            while (((current = bits.get(word)) & mask) == 0) {
+                if (bits.compareAndSet(word, current, current | mask)) {
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        if (changed) {
+            insertions.incrementAndGet();
+        }
+        return changed;
+    }
+
+    /** Метод {@code load()} - доля заполнения: число добавленных ключей к {@code expectedInsertions} */
+    public double load() {
+        return (double) insertions.get() / expectedInsertions;
+    }
+
+    public long insertions() {
+        return insertions.get();
+    }
+
+    public long expectedInsertions() {
+        return expectedInsertions;
+    }
+
+    public long bitSize() {
+        return bitCount;
+    }
+
+    public int hashCount() {
+        return hashCount;
+    }
+
+    private long index(long h1, long h2, int i) {
+        long combined = h1 + i * h2;
+        if (combined < 0) {
+            combined = ~combined;
+        }
+        return combined % bitCount;
+    }
+
+    /** 64-битный FNV-1a с финальным перемешиванием из SplitMix64 */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
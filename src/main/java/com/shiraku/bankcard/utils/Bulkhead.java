@@ -0,0 +1,68 @@
+package com.shiraku.bankcard.utils;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Класс Bulkhead ограничивает количество потоков, одновременно выполняющих изолированную группу операций
+ * <p>
+ * Основан на семафоре: поток ждёт свободное место не дольше {@code maxWaitMillis}, после чего получает отказ.
+ * Так медленные административные запросы не могут занять весь пул потоков сервера.
+ * */
+public class Bulkhead {
+    private final String name;
+    private final int maxConcurrent;
+    private final long maxWaitMillis;
+    private final Semaphore semaphore;
+    private final LongAdder rejected = new LongAdder();
+
+    public Bulkhead(String name, int maxConcurrent, long maxWaitMillis) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent должен быть положительным");
+        }
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxWaitMillis = maxWaitMillis;
+        this.semaphore = new Semaphore(maxConcurrent, true);
+    }
+
+    /** Метод {@code tryEnter()} занимает место в переборке
+     * <p>
+     * @return true, если место получено; в этом случае обязателен вызов {@link #exit()}
+     * */
+    public boolean tryEnter() {
+        try {
+            if (semaphore.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rejected.increment();
+        return false;
+    }
+
+    public void exit() {
+        semaphore.release();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getActive() {
+        return maxConcurrent - semaphore.availablePermits();
+    }
+
+    public int getQueued() {
+        return semaphore.getQueueLength();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
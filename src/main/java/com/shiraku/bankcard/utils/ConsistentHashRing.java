@@ -0,0 +1,58 @@
+package com.shiraku.bankcard.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/** Класс ConsistentHashRing реализует консистентное хеширование с виртуальными узлами
+ * <p>
+ * Каждый узел занимает {@code virtualNodes} точек на кольце; ключ принадлежит первому узлу по часовой стрелке.
+ * При добавлении нового узла переезжает только примерно {@code 1/N} ключей, остальные остаются на месте.
+ * */
+public class ConsistentHashRing {
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+    private final List<String> nodes;
+
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty() || virtualNodes < 1) {
+            throw new IllegalArgumentException("Кольцо должно содержать хотя бы один узел");
+        }
+        this.nodes = List.copyOf(nodes);
+        for (String node : this.nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash((node + "#" + i).getBytes(StandardCharsets.UTF_8)), node);
+            }
+        }
+    }
+
+    /** Метод {@code nodeFor()} возвращает узел, которому принадлежит ключ */
+    public String nodeFor(UUID key) {
+        if (nodes.size() == 1) {
+            return nodes.get(0);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.putLong(key.getMostSignificantBits()).putLong(key.getLeastSignificantBits());
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(buffer.array()));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    public List<String> nodes() {
+        return nodes;
+    }
+
+    private static long hash(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(data);
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 недоступен", e);
+        }
+    }
+}
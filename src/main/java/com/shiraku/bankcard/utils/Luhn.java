@@ -0,0 +1,47 @@
+package com.shiraku.bankcard.utils;
+
+/** Класс Luhn вычисляет и проверяет контрольную цифру номера карты по алгоритму Луна (ISO/IEC 7812-1) */
+public final class Luhn {
+
+    private Luhn() {
+    }
+
+    /** Метод {@code checkDigit()} возвращает контрольную цифру для номера без неё */
+    public static int checkDigit(CharSequence payload) {
+        int sum = 0;
+        boolean doubled = true;
+        for (int i = payload.length() - 1; i >= 0; i--) {
+            int digit = digit(payload.charAt(i));
+            if (doubled) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+            doubled = !doubled;
+        }
+        return (10 - sum % 10) % 10;
+    }
+
+    /** Метод {@code isValid()} проверяет номер вместе с последней (контрольной) цифрой */
+    public static boolean isValid(CharSequence number) {
+        if (number == null || number.length() < 2) {
+            return false;
+        }
+        for (int i = 0; i < number.length(); i++) {
+            if (!Character.isDigit(number.charAt(i))) {
+                return false;
+            }
+        }
+        int last = number.length() - 1;
+        return checkDigit(number.subSequence(0, last)) == digit(number.charAt(last));
+    }
+
+    private static int digit(char c) {
+        if (c < '0' || c > '9') {
+            throw new IllegalArgumentException("Номер карты должен состоять из цифр");
+        }
+        return c - '0';
+    }
+}
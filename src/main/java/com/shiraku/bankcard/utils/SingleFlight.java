@@ -0,0 +1,99 @@
+package com.shiraku.bankcard.utils;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/** Класс SingleFlight объединяет одновременные одинаковые запросы в один
+ * <p>
+ * Первый вызов с ключом (ведущий) выполняет загрузку в своём потоке, остальные вызовы с тем же ключом,
+ * пришедшие до её завершения, ждут и получают тот же результат или то же исключение.
+ * Результат не кэшируется: ключ удаляется до того, как результат становится доступен ожидающим,
+ * поэтому следующий вызов всегда выполняет новую загрузку.
+ * <p>
+ * Ожидание ограничено {@code timeout} на каждый ключ: если ведущий завис, ожидающий выполняет загрузку сам,
+ * а не накапливается за ним.
+ * */
+public class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final long timeoutNanos;
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    public SingleFlight(Duration timeout) {
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("Таймаут ожидания должен быть положительным");
+        }
+        this.timeoutNanos = timeout.toNanos();
+    }
+
+    /** Метод {@code execute()} возвращает результат загрузки, общий для всех одновременных вызовов с этим ключом */
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> leader = inFlight.putIfAbsent(key, flight);
+        if (leader == null) {
+            return lead(key, flight, loader);
+        }
+
+        shared.increment();
+        try {
+            return leader.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            timedOut.increment();
+            executed.increment();
+            return loader.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ожидание результата прервано", e);
+        }
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    /** Количество реально выполненных загрузок */
+    public long executedCount() {
+        return executed.sum();
+    }
+
+    /** Количество вызовов, получивших результат чужой загрузки */
+    public long sharedCount() {
+        return shared.sum();
+    }
+
+    /** Количество вызовов, не дождавшихся ведущего и выполнивших загрузку сами */
+    public long timedOutCount() {
+        return timedOut.sum();
+    }
+
+    private V lead(K key, CompletableFuture<V> flight, Supplier<V> loader) {
+        executed.increment();
+        V value;
+        try {
+            value = loader.get();
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+        inFlight.remove(key, flight);
+        flight.complete(value);
+        return value;
+    }
+}
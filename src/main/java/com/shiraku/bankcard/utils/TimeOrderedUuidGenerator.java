@@ -0,0 +1,27 @@
+package com.shiraku.bankcard.utils;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.hibernate.generator.EventTypeSets;
+
+import java.util.EnumSet;
+
+/** Класс TimeOrderedUuidGenerator - генератор идентификаторов Hibernate на основе {@link UuidV7}
+ * <p>
+ * Подключается аннотацией {@link com.shiraku.bankcard.model.entity.TimeOrderedUuid}.
+ * Уже существующие случайные идентификаторы остаются валидными: тип колонки не меняется.
+ * */
+public class TimeOrderedUuidGenerator implements BeforeExecutionGenerator {
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object owner, Object currentValue,
+                           EventType eventType) {
+        return UuidV7.randomUuid();
+    }
+
+    @Override
+    public EnumSet<EventType> getEventTypes() {
+        return EventTypeSets.INSERT_ONLY;
+    }
+}
@@ -0,0 +1,64 @@
+package com.shiraku.bankcard.utils;
+
+/** Класс TokenBucket представляет собой «ведро токенов» для ограничения частоты запросов
+ * <p>
+ * Ведро вмещает {@code capacity} токенов и пополняется со скоростью {@code refillTokens} за {@code refillPeriodNanos}.
+ * Пополнение вычисляется лениво при каждом обращении, поэтому фоновые потоки не нужны.
+ * <p>
+ * Блокировка берётся только на само ведро, то есть конкурируют лишь запросы с одним и тем же ключом.
+ * */
+public class TokenBucket {
+    private final long capacity;
+    private final double tokensPerNano;
+
+    private double tokens;
+    private long lastRefillNanos;
+    private volatile long lastAccessNanos;
+
+    public TokenBucket(long capacity, long refillTokens, long refillPeriodNanos, long nowNanos) {
+        if (capacity <= 0 || refillTokens <= 0 || refillPeriodNanos <= 0) {
+            throw new IllegalArgumentException("Параметры ведра должны быть положительными");
+        }
+        this.capacity = capacity;
+        this.tokensPerNano = (double) refillTokens / refillPeriodNanos;
+        this.tokens = capacity;
+        this.lastRefillNanos = nowNanos;
+        this.lastAccessNanos = nowNanos;
+    }
+
+    /** Метод {@code tryConsume()} пытается забрать один токен
+     * <p>
+     * @param nowNanos текущее время в наносекундах ({@link System#nanoTime()})
+     * <p>
+     * @return 0, если токен получен, иначе количество наносекунд до появления следующего токена
+     * */
+    public synchronized long tryConsume(long nowNanos) {
+        refill(nowNanos);
+        lastAccessNanos = nowNanos;
+        if (tokens >= 1.0) {
+            tokens -= 1.0;
+            return 0L;
+        }
+        return (long) Math.ceil((1.0 - tokens) / tokensPerNano);
+    }
+
+    /** Метод {@code isIdle()} проверяет, что ведром не пользовались дольше {@code idleNanos} и оно уже полное
+     * <p>
+     * Такое ведро можно удалить без изменения поведения: новое ведро для того же ключа тоже будет полным.
+     * */
+    public synchronized boolean isIdle(long nowNanos, long idleNanos) {
+        if (nowNanos - lastAccessNanos < idleNanos) {
+            return false;
+        }
+        refill(nowNanos);
+        return tokens >= capacity;
+    }
+
+    private void refill(long nowNanos) {
+        long elapsed = nowNanos - lastRefillNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+            lastRefillNanos = nowNanos;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.shiraku.bankcard.utils;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+
+/** Класс UuidV7 генерирует упорядоченные по времени идентификаторы UUID версии 7 (RFC 9562)
+ * <p>
+ * Структура: 48 бит - время в миллисекундах Unix, 4 бита - версия, 12 бит и старшие 30 бит второй половины -
+ * счётчик внутри миллисекунды, 2 бита - вариант, младшие 32 бита - случайные.
+ * <p>
+ * Новые ключи попадают в «правый край» B-дерева первичного ключа, поэтому вставки не расщепляют страницы
+ * в середине индекса, как это делают случайные UUID версии 4. В пределах одного узла значения строго
+ * возрастают, даже если часы сдвинулись назад или в одну миллисекунду сгенерировано много значений.
+ * */
+public final class UuidV7 {
+    private static final int COUNTER_BITS = 42;
+    private static final long COUNTER_MAX = (1L << COUNTER_BITS) - 1;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static long lastMillis;
+    private static long counter;
+
+    private UuidV7() {
+    }
+
+    public static UUID randomUuid() {
+        long millis;
+        long sequence;
+        synchronized (UuidV7.class) {
+            long now = System.currentTimeMillis();
+            if (now > lastMillis) {
+                lastMillis = now;
+                // старший бит счётчика оставляем нулевым, чтобы в миллисекунде был запас для инкремента
+                counter = RANDOM.nextLong() & (COUNTER_MAX >>> 1);
+            } else if (++counter > COUNTER_MAX) {
+                lastMillis++;
+                counter = 0;
+            }
+            millis = lastMillis;
+            sequence = counter;
+        }
+
+        long msb = (millis << 16) | 0x7000L | (sequence >>> 30);
+        long lsb = 0x8000000000000000L | ((sequence & 0x3FFFFFFFL) << 32) | (RANDOM.nextInt() & 0xFFFFFFFFL);
+        return new UUID(msb, lsb);
+    }
+
+    /** Метод {@code timestamp()} возвращает время создания UUID версии 7 в миллисекундах Unix */
+    public static long timestamp(UUID uuid) {
+        if (uuid.version() != 7) {
+            throw new IllegalArgumentException("UUID не версии 7: " + uuid);
+        }
+        return uuid.getMostSignificantBits() >>> 16;
+    }
+}
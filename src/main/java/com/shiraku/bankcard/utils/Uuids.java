@@ -0,0 +1,20 @@
+package com.shiraku.bankcard.utils;
+
+import java.util.Comparator;
+import java.util.UUID;
+
+/** Класс Uuids содержит вспомогательные методы для работы с UUID */
+public final class Uuids {
+
+    /** Порядок UUID, совпадающий с порядком PostgreSQL (побайтовое беззнаковое сравнение)
+     * <p>
+     * {@link UUID#compareTo(UUID)} сравнивает половины со знаком и для слияния результатов из базы не подходит.
+     * */
+    public static final Comparator<UUID> DATABASE_ORDER = (a, b) -> {
+        int cmp = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return cmp != 0 ? cmp : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    };
+
+    private Uuids() {
+    }
+}
@@ -0,0 +1,145 @@
+package com.shiraku.bankcard.benchmark;
+
+import com.shiraku.bankcard.BankCardApplication;
+import com.shiraku.bankcard.model.Role;
+import com.shiraku.bankcard.model.Status;
+import com.shiraku.bankcard.model.dto.CardCreateRequest;
+import com.shiraku.bankcard.model.dto.TransferRequest;
+import com.shiraku.bankcard.model.entity.Card;
+import com.shiraku.bankcard.model.entity.User;
+import com.shiraku.bankcard.repository.CardRepository;
+import com.shiraku.bankcard.repository.UserRepository;
+import com.shiraku.bankcard.service.CardService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Бенчмарк кэша второго уровня на типичной смеси с преобладанием чтения
+ * <p>
+ * Смесь: 85% - баланс карты, 10% - список карт пользователя, 5% - перевод между своими картами.
+ * Одна и та же смесь прогоняется дважды: с очисткой кэша перед каждой операцией (как без кэша)
+ * и с кэшем; сравнивается число SQL-запросов по статистике Hibernate.
+ * <p>
+ * Не входит в обычный прогон тестов, запускается явно:
+ * <p>
+ * {@code mvn test -Dtest=SecondLevelCacheBenchmark -Dbenchmark.operations=50000}
+ * */
+@SpringBootTest(classes = BankCardApplication.class, properties = {
+        "spring.datasource.url=jdbc:h2:mem:cache_benchmark;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.liquibase.enabled=false",
+        "bankcard.blind-index.backfill.enabled=false"})
+class SecondLevelCacheBenchmark {
+    private static final int USERS = 200;
+    private static final int CARDS_PER_USER = 3;
+
+    private final int operations = Integer.getInteger("benchmark.operations", 20_000);
+
+    @Autowired
+    private CardService cardService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private CardRepository cardRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void compareReadHeavyMixWithAndWithoutCache() {
+        List<List<Card>> cardsByUser = seed();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        long withoutCache = run(cardsByUser, statistics, true);
+        long withCache = run(cardsByUser, statistics, false);
+
+        System.out.printf("operations: %d%n", operations);
+        System.out.printf("SQL statements without L2 cache: %d%n", withoutCache);
+        System.out.printf("SQL statements with L2 cache:    %d (%.1f%% fewer)%n",
+                withCache, 100.0 * (withoutCache - withCache) / withoutCache);
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            print(region, statistics.getCacheRegionStatistics(region));
+        }
+    }
+
+    private long run(List<List<Card>> cardsByUser, Statistics statistics, boolean bypassCache) {
+        Random random = new Random(42);
+        evictAll();
+        statistics.clear();
+
+        for (int i = 0; i < operations; i++) {
+            if (bypassCache) {
+                evictAll();
+            }
+            int userIndex = random.nextInt(USERS);
+            String email = email(userIndex);
+            List<Card> cards = cardsByUser.get(userIndex);
+            int kind = random.nextInt(100);
+            if (kind < 85) {
+                cardService.getCardBalance(cards.get(random.nextInt(cards.size())).getId(), email);
+            } else if (kind < 95) {
+                cardService.getUserCards(email, Status.ACTIVE, 0, 10);
+            } else {
+                TransferRequest transfer = new TransferRequest();
+                transfer.setFromCardId(cards.get(0).getId());
+                transfer.setToCardId(cards.get(1).getId());
+                transfer.setAmount(BigDecimal.ONE);
+                cardService.transfer(transfer, email);
+            }
+        }
+        return statistics.getPrepareStatementCount();
+    }
+
+    private List<List<Card>> seed() {
+        List<List<Card>> cardsByUser = new ArrayList<>();
+        for (int u = 0; u < USERS; u++) {
+            User user = new User();
+            user.setEmail(email(u));
+            user.setPassword("benchmark");
+            user.setRole(Role.USER);
+            userRepository.save(user);
+
+            List<Card> cards = new ArrayList<>();
+            for (int c = 0; c < CARDS_PER_USER; c++) {
+                CardCreateRequest request = new CardCreateRequest();
+                request.setOwner(user.getEmail());
+                Card card = cardService.createCard(request);
+                card.setBalance(BigDecimal.valueOf(1_000_000));
+                cards.add(cardRepository.save(card));
+            }
+            cardsByUser.add(cards);
+        }
+        return cardsByUser;
+    }
+
+    private void evictAll() {
+        entityManagerFactory.getCache().evictAll();
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictQueryRegions();
+    }
+
+    private static void print(String region, CacheRegionStatistics statistics) {
+        if (statistics == null) {
+            return;
+        }
+        long requests = statistics.getHitCount() + statistics.getMissCount();
+        System.out.printf("  %s: hits=%d misses=%d puts=%d hit ratio=%.1f%%%n", region, statistics.getHitCount(),
+                statistics.getMissCount(), statistics.getPutCount(),
+                requests == 0 ? 0.0 : 100.0 * statistics.getHitCount() / requests);
+    }
+
+    private static String email(int index) {
+        return "user" + index + "@example.com";
+    }
+}
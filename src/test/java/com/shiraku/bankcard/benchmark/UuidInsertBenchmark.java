@@ -0,0 +1,76 @@
+package com.shiraku.bankcard.benchmark;
+
+import com.shiraku.bankcard.utils.UuidV7;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/** Бенчмарк массовой вставки карт со случайными (v4) и упорядоченными по времени (v7) ключами
+ * <p>
+ * Не входит в обычный прогон тестов, запускается явно:
+ * <p>
+ * {@code mvn test -Dtest=UuidInsertBenchmark -Dbenchmark.url=jdbc:postgresql://localhost:5432/bankcard
+ * -Dbenchmark.user=... -Dbenchmark.password=... -Dbenchmark.rows=1000000}
+ * <p>
+ * Без параметров использует H2 в памяти. Для PostgreSQL дополнительно печатает размер индекса первичного ключа
+ * и, если установлено расширение pgstattuple, плотность листовых страниц (avg_leaf_density).
+ * */
+class UuidInsertBenchmark {
+    private static final int BATCH_SIZE = 1000;
+
+    private final String url = System.getProperty("benchmark.url", "jdbc:h2:mem:uuid_benchmark;DB_CLOSE_DELAY=-1");
+    private final int rows = Integer.getInteger("benchmark.rows", 200_000);
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(url,
+            System.getProperty("benchmark.user", "sa"), System.getProperty("benchmark.password", "")));
+
+    @Test
+    void compareRandomAndTimeOrderedKeys() {
+        run("card_bench_v4", UUID::randomUUID);
+        run("card_bench_v7", UuidV7::randomUuid);
+    }
+
+    private void run(String table, Supplier<UUID> ids) {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + table);
+        jdbcTemplate.execute("CREATE TABLE " + table + " (id UUID PRIMARY KEY, number VARCHAR(64) NOT NULL, "
+                + "owner_id UUID NOT NULL, status VARCHAR(50) NOT NULL, balance DECIMAL(19,2) NOT NULL)");
+        String sql = "INSERT INTO " + table + " (id, number, owner_id, status, balance) VALUES (?, ?, ?, 'ACTIVE', ?)";
+
+        long start = System.nanoTime();
+        List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < rows; i++) {
+            batch.add(new Object[]{ids.get(), "enc-" + i, UUID.randomUUID(), BigDecimal.ZERO});
+            if (batch.size() == BATCH_SIZE) {
+                jdbcTemplate.batchUpdate(sql, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, batch);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%s: %d rows in %.2f s (%.0f rows/s)%n", table, rows, seconds, rows / seconds);
+        if (url.startsWith("jdbc:postgresql")) {
+            printPostgresIndexStats(table);
+        }
+    }
+
+    private void printPostgresIndexStats(String table) {
+        String index = table + "_pkey";
+        Long size = jdbcTemplate.queryForObject("SELECT pg_relation_size(?::regclass)", Long.class, index);
+        System.out.printf("  %s size: %d kB%n", index, size / 1024);
+        try {
+            Double density = jdbcTemplate.queryForObject(
+                    "SELECT avg_leaf_density FROM pgstatindex(?)", Double.class, index);
+            System.out.printf("  %s avg_leaf_density: %.1f%%%n", index, density);
+        } catch (RuntimeException e) {
+            System.out.println("  pgstattuple не установлено, плотность индекса не измерена");
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.shiraku.bankcard.cache;
+
+import com.shiraku.bankcard.model.CardOperation;
+import com.shiraku.bankcard.model.Status;
+import com.shiraku.bankcard.model.event.CardChangedEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class CacheInvalidationBusTest {
+
+    @Mock
+    private CacheEvictor evictor;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void changesInTransaction_shouldBeNotifiedOnceBeforeCommit() {
+        CacheInvalidationBus bus = new CacheInvalidationBus(evictor, jdbcTemplate, "jdbc:postgresql://db/bank", true);
+        UUID jpaChanged = UUID.randomUUID();
+        UUID jdbcChanged = UUID.randomUUID();
+        TransactionSynchronizationManager.initSynchronization();
+
+        bus.onCardChanged(event(jpaChanged, CardOperation.DEBIT));
+        bus.onCardChanged(event(jpaChanged, CardOperation.BLOCKED));
+        bus.cardsChanged(List.of(jdbcChanged));
+        Mockito.verifyNoInteractions(jdbcTemplate, evictor);
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        assertEquals(1, synchronizations.size());
+        synchronizations.get(0).beforeCommit(false);
+        synchronizations.get(0).afterCommit();
+
+        ArgumentCaptor<Object> arguments = ArgumentCaptor.forClass(Object.class);
+        Mockito.verify(jdbcTemplate).query(Mockito.eq("SELECT pg_notify(?, ?)"), Mockito.any(RowCallbackHandler.class),
+                arguments.capture(), arguments.capture());
+        assertEquals(CacheInvalidationBus.CHANNEL, arguments.getAllValues().get(0));
+        assertEquals(bus.nodeId() + "|c|" + jpaChanged + "," + jdbcChanged, arguments.getAllValues().get(1));
+        // изменения через JPA Hibernate уже отразил в локальном кэше
+        Mockito.verify(evictor).evictCards(Set.of(jdbcChanged));
+    }
+
+    @Test
+    void largeChange_shouldBeSplitIntoSeveralNotifications() {
+        CacheInvalidationBus bus = new CacheInvalidationBus(evictor, jdbcTemplate, "jdbc:postgresql://db/bank", true);
+        List<UUID> ids = IntStream.range(0, 400).mapToObj(i -> UUID.randomUUID()).toList();
+
+        bus.cardsChanged(ids);
+
+        Mockito.verify(jdbcTemplate, Mockito.times(3)).query(Mockito.anyString(), Mockito.any(RowCallbackHandler.class),
+                Mockito.any(), Mockito.any());
+        Mockito.verify(evictor).evictCards(Mockito.argThat(evicted -> evicted.size() == 400));
+    }
+
+    @Test
+    void withoutPostgres_shouldOnlyEvictLocally() {
+        CacheInvalidationBus bus = new CacheInvalidationBus(evictor, jdbcTemplate, "jdbc:h2:mem:test", true);
+        UUID cardId = UUID.randomUUID();
+
+        bus.onCardChanged(event(cardId, CardOperation.DEBIT));
+        bus.cardsChanged(List.of(cardId));
+
+        assertFalse(bus.isClusterMode());
+        Mockito.verifyNoInteractions(jdbcTemplate);
+        Mockito.verify(evictor).evictCards(Set.of(cardId));
+    }
+
+    private static CardChangedEvent event(UUID cardId, CardOperation operation) {
+        return new CardChangedEvent(cardId, UUID.randomUUID(), operation, Status.ACTIVE, Status.ACTIVE, BigDecimal.TEN, null);
+    }
+}
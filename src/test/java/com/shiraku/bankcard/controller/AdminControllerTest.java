@@ -1,10 +1,15 @@
 package com.shiraku.bankcard.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shiraku.bankcard.model.JobStatus;
 import com.shiraku.bankcard.model.Role;
+import com.shiraku.bankcard.model.Status;
+import com.shiraku.bankcard.model.dto.AdminStatsDto;
 import com.shiraku.bankcard.model.dto.RaisingRequest;
+import com.shiraku.bankcard.model.dto.UserDeletionStatus;
 import com.shiraku.bankcard.model.entity.User;
 
+import com.shiraku.bankcard.service.AdminStatsService;
 import com.shiraku.bankcard.service.CardService;
 import com.shiraku.bankcard.service.UserService;
 import com.shiraku.bankcard.utils.JWTUtils;
@@ -25,8 +30,11 @@ import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import static org.hamcrest.Matchers.containsString;
@@ -53,6 +61,9 @@ class AdminControllerTest {
     @MockitoBean
     private CardService cardService;
 
+    @MockitoBean
+    private AdminStatsService adminStatsService;
+
     @MockitoBean
     private JWTUtils jwtUtils;
 
@@ -124,11 +135,38 @@ class AdminControllerTest {
     public void deleteUser_shouldReturnSuccess() throws Exception {
         UUID id = UUID.randomUUID();
 
-        Mockito.when(userService.deleteUser(id)).thenReturn("true");
+        Mockito.when(userService.deleteUser(id))
+                .thenReturn(new UserDeletionStatus(id, "del@example.com", JobStatus.DONE, 3, Instant.now()));
+
+        mockMvc.perform(delete("/api/admin/delete/" + id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.email").value("del@example.com"))
+                .andExpect(jsonPath("$.cardsDeleted").value(3));
+    }
+
+    @Test
+    public void deleteUser_shouldReturnAccepted_whenCardsAreDeletedInBackground() throws Exception {
+        UUID id = UUID.randomUUID();
+
+        Mockito.when(userService.deleteUser(id))
+                .thenReturn(new UserDeletionStatus(id, "del@example.com", JobStatus.PENDING, 0, Instant.now()));
 
         mockMvc.perform(delete("/api/admin/delete/" + id))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.status").value("PENDING"));
+    }
+
+    @Test
+    public void getStats_shouldReturnStats() throws Exception {
+        Mockito.when(adminStatsService.getStats()).thenReturn(new AdminStatsDto(
+                Map.of(Status.ACTIVE, 3L, Status.BLOCKED, 1L), 4, new BigDecimal("250.00"),
+                Map.of(Role.USER, 2L), 2, new BigDecimal("2.00"), Instant.now()));
+
+        mockMvc.perform(get("/api/admin/stats"))
                 .andExpect(status().isOk())
-                .andExpect(content().string(containsString("Success delete user: true")));
+                .andExpect(jsonPath("$.cardsByStatus.ACTIVE").value(3))
+                .andExpect(jsonPath("$.totalBalance").value(250.00))
+                .andExpect(jsonPath("$.averageCardsPerUser").value(2.00));
     }
 }
 
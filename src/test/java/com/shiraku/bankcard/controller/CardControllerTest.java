@@ -1,15 +1,31 @@
 package com.shiraku.bankcard.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shiraku.bankcard.model.CardOperation;
 import com.shiraku.bankcard.model.Role;
+import com.shiraku.bankcard.model.JobStatus;
 import com.shiraku.bankcard.model.Status;
+import com.shiraku.bankcard.model.TransferRecurrence;
 import com.shiraku.bankcard.model.dto.AdminCardDto;
+import com.shiraku.bankcard.model.dto.ArchivedCardDto;
+import com.shiraku.bankcard.model.dto.BulkCardCreateRequest;
+import com.shiraku.bankcard.model.dto.BulkCardItem;
+import com.shiraku.bankcard.model.dto.BulkCardOperationResult;
+import com.shiraku.bankcard.model.dto.BulkCardStatusRequest;
+import com.shiraku.bankcard.model.dto.IssuedCardDto;
 import com.shiraku.bankcard.model.dto.CardCreateRequest;
+import com.shiraku.bankcard.model.dto.CardHistoryPage;
+import com.shiraku.bankcard.model.dto.CardTransactionDto;
+import com.shiraku.bankcard.model.dto.ScheduledTransferDto;
+import com.shiraku.bankcard.model.dto.ScheduledTransferRequest;
 import com.shiraku.bankcard.model.dto.TransferRequest;
 import com.shiraku.bankcard.model.dto.UserCardDto;
 import com.shiraku.bankcard.model.entity.Card;
 import com.shiraku.bankcard.model.entity.User;
+import com.shiraku.bankcard.service.CardBulkStatusService;
+import com.shiraku.bankcard.service.CardIssuanceService;
 import com.shiraku.bankcard.service.CardService;
+import com.shiraku.bankcard.service.ScheduledTransferService;
 import com.shiraku.bankcard.utils.JWTUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -23,16 +39,24 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.http.MediaType;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.test.context.TestSecurityContextHolder;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -53,6 +77,15 @@ class CardControllerTest {
     @MockitoBean
     private CardService cardService;
 
+    @MockitoBean
+    private CardIssuanceService cardIssuanceService;
+
+    @MockitoBean
+    private CardBulkStatusService cardBulkStatusService;
+
+    @MockitoBean
+    private ScheduledTransferService scheduledTransferService;
+
     private User user;
     private CardCreateRequest cardCreateRequest;
     private TransferRequest transferRequest;
@@ -115,6 +148,46 @@ class CardControllerTest {
     }
 
 
+    @Test
+    public void getCardHistory_shouldReturnPageWithCursor() throws Exception {
+        UUID cardId = UUID.randomUUID();
+        CardTransactionDto transaction = new CardTransactionDto(UUID.randomUUID(), CardOperation.DEBIT,
+                BigDecimal.TEN, BigDecimal.valueOf(90), Status.ACTIVE, Instant.parse("2026-10-01T10:00:00Z"));
+
+        Mockito.when(cardService.getCardHistory(cardId, user.getEmail(), "abc", 1))
+                .thenReturn(new CardHistoryPage(List.of(transaction), "next"));
+        authenticateWithJwt(user.getEmail());
+
+        mockMvc.perform(get("/api/card/{cardId}/history", cardId)
+                        .param("cursor", "abc")
+                        .param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].operation").value("DEBIT"))
+                .andExpect(jsonPath("$.nextCursor").value("next"));
+    }
+
+    @Test
+    public void getCardHistory_shouldUseEmailOfJwtPrincipal() throws Exception {
+        UUID cardId = UUID.randomUUID();
+        Mockito.when(cardService.getCardHistory(cardId, "jwt@example.com", null, 20))
+                .thenReturn(new CardHistoryPage(List.of(), null));
+        authenticateWithJwt("jwt@example.com");
+
+        mockMvc.perform(get("/api/card/{cardId}/history", cardId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items").isEmpty());
+    }
+
+    @Test
+    public void streamCardUpdates_shouldStartEventStream() throws Exception {
+        Mockito.when(cardService.streamCardUpdates(user.getEmail())).thenReturn(new SseEmitter());
+        authenticateWithJwt(user.getEmail());
+
+        mockMvc.perform(get("/api/card/stream").accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted());
+        Mockito.verify(cardService).streamCardUpdates(user.getEmail());
+    }
+
     @Test
     public void transferBetweenCards_shouldReturnSuccess() throws Exception {
         Mockito.doNothing().when(cardService).transfer(Mockito.any(), Mockito.anyString());
@@ -126,6 +199,36 @@ class CardControllerTest {
                 .andExpect(content().string("Перевод выполнен"));
     }
 
+    @Test
+    public void scheduleTransfer_shouldReturnScheduledTransfer() throws Exception {
+        ScheduledTransferRequest request = new ScheduledTransferRequest(transferRequest.getFromCardId(),
+                transferRequest.getToCardId(), new BigDecimal("5000.00"), TransferRecurrence.MONTHLY,
+                Instant.parse("2030-01-01T00:00:00Z"));
+        ScheduledTransferDto dto = new ScheduledTransferDto(UUID.randomUUID(), request.getFromCardId(),
+                request.getToCardId(), request.getAmount(), TransferRecurrence.MONTHLY, request.getStartAt(),
+                JobStatus.PENDING, 0, 0, null);
+        Mockito.when(scheduledTransferService.create(Mockito.any(), Mockito.any())).thenReturn(dto);
+
+        mockMvc.perform(post("/api/card/transfer/scheduled")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(dto.getId().toString()))
+                .andExpect(jsonPath("$.recurrence").value("MONTHLY"))
+                .andExpect(jsonPath("$.status").value("PENDING"));
+    }
+
+    @Test
+    public void cancelScheduledTransfer_shouldReturnSuccess() throws Exception {
+        UUID id = UUID.randomUUID();
+
+        Mockito.doNothing().when(scheduledTransferService).cancel(Mockito.any(), Mockito.anyString());
+
+        mockMvc.perform(delete("/api/card/transfer/scheduled/{id}", id))
+                .andExpect(status().isOk())
+                .andExpect(content().string("Плановый перевод отменён"));
+    }
+
     @Test
     public void blockUserCard_shouldReturnSuccess() throws Exception {
         UUID cardId = UUID.randomUUID();
@@ -153,6 +256,40 @@ class CardControllerTest {
                 .andExpect(jsonPath("$.status").value("ACTIVE"));
     }
 
+    @Test
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    @SuppressWarnings("unchecked")
+    public void createCardsBulk_shouldStreamIssuedCards() throws Exception {
+        BulkCardCreateRequest request = new BulkCardCreateRequest(List.of(new BulkCardItem(user.getEmail(), 2)));
+        List<CardIssuanceService.Allocation> allocations =
+                List.of(new CardIssuanceService.Allocation(user.getEmail(), user.getId(), 2));
+        List<IssuedCardDto> issued = List.of(
+                new IssuedCardDto(UUID.randomUUID(), user.getEmail(), user.getId(), "**** **** **** 1111", "01/30"),
+                new IssuedCardDto(UUID.randomUUID(), user.getEmail(), user.getId(), "**** **** **** 2222", "01/30"));
+
+        Mockito.when(cardIssuanceService.resolveOwners(Mockito.any())).thenReturn(allocations);
+        Mockito.when(cardIssuanceService.issue(Mockito.eq(allocations), Mockito.any())).thenAnswer(invocation -> {
+            invocation.getArgument(1, Consumer.class).accept(issued);
+            return issued.size();
+        });
+
+        MvcResult result = mockMvc.perform(post("/api/card/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+
+        List<String> lines = body.lines().toList();
+        assertEquals(2, lines.size());
+        assertEquals(issued.get(1).getId(),
+                objectMapper.readValue(lines.get(1), IssuedCardDto.class).getId());
+    }
+
     @Test
     @WithMockUser(username = "admin", roles = {"ADMIN"})
     public void blockCardByAdmin_shouldReturnSuccess() throws Exception {
@@ -189,6 +326,47 @@ class CardControllerTest {
                 .andExpect(content().string("Карта удалена"));
     }
 
+    @Test
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    public void blockCardsBulk_shouldReturnCounts() throws Exception {
+        BulkCardStatusRequest request = new BulkCardStatusRequest(null, null, Status.ACTIVE, "220070");
+
+        Mockito.when(cardBulkStatusService.block(Mockito.any()))
+                .thenReturn(new BulkCardOperationResult(CardOperation.BLOCKED, 5, 4, 1, 0, 0));
+
+        mockMvc.perform(post("/api/card/bulk/block")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.changed").value(4))
+                .andExpect(jsonPath("$.unchanged").value(1));
+    }
+
+    @Test
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    public void blockCardsBulk_shouldRejectRequestWithoutSelection() throws Exception {
+        mockMvc.perform(post("/api/card/bulk/block")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{}"))
+                .andExpect(status().is4xxClientError());
+
+        Mockito.verifyNoInteractions(cardBulkStatusService);
+    }
+
+    @Test
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    public void getArchivedCards_shouldReturnArchivedCardsOfOwner() throws Exception {
+        ArchivedCardDto archived = new ArchivedCardDto(UUID.randomUUID(), "**** **** **** 0001", "01/20", Status.INACTIVE,
+                user.getId(), BigDecimal.TEN, Instant.parse("2020-02-01T00:00:00Z"), Instant.parse("2020-08-01T00:00:00Z"));
+
+        Mockito.when(cardService.getArchivedCards("user@example.com", 0, 20)).thenReturn(new PageImpl<>(List.of(archived)));
+
+        mockMvc.perform(get("/api/card/archive").param("owner", "user@example.com"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(archived.getId().toString()))
+                .andExpect(jsonPath("$[0].status").value("INACTIVE"));
+    }
+
     @Test
     @WithMockUser(username = "admin", roles = {"ADMIN"})
     public void getAllCards_shouldReturnCards() throws Exception {
@@ -214,4 +392,9 @@ class CardControllerTest {
                 .andExpect(jsonPath("$[1].status").value("BLOCKED"));
     }
 
+    /** Выставляет принципал так же, как JwtAuthenticationFilter: строку email, а не UserDetails */
+    private static void authenticateWithJwt(String email) {
+        TestSecurityContextHolder.setAuthentication(new UsernamePasswordAuthenticationToken(email, null,
+                List.of(new SimpleGrantedAuthority("ROLE_USER"))));
+    }
 }
@@ -0,0 +1,75 @@
+package com.shiraku.bankcard.datasource;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RoutingDataSourceTest {
+
+    private static final DataSource PRIMARY = h2("routing_primary");
+    private static final DataSource ADMIN = h2("routing_admin");
+    private static final DataSource REPLICA = h2("routing_replica");
+
+    private final DataSource dataSource = new LazyConnectionDataSourceProxy(
+            new RoutingDataSource(PRIMARY, ADMIN, List.of(REPLICA)));
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    private final DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+
+    @BeforeAll
+    static void createMarkers() {
+        marker(PRIMARY, "primary");
+        marker(ADMIN, "admin");
+        marker(REPLICA, "replica");
+    }
+
+    @Test
+    void readOnlyTransaction_shouldGoToReplica() {
+        assertEquals("replica", currentDatabase(true));
+    }
+
+    @Test
+    void readWriteTransaction_shouldGoToPrimary() {
+        assertEquals("primary", currentDatabase(false));
+    }
+
+    @Test
+    void pinnedPrimary_shouldOverrideReadOnly() {
+        try (DataSourceContextHolder.Scope ignored = DataSourceContextHolder.use(DataSourceRoute.PRIMARY)) {
+            assertEquals("primary", currentDatabase(true));
+        }
+        assertEquals("replica", currentDatabase(true));
+    }
+
+    @Test
+    void adminRoute_shouldUseAdminPoolForWrites() {
+        try (DataSourceContextHolder.Scope ignored = DataSourceContextHolder.use(DataSourceRoute.ADMIN)) {
+            assertEquals("admin", currentDatabase(false));
+        }
+    }
+
+    private String currentDatabase(boolean readOnly) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(readOnly);
+        return template.execute(status -> jdbcTemplate.queryForObject("SELECT name FROM marker", String.class));
+    }
+
+    private static DataSource h2(String name) {
+        return new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+    }
+
+    private static void marker(DataSource dataSource, String name) {
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        template.execute("CREATE TABLE IF NOT EXISTS marker (name VARCHAR(20))");
+        template.update("DELETE FROM marker");
+        template.update("INSERT INTO marker (name) VALUES (?)", name);
+    }
+}
@@ -0,0 +1,124 @@
+package com.shiraku.bankcard.filter;
+
+import com.shiraku.bankcard.datasource.DataSourceContextHolder;
+import com.shiraku.bankcard.datasource.DataSourceRoute;
+import com.shiraku.bankcard.utils.Bulkhead;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.context.request.async.StandardServletAsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.method.HandlerMethod;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdminBulkheadInterceptorTest {
+    private final Bulkhead bulkhead = new Bulkhead("admin", 1, 0);
+    private final AdminBulkheadInterceptor interceptor = new AdminBulkheadInterceptor(bulkhead);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void preHandle_shouldRouteAdminHandlerUntilCompletion() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/card/bulk/block");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        HandlerMethod handler = handler("admin");
+
+        assertTrue(interceptor.preHandle(request, response, handler));
+        assertEquals(DataSourceRoute.ADMIN, DataSourceContextHolder.currentRoute());
+        assertEquals(1, bulkhead.getActive());
+
+        interceptor.afterCompletion(request, response, handler, null);
+        assertNull(DataSourceContextHolder.currentRoute());
+        assertEquals(0, bulkhead.getActive());
+    }
+
+    @Test
+    void preHandle_shouldRejectWhenBulkheadIsFull() throws Exception {
+        assertTrue(bulkhead.tryEnter());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertFalse(interceptor.preHandle(new MockHttpServletRequest("POST", "/api/card/bulk/block"), response,
+                handler("admin")));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), response.getStatus());
+        assertNull(DataSourceContextHolder.currentRoute());
+        bulkhead.exit();
+    }
+
+    @Test
+    void preHandle_shouldIgnoreUserHandlers() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/card");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertTrue(interceptor.preHandle(request, response, handler("user")));
+
+        assertNull(DataSourceContextHolder.currentRoute());
+        assertEquals(0, bulkhead.getActive());
+    }
+
+    @Test
+    void asyncTask_shouldRunOnAdminRouteAndHoldPermitUntilResponseCompletes() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/card/bulk");
+        request.setAsyncSupported(true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        HandlerMethod handler = handler("admin");
+        assertTrue(interceptor.preHandle(request, response, handler));
+
+        // так DispatcherServlet запускает потоковый ответ (StreamingResponseBody) на пуле асинхронных задач
+        WebAsyncManager asyncManager = WebAsyncUtils.getAsyncManager(request);
+        asyncManager.setAsyncWebRequest(new StandardServletAsyncWebRequest(request, response));
+        asyncManager.setTaskExecutor(new TaskExecutorAdapter(executor));
+        asyncManager.startCallableProcessing(DataSourceContextHolder::currentRoute);
+        interceptor.afterConcurrentHandlingStarted(request, response, handler);
+        assertNull(DataSourceContextHolder.currentRoute());
+
+        assertEquals(DataSourceRoute.ADMIN, awaitResult(asyncManager));
+        assertEquals(1, bulkhead.getActive());
+        // поток пула возвращается без маршрута
+        assertNull(executor.submit(DataSourceContextHolder::currentRoute).get(5, TimeUnit.SECONDS));
+
+        // повторная диспетчеризация после завершения задачи не берёт второе место и освобождает первое
+        assertTrue(interceptor.preHandle(request, response, handler));
+        assertEquals(1, bulkhead.getActive());
+        interceptor.afterCompletion(request, response, handler, null);
+        assertNull(DataSourceContextHolder.currentRoute());
+        assertEquals(0, bulkhead.getActive());
+    }
+
+    private static Object awaitResult(WebAsyncManager asyncManager) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!asyncManager.hasConcurrentResult()) {
+            assertTrue(System.nanoTime() < deadline, "async task did not finish");
+            Thread.sleep(10);
+        }
+        return asyncManager.getConcurrentResult();
+    }
+
+    private static HandlerMethod handler(String name) throws NoSuchMethodException {
+        return new HandlerMethod(new Handlers(), Handlers.class.getMethod(name));
+    }
+
+    static class Handlers {
+        @PreAuthorize("hasRole('ADMIN')")
+        public void admin() {
+        }
+
+        @PreAuthorize("isAuthenticated()")
+        public void user() {
+        }
+    }
+}
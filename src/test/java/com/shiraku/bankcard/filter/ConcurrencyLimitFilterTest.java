@@ -0,0 +1,41 @@
+package com.shiraku.bankcard.filter;
+
+import com.shiraku.bankcard.filter.ConcurrencyLimitFilter.EndpointClass;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimitFilterTest {
+    private static final UUID ID = UUID.randomUUID();
+
+    @Test
+    void classify_shouldTreatScheduledTransfersAsUserTraffic() {
+        assertEquals(EndpointClass.TRANSFER, classify("POST", "/api/card/transfer/scheduled"));
+        assertEquals(EndpointClass.TRANSFER, classify("DELETE", "/api/card/transfer/scheduled/" + ID));
+        assertEquals(EndpointClass.CARD_READ, classify("GET", "/api/card/transfer/scheduled"));
+        assertEquals(EndpointClass.CARD_READ, classify("GET", "/api/card/" + ID + "/history"));
+    }
+
+    @Test
+    void classify_shouldLimitOnlyCardDeletionAsAdmin() {
+        assertEquals(EndpointClass.ADMIN, classify("DELETE", "/api/card/" + ID));
+        assertNull(classify("DELETE", "/api/card/unknown/" + ID));
+    }
+
+    @Test
+    void classify_shouldLimitBulkLookupAndArchiveAsAdmin() {
+        for (String uri : new String[]{"/api/card/bulk", "/api/card/bulk/block", "/api/card/bulk/activate",
+                "/api/card/bulk/delete", "/api/card/lookup", "/api/card/archive/lookup"}) {
+            assertEquals(EndpointClass.ADMIN, classify("POST", uri), uri);
+        }
+        assertEquals(EndpointClass.ADMIN, classify("GET", "/api/card/archive"));
+        assertEquals(EndpointClass.ADMIN, classify("GET", "/api/card/archive/" + ID));
+    }
+
+    private static EndpointClass classify(String method, String uri) {
+        return ConcurrencyLimitFilter.classify(new MockHttpServletRequest(method, uri));
+    }
+}
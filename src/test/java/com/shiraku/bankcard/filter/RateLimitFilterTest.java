@@ -0,0 +1,74 @@
+package com.shiraku.bankcard.filter;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitFilterTest {
+
+    private final RateLimitFilter filter = new RateLimitFilter(true,
+            2, 2, Duration.ofMinutes(1),
+            1, 1, Duration.ofMinutes(1),
+            Duration.ofMinutes(10));
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void login_shouldReturn429WithRetryAfter_whenBucketExhausted() throws Exception {
+        assertEquals(200, perform("/api/user/login", "10.0.0.1").getStatus());
+        assertEquals(200, perform("/api/user/login", "10.0.0.1").getStatus());
+
+        MockHttpServletResponse rejected = perform("/api/user/login", "10.0.0.1");
+
+        assertEquals(429, rejected.getStatus());
+        assertNotNull(rejected.getHeader("Retry-After"));
+        assertTrue(Integer.parseInt(rejected.getHeader("Retry-After")) >= 1);
+        assertEquals(1, filter.rejectedCount());
+    }
+
+    @Test
+    void login_shouldKeepSeparateBucketsPerIp() throws Exception {
+        perform("/api/user/login", "10.0.0.1");
+        perform("/api/user/login", "10.0.0.1");
+
+        assertEquals(200, perform("/api/user/login", "10.0.0.2").getStatus());
+    }
+
+    @Test
+    void transfer_shouldLimitPerUserRegardlessOfIp() throws Exception {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                "user@example.com", null, List.of(new SimpleGrantedAuthority("ROLE_USER"))));
+
+        assertEquals(200, perform("/api/card/transfer", "10.0.0.1").getStatus());
+        assertEquals(429, perform("/api/card/transfer", "10.0.0.2").getStatus());
+    }
+
+    @Test
+    void otherEndpoints_shouldNotBeLimited() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(200, perform("/api/card/my_cards", "10.0.0.1").getStatus());
+        }
+        assertEquals(0, filter.trackedKeys());
+    }
+
+    private MockHttpServletResponse perform(String uri, String ip) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", uri);
+        request.setRemoteAddr(ip);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+}
@@ -0,0 +1,55 @@
+package com.shiraku.bankcard.outbox;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboxSinkTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void inMemorySink_shouldKeepOnlyLatestMessages() {
+        InMemoryOutboxSink sink = new InMemoryOutboxSink(2);
+        OutboxMessage first = message("card.created");
+        OutboxMessage second = message("card.debit");
+        OutboxMessage third = message("card.blocked");
+
+        sink.deliver(List.of(first, second));
+        sink.deliver(List.of(third));
+
+        assertEquals(List.of(second, third), sink.messages());
+    }
+
+    @Test
+    void fileSink_shouldAppendOneJsonLinePerMessage() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        Path file = directory.resolve("outbox.ndjson");
+        FileOutboxSink sink = new FileOutboxSink(file, objectMapper);
+        OutboxMessage debit = message("card.debit");
+
+        sink.deliver(List.of(debit));
+        sink.deliver(List.of(message("card.credit")));
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2, lines.size());
+        JsonNode line = objectMapper.readTree(lines.get(0));
+        assertEquals(debit.id().toString(), line.get("id").asText());
+        assertEquals("card.debit", line.get("type").asText());
+        assertEquals(10, line.get("payload").get("amount").asInt());
+    }
+
+    private static OutboxMessage message(String type) {
+        return new OutboxMessage(UUID.randomUUID(), UUID.randomUUID(), type, "{\"amount\":10}", Instant.now());
+    }
+}
@@ -0,0 +1,58 @@
+package com.shiraku.bankcard.repository;
+
+import com.shiraku.bankcard.model.CardOperation;
+import com.shiraku.bankcard.model.entity.CardTransaction;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect")
+class CardTransactionRepositoryTest {
+    @Autowired
+    private CardTransactionRepository cardTransactionRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void findBefore_shouldPageByCreatedAtAndId() {
+        UUID cardId = UUID.randomUUID();
+        Instant at = Instant.parse("2026-09-01T10:00:00Z");
+        List<UUID> expected = new ArrayList<>();
+        expected.add(record(cardId, at.plusSeconds(2), new UUID(0L, 9L)));
+        // две записи с одним временем различаются по id
+        expected.add(record(cardId, at.plusSeconds(1), new UUID(0L, 8L)));
+        expected.add(record(cardId, at.plusSeconds(1), new UUID(0L, 7L)));
+        expected.add(record(cardId, at, new UUID(0L, 6L)));
+        expected.add(record(cardId, at.minusSeconds(1), new UUID(0L, 5L)));
+        record(UUID.randomUUID(), at, new UUID(0L, 1L));
+
+        List<UUID> paged = new ArrayList<>();
+        List<CardTransaction> page = cardTransactionRepository.findLatest(cardId, Limit.of(2));
+        while (!page.isEmpty()) {
+            page.forEach(transaction -> paged.add(transaction.getId()));
+            CardTransaction last = page.get(page.size() - 1);
+            page = cardTransactionRepository.findBefore(cardId, last.getCreatedAt(), last.getId(), Limit.of(2));
+        }
+
+        assertEquals(expected, paged);
+    }
+
+    private UUID record(UUID cardId, Instant createdAt, UUID id) {
+        jdbcTemplate.update("INSERT INTO card_transaction (id, card_id, owner_id, operation, amount, balance, created_at) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?)",
+                id, cardId, UUID.randomUUID(), CardOperation.CREDIT.name(), BigDecimal.ONE, BigDecimal.TEN, Timestamp.from(createdAt));
+        return id;
+    }
+}
@@ -0,0 +1,134 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.datasource.DataSourceContextHolder;
+import com.shiraku.bankcard.datasource.DataSourceRoute;
+import com.shiraku.bankcard.datasource.ShardRouter;
+import com.shiraku.bankcard.model.CardOperation;
+import com.shiraku.bankcard.model.Role;
+import com.shiraku.bankcard.model.Status;
+import com.shiraku.bankcard.model.dto.AdminStatsDto;
+import com.shiraku.bankcard.model.event.CardChangedEvent;
+import com.shiraku.bankcard.model.event.UserChangedEvent;
+import com.shiraku.bankcard.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class AdminStatsServiceTest {
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private UserRepository userRepository;
+
+    private AdminStatsService service;
+
+    @BeforeEach
+    void setup() {
+        service = new AdminStatsService(ShardRouter.singleShard(), jdbcTemplate, userRepository);
+    }
+
+    private void stubTables(List<Object[]> cards, List<Object[]> users) {
+        Mockito.when(jdbcTemplate.query(Mockito.anyString(), Mockito.<RowMapper<Object[]>>any())).thenReturn(cards);
+        Mockito.when(userRepository.countByRole()).thenReturn(users);
+    }
+
+    @Test
+    void events_shouldUpdateCountersIncrementally() {
+        UUID cardId = UUID.randomUUID();
+        UUID ownerId = UUID.randomUUID();
+
+        service.onUserChanged(new UserChangedEvent(ownerId, "user@example.com", false, null, Role.USER));
+        service.onCardChanged(new CardChangedEvent(cardId, ownerId, CardOperation.CREATED, null, Status.ACTIVE,
+                new BigDecimal("100.00"), null));
+        service.onCardChanged(new CardChangedEvent(cardId, ownerId, CardOperation.DEBIT, Status.ACTIVE, Status.ACTIVE,
+                new BigDecimal("75.50"), new BigDecimal("24.50")));
+        service.onCardChanged(new CardChangedEvent(cardId, ownerId, CardOperation.BLOCKED, Status.ACTIVE, Status.BLOCKED,
+                new BigDecimal("75.50"), null));
+
+        AdminStatsDto stats = service.getStats();
+        assertEquals(0L, stats.getCardsByStatus().get(Status.ACTIVE));
+        assertEquals(1L, stats.getCardsByStatus().get(Status.BLOCKED));
+        assertEquals(1, stats.getTotalCards());
+        assertEquals(new BigDecimal("75.50"), stats.getTotalBalance());
+        assertEquals(1L, stats.getUsersByRole().get(Role.USER));
+        assertEquals(new BigDecimal("1.00"), stats.getAverageCardsPerUser());
+
+        service.onCardChanged(new CardChangedEvent(cardId, ownerId, CardOperation.DELETED, Status.BLOCKED, Status.BLOCKED,
+                new BigDecimal("75.50"), null));
+        service.onUserChanged(new UserChangedEvent(ownerId, "user@example.com", true, Role.USER, null));
+
+        stats = service.getStats();
+        assertEquals(0, stats.getTotalCards());
+        assertEquals(0, stats.getTotalBalance().signum());
+        assertEquals(0, stats.getTotalUsers());
+    }
+
+    @Test
+    void reconcile_shouldReplaceCountersWithTableTotals() {
+        service.onCardChanged(new CardChangedEvent(UUID.randomUUID(), UUID.randomUUID(), CardOperation.CREATED, null,
+                Status.ACTIVE, new BigDecimal("10.00"), null));
+        stubTables(List.of(
+                        new Object[]{Status.ACTIVE, 2L, new BigDecimal("30.00")},
+                        new Object[]{Status.INACTIVE, 1L, new BigDecimal("5.00")},
+                        new Object[]{Status.INACTIVE, 1L, new BigDecimal("1.00")}),
+                List.<Object[]>of(new Object[]{Role.USER, 2L}, new Object[]{Role.ADMIN, 1L}));
+
+        service.reconcile();
+
+        AdminStatsDto stats = service.getStats();
+        assertEquals(2L, stats.getCardsByStatus().get(Status.ACTIVE));
+        assertEquals(2L, stats.getCardsByStatus().get(Status.INACTIVE));
+        assertEquals(new BigDecimal("36.00"), stats.getTotalBalance());
+        assertEquals(3, stats.getTotalUsers());
+        assertNotNull(stats.getReconciledAt());
+        assertEquals(6, service.lastDrift());
+    }
+
+    @Test
+    void reconcile_shouldKeepIncrementalValues_whenCountFails() {
+        service.onCardChanged(new CardChangedEvent(UUID.randomUUID(), UUID.randomUUID(), CardOperation.CREATED, null,
+                Status.ACTIVE, new BigDecimal("10.00"), null));
+        Mockito.when(jdbcTemplate.query(Mockito.anyString(), Mockito.<RowMapper<Object[]>>any()))
+                .thenThrow(new IllegalStateException("db down"));
+
+        service.reconcile();
+
+        AdminStatsDto stats = service.getStats();
+        assertEquals(1, stats.getTotalCards());
+        assertEquals(new BigDecimal("10.00"), stats.getTotalBalance());
+        assertNull(stats.getReconciledAt());
+    }
+
+    @Test
+    void reconcile_shouldCountOnPrimary() {
+        List<DataSourceRoute> routes = new ArrayList<>();
+        Mockito.when(jdbcTemplate.query(Mockito.anyString(), Mockito.<RowMapper<Object[]>>any())).thenAnswer(invocation -> {
+            routes.add(DataSourceContextHolder.currentRoute());
+            return List.of();
+        });
+        Mockito.when(userRepository.countByRole()).thenAnswer(invocation -> {
+            routes.add(DataSourceContextHolder.currentRoute());
+            return List.of();
+        });
+
+        service.reconcile();
+
+        // реплика могла бы не видеть изменений, уже учтённых в отложенных счётчиках
+        assertEquals(List.of(DataSourceRoute.PRIMARY, DataSourceRoute.PRIMARY), routes);
+        assertNull(DataSourceContextHolder.currentRoute());
+    }
+}
@@ -0,0 +1,71 @@
+package com.shiraku.bankcard.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class AdvisoryLockServiceTest {
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void resetTransaction() {
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+
+    @Test
+    void lockCards_shouldLockInAscendingKeyOrder() {
+        AdvisoryLockService service = new AdvisoryLockService(jdbcTemplate, "jdbc:postgresql://db/bank", true);
+        UUID low = new UUID(0L, 1L);
+        UUID high = new UUID(0L, 2L);
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+
+        service.lockCards(high, low);
+        service.lockCards(low, high);
+
+        // один запрос на операцию, ключи в порядке возрастания независимо от порядка карт
+        Mockito.verify(jdbcTemplate, Mockito.times(2)).query(Mockito.eq(AdvisoryLockService.LOCK_SQL),
+                Mockito.any(RowCallbackHandler.class), Mockito.eq("{1,2}"));
+        assertEquals(2, service.acquisitionCount());
+    }
+
+    @Test
+    void lockCards_shouldLockSameCardOnce() {
+        AdvisoryLockService service = new AdvisoryLockService(jdbcTemplate, "jdbc:postgresql://db/bank", true);
+        UUID cardId = UUID.randomUUID();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+
+        service.lockCards(cardId, cardId);
+
+        Mockito.verify(jdbcTemplate).query(Mockito.eq(AdvisoryLockService.LOCK_SQL), Mockito.any(RowCallbackHandler.class),
+                Mockito.eq("{" + AdvisoryLockService.lockKey(cardId) + "}"));
+    }
+
+    @Test
+    void lockCards_shouldRequireTransaction() {
+        AdvisoryLockService service = new AdvisoryLockService(jdbcTemplate, "jdbc:postgresql://db/bank", true);
+
+        assertThrows(IllegalStateException.class, () -> service.lockCards(UUID.randomUUID()));
+    }
+
+    @Test
+    void lockCards_shouldDoNothing_whenDatabaseIsNotPostgres() {
+        AdvisoryLockService service = new AdvisoryLockService(jdbcTemplate, "jdbc:h2:mem:test", true);
+
+        service.lockCards(UUID.randomUUID(), UUID.randomUUID());
+
+        assertFalse(service.isEnabled());
+        Mockito.verifyNoInteractions(jdbcTemplate);
+    }
+}
@@ -0,0 +1,71 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.model.CardOperation;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BalanceReconciliationJobTest {
+
+    @Test
+    void cardMovements_shouldMatch_whenBalanceEqualsRecordedMovements() {
+        BalanceReconciliationJob.CardMovements card =
+                new BalanceReconciliationJob.CardMovements(UUID.randomUUID(), new BigDecimal("97.00"));
+
+        card.apply(CardOperation.CREATED, null, new BigDecimal("100.00"));
+        card.apply(CardOperation.DEBIT, new BigDecimal("5.00"), new BigDecimal("95.00"));
+        card.apply(CardOperation.BLOCKED, null, new BigDecimal("95.00"));
+        card.apply(CardOperation.CREDIT, new BigDecimal("2.00"), new BigDecimal("97.00"));
+
+        assertNull(card.mismatch());
+        assertEquals(new BigDecimal("97.00"), card.expected());
+    }
+
+    @Test
+    void cardMovements_shouldApplySignedAccrual() {
+        BalanceReconciliationJob.CardMovements card =
+                new BalanceReconciliationJob.CardMovements(UUID.randomUUID(), new BigDecimal("100.50"));
+
+        card.apply(CardOperation.CREATED, null, new BigDecimal("100.00"));
+        card.apply(CardOperation.ACCRUAL, new BigDecimal("1.50"), new BigDecimal("101.50"));
+        card.apply(CardOperation.ACCRUAL, new BigDecimal("-1.00"), new BigDecimal("100.50"));
+
+        assertNull(card.mismatch());
+        assertEquals(new BigDecimal("100.50"), card.expected());
+    }
+
+    @Test
+    void cardMovements_shouldStartFromEarliestRecord_whenHistoryIsTruncated() {
+        BalanceReconciliationJob.CardMovements card =
+                new BalanceReconciliationJob.CardMovements(UUID.randomUUID(), new BigDecimal("40.00"));
+
+        card.apply(CardOperation.DEBIT, new BigDecimal("10.00"), new BigDecimal("50.00"));
+        card.apply(CardOperation.DEBIT, new BigDecimal("10.00"), new BigDecimal("40.00"));
+
+        assertNull(card.mismatch());
+    }
+
+    @Test
+    void cardMovements_shouldReportBalanceChangedWithoutMovement() {
+        BalanceReconciliationJob.CardMovements card =
+                new BalanceReconciliationJob.CardMovements(UUID.randomUUID(), new BigDecimal("99.00"));
+
+        card.apply(CardOperation.CREATED, null, BigDecimal.ZERO);
+        card.apply(CardOperation.DEBIT, new BigDecimal("1.00"), new BigDecimal("99.00"));
+
+        assertEquals("BALANCE", card.mismatch());
+        assertEquals(new BigDecimal("-1.00"), card.expected());
+        assertEquals(new BigDecimal("99.00"), card.lastRecorded());
+    }
+
+    @Test
+    void cardMovements_shouldReportCardWithoutHistory() {
+        BalanceReconciliationJob.CardMovements card =
+                new BalanceReconciliationJob.CardMovements(UUID.randomUUID(), BigDecimal.ZERO);
+
+        assertEquals("NO_HISTORY", card.mismatch());
+    }
+}
@@ -0,0 +1,140 @@
+package com.shiraku.bankcard.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shiraku.bankcard.cache.CacheInvalidationBus;
+import com.shiraku.bankcard.datasource.ShardRouter;
+import com.shiraku.bankcard.model.CardOperation;
+import com.shiraku.bankcard.model.JobStatus;
+import com.shiraku.bankcard.model.Status;
+import com.shiraku.bankcard.model.dto.CardUpdateDto;
+import com.shiraku.bankcard.model.event.CardChangedEvent;
+import com.shiraku.bankcard.support.ChangelogDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardAccrualJobTest {
+    private static final YearMonth PERIOD = YearMonth.of(2026, 9);
+
+    private ChangelogDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private CardUpdateBroadcaster broadcaster;
+    private CardAccrualJob job;
+
+    @BeforeEach
+    void setUp() {
+        database = ChangelogDatabase.create();
+        jdbcTemplate = database.jdbcTemplate();
+
+        broadcaster = Mockito.mock(CardUpdateBroadcaster.class);
+        job = new CardAccrualJob(ShardRouter.singleShard(), jdbcTemplate, database.transactionManager(),
+                new AdvisoryLockService(jdbcTemplate, "jdbc:h2:mem:", false), Mockito.mock(CacheInvalidationBus.class), broadcaster,
+                true, new BigDecimal("0.0125"), new BigDecimal("0.50"), 2, 2, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        job.destroy();
+        database.close();
+    }
+
+    @Test
+    void run_shouldAccrueOncePerPeriod() {
+        UUID interest = card("ACTIVE", "100.00");
+        UUID feeCapped = card("ACTIVE", "0.30");
+        UUID halfUp = card("ACTIVE", "10.04");
+        UUID empty = card("ACTIVE", "0.00");
+        UUID blocked = card("BLOCKED", "50.00");
+
+        CardAccrualJob.Summary first = job.run(PERIOD);
+
+        assertEquals(JobStatus.DONE, first.status());
+        assertEquals(4, first.cards());
+        // 100.00: +1.25 - 0.50; 0.30: комиссия не больше остатка; 10.04: 0.1255 -> 0.13 - 0.50
+        assertEquals(new BigDecimal("100.75"), balance(interest));
+        assertEquals(new BigDecimal("0.00"), balance(feeCapped));
+        assertEquals(new BigDecimal("9.67"), balance(halfUp));
+        assertEquals(new BigDecimal("0.00"), balance(empty));
+        assertEquals(new BigDecimal("50.00"), balance(blocked));
+        assertEquals(0, new BigDecimal("0.08").compareTo(first.amount()));
+
+        assertEquals(3, ledgerRows());
+        assertEquals(new BigDecimal("-0.30"), jdbcTemplate.queryForObject(
+                "SELECT amount FROM card_transaction WHERE card_id = ? AND operation = 'ACCRUAL'", BigDecimal.class, feeCapped));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM card_transaction WHERE card_id = ?", Integer.class, empty));
+        assertEquals(1L, jdbcTemplate.queryForObject("SELECT version FROM card WHERE id = ?", Long.class, interest));
+        assertEquals(0L, jdbcTemplate.queryForObject("SELECT version FROM card WHERE id = ?", Long.class, blocked));
+
+        // завершённый месяц не пересчитывается, а прерванный продолжается без повторного начисления
+        assertEquals(first, job.run(PERIOD));
+        jdbcTemplate.update("UPDATE accrual_run SET status = 'FAILED'");
+        CardAccrualJob.Summary resumed = job.run(PERIOD);
+
+        assertEquals(JobStatus.DONE, resumed.status());
+        assertEquals(4, resumed.cards());
+        assertEquals(new BigDecimal("100.75"), balance(interest));
+        assertEquals(3, ledgerRows());
+    }
+
+    @Test
+    void run_shouldAccrueAgainInNextPeriod() {
+        UUID id = card("ACTIVE", "100.00");
+
+        job.run(PERIOD);
+        job.run(PERIOD.plusMonths(1));
+
+        // 100.75 * 0.0125 = 1.259375 -> 1.26
+        assertEquals(new BigDecimal("101.51"), balance(id));
+        assertEquals(2, ledgerRows());
+    }
+
+    @Test
+    void run_shouldWriteHistoryAndOutboxOfAccruedCards() throws JsonProcessingException {
+        UUID id = card("ACTIVE", "100.00");
+        UUID owner = jdbcTemplate.queryForObject("SELECT owner_id FROM card WHERE id = ?", UUID.class, id);
+
+        job.run(PERIOD);
+
+        Map<String, Object> history = jdbcTemplate.queryForMap(
+                "SELECT owner_id, amount, balance, status FROM card_transaction WHERE card_id = ?", id);
+        assertEquals(owner, history.get("owner_id"));
+        assertEquals(new BigDecimal("0.75"), history.get("amount"));
+        assertEquals(new BigDecimal("100.75"), history.get("balance"));
+        assertEquals("ACTIVE", history.get("status"));
+        // содержимое outbox должно совпадать с тем, что пишет OutboxRecorder для события
+        Map<String, Object> outbox = jdbcTemplate.queryForMap(
+                "SELECT event_type, payload FROM outbox_event WHERE aggregate_id = ?", id);
+        assertEquals("card.accrual", outbox.get("event_type"));
+        assertEquals(new ObjectMapper().writeValueAsString(new CardChangedEvent(id, owner, CardOperation.ACCRUAL,
+                Status.ACTIVE, Status.ACTIVE, new BigDecimal("100.75"), new BigDecimal("0.75"))), outbox.get("payload"));
+
+        ArgumentCaptor<CardUpdateDto> update = ArgumentCaptor.forClass(CardUpdateDto.class);
+        Mockito.verify(broadcaster).send(Mockito.eq(owner), update.capture());
+        assertEquals(id, update.getValue().getCardId());
+        assertEquals(new BigDecimal("100.75"), update.getValue().getBalance());
+    }
+
+    private UUID card(String status, String balance) {
+        return database.insertCard(UUID.randomUUID(), status, new BigDecimal(balance));
+    }
+
+    private BigDecimal balance(UUID id) {
+        return jdbcTemplate.queryForObject("SELECT balance FROM card WHERE id = ?", BigDecimal.class, id);
+    }
+
+    private int ledgerRows() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM card_transaction WHERE operation = 'ACCRUAL'", Integer.class);
+    }
+}
@@ -0,0 +1,115 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.cache.CacheInvalidationBus;
+import com.shiraku.bankcard.datasource.ShardRouter;
+import com.shiraku.bankcard.support.ChangelogDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+
+class CardArchiveJobTest {
+    private static final Duration RETENTION = Duration.ofDays(180);
+
+    private ChangelogDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private CacheInvalidationBus cacheInvalidationBus;
+    private CardArchiveJob job;
+
+    @BeforeEach
+    void setUp() {
+        database = ChangelogDatabase.create();
+        jdbcTemplate = database.jdbcTemplate();
+        cacheInvalidationBus = Mockito.mock(CacheInvalidationBus.class);
+        job = new CardArchiveJob(ShardRouter.singleShard(), jdbcTemplate, database.transactionManager(),
+                cacheInvalidationBus, true, RETENTION, 2, Duration.ZERO);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.close();
+    }
+
+    @Test
+    void archive_shouldStampInactiveCardsBeforeCountingRetention() {
+        List<UUID> unstamped = List.of(card("BLOCKED", BigDecimal.ZERO, null), card("INACTIVE", BigDecimal.ZERO, null),
+                card("BLOCKED", BigDecimal.ZERO, null));
+        UUID active = card("ACTIVE", BigDecimal.ZERO, null);
+
+        // срок для карт без времени смены статуса отсчитывается с первого запуска, поэтому в архив они не попадают
+        assertEquals(0, job.archive(Instant.now().minus(RETENTION)));
+
+        for (UUID id : unstamped) {
+            assertNotNull(statusChangedAt(id));
+            assertEquals(1L, version(id));
+        }
+        assertNull(statusChangedAt(active));
+        // порции по 2 карты: 2 + 1
+        Mockito.verify(cacheInvalidationBus, Mockito.times(2)).cardsChanged(anyCollection());
+    }
+
+    @Test
+    void archive_shouldMoveDeadCardsWithTheirScheduledTransfers() {
+        Instant longAgo = Instant.now().minus(RETENTION).minus(Duration.ofDays(1));
+        UUID dead = card("BLOCKED", BigDecimal.ZERO, longAgo);
+        UUID funded = card("BLOCKED", new BigDecimal("5.00"), longAgo);
+        UUID recent = card("BLOCKED", BigDecimal.ZERO, Instant.now().minus(Duration.ofDays(1)));
+        UUID unhashed = card("INACTIVE", BigDecimal.ZERO, longAgo);
+        jdbcTemplate.update("UPDATE card SET number_hash = NULL WHERE id = ?", unhashed);
+        UUID active = card("ACTIVE", BigDecimal.ZERO, longAgo);
+        scheduledTransfer(active, dead);
+        UUID kept = scheduledTransfer(active, funded);
+        Map<String, Object> before = jdbcTemplate.queryForMap("SELECT number, number_hash, owner_id, expiry_date, status "
+                + "FROM card WHERE id = ?", dead);
+
+        assertEquals(1, job.archive(Instant.now().minus(RETENTION)));
+
+        // на балансе, недавно сменившие статус, без хэша номера и активные карты остаются на месте
+        assertEquals(Set.of(funded, recent, unhashed, active),
+                Set.copyOf(jdbcTemplate.queryForList("SELECT id FROM card", UUID.class)));
+        Map<String, Object> archived = jdbcTemplate.queryForMap("SELECT number, number_hash, owner_id, expiry_date, status, "
+                + "archived_at FROM card_archive WHERE id = ?", dead);
+        before.forEach((column, value) -> assertEquals(value, archived.get(column), column));
+        assertNotNull(archived.get("archived_at"));
+        assertEquals(List.of(kept), jdbcTemplate.queryForList("SELECT id FROM scheduled_transfer", UUID.class));
+        Mockito.verify(cacheInvalidationBus).cardsChanged(List.of(dead));
+        assertEquals(1, job.archivedCount());
+    }
+
+    private UUID card(String status, BigDecimal balance, Instant statusChangedAt) {
+        UUID id = database.insertCard(UUID.randomUUID(), status, balance);
+        jdbcTemplate.update("UPDATE card SET number_hash = ?, status_changed_at = ? WHERE id = ?", "hash-" + id,
+                statusChangedAt != null ? Timestamp.from(statusChangedAt) : null, id);
+        return id;
+    }
+
+    private UUID scheduledTransfer(UUID from, UUID to) {
+        UUID id = UUID.randomUUID();
+        Timestamp now = Timestamp.from(Instant.now());
+        jdbcTemplate.update("INSERT INTO scheduled_transfer (id, owner_id, from_card_id, to_card_id, amount, recurrence, "
+                        + "start_at, status, created_at, updated_at) VALUES (?, ?, ?, ?, ?, 'MONTHLY', ?, 'PENDING', ?, ?)",
+                id, UUID.randomUUID(), from, to, new BigDecimal("1.00"), now, now, now);
+        return id;
+    }
+
+    private Object statusChangedAt(UUID id) {
+        return jdbcTemplate.queryForObject("SELECT status_changed_at FROM card WHERE id = ?", Object.class, id);
+    }
+
+    private long version(UUID id) {
+        return jdbcTemplate.queryForObject("SELECT version FROM card WHERE id = ?", Long.class, id);
+    }
+}
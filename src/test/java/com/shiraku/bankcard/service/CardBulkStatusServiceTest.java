@@ -0,0 +1,145 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.cache.CacheInvalidationBus;
+import com.shiraku.bankcard.datasource.ShardRouter;
+import com.shiraku.bankcard.model.CardOperation;
+import com.shiraku.bankcard.model.Status;
+import com.shiraku.bankcard.model.dto.BulkCardOperationResult;
+import com.shiraku.bankcard.model.dto.BulkCardStatusRequest;
+import com.shiraku.bankcard.model.event.CardChangedEvent;
+import com.shiraku.bankcard.repository.UserRepository;
+import com.shiraku.bankcard.support.ChangelogDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+
+class CardBulkStatusServiceTest {
+    private ChangelogDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private CacheInvalidationBus cacheInvalidationBus;
+    private final List<CardChangedEvent> events = new ArrayList<>();
+    private CardBulkStatusService service;
+
+    @BeforeEach
+    void setUp() {
+        database = ChangelogDatabase.create();
+        jdbcTemplate = database.jdbcTemplate();
+        cacheInvalidationBus = Mockito.mock(CacheInvalidationBus.class);
+        service = new CardBulkStatusService(Mockito.mock(UserRepository.class), ShardRouter.singleShard(), jdbcTemplate,
+                database.transactionManager(), event -> events.add((CardChangedEvent) event), cacheInvalidationBus, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.close();
+    }
+
+    @Test
+    void block_shouldProcessConditionSelectionInChunks() {
+        UUID owner = UUID.randomUUID();
+        List<UUID> active = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            active.add(database.insertCard(owner, "ACTIVE", BigDecimal.ZERO));
+        }
+        UUID blocked = database.insertCard(owner, "BLOCKED", BigDecimal.ZERO);
+
+        BulkCardOperationResult result = service.block(request(null, Status.ACTIVE));
+
+        assertEquals(5, result.getMatched());
+        assertEquals(5, result.getChanged());
+        assertEquals(0, result.getNotFound());
+        for (UUID id : active) {
+            assertEquals("BLOCKED", status(id));
+            assertEquals(1L, version(id));
+        }
+        assertEquals(0L, version(blocked));
+        // порции по 2 карты: 2 + 2 + 1, каждая инвалидирует кэш отдельно
+        Mockito.verify(cacheInvalidationBus, Mockito.times(3)).cardsChanged(anyCollection());
+        assertEquals(5, events.size());
+        assertTrue(events.stream().allMatch(event -> event.operation() == CardOperation.BLOCKED
+                && event.previousStatus() == Status.ACTIVE && event.status() == Status.BLOCKED));
+    }
+
+    @Test
+    void block_shouldCountUnchangedAndNotFoundCards() {
+        UUID owner = UUID.randomUUID();
+        UUID active = database.insertCard(owner, "ACTIVE", BigDecimal.ZERO);
+        UUID blocked = database.insertCard(owner, "BLOCKED", BigDecimal.ZERO);
+
+        BulkCardOperationResult result = service.block(request(List.of(active, blocked, UUID.randomUUID(), active), null));
+
+        assertEquals(2, result.getMatched());
+        assertEquals(1, result.getChanged());
+        assertEquals(1, result.getUnchanged());
+        assertEquals(0, result.getRejected());
+        assertEquals(1, result.getNotFound());
+        assertEquals(0L, version(blocked));
+        assertEquals(List.of(active), events.stream().map(CardChangedEvent::cardId).toList());
+    }
+
+    @Test
+    void activate_shouldRejectExpiredCards() {
+        UUID owner = UUID.randomUUID();
+        UUID expired = database.insertCard(owner, "BLOCKED", BigDecimal.ZERO);
+        UUID valid = database.insertCard(owner, "BLOCKED", BigDecimal.ZERO);
+        jdbcTemplate.update("UPDATE card SET expires_on = ? WHERE id = ?", Date.valueOf(LocalDate.now().minusDays(1)), expired);
+
+        BulkCardOperationResult result = service.activate(request(List.of(expired, valid), null));
+
+        assertEquals(1, result.getChanged());
+        assertEquals(1, result.getRejected());
+        assertEquals("BLOCKED", status(expired));
+        assertEquals("ACTIVE", status(valid));
+    }
+
+    @Test
+    void delete_shouldRefuseFundedCards() {
+        UUID owner = UUID.randomUUID();
+        UUID funded = database.insertCard(owner, "BLOCKED", new BigDecimal("10.00"));
+        UUID empty = database.insertCard(owner, "BLOCKED", BigDecimal.ZERO);
+        scheduledTransfer(owner, funded, empty);
+
+        BulkCardOperationResult result = service.delete(request(List.of(funded, empty), null));
+
+        assertEquals(2, result.getMatched());
+        assertEquals(1, result.getChanged());
+        assertEquals(1, result.getRejected());
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM card WHERE id = ?", Integer.class, funded));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM card WHERE id = ?", Integer.class, empty));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM scheduled_transfer", Integer.class));
+        assertEquals(List.of(empty), events.stream().map(CardChangedEvent::cardId).toList());
+    }
+
+    private static BulkCardStatusRequest request(List<UUID> cardIds, Status status) {
+        return new BulkCardStatusRequest(cardIds, null, status, null);
+    }
+
+    private String status(UUID id) {
+        return jdbcTemplate.queryForObject("SELECT status FROM card WHERE id = ?", String.class, id);
+    }
+
+    private long version(UUID id) {
+        return jdbcTemplate.queryForObject("SELECT version FROM card WHERE id = ?", Long.class, id);
+    }
+
+    private void scheduledTransfer(UUID owner, UUID from, UUID to) {
+        Timestamp now = Timestamp.from(Instant.now());
+        jdbcTemplate.update("INSERT INTO scheduled_transfer (id, owner_id, from_card_id, to_card_id, amount, recurrence, "
+                        + "start_at, status, created_at, updated_at) VALUES (?, ?, ?, ?, ?, 'MONTHLY', ?, 'PENDING', ?, ?)",
+                UUID.randomUUID(), owner, from, to, new BigDecimal("1.00"), now, now, now);
+    }
+}
@@ -0,0 +1,75 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.cache.CacheInvalidationBus;
+import com.shiraku.bankcard.datasource.ShardRouter;
+import com.shiraku.bankcard.support.ChangelogDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardExpiryBackfillJobTest {
+    private ChangelogDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private CardExpiryBackfillJob job;
+
+    @BeforeEach
+    void setUp() {
+        database = ChangelogDatabase.create();
+        jdbcTemplate = database.jdbcTemplate();
+        job = new CardExpiryBackfillJob(ShardRouter.singleShard(), jdbcTemplate, Mockito.mock(CacheInvalidationBus.class),
+                true, 2, Duration.ZERO);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.close();
+    }
+
+    @Test
+    void run_shouldFillOnlyRowsLeftByInterruptedRun() {
+        UUID first = card("02/28");
+        UUID second = card("12/30");
+        UUID third = card("07/29");
+        UUID unparseable = card("13/99");
+        // строка, заполненная прерванным запуском, не обновляется повторно
+        UUID filled = card("01/27");
+        jdbcTemplate.update("UPDATE card SET expires_on = ? WHERE id = ?", Date.valueOf("2027-01-31"), filled);
+
+        assertEquals(3, job.run());
+
+        assertEquals(LocalDate.of(2028, 2, 29), expiresOn(first));
+        assertEquals(LocalDate.of(2030, 12, 31), expiresOn(second));
+        assertEquals(LocalDate.of(2029, 7, 31), expiresOn(third));
+        assertNull(expiresOn(unparseable));
+        assertEquals(1L, version(first));
+        assertEquals(0L, version(filled));
+
+        // повторный запуск ничего не меняет
+        assertEquals(0, job.run());
+        assertEquals(1L, version(first));
+    }
+
+    private UUID card(String expiryDate) {
+        UUID id = database.insertCard(UUID.randomUUID(), "ACTIVE", BigDecimal.ZERO);
+        jdbcTemplate.update("UPDATE card SET expiry_date = ? WHERE id = ?", expiryDate, id);
+        return id;
+    }
+
+    private LocalDate expiresOn(UUID id) {
+        return jdbcTemplate.queryForObject("SELECT expires_on FROM card WHERE id = ?", LocalDate.class, id);
+    }
+
+    private long version(UUID id) {
+        return jdbcTemplate.queryForObject("SELECT version FROM card WHERE id = ?", Long.class, id);
+    }
+}
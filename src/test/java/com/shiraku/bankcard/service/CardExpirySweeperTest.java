@@ -0,0 +1,100 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.cache.CacheInvalidationBus;
+import com.shiraku.bankcard.datasource.ShardRouter;
+import com.shiraku.bankcard.model.CardOperation;
+import com.shiraku.bankcard.model.Status;
+import com.shiraku.bankcard.model.event.CardChangedEvent;
+import com.shiraku.bankcard.support.ChangelogDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardExpirySweeperTest {
+    private static final LocalDate TODAY = LocalDate.of(2026, 10, 1);
+
+    private ChangelogDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private CacheInvalidationBus cacheInvalidationBus;
+    private final List<CardChangedEvent> events = new ArrayList<>();
+    private CardExpirySweeper sweeper;
+
+    @BeforeEach
+    void setUp() {
+        database = ChangelogDatabase.create();
+        jdbcTemplate = database.jdbcTemplate();
+        cacheInvalidationBus = Mockito.mock(CacheInvalidationBus.class);
+        sweeper = new CardExpirySweeper(ShardRouter.singleShard(), jdbcTemplate, database.transactionManager(),
+                event -> events.add((CardChangedEvent) event), cacheInvalidationBus, true, 2, Duration.ZERO);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.close();
+    }
+
+    @Test
+    void sweep_shouldDeactivateExpiredCardsInChunks() {
+        Set<UUID> expired = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            expired.add(card("ACTIVE", TODAY.minusDays(1 + i)));
+        }
+        UUID lastDay = card("ACTIVE", TODAY);
+        UUID blocked = card("BLOCKED", TODAY.minusMonths(1));
+
+        assertEquals(3, sweeper.sweep(TODAY));
+
+        for (UUID id : expired) {
+            assertEquals("INACTIVE", status(id));
+            assertEquals(1L, version(id));
+            assertNotNull(jdbcTemplate.queryForObject("SELECT status_changed_at FROM card WHERE id = ?", Object.class, id));
+        }
+        // последний день действия карта ещё активна
+        assertEquals("ACTIVE", status(lastDay));
+        assertEquals(0L, version(lastDay));
+        assertEquals("BLOCKED", status(blocked));
+
+        // порции по 2 карты, каждая вытесняет свои карты из кэша
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<UUID>> evicted = ArgumentCaptor.forClass(Collection.class);
+        Mockito.verify(cacheInvalidationBus, Mockito.times(2)).cardsChanged(evicted.capture());
+        assertEquals(expired, evicted.getAllValues().stream().flatMap(Collection::stream).collect(Collectors.toSet()));
+        assertEquals(3, events.size());
+        assertTrue(events.stream().allMatch(event -> event.operation() == CardOperation.EXPIRED
+                && event.previousStatus() == Status.ACTIVE && event.status() == Status.INACTIVE));
+        assertEquals(3, sweeper.expiredCount());
+
+        assertEquals(0, sweeper.sweep(TODAY));
+    }
+
+    private UUID card(String status, LocalDate expiresOn) {
+        UUID id = database.insertCard(UUID.randomUUID(), status, BigDecimal.ZERO);
+        jdbcTemplate.update("UPDATE card SET expires_on = ? WHERE id = ?", Date.valueOf(expiresOn), id);
+        return id;
+    }
+
+    private String status(UUID id) {
+        return jdbcTemplate.queryForObject("SELECT status FROM card WHERE id = ?", String.class, id);
+    }
+
+    private long version(UUID id) {
+        return jdbcTemplate.queryForObject("SELECT version FROM card WHERE id = ?", Long.class, id);
+    }
+}
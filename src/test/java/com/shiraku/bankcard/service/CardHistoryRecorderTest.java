@@ -0,0 +1,70 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.model.CardOperation;
+import com.shiraku.bankcard.model.Status;
+import com.shiraku.bankcard.model.entity.CardTransaction;
+import com.shiraku.bankcard.model.event.CardChangedEvent;
+import com.shiraku.bankcard.repository.CardTransactionRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class CardHistoryRecorderTest {
+    @Mock
+    private CardTransactionRepository cardTransactionRepository;
+
+    @Test
+    void onCardChanged_shouldRecordOperationAndStateAfterIt() {
+        UUID cardId = UUID.randomUUID();
+        UUID ownerId = UUID.randomUUID();
+        CardChangedEvent event = new CardChangedEvent(cardId, ownerId, CardOperation.DEBIT, Status.ACTIVE, Status.ACTIVE,
+                new BigDecimal("40.00"), new BigDecimal("10.00"));
+
+        new CardHistoryRecorder(cardTransactionRepository).onCardChanged(event);
+
+        ArgumentCaptor<CardTransaction> saved = ArgumentCaptor.forClass(CardTransaction.class);
+        Mockito.verify(cardTransactionRepository).save(saved.capture());
+        CardTransaction transaction = saved.getValue();
+        assertEquals(cardId, transaction.getCardId());
+        assertEquals(ownerId, transaction.getOwnerId());
+        assertEquals(CardOperation.DEBIT, transaction.getOperation());
+        assertEquals(new BigDecimal("10.00"), transaction.getAmount());
+        assertEquals(new BigDecimal("40.00"), transaction.getBalance());
+        assertEquals(Status.ACTIVE, transaction.getStatus());
+        // курсор страницы истории сравнивается с сохранённым значением, поэтому время - с точностью timestamptz
+        assertEquals(transaction.getCreatedAt().truncatedTo(ChronoUnit.MICROS), transaction.getCreatedAt());
+    }
+
+    @Test
+    void onCardChanged_shouldStampBothLegsOfTransferWithOneTime() throws InterruptedException {
+        CardHistoryRecorder recorder = new CardHistoryRecorder(cardTransactionRepository);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            recorder.onCardChanged(new CardChangedEvent(UUID.randomUUID(), UUID.randomUUID(), CardOperation.DEBIT,
+                    Status.ACTIVE, Status.ACTIVE, new BigDecimal("40.00"), new BigDecimal("10.00")));
+            Thread.sleep(2);
+            recorder.onCardChanged(new CardChangedEvent(UUID.randomUUID(), UUID.randomUUID(), CardOperation.CREDIT,
+                    Status.ACTIVE, Status.ACTIVE, new BigDecimal("10.00"), new BigDecimal("10.00")));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // граница сверки не может пройти между списанием и зачислением одного перевода
+        ArgumentCaptor<CardTransaction> saved = ArgumentCaptor.forClass(CardTransaction.class);
+        Mockito.verify(cardTransactionRepository, Mockito.times(2)).save(saved.capture());
+        List<CardTransaction> legs = saved.getAllValues();
+        assertEquals(legs.get(0).getCreatedAt(), legs.get(1).getCreatedAt());
+    }
+}
@@ -1,22 +1,31 @@
 package com.shiraku.bankcard.service;
 
+import com.shiraku.bankcard.datasource.ReplicaConsistencyTracker;
+import com.shiraku.bankcard.datasource.ShardRouter;
 import com.shiraku.bankcard.model.Status;
+import com.shiraku.bankcard.model.dto.AdminCardDto;
 import com.shiraku.bankcard.model.dto.CardCreateRequest;
 import com.shiraku.bankcard.model.dto.TransferRequest;
 import com.shiraku.bankcard.model.entity.Card;
 import com.shiraku.bankcard.model.entity.User;
+import com.shiraku.bankcard.model.event.CardChangedEvent;
 import com.shiraku.bankcard.repository.CardRepository;
 import com.shiraku.bankcard.repository.UserRepository;
+import jakarta.persistence.EntityNotFoundException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.security.access.AccessDeniedException;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -34,7 +43,27 @@ public class CardServiceTest {
     @Mock
     private CipherService cipherService;
 
-    @InjectMocks
+    @Mock
+    private ReplicaConsistencyTracker consistencyTracker;
+
+    @Spy
+    private ShardRouter shardRouter = ShardRouter.singleShard();
+
+    @Mock
+    private CardNumberGenerator cardNumberGenerator;
+
+    @Spy
+    private BlindIndexService blindIndexService = new BlindIndexService("test-blind-index-key");
+
+    @Mock
+    private AdvisoryLockService advisoryLockService;
+
+    @Mock
+    private CardUpdateBroadcaster cardUpdateBroadcaster;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     private CardService cardService;
 
     private final UUID cardId = UUID.randomUUID();
@@ -46,6 +75,10 @@ public class CardServiceTest {
 
     @BeforeEach
     void setUp() {
+        cardService = new CardService(cardRepository, userRepository, null, null, null, cipherService, consistencyTracker,
+                shardRouter, cardNumberGenerator, blindIndexService, advisoryLockService, cardUpdateBroadcaster,
+                eventPublisher, Duration.ofSeconds(2));
+
         user = new User();
         user.setId(userId);
         user.setEmail(email);
@@ -109,6 +142,9 @@ public class CardServiceTest {
 
         Mockito.verify(cardRepository).save(fromCard);
         Mockito.verify(cardRepository).save(toCard);
+        Mockito.verify(advisoryLockService).lockCards(fromCardId, toCardId);
+        Mockito.verify(eventPublisher, Mockito.times(2)).publishEvent(Mockito.any(CardChangedEvent.class));
+        Mockito.verify(consistencyTracker).markWrite(email);
     }
 
     @Test
@@ -131,14 +167,86 @@ public class CardServiceTest {
         request.setOwner(email);
 
         Mockito.when(userRepository.findByEmail(email)).thenReturn(Optional.of(user));
-        Mockito.when(cipherService.encrypt(Mockito.anyString())).thenReturn(encryptedCard);
+        Mockito.when(cardNumberGenerator.generate()).thenReturn(plainCard);
+        Mockito.when(cipherService.encrypt(plainCard)).thenReturn(encryptedCard);
         Mockito.when(cardRepository.save(Mockito.any(Card.class))).thenAnswer(i -> i.getArgument(0));
 
         Card created = cardService.createCard(request);
 
-        assertNotNull(created.getNumber());
+        assertEquals(encryptedCard, created.getNumber());
+        assertEquals(blindIndexService.hash(plainCard), created.getNumberHash());
         assertEquals(userId, created.getOwnerId());
         assertEquals(Status.ACTIVE, created.getStatus());
+        assertEquals(CardService.expiresOn(created.getExpiryDate()), created.getExpiresOn());
+    }
+
+    @Test
+    void createCard_shouldRegenerateNumber_whenInsertCollides() {
+        CardCreateRequest request = new CardCreateRequest();
+        request.setOwner(email);
+
+        Mockito.when(userRepository.findByEmail(email)).thenReturn(Optional.of(user));
+        Mockito.when(cardNumberGenerator.generate()).thenReturn("2200701234567890", "2200709876543210");
+        Mockito.when(cipherService.encrypt(Mockito.anyString())).thenAnswer(i -> "enc-" + i.getArgument(0));
+        // номер уже выпущен другим экземпляром приложения: фильтр его не видел, уникальный индекс отклонил вставку
+        Mockito.when(cardRepository.save(Mockito.any(Card.class)))
+                .thenThrow(new DuplicateKeyException("uk_card_number_hash"))
+                .thenAnswer(i -> i.getArgument(0));
+
+        Card created = cardService.createCard(request);
+
+        assertEquals("enc-2200709876543210", created.getNumber());
+        assertEquals(blindIndexService.hash("2200709876543210"), created.getNumberHash());
+        assertEquals("220070", created.getBin());
+        Mockito.verify(cardRepository, Mockito.times(2)).save(Mockito.any(Card.class));
     }
-}
 
+    @Test
+    void createCard_shouldGiveUp_afterRepeatedCollisions() {
+        CardCreateRequest request = new CardCreateRequest();
+        request.setOwner(email);
+
+        Mockito.when(userRepository.findByEmail(email)).thenReturn(Optional.of(user));
+        Mockito.when(cardNumberGenerator.generate()).thenReturn("2200701234567890");
+        Mockito.when(cipherService.encrypt(Mockito.anyString())).thenReturn("enc");
+        Mockito.when(cardRepository.save(Mockito.any(Card.class))).thenThrow(new DuplicateKeyException("uk_card_number_hash"));
+
+        assertThrows(DuplicateKeyException.class, () -> cardService.createCard(request));
+        Mockito.verify(cardRepository, Mockito.times(3)).save(Mockito.any(Card.class));
+        Mockito.verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void activateCard_shouldReject_whenCardIsExpired() {
+        card.setStatus(Status.INACTIVE);
+        card.setExpiresOn(LocalDate.now().minusDays(1));
+        Mockito.when(cardRepository.findById(cardId)).thenReturn(Optional.of(card));
+
+        assertThrows(IllegalStateException.class, () -> cardService.activateCard(cardId));
+        assertEquals(Status.INACTIVE, card.getStatus());
+        Mockito.verify(cardRepository, Mockito.never()).save(card);
+    }
+
+    @Test
+    void findCardByNumber_shouldUseBlindIndex() {
+        String plainCard = "2200700000000001";
+        card.setNumber("enc123");
+        card.setNumberHash(blindIndexService.hash(plainCard));
+
+        Mockito.when(cardRepository.findByNumberHash(card.getNumberHash())).thenReturn(Optional.of(card));
+        Mockito.when(cipherService.decrypt("enc123")).thenReturn(plainCard);
+
+        AdminCardDto found = cardService.findCardByNumber(plainCard);
+
+        assertEquals(cardId, found.getId());
+        assertEquals("**** **** **** 0001", found.getNumber());
+        Mockito.verify(cardRepository, Mockito.never()).findAll();
+    }
+
+    @Test
+    void findCardByNumber_shouldThrow_whenCardIsUnknown() {
+        Mockito.when(cardRepository.findByNumberHash(Mockito.anyString())).thenReturn(Optional.empty());
+
+        assertThrows(EntityNotFoundException.class, () -> cardService.findCardByNumber("2200700000000001"));
+    }
+}
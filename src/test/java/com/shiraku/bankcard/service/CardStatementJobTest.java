@@ -0,0 +1,130 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.datasource.ShardRouter;
+import com.shiraku.bankcard.model.JobStatus;
+import com.shiraku.bankcard.support.ChangelogDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardStatementJobTest {
+    private static final YearMonth PERIOD = YearMonth.of(2026, 9);
+
+    @TempDir
+    Path outputDir;
+
+    private ChangelogDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private CardStatementJob job;
+
+    @BeforeEach
+    void setUp() {
+        database = ChangelogDatabase.create();
+        jdbcTemplate = database.jdbcTemplate();
+
+        CipherService cipherService = Mockito.mock(CipherService.class);
+        Mockito.when(cipherService.decrypt(Mockito.anyString())).thenReturn("2200701234567890");
+        job = new CardStatementJob(ShardRouter.singleShard(), jdbcTemplate, database.transactionManager(),
+                cipherService, "jdbc:h2:mem:", true, 2, 1, 100, outputDir, Duration.ofMinutes(30));
+    }
+
+    @AfterEach
+    void tearDown() {
+        job.destroy();
+        database.close();
+    }
+
+    @Test
+    void run_shouldWriteOpeningAndClosingBalances() throws IOException {
+        UUID owner = UUID.randomUUID();
+        UUID card = card(owner);
+        record(card, "CREATED", null, "0.00", "2026-08-10T10:00:00Z");
+        record(card, "CREDIT", "50.00", "50.00", "2026-08-20T10:00:00Z");
+        record(card, "DEBIT", "10.00", "40.00", "2026-09-03T10:00:00Z");
+        record(card, "CREDIT", "5.50", "45.50", "2026-09-15T10:00:00Z");
+        record(card, "DEBIT", "1.00", "44.50", "2026-10-01T00:00:00Z");
+        UUID issued = card(UUID.randomUUID());
+        record(issued, "CREATED", null, "0.00", "2026-09-05T10:00:00Z");
+        record(issued, "CREDIT", "20.00", "20.00", "2026-09-06T10:00:00Z");
+
+        CardStatementJob.Summary summary = job.run(PERIOD);
+
+        assertEquals(JobStatus.DONE, summary.status());
+        assertEquals(2, summary.cards());
+        List<String> lines = Files.readAllLines(statement(owner, card));
+        assertEquals(List.of(
+                "# statement,2026-09",
+                "# card," + card + ",**** **** **** 7890",
+                "# owner," + owner,
+                "# opening_balance,50.00",
+                "date,operation,amount,balance",
+                "2026-09-03T10:00:00Z,DEBIT,10.00,40.00",
+                "2026-09-15T10:00:00Z,CREDIT,5.50,45.50",
+                "# closing_balance,45.50"), lines);
+        List<String> issuedLines = Files.readAllLines(statement(ownerOf(issued), issued));
+        assertEquals("# opening_balance,0.00", issuedLines.get(3));
+        assertEquals("# closing_balance,20.00", issuedLines.get(issuedLines.size() - 1));
+    }
+
+    @Test
+    void run_shouldRewriteFilesOfFailedRanges() throws IOException {
+        UUID owner = UUID.randomUUID();
+        UUID card = card(owner);
+        record(card, "CREATED", null, "0.00", "2026-09-01T10:00:00Z");
+        record(card, "CREDIT", "30.00", "30.00", "2026-09-02T10:00:00Z");
+        job.run(PERIOD);
+
+        // диапазон упал после записи файла: повтор должен перезаписать файл, а не дописать его
+        record(card, "DEBIT", "5.00", "25.00", "2026-09-20T10:00:00Z");
+        jdbcTemplate.update("UPDATE statement_range SET status = 'FAILED'");
+        jdbcTemplate.update("UPDATE statement_run SET status = 'FAILED'");
+        CardStatementJob.Summary summary = job.run(PERIOD);
+
+        assertEquals(JobStatus.DONE, summary.status());
+        assertEquals(1, summary.cards());
+        List<String> lines = Files.readAllLines(statement(owner, card));
+        assertEquals(1, lines.stream().filter(line -> line.startsWith("# statement")).count());
+        assertEquals(List.of("2026-09-02T10:00:00Z,CREDIT,30.00,30.00", "2026-09-20T10:00:00Z,DEBIT,5.00,25.00"),
+                lines.subList(5, lines.size() - 1));
+        assertEquals("# closing_balance,25.00", lines.get(lines.size() - 1));
+        try (Stream<Path> files = Files.walk(outputDir)) {
+            assertEquals(1, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    private UUID card(UUID owner) {
+        return database.insertCard(owner, "ACTIVE", BigDecimal.ZERO);
+    }
+
+    private UUID ownerOf(UUID card) {
+        return jdbcTemplate.queryForObject("SELECT owner_id FROM card WHERE id = ?", UUID.class, card);
+    }
+
+    private void record(UUID card, String operation, String amount, String balance, String createdAt) {
+        jdbcTemplate.update("INSERT INTO card_transaction (id, card_id, owner_id, operation, amount, balance, created_at) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?)",
+                UUID.randomUUID(), card, ownerOf(card), operation, amount != null ? new BigDecimal(amount) : null, new BigDecimal(balance),
+                Timestamp.from(Instant.parse(createdAt)));
+    }
+
+    private Path statement(UUID owner, UUID card) {
+        return outputDir.resolve(PERIOD.toString()).resolve(owner.toString()).resolve(card + ".csv");
+    }
+}
@@ -0,0 +1,81 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.datasource.ShardRouter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class CardTransactionPartitionMaintainerTest {
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void partitionName_shouldRoundTripMonth() {
+        YearMonth month = YearMonth.of(2026, 3);
+
+        assertEquals("card_transaction_y2026m03", CardTransactionPartitionMaintainer.partitionName(month));
+        assertEquals(month, CardTransactionPartitionMaintainer.partitionMonth("card_transaction_y2026m03"));
+        assertNull(CardTransactionPartitionMaintainer.partitionMonth("card_transaction_default"));
+        assertNull(CardTransactionPartitionMaintainer.partitionMonth("card_archive"));
+    }
+
+    @Test
+    void createPartitionSql_shouldCoverWholeUtcMonth() {
+        assertEquals("CREATE TABLE IF NOT EXISTS card_transaction_y2026m12 PARTITION OF card_transaction "
+                        + "FOR VALUES FROM ('2026-12-01 00:00:00+00') TO ('2027-01-01 00:00:00+00')",
+                CardTransactionPartitionMaintainer.createPartitionSql(YearMonth.of(2026, 12)));
+    }
+
+    @Test
+    void maintain_shouldCreateRemainingPartitions_whenOneFails() {
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        Mockito.lenient().doThrow(new QueryTimeoutException("lock timeout"))
+                .when(jdbcTemplate).execute(CardTransactionPartitionMaintainer.createPartitionSql(current));
+
+        maintainer(2, 0).maintain();
+
+        Mockito.verify(jdbcTemplate).execute(CardTransactionPartitionMaintainer.createPartitionSql(current.plusMonths(1)));
+        Mockito.verify(jdbcTemplate).execute(CardTransactionPartitionMaintainer.createPartitionSql(current.plusMonths(2)));
+    }
+
+    @Test
+    void maintain_shouldDetachOnlyPartitionsOlderThanRetention() {
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        String oldest = CardTransactionPartitionMaintainer.partitionName(current.minusMonths(14));
+        String old = CardTransactionPartitionMaintainer.partitionName(current.minusMonths(13));
+        String kept = CardTransactionPartitionMaintainer.partitionName(current.minusMonths(12));
+        Mockito.when(jdbcTemplate.queryForList(Mockito.anyString(), Mockito.eq(String.class), Mockito.eq("card_transaction")))
+                .thenReturn(List.of(oldest, old, kept, "card_transaction_default"));
+        Mockito.lenient().doThrow(new QueryTimeoutException("lock timeout"))
+                .when(jdbcTemplate).execute("ALTER TABLE card_transaction DETACH PARTITION " + oldest);
+
+        maintainer(0, 12).maintain();
+
+        Mockito.verify(jdbcTemplate).execute("ALTER TABLE card_transaction DETACH PARTITION " + old);
+        Mockito.verify(jdbcTemplate, Mockito.never()).execute("ALTER TABLE card_transaction DETACH PARTITION " + kept);
+        Mockito.verify(jdbcTemplate, Mockito.never()).execute("ALTER TABLE card_transaction DETACH PARTITION card_transaction_default");
+    }
+
+    @Test
+    void maintain_shouldDoNothing_whenDatabaseIsNotPostgres() {
+        new CardTransactionPartitionMaintainer(ShardRouter.singleShard(), jdbcTemplate, "jdbc:h2:mem:test", 3, 12).maintain();
+
+        Mockito.verifyNoInteractions(jdbcTemplate);
+    }
+
+    private CardTransactionPartitionMaintainer maintainer(int monthsAhead, int retentionMonths) {
+        return new CardTransactionPartitionMaintainer(ShardRouter.singleShard(), jdbcTemplate, "jdbc:postgresql://db/bank",
+                monthsAhead, retentionMonths);
+    }
+}
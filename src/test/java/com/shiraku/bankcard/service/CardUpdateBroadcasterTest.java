@@ -0,0 +1,99 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.model.CardOperation;
+import com.shiraku.bankcard.model.Status;
+import com.shiraku.bankcard.model.dto.CardUpdateDto;
+import com.shiraku.bankcard.model.event.CardChangedEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardUpdateBroadcasterTest {
+    private final CardUpdateBroadcaster broadcaster =
+            new CardUpdateBroadcaster(Duration.ofMinutes(1), Duration.ofHours(1), 2, 2, 1);
+
+    @AfterEach
+    void shutdown() {
+        broadcaster.destroy();
+    }
+
+    @Test
+    void onCardChanged_shouldDeliverLatestStateOnlyToOwner() throws Exception {
+        UUID ownerId = UUID.randomUUID();
+        UUID cardId = UUID.randomUUID();
+        RecordingEmitter own = new RecordingEmitter();
+        RecordingEmitter foreign = new RecordingEmitter();
+        broadcaster.subscribe(ownerId, own);
+        broadcaster.subscribe(UUID.randomUUID(), foreign);
+
+        for (int balance = 1; balance <= 50; balance++) {
+            broadcaster.onCardChanged(event(ownerId, cardId, balance));
+        }
+
+        awaitUntil(() -> !own.updates.isEmpty()
+                && own.updates.get(own.updates.size() - 1).getBalance().intValue() == 50);
+        assertTrue(own.updates.size() <= 50);
+        assertTrue(foreign.updates.isEmpty());
+    }
+
+    @Test
+    void failedSend_shouldRemoveSubscription() throws Exception {
+        UUID ownerId = UUID.randomUUID();
+        RecordingEmitter broken = new RecordingEmitter();
+        broken.failing = true;
+
+        broadcaster.subscribe(ownerId, broken);
+
+        awaitUntil(() -> broadcaster.connectionCount() == 0);
+    }
+
+    @Test
+    void subscribe_shouldCloseOldestConnection_whenUserLimitIsExceeded() throws Exception {
+        UUID ownerId = UUID.randomUUID();
+        broadcaster.subscribe(ownerId, new RecordingEmitter());
+        broadcaster.subscribe(ownerId, new RecordingEmitter());
+        broadcaster.subscribe(ownerId, new RecordingEmitter());
+
+        assertEquals(2, broadcaster.connectionCount());
+    }
+
+    private static CardChangedEvent event(UUID ownerId, UUID cardId, int balance) {
+        return new CardChangedEvent(cardId, ownerId, CardOperation.CREDIT, Status.ACTIVE, Status.ACTIVE,
+                BigDecimal.valueOf(balance), BigDecimal.ONE);
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not reached in time");
+            Thread.sleep(10);
+        }
+    }
+
+    private static final class RecordingEmitter extends SseEmitter {
+        private final List<CardUpdateDto> updates = new CopyOnWriteArrayList<>();
+        private volatile boolean failing;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (failing) {
+                throw new IOException("client disconnected");
+            }
+            builder.build().stream()
+                    .map(part -> part.getData())
+                    .filter(CardUpdateDto.class::isInstance)
+                    .map(CardUpdateDto.class::cast)
+                    .forEach(updates::add);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.datasource.ShardRouter;
+import com.shiraku.bankcard.model.TransferRecurrence;
+import com.shiraku.bankcard.model.dto.TransferRequest;
+import com.shiraku.bankcard.support.ChangelogDatabase;
+import jakarta.persistence.EntityNotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+
+class ScheduledTransferSchedulerTest {
+    private ChangelogDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private CardService cardService;
+    private final List<ScheduledTransferScheduler> schedulers = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        database = ChangelogDatabase.create();
+        jdbcTemplate = database.jdbcTemplate();
+        cardService = Mockito.mock(CardService.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        schedulers.forEach(ScheduledTransferScheduler::destroy);
+        database.close();
+    }
+
+    @Test
+    void occurrenceAt_shouldKeepDayOfMonthFromStart() {
+        Instant start = Instant.parse("2026-01-31T09:00:00Z");
+
+        assertEquals(Instant.parse("2026-02-28T09:00:00Z"),
+                ScheduledTransferScheduler.occurrenceAt(TransferRecurrence.MONTHLY, start, 1));
+        assertEquals(Instant.parse("2026-03-31T09:00:00Z"),
+                ScheduledTransferScheduler.occurrenceAt(TransferRecurrence.MONTHLY, start, 2));
+    }
+
+    @Test
+    void occurrenceAt_shouldEndOnceAfterFirstRun() {
+        Instant start = Instant.parse("2026-01-01T00:00:00Z");
+
+        assertEquals(start, ScheduledTransferScheduler.occurrenceAt(TransferRecurrence.ONCE, start, 0));
+        assertNull(ScheduledTransferScheduler.occurrenceAt(TransferRecurrence.ONCE, start, 1));
+    }
+
+    @Test
+    void nextOccurrence_shouldSkipOccurrencesMissedWhileStopped() {
+        Instant start = Instant.parse("2026-01-01T08:00:00Z");
+        Instant now = Instant.parse("2026-01-05T12:00:00Z");
+
+        int next = ScheduledTransferScheduler.nextOccurrence(TransferRecurrence.DAILY, start, 0, now);
+
+        assertEquals(5, next);
+        assertEquals(Instant.parse("2026-01-06T08:00:00Z"),
+                ScheduledTransferScheduler.occurrenceAt(TransferRecurrence.DAILY, start, next));
+    }
+
+    @Test
+    void renewLease_shouldKeepLeaseOnOneNodeUntilItExpires() {
+        ScheduledTransferScheduler first = scheduler();
+        ScheduledTransferScheduler second = scheduler();
+
+        assertTrue(first.renewLease());
+        assertFalse(second.renewLease());
+        assertTrue(first.renewLease());
+
+        // держатель перестал продлевать аренду: после истечения её забирает другой узел
+        jdbcTemplate.update("UPDATE scheduler_lease SET expires_at = ?", Timestamp.from(Instant.now().minusSeconds(1)));
+        assertTrue(second.renewLease());
+        assertFalse(first.renewLease());
+        assertFalse(first.isLeader());
+
+        // остановленный держатель отдаёт аренду сразу
+        second.destroy();
+        assertTrue(first.renewLease());
+    }
+
+    @Test
+    void dispatch_shouldRequeueNextOccurrenceWithoutReload() throws InterruptedException {
+        UUID owner = UUID.randomUUID();
+        // следующий ежедневный срок наступает через полторы секунды - в пределах lookahead
+        Instant start = Instant.now().minus(Duration.ofDays(1)).plusMillis(1500);
+        UUID id = transfer(owner, TransferRecurrence.DAILY, start);
+        ScheduledTransferScheduler scheduler = scheduler();
+        assertTrue(scheduler.renewLease());
+        assertEquals(1, scheduler.queuedCount());
+
+        scheduler.start();
+
+        awaitUntil(() -> scheduler.executedCount() == 2);
+        Mockito.verify(cardService, Mockito.times(2)).transferOnOwnerShard(any(TransferRequest.class), eq(owner));
+        Map<String, Object> row = row(id);
+        assertEquals(2, ((Number) row.get("occurrence")).intValue());
+        assertEquals(2L, ((Number) row.get("executed")).longValue());
+        assertEquals("PENDING", row.get("status"));
+        awaitUntil(() -> scheduler.queuedCount() == 0);
+    }
+
+    @Test
+    void dispatch_shouldSkipOccurrenceAlreadyClaimed() throws InterruptedException {
+        UUID id = transfer(UUID.randomUUID(), TransferRecurrence.DAILY, Instant.now().minusSeconds(60));
+        ScheduledTransferScheduler scheduler = scheduler();
+        assertTrue(scheduler.renewLease());
+        // срок выполнен другим узлом после загрузки: next_run_at уже не совпадает с загруженным
+        jdbcTemplate.update("UPDATE scheduled_transfer SET occurrence = 1, next_run_at = ? WHERE id = ?",
+                Timestamp.from(Instant.now().plus(Duration.ofDays(1))), id);
+
+        scheduler.start();
+
+        awaitUntil(() -> scheduler.queuedCount() == 0);
+        Mockito.verifyNoInteractions(cardService);
+        assertEquals(0, scheduler.executedCount() + scheduler.failedCount());
+        assertEquals(1, ((Number) row(id).get("occurrence")).intValue());
+    }
+
+    @Test
+    void dispatch_shouldSkipOccurrenceWhenTransferFails() throws InterruptedException {
+        Instant start = Instant.now().truncatedTo(ChronoUnit.SECONDS).minusSeconds(60);
+        UUID id = transfer(UUID.randomUUID(), TransferRecurrence.DAILY, start);
+        Mockito.doThrow(new IllegalStateException("Недостаточно средств"))
+                .when(cardService).transferOnOwnerShard(any(TransferRequest.class), any(UUID.class));
+        ScheduledTransferScheduler scheduler = scheduler();
+        assertTrue(scheduler.renewLease());
+
+        scheduler.start();
+
+        awaitUntil(() -> scheduler.failedCount() == 1);
+        awaitUntil(() -> ((Number) row(id).get("failed")).intValue() == 1);
+        Map<String, Object> row = row(id);
+        assertEquals("PENDING", row.get("status"));
+        assertEquals(1, ((Number) row.get("occurrence")).intValue());
+        assertEquals("Недостаточно средств", row.get("last_error"));
+        assertEquals(start.plus(Duration.ofDays(1)), jdbcTemplate.queryForObject(
+                "SELECT next_run_at FROM scheduled_transfer WHERE id = ?", Timestamp.class, id).toInstant());
+    }
+
+    @Test
+    void dispatch_shouldFailTransferWhenCardIsGone() throws InterruptedException {
+        UUID id = transfer(UUID.randomUUID(), TransferRecurrence.DAILY, Instant.now().minusSeconds(60));
+        Mockito.doThrow(new EntityNotFoundException("Карта не найдена"))
+                .when(cardService).transferOnOwnerShard(any(TransferRequest.class), any(UUID.class));
+        ScheduledTransferScheduler scheduler = scheduler();
+        assertTrue(scheduler.renewLease());
+
+        scheduler.start();
+
+        awaitUntil(() -> "FAILED".equals(row(id).get("status")));
+        assertNull(row(id).get("next_run_at"));
+    }
+
+    @Test
+    void dispatch_shouldKeepOccurrenceOnDatabaseError() throws InterruptedException {
+        UUID id = transfer(UUID.randomUUID(), TransferRecurrence.DAILY, Instant.now().minusSeconds(60));
+        Mockito.doThrow(new QueryTimeoutException("timeout"))
+                .when(cardService).transferOnOwnerShard(any(TransferRequest.class), any(UUID.class));
+        ScheduledTransferScheduler scheduler = scheduler();
+        assertTrue(scheduler.renewLease());
+
+        scheduler.start();
+
+        awaitUntil(() -> scheduler.queuedCount() == 0);
+        Map<String, Object> row = row(id);
+        assertEquals(0, ((Number) row.get("occurrence")).intValue());
+        assertEquals(0, ((Number) row.get("failed")).intValue());
+        assertEquals(0, scheduler.failedCount());
+        // срок остаётся и будет загружен снова
+        assertEquals(1, scheduler.load());
+    }
+
+    private ScheduledTransferScheduler scheduler() {
+        ScheduledTransferScheduler scheduler = new ScheduledTransferScheduler(ShardRouter.singleShard(), jdbcTemplate,
+                database.transactionManager(), cardService, true, Duration.ofSeconds(30), 10000, Duration.ofMinutes(2), 500, 2);
+        schedulers.add(scheduler);
+        return scheduler;
+    }
+
+    private UUID transfer(UUID owner, TransferRecurrence recurrence, Instant startAt) {
+        UUID id = UUID.randomUUID();
+        Timestamp now = Timestamp.from(Instant.now());
+        jdbcTemplate.update("INSERT INTO scheduled_transfer (id, owner_id, from_card_id, to_card_id, amount, recurrence, "
+                        + "start_at, next_run_at, status, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, 'PENDING', ?, ?)",
+                id, owner, UUID.randomUUID(), UUID.randomUUID(), new BigDecimal("1.00"), recurrence.name(),
+                Timestamp.from(startAt), Timestamp.from(startAt), now, now);
+        return id;
+    }
+
+    private Map<String, Object> row(UUID id) {
+        return jdbcTemplate.queryForMap("SELECT * FROM scheduled_transfer WHERE id = ?", id);
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not reached in time");
+            Thread.sleep(10);
+        }
+    }
+}
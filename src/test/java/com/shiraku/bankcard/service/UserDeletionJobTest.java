@@ -0,0 +1,94 @@
+package com.shiraku.bankcard.service;
+
+import com.shiraku.bankcard.cache.CacheInvalidationBus;
+import com.shiraku.bankcard.datasource.ShardRouter;
+import com.shiraku.bankcard.model.JobStatus;
+import com.shiraku.bankcard.model.entity.UserDeletionTask;
+import com.shiraku.bankcard.repository.UserDeletionTaskRepository;
+import com.shiraku.bankcard.support.ChangelogDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserDeletionJobTest {
+    private final UUID owner = UUID.randomUUID();
+
+    private ChangelogDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private UserDeletionTask task;
+    private UserDeletionJob job;
+
+    @BeforeEach
+    void setUp() {
+        database = ChangelogDatabase.create();
+        jdbcTemplate = database.jdbcTemplate();
+        task = new UserDeletionTask(owner, "del@example.com", JobStatus.PENDING, 0, null, Instant.now(), Instant.now());
+        UserDeletionTaskRepository taskRepository = Mockito.mock(UserDeletionTaskRepository.class);
+        Mockito.when(taskRepository.findById(owner)).thenReturn(Optional.of(task));
+        job = new UserDeletionJob(taskRepository, ShardRouter.singleShard(), jdbcTemplate, database.transactionManager(),
+                Mockito.mock(CacheInvalidationBus.class), event -> {
+                }, 10, 100, Duration.ZERO);
+    }
+
+    @AfterEach
+    void tearDown() {
+        job.destroy();
+        database.close();
+    }
+
+    @Test
+    void fundedCards_shouldCountCardsWithNonZeroBalance() {
+        database.insertCard(owner, "ACTIVE", BigDecimal.ZERO);
+        database.insertCard(owner, "BLOCKED", new BigDecimal("3.00"));
+        database.insertCard(UUID.randomUUID(), "ACTIVE", new BigDecimal("5.00"));
+
+        assertEquals(1, job.fundedCards(owner));
+    }
+
+    @Test
+    void process_shouldDeleteCardsOfOwner() {
+        database.insertCard(owner, "ACTIVE", BigDecimal.ZERO);
+        database.insertCard(owner, "BLOCKED", BigDecimal.ZERO);
+        UUID other = database.insertCard(UUID.randomUUID(), "ACTIVE", BigDecimal.ZERO);
+
+        assertEquals(JobStatus.DONE, job.process(owner).getStatus());
+
+        assertEquals(2, task.getCardsDeleted());
+        assertEquals(0, cards(owner));
+        assertEquals(1, cards(ownerOf(other)));
+    }
+
+    @Test
+    void process_shouldStopAndKeepCards_whenCardWasFundedAfterCheck() {
+        database.insertCard(owner, "ACTIVE", BigDecimal.ZERO);
+        UUID credited = database.insertCard(owner, "ACTIVE", BigDecimal.ZERO);
+        assertEquals(0, job.fundedCards(owner));
+        // зачисление после проверки при удалении пользователя
+        jdbcTemplate.update("UPDATE card SET balance = 7.00 WHERE id = ?", credited);
+
+        assertThrows(IllegalStateException.class, () -> job.process(owner));
+
+        assertEquals(JobStatus.FAILED, task.getStatus());
+        assertTrue(task.getLastError().contains(credited.toString()));
+        assertEquals(0, task.getCardsDeleted());
+        assertEquals(2, cards(owner));
+    }
+
+    private int cards(UUID ownerId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM card WHERE owner_id = ?", Integer.class, ownerId);
+    }
+
+    private UUID ownerOf(UUID card) {
+        return jdbcTemplate.queryForObject("SELECT owner_id FROM card WHERE id = ?", UUID.class, card);
+    }
+}
@@ -1,21 +1,28 @@
 package com.shiraku.bankcard.service;
 
+import com.shiraku.bankcard.model.JobStatus;
 import com.shiraku.bankcard.model.Role;
 import com.shiraku.bankcard.model.dto.RaisingRequest;
+import com.shiraku.bankcard.model.dto.UserDeletionStatus;
 import com.shiraku.bankcard.model.dto.UserRequest;
 import com.shiraku.bankcard.model.entity.User;
+import com.shiraku.bankcard.model.event.UserChangedEvent;
 import com.shiraku.bankcard.repository.UserRepository;
 import com.shiraku.bankcard.utils.JWTUtils;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -34,6 +41,15 @@ public final class UserServiceTest {
     @Mock
     private PasswordEncoder passwordEncoder;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private UserDeletionJob userDeletionJob;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @InjectMocks
     private UserService userService;
 
@@ -118,13 +134,36 @@ public final class UserServiceTest {
         User user = new User();
         user.setId(id);
         user.setEmail("del@example.com");
+        user.setRole(Role.USER);
+
+        UserDeletionStatus done = new UserDeletionStatus(id, "del@example.com", JobStatus.DONE, 2, Instant.now());
 
         Mockito.when(userRepository.findById(id)).thenReturn(Optional.of(user));
+        Mockito.when(userDeletionJob.process(id)).thenReturn(done);
+
+        UserDeletionStatus status = userService.deleteUser(id);
+
+        assertEquals(done, status);
+        InOrder order = Mockito.inOrder(userRepository, userDeletionJob);
+        order.verify(userRepository).delete(user);
+        order.verify(userDeletionJob).record(id, "del@example.com");
+        order.verify(userDeletionJob).process(id);
+        Mockito.verify(transactionManager).commit(Mockito.any());
+        Mockito.verify(eventPublisher).publishEvent(new UserChangedEvent(id, "del@example.com", true, Role.USER, null));
+    }
+
+    @Test
+    void testDeleteUser_shouldRejectWhenCardsHoldFunds() {
+        UUID id = UUID.randomUUID();
+        Mockito.when(userDeletionJob.fundedCards(id)).thenReturn(1L);
 
-        String email = userService.deleteUser(id);
+        assertThrows(IllegalStateException.class, () -> userService.deleteUser(id));
 
-        assertEquals("del@example.com", email);
-        Mockito.verify(userRepository).delete(user);
+        Mockito.verify(userRepository, Mockito.never()).delete(Mockito.any());
+        Mockito.verify(userDeletionJob, Mockito.never()).record(Mockito.any(), Mockito.any());
+        // проверка идёт внутри транзакции удаления, которая откатывается
+        Mockito.verify(transactionManager).rollback(Mockito.any());
+        Mockito.verify(transactionManager, Mockito.never()).commit(Mockito.any());
     }
 
     @Test
@@ -0,0 +1,93 @@
+package com.shiraku.bankcard.support;
+
+import liquibase.integration.spring.SpringLiquibase;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+/** Класс ChangelogDatabase - отдельная база H2 в памяти для тестов заданий, работающих через JDBC
+ * <p>
+ * Схема создаётся теми же Liquibase-изменениями, что и в приложении ({@code db.changelog-master.yaml}),
+ * поэтому тест не может пройти на схеме, которая разошлась с миграциями. Изменения только для PostgreSQL
+ * пропускаются, вместо них применяются их запасные варианты.
+ * */
+public final class ChangelogDatabase {
+    private static final String CHANGE_LOG = "classpath:db/changelog/db.changelog-master.yaml";
+
+    private static List<String> schema;
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSourceTransactionManager transactionManager;
+
+    private ChangelogDatabase(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionManager = new DataSourceTransactionManager(dataSource);
+    }
+
+    /** Метод {@code create()} создаёт новую пустую базу со схемой, построенной миграциями
+     * <p>
+     * Миграции применяются один раз за запуск тестов; следующие базы создаются из снятого с первой скрипта схемы.
+     * */
+    public static ChangelogDatabase create() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+        ChangelogDatabase database = new ChangelogDatabase(dataSource);
+        synchronized (ChangelogDatabase.class) {
+            if (schema == null) {
+                migrate(dataSource);
+                schema = database.jdbcTemplate.queryForList("SCRIPT NODATA", String.class);
+                return database;
+            }
+        }
+        schema.forEach(database.jdbcTemplate::execute);
+        return database;
+    }
+
+    private static void migrate(DataSource dataSource) {
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(dataSource);
+        liquibase.setChangeLog(CHANGE_LOG);
+        liquibase.setResourceLoader(new DefaultResourceLoader());
+        try {
+            liquibase.afterPropertiesSet();
+        } catch (Exception e) {
+            throw new IllegalStateException("Не удалось применить миграции к тестовой базе", e);
+        }
+    }
+
+    public DataSource dataSource() {
+        return dataSource;
+    }
+
+    public JdbcTemplate jdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    public DataSourceTransactionManager transactionManager() {
+        return transactionManager;
+    }
+
+    /** Метод {@code insertCard(ownerId, status, balance)} добавляет карту со всеми обязательными колонками
+     * <p>
+     * Номер - уникальная заглушка из id вместо шифротекста: задания, работающие через JDBC, его не расшифровывают.
+     * */
+    public UUID insertCard(UUID ownerId, String status, BigDecimal balance) {
+        UUID id = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO card (id, number, owner_id, expiry_date, status, balance) VALUES (?, ?, ?, ?, ?, ?)",
+                id, id.toString().replace("-", "").substring(0, 20), ownerId, "12/30", status, balance);
+        return id;
+    }
+
+    /** Метод {@code close()} удаляет базу */
+    public void close() {
+        jdbcTemplate.execute("SHUTDOWN");
+    }
+}
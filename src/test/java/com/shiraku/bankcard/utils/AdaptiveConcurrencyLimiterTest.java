@@ -0,0 +1,55 @@
+package com.shiraku.bankcard.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long THRESHOLD = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    void tryAcquire_shouldRejectImmediately_whenLimitReached() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 0.5, THRESHOLD);
+
+        assertTrue(limiter.tryAcquire() >= 0);
+        assertTrue(limiter.tryAcquire() >= 0);
+        assertEquals(-1, limiter.tryAcquire());
+        assertEquals(1, limiter.getRejected());
+    }
+
+    @Test
+    void release_shouldShrinkLimit_whenLatencyAboveThreshold() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 10, 0.5, THRESHOLD);
+
+        int inFlight = limiter.tryAcquire();
+        limiter.release(inFlight, THRESHOLD * 2, false);
+
+        assertEquals(4, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void release_shouldNotGoBelowMinLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 2, 10, 0.5, THRESHOLD);
+
+        for (int i = 0; i < 5; i++) {
+            limiter.release(limiter.tryAcquire(), 0, true);
+        }
+
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    void release_shouldGrowLimit_whenFastAndSaturated() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 3, 0.5, THRESHOLD);
+
+        int first = limiter.tryAcquire();
+        limiter.tryAcquire();
+        limiter.release(first, 0, false);
+
+        assertEquals(3, limiter.getLimit());
+    }
+}
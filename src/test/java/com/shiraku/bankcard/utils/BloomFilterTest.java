@@ -0,0 +1,47 @@
+package com.shiraku.bankcard.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterTest {
+
+    @Test
+    void put_shouldReportNewKeysOnlyOnce() {
+        BloomFilter filter = new BloomFilter(1_000, 0.01);
+
+        assertFalse(filter.mightContain("2200700000000001"));
+        assertTrue(filter.put("2200700000000001"));
+        assertTrue(filter.mightContain("2200700000000001"));
+        assertFalse(filter.put("2200700000000001"));
+    }
+
+    @Test
+    void load_shouldCountOnlyNewKeys() {
+        BloomFilter filter = new BloomFilter(4, 0.01);
+        filter.put("a");
+        filter.put("a");
+        filter.put("b");
+
+        assertEquals(2, filter.insertions());
+        assertEquals(0.5, filter.load());
+    }
+
+    @Test
+    void mightContain_shouldKeepFalsePositiveRateNearTarget() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("added-" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("added-" + i));
+            if (filter.mightContain("absent-" + i)) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue(falsePositives < 300, "false positives: " + falsePositives);
+    }
+}
@@ -0,0 +1,53 @@
+package com.shiraku.bankcard.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsistentHashRingTest {
+
+    @Test
+    void nodeFor_shouldBeStableForSameKey() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("shard-0", "shard-1", "shard-2"), 128);
+        UUID owner = UUID.randomUUID();
+
+        assertEquals(ring.nodeFor(owner), ring.nodeFor(owner));
+    }
+
+    @Test
+    void nodeFor_shouldSpreadKeysAcrossNodes() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("shard-0", "shard-1", "shard-2"), 128);
+        Map<String, Integer> counts = new HashMap<>();
+
+        for (int i = 0; i < 30_000; i++) {
+            counts.merge(ring.nodeFor(UUID.randomUUID()), 1, Integer::sum);
+        }
+
+        assertEquals(3, counts.size());
+        counts.values().forEach(count -> assertTrue(count > 7_000, "Неравномерное распределение: " + counts));
+    }
+
+    @Test
+    void addingNode_shouldMoveOnlyPartOfKeys() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of("shard-0", "shard-1", "shard-2"), 128);
+        ConsistentHashRing after = new ConsistentHashRing(List.of("shard-0", "shard-1", "shard-2", "shard-3"), 128);
+        int moved = 0;
+        int total = 20_000;
+
+        for (int i = 0; i < total; i++) {
+            UUID owner = UUID.randomUUID();
+            String newNode = after.nodeFor(owner);
+            if (!newNode.equals(before.nodeFor(owner))) {
+                moved++;
+                assertEquals("shard-3", newNode);
+            }
+        }
+
+        assertTrue(moved < total / 3, "Слишком много ключей переехало: " + moved);
+    }
+}
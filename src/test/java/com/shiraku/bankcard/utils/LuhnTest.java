@@ -0,0 +1,23 @@
+package com.shiraku.bankcard.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LuhnTest {
+
+    @Test
+    void checkDigit_shouldMatchKnownNumbers() {
+        assertEquals(3, Luhn.checkDigit("7992739871"));
+        assertEquals(1, Luhn.checkDigit("411111111111111"));
+    }
+
+    @Test
+    void isValid_shouldAcceptValidAndRejectCorruptedNumbers() {
+        assertTrue(Luhn.isValid("4111111111111111"));
+        assertTrue(Luhn.isValid("79927398713"));
+        assertFalse(Luhn.isValid("4111111111111112"));
+        assertFalse(Luhn.isValid("4111 1111 1111 1111"));
+        assertFalse(Luhn.isValid(null));
+    }
+}
@@ -0,0 +1,99 @@
+package com.shiraku.bankcard.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    @Test
+    void execute_shouldShareOneLoadBetweenConcurrentCallers() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(Duration.ofSeconds(5));
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> flight.execute("card", () -> {
+                    loads.incrementAndGet();
+                    await(release);
+                    return 42;
+                })));
+            }
+            while (flight.sharedCount() < 7) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            for (Future<Integer> result : results) {
+                assertEquals(42, result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+            assertEquals(0, flight.inFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void execute_shouldNotCacheResultAfterCompletion() {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(Duration.ofSeconds(1));
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals(1, flight.execute("card", loads::incrementAndGet));
+        assertEquals(2, flight.execute("card", loads::incrementAndGet));
+    }
+
+    @Test
+    void execute_shouldPropagateLeaderFailure() {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(Duration.ofSeconds(1));
+
+        assertThrows(IllegalStateException.class, () -> flight.execute("card", () -> {
+            throw new IllegalStateException("db down");
+        }));
+        assertEquals(0, flight.inFlight());
+    }
+
+    @Test
+    void execute_shouldLoadItself_whenLeaderExceedsTimeout() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>(Duration.ofMillis(50));
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> leader = executor.submit(() -> flight.execute("card", () -> {
+                await(release);
+                return 1;
+            }));
+            while (flight.inFlight() == 0) {
+                Thread.sleep(1);
+            }
+
+            assertEquals(2, flight.execute("card", () -> 2));
+            assertEquals(1, flight.timedOutCount());
+
+            release.countDown();
+            assertEquals(1, leader.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
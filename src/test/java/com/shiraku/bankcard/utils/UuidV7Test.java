@@ -0,0 +1,44 @@
+package com.shiraku.bankcard.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UuidV7Test {
+
+    @Test
+    void randomUuid_shouldHaveVersion7AndRfcVariant() {
+        UUID uuid = UuidV7.randomUuid();
+
+        assertEquals(7, uuid.version());
+        assertEquals(2, uuid.variant());
+    }
+
+    @Test
+    void randomUuid_shouldBeStrictlyIncreasingInDatabaseOrder() {
+        UUID previous = UuidV7.randomUuid();
+        for (int i = 0; i < 100_000; i++) {
+            UUID next = UuidV7.randomUuid();
+            assertTrue(Uuids.DATABASE_ORDER.compare(previous, next) < 0, previous + " >= " + next);
+            previous = next;
+        }
+    }
+
+    @Test
+    void timestamp_shouldReturnCreationTime() {
+        long before = System.currentTimeMillis();
+        UUID uuid = UuidV7.randomUuid();
+        long after = System.currentTimeMillis();
+
+        long timestamp = UuidV7.timestamp(uuid);
+
+        assertTrue(timestamp >= before && timestamp <= after + 1);
+    }
+
+    @Test
+    void timestamp_shouldRejectRandomUuid() {
+        assertThrows(IllegalArgumentException.class, () -> UuidV7.timestamp(UUID.randomUUID()));
+    }
+}